@@ -0,0 +1,193 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.CanonicalPath;
+
+/**
+ * Describes a batch of entities and relationships to be created at once using
+ * {@link Inventory#createBulk(BulkCreate)}.
+ *
+ * <p>The blueprints are keyed by the canonical path of the parent of the entity to be created (or, in case of
+ * relationship blueprints, by the canonical path of the entity the relationship should originate at). The parents
+ * can themselves be created as part of the same batch, the inventory makes sure to create the parents before their
+ * children and the relationships only after all the entities have been created.
+ *
+ * <p>Unlike creating the entities one by one, the batch is persisted in a small number of transactions, each
+ * containing at most {@link #getChunkSize()} blueprints.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public final class BulkCreate {
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+    private final Map<CanonicalPath, List<Blueprint>> blueprints;
+    private final int chunkSize;
+
+    private BulkCreate(Map<CanonicalPath, List<Blueprint>> blueprints, int chunkSize) {
+        this.blueprints = blueprints;
+        this.chunkSize = chunkSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the blueprints keyed by the canonical path of their parents. The tenant blueprints are stored under the
+     * null key.
+     */
+    public Map<CanonicalPath, List<Blueprint>> getBlueprints() {
+        return blueprints;
+    }
+
+    /**
+     * @return the maximum number of blueprints persisted in a single transaction
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public static final class Builder {
+        private final Map<CanonicalPath, List<Blueprint>> blueprints = new LinkedHashMap<>();
+        private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+        private Builder() {
+
+        }
+
+        /**
+         * Adds a new blueprint to the batch.
+         *
+         * @param parent    the canonical path of the parent of the new entity, null for tenants
+         * @param blueprint the blueprint of the new entity or relationship
+         * @return this builder
+         */
+        public Builder create(CanonicalPath parent, Blueprint blueprint) {
+            if (blueprint == null) {
+                throw new IllegalArgumentException("blueprint == null");
+            }
+
+            blueprints.computeIfAbsent(parent, (p) -> new ArrayList<>()).add(blueprint);
+            return this;
+        }
+
+        /**
+         * Adds all the blueprints to the batch, all having the same parent.
+         *
+         * @param parent     the canonical path of the parent of the new entities, null for tenants
+         * @param blueprints the blueprints of the new entities or relationships
+         * @return this builder
+         */
+        public Builder create(CanonicalPath parent, Collection<? extends Blueprint> blueprints) {
+            blueprints.forEach((b) -> create(parent, b));
+            return this;
+        }
+
+        public Builder withChunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive.");
+            }
+
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public BulkCreate build() {
+            Map<CanonicalPath, List<Blueprint>> copy = new LinkedHashMap<>();
+            blueprints.forEach((p, bs) -> copy.put(p, Collections.unmodifiableList(new ArrayList<>(bs))));
+
+            return new BulkCreate(Collections.unmodifiableMap(copy), chunkSize);
+        }
+    }
+
+    /**
+     * The outcome of the bulk creation. The entries are listed in the order in which the blueprints were processed.
+     */
+    public static final class Result {
+        private final List<Entry> entries;
+
+        public Result(List<Entry> entries) {
+            this.entries = Collections.unmodifiableList(new ArrayList<>(entries));
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * @return true if all the blueprints were successfully persisted, false otherwise
+         */
+        public boolean isSuccess() {
+            return entries.stream().allMatch(Entry::isSuccess);
+        }
+    }
+
+    /**
+     * The outcome of the creation of a single blueprint.
+     */
+    public static final class Entry {
+        private final CanonicalPath parent;
+        private final Blueprint blueprint;
+        private final AbstractElement<?, ?> element;
+        private final RuntimeException error;
+
+        public Entry(CanonicalPath parent, Blueprint blueprint, AbstractElement<?, ?> element,
+                RuntimeException error) {
+            this.parent = parent;
+            this.blueprint = blueprint;
+            this.element = element;
+            this.error = error;
+        }
+
+        public CanonicalPath getParent() {
+            return parent;
+        }
+
+        public Blueprint getBlueprint() {
+            return blueprint;
+        }
+
+        /**
+         * @return the newly created element or null if the creation failed
+         */
+        public AbstractElement<?, ?> getElement() {
+            return element;
+        }
+
+        /**
+         * @return the reason why the element could not be created or null if the creation succeeded
+         */
+        public RuntimeException getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+}
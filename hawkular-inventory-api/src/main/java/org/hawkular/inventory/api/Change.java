@@ -0,0 +1,89 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api;
+
+import org.hawkular.inventory.api.model.CanonicalPath;
+
+/**
+ * A single entry of the change log of a tenant, as returned by {@link Inventory#getChanges(String, long, int)}.
+ *
+ * <p>The changes of a tenant are numbered by monotonically increasing sequence numbers without gaps, so a consumer
+ * that remembers the sequence number of the last change it has seen can always ask for the changes that happened
+ * after it. If the first returned change doesn't immediately follow the requested one, the changes in between have
+ * already been discarded from the log and the consumer needs to re-read the inventory.
+ *
+ * <p>The log is not updated atomically with the inventory, so a few changes can get lost, e.g. when the server
+ * crashes. The numbering of the changes continues without a gap after that, but the changes recorded since then have
+ * a different {@link #getEpoch() epoch}. A consumer seeing a change with an epoch different from the epoch of the last
+ * change it has seen needs to re-read the inventory, too.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public final class Change {
+    private final long epoch;
+    private final long sequenceNumber;
+    private final long timestamp;
+    private final Action.Enumerated action;
+    private final CanonicalPath path;
+
+    public Change(long epoch, long sequenceNumber, long timestamp, Action.Enumerated action, CanonicalPath path) {
+        this.epoch = epoch;
+        this.sequenceNumber = sequenceNumber;
+        this.timestamp = timestamp;
+        this.action = action;
+        this.path = path;
+    }
+
+    /**
+     * @return the epoch of the change log the change was recorded in. The epoch changes whenever some changes might
+     * have been lost.
+     */
+    public long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * @return the position of the change in the change log of the tenant
+     */
+    public long getSequenceNumber() {
+        return sequenceNumber;
+    }
+
+    /**
+     * @return the time the change was recorded at, in milliseconds since epoch
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public Action.Enumerated getAction() {
+        return action;
+    }
+
+    /**
+     * @return the canonical path of the changed entity or relationship
+     */
+    public CanonicalPath getPath() {
+        return path;
+    }
+
+    @Override
+    public String toString() {
+        return "Change[" + epoch + "/" + sequenceNumber + ": " + action + " " + path + "]";
+    }
+}
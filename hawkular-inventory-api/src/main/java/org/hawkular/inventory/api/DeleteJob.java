@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.inventory.api.model.CanonicalPath;
+
+/**
+ * A handle to a deletion of an entity and everything it contains running in the background, as started by
+ * {@link Inventory#deleteAsync(CanonicalPath)}.
+ *
+ * <p>Unlike the ordinary deletes, the entities are not deleted in a single transaction. Instead they are deleted from
+ * the "bottom" of the containment hierarchy up in transactions of limited size. The notifications about the deleted
+ * entities are sent out after each of the transactions is committed.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public interface DeleteJob {
+
+    /**
+     * @return the unique id of the job
+     */
+    String getId();
+
+    /**
+     * @return the canonical path of the entity being deleted
+     */
+    CanonicalPath getPath();
+
+    Status getStatus();
+
+    /**
+     * @return the number of entities to delete (including the deleted entity itself) or -1 if not known yet
+     */
+    long getTotalCount();
+
+    /**
+     * @return the number of entities deleted so far
+     */
+    long getDeletedCount();
+
+    /**
+     * @return the reason of the failure of the job or null if the job has not failed
+     */
+    RuntimeException getError();
+
+    /**
+     * Waits for the job to finish.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the job finished (successfully or not), false if the wait timed out
+     * @throws InterruptedException if the waiting thread was interrupted
+     */
+    boolean await(long timeout, TimeUnit unit) throws InterruptedException;
+
+    enum Status {
+        /**
+         * The job is waiting for the previously started jobs to finish.
+         */
+        PENDING,
+
+        /**
+         * The entities are being deleted.
+         */
+        RUNNING,
+
+        /**
+         * The entity and everything it contained has been deleted.
+         */
+        FINISHED,
+
+        /**
+         * The job failed. Some of the entities might have been deleted.
+         */
+        FAILED
+    }
+}
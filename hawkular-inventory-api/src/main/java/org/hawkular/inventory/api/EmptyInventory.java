@@ -19,6 +19,7 @@ package org.hawkular.inventory.api;
 import java.io.InputStream;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 
 import org.hawkular.inventory.api.filters.Filter;
@@ -78,6 +79,36 @@ public class EmptyInventory implements Inventory {
         return Observable.empty();
     }
 
+    @Override
+    public BulkCreate.Result createBulk(BulkCreate bulk) {
+        throw entityNotFound(Tenant.class);
+    }
+
+    @Override
+    public FeedSync.Result synchronize(CanonicalPath feed, FeedSync sync) {
+        throw entityNotFound(Tenant.class);
+    }
+
+    @Override
+    public void rebuildContentHashes(CanonicalPath feed) {
+        throw entityNotFound(Tenant.class);
+    }
+
+    @Override
+    public DeleteJob deleteAsync(CanonicalPath path) {
+        throw entityNotFound(Tenant.class);
+    }
+
+    @Override
+    public DeleteJob getDeleteJob(String id) {
+        return null;
+    }
+
+    @Override
+    public List<Change> getChanges(String tenantId, long since, int limit) {
+        throw entityNotFound(Tenant.class);
+    }
+
     @Override
     public InputStream getGraphSON(String tenantId) {
         throw entityNotFound(Tenant.class);
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.CanonicalPath;
+
+/**
+ * Describes the complete contents of a feed, that the inventory should be synchronized with using
+ * {@link Inventory#synchronize(CanonicalPath, FeedSync)}.
+ *
+ * <p>The contents are described as a tree of blueprints. The top level nodes are the resource types, metric types,
+ * resources and metrics of the feed, the resource types can contain data entities and the resources can contain
+ * child resources and data entities.
+ *
+ * <p>The inventory compares the tree with what it has stored for the feed and only writes the differences - the
+ * entities that are not in the tree are deleted, the ones that are only in the tree are created and the ones that
+ * differ are updated. Thanks to the content hashes of the stored entities (see
+ * {@link org.hawkular.inventory.api.model.ContentHash}), the unchanged subtrees are skipped without looking at the
+ * individual entities in them.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public final class FeedSync {
+    private final List<Node> children;
+    private final int chunkSize;
+
+    private FeedSync(List<Node> children, int chunkSize) {
+        this.children = children;
+        this.chunkSize = chunkSize;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the nodes describing the entities directly contained in the feed
+     */
+    public List<Node> getChildren() {
+        return children;
+    }
+
+    /**
+     * @return the maximum number of entities created in a single transaction
+     */
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    public static final class Builder {
+        private final List<Node> children = new ArrayList<>();
+        private int chunkSize = BulkCreate.DEFAULT_CHUNK_SIZE;
+
+        private Builder() {
+
+        }
+
+        public Builder add(Node node) {
+            if (node == null) {
+                throw new IllegalArgumentException("node == null");
+            }
+
+            children.add(node);
+            return this;
+        }
+
+        public Builder withChunkSize(int chunkSize) {
+            if (chunkSize <= 0) {
+                throw new IllegalArgumentException("Chunk size must be positive.");
+            }
+
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public FeedSync build() {
+            return new FeedSync(Collections.unmodifiableList(new ArrayList<>(children)), chunkSize);
+        }
+    }
+
+    /**
+     * A single entity of the feed together with the entities it contains.
+     */
+    public static final class Node {
+        private final Blueprint blueprint;
+        private final List<Node> children;
+
+        public Node(Blueprint blueprint, List<Node> children) {
+            if (blueprint == null) {
+                throw new IllegalArgumentException("blueprint == null");
+            }
+
+            this.blueprint = blueprint;
+            this.children = children == null ? Collections.emptyList()
+                    : Collections.unmodifiableList(new ArrayList<>(children));
+        }
+
+        public static Node of(Blueprint blueprint, Node... children) {
+            return new Node(blueprint, Arrays.asList(children));
+        }
+
+        public Blueprint getBlueprint() {
+            return blueprint;
+        }
+
+        public List<Node> getChildren() {
+            return children;
+        }
+    }
+
+    /**
+     * The outcome of the synchronization.
+     */
+    public static final class Result {
+        private final List<CanonicalPath> updated;
+        private final List<CanonicalPath> deleted;
+        private final BulkCreate.Result created;
+        private final long unchangedCount;
+        private final long comparedCount;
+
+        public Result(List<CanonicalPath> updated, List<CanonicalPath> deleted, BulkCreate.Result created,
+                long unchangedCount, long comparedCount) {
+            this.updated = Collections.unmodifiableList(new ArrayList<>(updated));
+            this.deleted = Collections.unmodifiableList(new ArrayList<>(deleted));
+            this.created = created;
+            this.unchangedCount = unchangedCount;
+            this.comparedCount = comparedCount;
+        }
+
+        /**
+         * @return the paths to the entities that have been updated
+         */
+        public List<CanonicalPath> getUpdated() {
+            return updated;
+        }
+
+        /**
+         * @return the paths to the entities that have been deleted (together with everything they contained)
+         */
+        public List<CanonicalPath> getDeleted() {
+            return deleted;
+        }
+
+        /**
+         * @return the outcome of the creation of the entities that were missing in the inventory
+         */
+        public BulkCreate.Result getCreated() {
+            return created;
+        }
+
+        /**
+         * @return the number of the entities that were found to be up to date and haven't been touched
+         */
+        public long getUnchangedCount() {
+            return unchangedCount;
+        }
+
+        /**
+         * @return the number of the stored entities that needed to be loaded and compared with their description,
+         * because their content hash didn't match. This is 0 if the content hash of the whole feed matched.
+         */
+        public long getComparedCount() {
+            return comparedCount;
+        }
+
+        /**
+         * @return true if nothing needed to be written to the inventory
+         */
+        public boolean isUnchanged() {
+            return updated.isEmpty() && deleted.isEmpty() && created.getEntries().isEmpty();
+        }
+    }
+}
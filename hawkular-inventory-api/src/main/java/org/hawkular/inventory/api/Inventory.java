@@ -330,8 +330,12 @@ public interface Inventory extends AutoCloseable {
 
             @Override
             public Single visitMetricType(Void parameter) {
-                return accessInterface.cast(tenants().get(path.ids().getTenantId()).feedlessMetricTypes()
-                        .get(path.ids().getMetricTypeId()));
+                Tenants.Single ten = tenants().get(path.ids().getTenantId());
+                return accessInterface.cast(path.ids().getFeedId() == null
+                        ? ten.feedlessMetricTypes().get(path.ids().getMetricTypeId())
+                        : ten.environments().get(path.ids().getEnvironmentId())
+                                .feeds().get(path.ids().getFeedId()).metricTypes()
+                                .get(path.ids().getMetricTypeId()));
             }
 
             @Override
@@ -421,6 +425,104 @@ public interface Inventory extends AutoCloseable {
         }, null);
     }
 
+    /**
+     * Creates all the entities and relationships described by the provided batch. This is much more efficient than
+     * creating the entities one by one, because the parents are looked up only once and the entities are persisted
+     * in a few large transactions instead of one transaction per entity.
+     *
+     * <p>A failure to create one of the entities doesn't prevent the rest of the batch from being created (with the
+     * exception of the entities and relationships that depend on the failed one). The failures are reported in
+     * the returned result.
+     *
+     * <p>The notifications about the created entities and relationships are sent out after the transactions have
+     * been committed.
+     *
+     * @param bulk the description of the entities and relationships to create
+     * @return the outcome of the creation of the individual entities and relationships
+     */
+    BulkCreate.Result createBulk(BulkCreate bulk);
+
+    /**
+     * Synchronizes the contents of the feed with the provided description. Only the differences between the stored
+     * contents and the description are written - the missing entities are created, the changed ones are updated and
+     * the ones not present in the description are deleted. The unchanged subtrees are detected using the content
+     * hashes maintained by the backend (if it supports them) and skipped without being compared entity by entity.
+     *
+     * <p>The properties of the feed itself are not modified.
+     *
+     * <p>The synchronization is not atomic. The differences are found in one transaction and written in several
+     * others. If the feed is modified between the two (and the backend supports the content hashes), this is detected
+     * and the differences are found again. The modifications done while the differences are being written are not
+     * detected though and can be overwritten or can cause parts of the synchronization to fail. The synchronizations
+     * of a single feed (and the other modifications of it) should therefore not run concurrently.
+     *
+     * @param feed the canonical path to the feed
+     * @param sync the complete description of the contents of the feed
+     * @return the outcome of the synchronization
+     * @throws EntityNotFoundException if the feed doesn't exist
+     * @throws IllegalArgumentException if the path doesn't point to a feed, the description contains entities that
+     *                                  cannot be contained in the feed or their parents or if a metric type would need
+     *                                  to be replaced (because its data type changed) while it defines metrics outside
+     *                                  of the feed
+     * @throws IllegalStateException if the feed kept being modified while its differences were being found
+     */
+    FeedSync.Result synchronize(CanonicalPath feed, FeedSync sync);
+
+    /**
+     * Recomputes the content hashes used by {@link #synchronize(CanonicalPath, FeedSync)} for the feed and all the
+     * entities in it from scratch. The hashes are otherwise maintained incrementally, so this is only needed for
+     * the feeds that were stored before the backend started to maintain them or if the stored hashes are suspected to
+     * be wrong. A feed with wrong hashes is still synchronized correctly, but unchanged subtrees might not be skipped
+     * or, less likely, changed ones might be.
+     *
+     * @param feed the canonical path to the feed
+     * @throws EntityNotFoundException if the feed doesn't exist
+     * @throws IllegalArgumentException if the path doesn't point to a feed
+     */
+    void rebuildContentHashes(CanonicalPath feed);
+
+    /**
+     * Starts deleting the entity on the provided path together with everything it (transitively) contains in the
+     * background. This is meant for deleting huge subtrees of the inventory (like whole tenants or feeds) that would
+     * not be practical to delete in a single transaction.
+     *
+     * <p>Before anything is deleted, the job checks that none of the entities to be deleted acts as a definition of
+     * an entity that would not be deleted along with it. If that is the case, the job fails without deleting
+     * anything. Otherwise the entities are deleted from the "bottom" of the containment hierarchy up in transactions
+     * of limited size, so that the inventory is consistent after each of them.
+     *
+     * @param path the canonical path of the entity to delete
+     * @return the handle to the started job
+     * @throws EntityNotFoundException if the entity doesn't exist
+     * @throws IllegalArgumentException if the path doesn't point to an entity
+     */
+    DeleteJob deleteAsync(CanonicalPath path);
+
+    /**
+     * @param id the id of the delete job
+     * @return the delete job with given id or null if there is no such job (the finished jobs are only remembered for
+     * a limited time)
+     * @see #deleteAsync(CanonicalPath)
+     */
+    DeleteJob getDeleteJob(String id);
+
+    /**
+     * Reads the change log of the tenant. Each committed creation, update or deletion of an entity or relationship
+     * (i.e. everything the {@link #observable(Interest) observers} are notified about) is recorded in the log, so that
+     * the consumers that missed some notifications can catch up without re-reading the whole inventory.
+     *
+     * <p>The log only keeps a limited number of the most recent changes, see {@link Change} for how to detect that
+     * some of the requested changes have already been discarded or lost.
+     *
+     * @param tenantId the id of the tenant
+     * @param since    the sequence number of the last change the caller has seen, 0 to read from the beginning
+     * @param limit    the maximum number of changes to return
+     * @return the changes with sequence numbers greater than {@code since}, ordered by their sequence numbers
+     * @throws IllegalArgumentException if the limit is not positive
+     * @throws IllegalStateException if the change log is not enabled
+     */
+    List<Change> getChanges(String tenantId, long since, int limit);
+
     /**
      * This method is mainly useful for testing.
      *
@@ -445,8 +547,11 @@ public interface Inventory extends AutoCloseable {
      * This method returns the {@link java.io.InputStream} with the GraphSON representation of the whole sub-graph
      * of given tenantId. It's basically the graph dump.
      *
+     * <p>The GraphSON is written to the stream incrementally as the reader consumes it.
+     *
      * @param tenantId the tenantId for which we want the GraphSON
      * @return the InputStream with the GraphSON representation
+     * @throws EntityNotFoundException if the tenant doesn't exist
      */
     InputStream getGraphSON(String tenantId);
 
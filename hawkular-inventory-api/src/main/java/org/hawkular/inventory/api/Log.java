@@ -41,4 +41,25 @@ public interface Log extends BasicLogger {
     @LogMessage(level = Logger.Level.WARN)
     @Message(id = 2, value = "No data associated with data entity on path %s that is being deleted.")
     void wNoDataAssociatedWithEntity(CanonicalPath dataEntityPath);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 3, value = "Asynchronous delete of %s failed after deleting %d entities.")
+    void wDeleteJobFailed(CanonicalPath path, long deletedCount, @Cause Throwable cause);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 4, value = "Failed to record the change of %s in the change log of tenant '%s'.")
+    void wChangeLogAppendFailed(CanonicalPath path, String tenantId, @Cause Throwable cause);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 5, value = "Failed to register the notification dispatch gauges under the name [%s].")
+    void wFailedToRegisterDispatchGauges(String name, @Cause Throwable cause);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 6, value = "The change log writer is falling behind, the change of %s in tenant '%s' has been" +
+            " dropped from the change log. The change log will start a new epoch.")
+    void wChangeLogQueueFull(CanonicalPath path, String tenantId);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 7, value = "Failed to store the epoch %d of the change log. Will retry with the next change.")
+    void wChangeLogEpochNotStored(long epoch, @Cause Throwable cause);
 }
@@ -43,6 +43,8 @@ public final class CanonicalPath extends Path implements Iterable<CanonicalPath>
     public static final Map<Class<?>, String> SHORT_TYPE_NAMES = new HashMap<>();
     public static final Map<Class<?>, List<Class<?>>> VALID_PROGRESSIONS = new HashMap<>();
 
+    private static final Encoder ENCODER = new Encoder(SHORT_TYPE_NAMES, x -> true);
+
     static {
         SHORT_NAME_TYPES.put("t", Tenant.class);
         SHORT_NAME_TYPES.put("e", Environment.class);
@@ -75,6 +77,8 @@ public final class CanonicalPath extends Path implements Iterable<CanonicalPath>
         VALID_PROGRESSIONS.put(null, Arrays.asList(Tenant.class, Relationship.class));
     }
 
+    private transient String string;
+
     /**
      * JAXB support
      */
@@ -116,7 +120,13 @@ public final class CanonicalPath extends Path implements Iterable<CanonicalPath>
      * @return a new path instance
      */
     public static CanonicalPath fromString(String path) {
-        return fromPartiallyUntypedString(path, new StructuredDataHintingTypeProvider());
+        CanonicalPath ret = PathInterner.getCanonicalPath(path);
+        if (ret == null) {
+            ret = fromPartiallyUntypedString(path, new StructuredDataHintingTypeProvider());
+            PathInterner.putCanonicalPath(path, ret);
+        }
+
+        return ret;
     }
 
     /**
@@ -265,7 +275,14 @@ public final class CanonicalPath extends Path implements Iterable<CanonicalPath>
 
     @Override
     public String toString() {
-        return new Encoder(SHORT_TYPE_NAMES, x -> true).encode(Character.toString(PATH_DELIM), this);
+        //the path is immutable, so the string form can be computed just once
+        String ret = string;
+        if (ret == null) {
+            ret = ENCODER.encode(Character.toString(PATH_DELIM), this);
+            string = ret;
+        }
+
+        return ret;
     }
 
     @Override
@@ -403,7 +420,9 @@ public final class CanonicalPath extends Path implements Iterable<CanonicalPath>
                 if (id == null || id.isEmpty()) {
                     return null;
                 } else {
-                    return new Segment(SHORT_NAME_TYPES.get(type), id);
+                    Class<?> cls = SHORT_NAME_TYPES.get(type);
+                    //the segments that are shared by many paths are interned to lower the memory footprint
+                    return isSharedPrefix(cls) ? PathInterner.segment(cls, id) : new Segment(cls, id);
                 }
             }
 
@@ -432,5 +451,10 @@ public final class CanonicalPath extends Path implements Iterable<CanonicalPath>
         Set<String> getValidTypeName() {
             return SHORT_NAME_TYPES.keySet();
         }
+
+        private static boolean isSharedPrefix(Class<?> type) {
+            return type == Tenant.class || type == Environment.class || type == Feed.class ||
+                    type == ResourceType.class || type == MetricType.class;
+        }
     }
 }
@@ -0,0 +1,319 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.model;
+
+import java.io.Serializable;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Computes the hashes of the content of the entities, so that two trees of entities can be compared without comparing
+ * the individual entities.
+ *
+ * <p>The hash of an entity is composed of the hash of its "own" content (its type, id, properties, the path to its
+ * resource or metric type, the unit and data type of the metric types and the value of the data entities) and of the
+ * hashes of all the entities it contains. The hashes of the contained entities are simply summed up, which makes the
+ * hash independent of the order of the children and, more importantly, makes it possible to update the hash of the
+ * parent when a single child changes without looking at all the other children:
+ * <pre>{@code
+ * children = children - oldChildHash + newChildHash;
+ * hash = ContentHash.combine(ownHash, children);
+ * }</pre>
+ *
+ * <p>The same hash is computed from the blueprint of an entity as from the entity created from that blueprint.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public final class ContentHash {
+
+    private ContentHash() {
+
+    }
+
+    /**
+     * @param entityType the type of the entity
+     * @param id         the id of the entity
+     * @return a builder of the hash of the own content of an entity
+     */
+    public static Builder of(Class<?> entityType, String id) {
+        return new Builder(entityType, id);
+    }
+
+    /**
+     * @param entity the entity
+     * @return the hash of the own content of the entity (i.e. excluding the contained entities)
+     */
+    public static long of(Entity<?, ?> entity) {
+        Builder bld = of(entity.getClass(), entity.getId()).withProperties(entity.getProperties());
+
+        return entity.accept(new ElementVisitor.Simple<Builder, Void>() {
+            @Override
+            protected Builder defaultAction() {
+                return bld;
+            }
+
+            @Override
+            public Builder visitMetric(Metric metric, Void parameter) {
+                return bld.withDefiningType(metric.getType().getPath());
+            }
+
+            @Override
+            public Builder visitMetricType(MetricType type, Void parameter) {
+                return bld.withUnit(type.getUnit()).withDataType(type.getType());
+            }
+
+            @Override
+            public Builder visitResource(Resource resource, Void parameter) {
+                return bld.withDefiningType(resource.getType().getPath());
+            }
+
+            @Override
+            public Builder visitData(DataEntity data, Void parameter) {
+                return bld.withValue(data.getValue());
+            }
+        }, null).build();
+    }
+
+    /**
+     * Computes the hash of the own content of the entity that would be created from the provided blueprint.
+     *
+     * @param blueprint    the blueprint of the entity
+     * @param definingType the canonical path of the resource type or metric type of the resource or metric to be
+     *                     created, ignored for other entities
+     * @return the hash of the own content of the entity (i.e. excluding the contained entities)
+     */
+    public static long of(Blueprint blueprint, CanonicalPath definingType) {
+        return blueprint.accept(new ElementBlueprintVisitor.Simple<Long, Void>() {
+            @Override
+            protected Long defaultAction() {
+                throw new IllegalArgumentException("Unsupported blueprint type: " + blueprint);
+            }
+
+            @Override
+            public Long visitTenant(Tenant.Blueprint tenant, Void parameter) {
+                return common(Tenant.class, tenant).build();
+            }
+
+            @Override
+            public Long visitEnvironment(Environment.Blueprint environment, Void parameter) {
+                return common(Environment.class, environment).build();
+            }
+
+            @Override
+            public Long visitFeed(Feed.Blueprint feed, Void parameter) {
+                return common(Feed.class, feed).build();
+            }
+
+            @Override
+            public Long visitMetric(Metric.Blueprint metric, Void parameter) {
+                return common(Metric.class, metric).withDefiningType(definingType).build();
+            }
+
+            @Override
+            public Long visitMetricType(MetricType.Blueprint type, Void parameter) {
+                return common(MetricType.class, type).withUnit(type.getUnit()).withDataType(type.getType())
+                        .build();
+            }
+
+            @Override
+            public Long visitResource(Resource.Blueprint resource, Void parameter) {
+                return common(Resource.class, resource).withDefiningType(definingType).build();
+            }
+
+            @Override
+            public Long visitResourceType(ResourceType.Blueprint type, Void parameter) {
+                return common(ResourceType.class, type).build();
+            }
+
+            @Override
+            public Long visitData(DataEntity.Blueprint<?> data, Void parameter) {
+                return of(DataEntity.class, data.getRole().name()).withProperties(data.getProperties())
+                        .withValue(data.getValue()).build();
+            }
+
+            private Builder common(Class<?> type, Entity.Blueprint bl) {
+                return of(type, bl.getId()).withProperties(bl.getProperties());
+            }
+        }, null);
+    }
+
+    /**
+     * Combines the hash of the own content of an entity with the sum of the hashes of its children.
+     *
+     * @param ownHash      the hash of the own content of the entity
+     * @param childrenHash the sum of the (combined) hashes of all the contained entities
+     * @return the hash of the entity and everything it contains
+     */
+    public static long combine(long ownHash, long childrenHash) {
+        //the finalization step of the 64-bit MurmurHash3, so that the sum of the hashes stays well distributed
+        long h = ownHash * 0x9E3779B97F4A7C15L + childrenHash;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @param hash the hash
+     * @return the fixed-length hexadecimal representation of the hash
+     */
+    public static String toString(long hash) {
+        return String.format("%016x", hash);
+    }
+
+    public static final class Builder {
+        private final Class<?> entityType;
+        private final String id;
+        private Map<String, ?> properties;
+        private CanonicalPath definingType;
+        private MetricUnit unit;
+        private MetricDataType dataType;
+        private StructuredData value;
+
+        private Builder(Class<?> entityType, String id) {
+            this.entityType = entityType;
+            this.id = id;
+        }
+
+        public Builder withProperties(Map<String, ?> properties) {
+            this.properties = properties;
+            return this;
+        }
+
+        /**
+         * @param definingType the canonical path of the resource type or metric type of the entity
+         * @return this builder
+         */
+        public Builder withDefiningType(CanonicalPath definingType) {
+            this.definingType = definingType;
+            return this;
+        }
+
+        public Builder withUnit(MetricUnit unit) {
+            this.unit = unit;
+            return this;
+        }
+
+        public Builder withDataType(MetricDataType dataType) {
+            this.dataType = dataType;
+            return this;
+        }
+
+        public Builder withValue(StructuredData value) {
+            this.value = value;
+            return this;
+        }
+
+        public long build() {
+            //the fields are written in a fixed order, so that the order of the builder calls doesn't matter
+            StringBuilder bld = new StringBuilder();
+            encode(entityType.getSimpleName(), bld);
+            encode(id, bld);
+            encode(properties == null || properties.isEmpty() ? null : properties, bld);
+            encode(definingType == null ? null : definingType.toString(), bld);
+            encode(unit == null ? null : unit.getDisplayName(), bld);
+            encode(dataType == null ? null : dataType.getDisplayName(), bld);
+            encode(value, bld);
+
+            byte[] digest = sha256().digest(bld.toString().getBytes(StandardCharsets.UTF_8));
+
+            long ret = 0;
+            for (int i = 0; i < 8; ++i) {
+                ret = (ret << 8) | (digest[i] & 0xFF);
+            }
+            return ret;
+        }
+
+        private static void encode(Object value, StringBuilder bld) {
+            if (value == null) {
+                bld.append('n');
+            } else if (value instanceof Boolean) {
+                bld.append('b').append(value);
+            } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                    || value instanceof Byte || value instanceof BigInteger) {
+                //the numbers can change their type when going through JSON, so only their value matters
+                bld.append('i').append(value);
+            } else if (value instanceof Number) {
+                bld.append('f').append(((Number) value).doubleValue());
+            } else if (value instanceof CharSequence) {
+                bld.append('s').append(((CharSequence) value).length()).append(':').append(value);
+            } else if (value instanceof Map) {
+                bld.append('{');
+                Map<String, Object> sorted = new TreeMap<>();
+                ((Map<?, ?>) value).forEach((k, v) -> sorted.put(String.valueOf(k), v));
+                sorted.forEach((k, v) -> {
+                    encode(k, bld);
+                    encode(v, bld);
+                });
+                bld.append('}');
+            } else if (value instanceof Collection) {
+                bld.append('[');
+                ((Collection<?>) value).forEach((v) -> encode(v, bld));
+                bld.append(']');
+            } else if (value instanceof StructuredData) {
+                encodeData((StructuredData) value, bld);
+            } else {
+                encode(value.toString(), bld);
+            }
+        }
+
+        private static void encodeData(StructuredData data, StringBuilder bld) {
+            data.accept(new StructuredData.Visitor.Simple<Void, Void>() {
+                @Override
+                protected Void defaultAction(Serializable value, Void parameter) {
+                    encode(value, bld);
+                    return null;
+                }
+
+                @Override
+                public Void visitUndefined(Void parameter) {
+                    bld.append('u');
+                    return null;
+                }
+
+                @Override
+                public Void visitList(List<StructuredData> value, Void parameter) {
+                    encode(value, bld);
+                    return null;
+                }
+
+                @Override
+                public Void visitMap(Map<String, StructuredData> value, Void parameter) {
+                    encode(value, bld);
+                    return null;
+                }
+            }, null);
+        }
+
+        private static MessageDigest sha256() {
+            try {
+                return MessageDigest.getInstance("SHA-256");
+            } catch (NoSuchAlgorithmException e) {
+                throw new AssertionError("SHA-256 is guaranteed to be supported by all JVMs.", e);
+            }
+        }
+    }
+}
@@ -449,8 +449,8 @@ public abstract class Path {
             return pos;
         }
 
-        public char getNextChar() {
-            return source.charAt(pos++);
+        public void setPos(int pos) {
+            this.pos = pos;
         }
 
         public String getSource() {
@@ -470,60 +470,42 @@ public abstract class Path {
         }
 
         public Segment decodeNext(ParsingProgress progress) {
-            StringBuilder currentId = new StringBuilder();
-            String currentTypeString = null;
-
-            //0 = reading type ordinal
-            //1 = reading id
-            int state = 0;
-
-            loop:
-            while (!progress.isFinished()) {
-                char c = progress.getNextChar();
-
-                switch (state) {
-                    case 0: // reading type ordinal
-                        switch (c) {
-                            case TYPE_DELIM:
-                                if (currentId.length() == 0) {
-                                    throw new IllegalArgumentException("Unspecified entity type id at pos " +
-                                            progress.getPos() + " in \"" + progress.getSource() + "\".");
-                                }
-
-                                currentTypeString = currentId.toString();
-                                currentId.delete(0, currentId.length());
-                                state = 1; //reading id
-                                break;
-                            case PATH_DELIM:
-                                currentTypeString = currentId.toString();
-                                currentId.delete(0, currentId.length());
-                                break loop;
-                            default:
-                                currentId.append(c);
-                        }
-                        break;
-                    case 1: //reading id
-                        switch (c) {
-                            case PATH_DELIM:
-                                break loop;
-                            default:
-                                currentId.append(c);
-                        }
-                        break;
+            //a single pass over the segment that only allocates the id (and nothing at all for the type names we know)
+            String source = progress.getSource();
+            int start = progress.getPos();
+            int len = source.length();
+
+            int typeEnd = -1;
+            int end = start;
+            while (end < len) {
+                char c = source.charAt(end);
+                if (c == PATH_DELIM) {
+                    break;
+                } else if (c == TYPE_DELIM && typeEnd < 0) {
+                    if (end == start) {
+                        throw new IllegalArgumentException("Unspecified entity type id at pos " + (end + 1) +
+                                " in \"" + source + "\".");
+                    }
+                    typeEnd = end;
                 }
+                end++;
             }
 
-            //we've finished reading the source. So we need to emit the segment.
-            String currentIdString = currentId.toString();
-            if (currentIdString.isEmpty()) {
-                currentIdString = currentTypeString;
-                currentTypeString = null;
+            progress.setPos(end < len ? end + 1 : end);
 
+            String currentTypeString;
+            String currentIdString;
+            if (typeEnd < 0) {
+                currentTypeString = null;
+                currentIdString = source.substring(start, end);
+            } else if (typeEnd + 1 == end) {
                 //if we saw a type delimiter but then found no other id characters then consider the type delimiter part
                 //of the ID
-                if (state == 1) {
-                    currentIdString += TYPE_DELIM;
-                }
+                currentTypeString = null;
+                currentIdString = source.substring(start, end);
+            } else {
+                currentTypeString = typeName(source, start, typeEnd);
+                currentIdString = source.substring(typeEnd + 1, end);
             }
 
             currentIdString = PathSegmentCodec.decode(currentIdString);
@@ -542,6 +524,48 @@ public abstract class Path {
         }
     }
 
+    /**
+     * Returns the type name in the provided region of the source string. The well-known type names are returned as
+     * constants so that parsing them doesn't allocate.
+     */
+    private static String typeName(String source, int start, int end) {
+        switch (end - start) {
+            case 1:
+                switch (source.charAt(start)) {
+                    case 't':
+                        return "t";
+                    case 'e':
+                        return "e";
+                    case 'f':
+                        return "f";
+                    case 'm':
+                        return "m";
+                    case 'r':
+                        return "r";
+                    case 'd':
+                        return "d";
+                }
+                break;
+            case 2:
+                char c1 = source.charAt(start);
+                char c2 = source.charAt(start + 1);
+                if (c2 == 't') {
+                    if (c1 == 'r') {
+                        return "rt";
+                    } else if (c1 == 'm') {
+                        return "mt";
+                    }
+                } else if (c1 == 'r' && c2 == 'l') {
+                    return "rl";
+                } else if (c1 == '.' && c2 == '.') {
+                    return "..";
+                }
+                break;
+        }
+
+        return source.substring(start, end);
+    }
+
     protected static class Encoder {
         private final Map<Class<?>, String> typeMap;
         private final Function<Segment, Boolean> requiresId;
@@ -552,9 +576,12 @@ public abstract class Path {
         }
 
         public String encode(String prefix, Path path) {
-            StringBuilder bld = new StringBuilder(prefix);
+            List<Segment> segments = path.getPath();
+
+            //an estimate good enough for the builder to not have to grow for typical ids
+            StringBuilder bld = new StringBuilder(prefix.length() + 24 * segments.size()).append(prefix);
 
-            for (Segment seg : path.getPath()) {
+            for (Segment seg : segments) {
                 String type = typeMap.get(seg.getElementType());
                 if (type != null) {
                     bld.append(type);
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.model;
+
+/**
+ * Bounded caches of the parsed canonical paths and of the path segments that are shared by many paths (tenants,
+ * environments, feeds and types).
+ *
+ * <p>The caches are direct-mapped, i.e. each key can only live in one slot of the cache, determined by its hash, and
+ * a new entry simply replaces whatever was in its slot. This makes both the lookups and the updates lock-free and
+ * allocation-free at the cost of a lower hit ratio compared to an LRU cache. The entries are immutable so reading them
+ * without synchronization is safe.
+ *
+ * <p>The sizes of the caches can be set using the {@code hawkular.inventory.path-cache.size} and
+ * {@code hawkular.inventory.segment-cache.size} system properties. Setting a size to 0 disables the cache.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class PathInterner {
+    private static final PathEntry[] PATHS = new PathEntry[sizeOf("hawkular.inventory.path-cache.size", 4096)];
+    private static final Path.Segment[] SEGMENTS =
+            new Path.Segment[sizeOf("hawkular.inventory.segment-cache.size", 1024)];
+
+    private PathInterner() {
+
+    }
+
+    /**
+     * @param string the string representation of a canonical path
+     * @return the cached path parsed from the string or null if no such path is cached
+     */
+    static CanonicalPath getCanonicalPath(String string) {
+        if (PATHS.length == 0) {
+            return null;
+        }
+
+        PathEntry e = PATHS[slot(string.hashCode(), PATHS.length)];
+        return e != null && e.string.equals(string) ? e.path : null;
+    }
+
+    static void putCanonicalPath(String string, CanonicalPath path) {
+        if (PATHS.length > 0) {
+            PATHS[slot(string.hashCode(), PATHS.length)] = new PathEntry(string, path);
+        }
+    }
+
+    /**
+     * Returns a segment with the provided type and id, sharing the instance with the previous calls if possible.
+     *
+     * @param type the type of the segment
+     * @param id   the id of the segment
+     * @return the segment
+     */
+    static Path.Segment segment(Class<?> type, String id) {
+        if (SEGMENTS.length == 0) {
+            return new Path.Segment(type, id);
+        }
+
+        int slot = slot(31 * type.hashCode() + id.hashCode(), SEGMENTS.length);
+        Path.Segment ret = SEGMENTS[slot];
+        if (ret == null || ret.getElementType() != type || !id.equals(ret.getElementId())) {
+            ret = new Path.Segment(type, id);
+            SEGMENTS[slot] = ret;
+        }
+
+        return ret;
+    }
+
+    private static int slot(int hash, int size) {
+        //spread the higher bits, the sizes are powers of 2
+        return (hash ^ (hash >>> 16)) & (size - 1);
+    }
+
+    private static int sizeOf(String property, int defaultSize) {
+        int size = Integer.getInteger(property, defaultSize);
+        if (size <= 0) {
+            return 0;
+        }
+
+        //round up to the nearest power of 2
+        int ret = 1;
+        while (ret < size) {
+            ret <<= 1;
+        }
+
+        return ret;
+    }
+
+    private static final class PathEntry {
+        final String string;
+        final CanonicalPath path;
+
+        PathEntry(String string, CanonicalPath path) {
+            this.string = string;
+            this.path = path;
+        }
+    }
+}
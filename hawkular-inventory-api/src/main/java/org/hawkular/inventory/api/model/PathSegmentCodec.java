@@ -63,6 +63,11 @@ public final class PathSegmentCodec {
 //    }
 
     public static String decode(String str) {
+        if (str.indexOf('%') < 0) {
+            //nothing to decode, which is the case of the vast majority of the ids
+            return str;
+        }
+
         char[] ret = new char[str.length()];
 
         int len = str.length();
@@ -147,13 +152,25 @@ public final class PathSegmentCodec {
     }
 
     public static String encode(String str) {
-        StringBuilder bld = new StringBuilder(str.length());
+        int len = str.length();
+
+        int firstUnsafe = 0;
+        while (firstUnsafe < len && isURISafe(str.charAt(firstUnsafe))) {
+            firstUnsafe++;
+        }
+
+        if (firstUnsafe == len) {
+            //nothing to encode, which is the case of the vast majority of the ids
+            return str;
+        }
+
+        StringBuilder bld = new StringBuilder(len + 16);
+        bld.append(str, 0, firstUnsafe);
         ByteBuffer bytes = getByteBuffer();
         CharBuffer chars = getCharBuffer();
         CharsetEncoder enc = getEncoder();
 
-        int len = str.length();
-        for (int i = 0; i < len; ++i) {
+        for (int i = firstUnsafe; i < len; ++i) {
             char c = str.charAt(i);
 
             if (isURISafe(c)) {
@@ -77,6 +77,10 @@ public final class RelativePath extends Path implements Serializable {
         VALID_PROGRESSIONS.put(StructuredData.class, Arrays.asList(StructuredData.class, Up.class));
     }
 
+    private static final Encoder ENCODER = new Encoder(SHORT_TYPE_NAMES, (s) -> !Up.class.equals(s.getElementType()));
+
+    private transient String string;
+
     private RelativePath(int start, int end, List<Segment> segments) {
         super(start, end, segments);
     }
@@ -211,7 +215,14 @@ public final class RelativePath extends Path implements Serializable {
 
     @Override
     public String toString() {
-        return new Encoder(SHORT_TYPE_NAMES, (s) -> !Up.class.equals(s.getElementType())).encode("", this);
+        //the path is immutable, so the string form can be computed just once
+        String ret = string;
+        if (ret == null) {
+            ret = ENCODER.encode("", this);
+            string = ret;
+        }
+
+        return ret;
     }
 
     public static final class Up {
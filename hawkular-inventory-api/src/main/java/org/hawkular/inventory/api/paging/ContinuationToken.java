@@ -0,0 +1,227 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.api.paging;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The position in the results used by the keyset (cursor) paging (see {@link Pager#keyset(int, String, Order...)}).
+ *
+ * <p>The token identifies the last element of a page by the values of its sort keys and its canonical path. The next
+ * page then starts with the first element that sorts after that element, which doesn't require skipping over all
+ * the elements on the preceding pages.
+ *
+ * <p>The string representation of the token is opaque to the users. It records the types of the sort values, so that
+ * they are parsed back to the same types. Therefore only the sort values of the primitive wrapper types and strings
+ * are supported.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public final class ContinuationToken {
+    private final List<Comparable<?>> sortValues;
+    private final String canonicalPath;
+
+    /**
+     * @param sortValues    the values of the sort keys, each either null, a primitive wrapper or a string
+     * @param canonicalPath the canonical path of the element
+     * @throws IllegalArgumentException if the canonical path is null or some of the values has unsupported type
+     */
+    public ContinuationToken(List<? extends Comparable<?>> sortValues, String canonicalPath) {
+        if (canonicalPath == null) {
+            throw new IllegalArgumentException("canonicalPath == null");
+        }
+        for (Comparable<?> v : sortValues) {
+            typeOf(v);
+        }
+        this.sortValues = Collections.unmodifiableList(new ArrayList<>(sortValues));
+        this.canonicalPath = canonicalPath;
+    }
+
+    /**
+     * Parses the token from its string representation.
+     *
+     * @param token the token as obtained from {@link #toString()}
+     * @return the parsed token
+     * @throws IllegalArgumentException if the string is not a valid token
+     */
+    public static ContinuationToken fromString(String token) {
+        String decoded;
+        try {
+            decoded = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.", e);
+        }
+
+        List<Comparable<?>> values = new ArrayList<>();
+        String cp = null;
+
+        int pos = 0;
+        while (pos < decoded.length()) {
+            char type = decoded.charAt(pos++);
+
+            int colon = decoded.indexOf(':', pos);
+            if (colon < 0) {
+                throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.");
+            }
+
+            int len;
+            try {
+                len = Integer.parseInt(decoded.substring(pos, colon));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.", e);
+            }
+
+            pos = colon + 1;
+            if (len < 0 || pos + len > decoded.length()) {
+                throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.");
+            }
+
+            String value = decoded.substring(pos, pos + len);
+            pos += len;
+
+            if (type == 'p') {
+                cp = value;
+                if (pos != decoded.length()) {
+                    throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.");
+                }
+            } else {
+                values.add(parseValue(type, value, token));
+            }
+        }
+
+        if (cp == null) {
+            throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.");
+        }
+
+        return new ContinuationToken(values, cp);
+    }
+
+    /**
+     * @return the values of the sort keys of the last element on the page, in the order of the specific orderings of
+     * the pager
+     */
+    public List<Comparable<?>> getSortValues() {
+        return sortValues;
+    }
+
+    /**
+     * @return the canonical path of the last element on the page, serves as a tie breaker of the sort keys
+     */
+    public String getCanonicalPath() {
+        return canonicalPath;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder bld = new StringBuilder();
+
+        for (Comparable<?> v : sortValues) {
+            append(bld, typeOf(v), v == null ? "" : v.toString());
+        }
+
+        append(bld, 'p', canonicalPath);
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bld.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ContinuationToken)) return false;
+
+        ContinuationToken that = (ContinuationToken) o;
+
+        return sortValues.equals(that.sortValues) && canonicalPath.equals(that.canonicalPath);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = sortValues.hashCode();
+        result = 31 * result + canonicalPath.hashCode();
+        return result;
+    }
+
+    private static char typeOf(Comparable<?> value) {
+        if (value == null) {
+            return 'n';
+        } else if (value instanceof String) {
+            return 's';
+        } else if (value instanceof Integer) {
+            return 'i';
+        } else if (value instanceof Long) {
+            return 'l';
+        } else if (value instanceof Double) {
+            return 'd';
+        } else if (value instanceof Float) {
+            return 'f';
+        } else if (value instanceof Boolean) {
+            return 'b';
+        } else if (value instanceof Short) {
+            return 'h';
+        } else if (value instanceof Byte) {
+            return 'y';
+        } else if (value instanceof Character) {
+            return 'c';
+        } else {
+            throw new IllegalArgumentException("The keyset paging only supports sorting by the values of primitive" +
+                    " types or strings but found a value of type " + value.getClass().getName() + ".");
+        }
+    }
+
+    private static void append(StringBuilder bld, char type, String value) {
+        bld.append(type).append(value.length()).append(':').append(value);
+    }
+
+    private static Comparable<?> parseValue(char type, String value, String token) {
+        try {
+            switch (type) {
+                case 'n':
+                    return null;
+                case 'i':
+                    return Integer.valueOf(value);
+                case 'l':
+                    return Long.valueOf(value);
+                case 'd':
+                    return Double.valueOf(value);
+                case 'f':
+                    return Float.valueOf(value);
+                case 'b':
+                    return Boolean.valueOf(value);
+                case 'h':
+                    return Short.valueOf(value);
+                case 'y':
+                    return Byte.valueOf(value);
+                case 'c':
+                    if (value.length() != 1) {
+                        throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.");
+                    }
+                    return value.charAt(0);
+                case 's':
+                    return value;
+                default:
+                    throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.");
+            }
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid continuation token: '" + token + "'.", e);
+        }
+    }
+}
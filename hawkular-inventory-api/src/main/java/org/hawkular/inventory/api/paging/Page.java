@@ -16,11 +16,14 @@
  */
 package org.hawkular.inventory.api.paging;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.NoSuchElementException;
 import java.util.Spliterator;
 import java.util.function.Consumer;
 import java.util.function.Predicate;
@@ -39,11 +42,39 @@ public final class Page<T> implements List<T> {
     private final List<T> wrapped;
     private final PageContext pageContext;
     private final long totalSize;
+    private final String continuation;
 
     public Page(List<T> wrapped, PageContext pageContext, long totalSize) {
+        this(wrapped, pageContext, totalSize, null);
+    }
+
+    /**
+     * @param wrapped      the elements of the page
+     * @param pageContext  the paging information about the page
+     * @param totalSize    the total size of the results or -1 if not known
+     * @param continuation the continuation token of the next page when using the keyset paging, or null
+     */
+    public Page(List<T> wrapped, PageContext pageContext, long totalSize, String continuation) {
         this.wrapped = wrapped;
         this.pageContext = pageContext;
         this.totalSize = totalSize;
+        this.continuation = continuation;
+    }
+
+    /**
+     * Creates a page that pulls the elements from the provided iterator only as they are needed. This makes, for
+     * example, checking whether the page is empty an O(1) operation.
+     *
+     * <p>The iterator is expected to already be limited to the elements of this page. Because the elements are only
+     * read when the page is accessed, the iterator must stay valid for as long as the page is used. Namely, it must
+     * not read from a backend transaction that can end before the page is consumed.
+     *
+     * @param results     the iterator over the elements of the page
+     * @param pageContext the paging information about the page
+     * @param totalSize   the total size of the results or -1 if not known
+     */
+    public Page(Iterator<T> results, PageContext pageContext, long totalSize) {
+        this(new LazyList<>(results), pageContext, totalSize);
     }
 
     /**
@@ -54,12 +85,25 @@ public final class Page<T> implements List<T> {
     }
 
     /**
-     * @return the total number of results of which this page is a subset of
+     * The precision of the returned value depends on the {@link PageContext#getTotalSizeMode() total size mode} of
+     * the page context.
+     *
+     * @return the total number of results of which this page is a subset of or -1 if the total size was not computed
      */
     public long getTotalSize() {
         return totalSize;
     }
 
+    /**
+     * Only available when using the {@link PageContext#isKeyset() keyset paging}.
+     *
+     * @return the continuation token to use to obtain the next page of results (see
+     * {@link Pager#keyset(int, String, Order...)}) or null if there are no more results
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
     @Override
     public boolean add(T t) {
         throw new UnsupportedOperationException();
@@ -276,4 +320,70 @@ public final class Page<T> implements List<T> {
     public void forEach(Consumer<? super T> action) {
         wrapped.forEach(action);
     }
+
+    /**
+     * A read-only list that pulls the elements from the underlying iterator on demand.
+     */
+    private static final class LazyList<T> extends AbstractList<T> {
+        private final Iterator<T> source;
+        private final List<T> loaded = new ArrayList<>();
+
+        LazyList(Iterator<T> source) {
+            this.source = source;
+        }
+
+        /**
+         * Makes sure the element on the provided index is loaded if it exists.
+         *
+         * @return true if the element exists, false otherwise
+         */
+        private boolean load(int index) {
+            while (loaded.size() <= index && source.hasNext()) {
+                loaded.add(source.next());
+            }
+
+            return loaded.size() > index;
+        }
+
+        @Override
+        public T get(int index) {
+            if (index < 0 || !load(index)) {
+                throw new IndexOutOfBoundsException("Index: " + index);
+            }
+
+            return loaded.get(index);
+        }
+
+        @Override
+        public int size() {
+            load(Integer.MAX_VALUE - 1);
+            return loaded.size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return !load(0);
+        }
+
+        @Override
+        public Iterator<T> iterator() {
+            return new Iterator<T>() {
+                private int index;
+
+                @Override
+                public boolean hasNext() {
+                    return load(index);
+                }
+
+                @Override
+                public T next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+
+                    return loaded.get(index++);
+                }
+            };
+        }
+    }
 }
@@ -17,8 +17,10 @@
 package org.hawkular.inventory.api.paging;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * @author Lukas Krejci
@@ -30,21 +32,42 @@ public class PageContext {
     private final int pageSize;
     private final int pageNumber;
     private final List<Order> order;
+    private final TotalSizeMode totalSizeMode;
+    private final String continuation;
 
     public PageContext(int pageNumber, int pageSize, Order... orders) {
-        if (orders.length == 0) {
-            throw new IllegalArgumentException("At least one order specification must be supplied.");
-        }
-        this.pageNumber = pageSize >= 0 ? pageNumber : 0;
-        this.pageSize = pageSize;
-        List<Order> tmp = new ArrayList<>();
-        Collections.addAll(tmp, orders);
-        this.order = Collections.unmodifiableList(tmp);
+        this(pageNumber, pageSize, TotalSizeMode.EXACT, orders);
     }
 
     public PageContext(int pageNumber, int pageSize, Iterable<Order> orders) {
-        this.pageNumber = pageSize >= 0 ? pageNumber : 0;
+        this(pageNumber, pageSize, TotalSizeMode.EXACT, orders);
+    }
+
+    public PageContext(int pageNumber, int pageSize, TotalSizeMode totalSizeMode, Order... orders) {
+        this(pageNumber, pageSize, totalSizeMode, null, Arrays.asList(orders));
+    }
+
+    public PageContext(int pageNumber, int pageSize, TotalSizeMode totalSizeMode, Iterable<Order> orders) {
+        this(pageNumber, pageSize, totalSizeMode, null, orders);
+    }
+
+    /**
+     * @param pageNumber    the number of the page, ignored if the continuation is not null
+     * @param pageSize      the size of the page
+     * @param totalSizeMode how to determine the total size of the results
+     * @param continuation  if not null, the page context uses the keyset paging and the page starts after the element
+     *                      identified by the continuation token. An empty string denotes the first page.
+     * @param orders        the ordering of the results
+     */
+    public PageContext(int pageNumber, int pageSize, TotalSizeMode totalSizeMode, String continuation,
+            Iterable<Order> orders) {
+        if (totalSizeMode == null) {
+            throw new IllegalArgumentException("totalSizeMode == null");
+        }
+        this.pageNumber = pageSize >= 0 && continuation == null ? pageNumber : 0;
         this.pageSize = pageSize;
+        this.totalSizeMode = totalSizeMode;
+        this.continuation = continuation;
         List<Order> tmp = new ArrayList<>();
         orders.forEach(tmp::add);
         if (tmp.size() == 0) {
@@ -113,6 +136,35 @@ public class PageContext {
         return order;
     }
 
+    /**
+     * @return how the total size of the results should be determined
+     * @see Page#getTotalSize()
+     */
+    public TotalSizeMode getTotalSizeMode() {
+        return totalSizeMode;
+    }
+
+    /**
+     * The keyset paging doesn't use page numbers. Instead each page starts right after the last element of the
+     * previous page, which is identified by the {@link ContinuationToken continuation token} obtained from
+     * {@link Page#getContinuation()}. This avoids having to skip over all the preceding elements when fetching the
+     * "deep" pages of results.
+     *
+     * @return the continuation token (as a string) or an empty string for the first page when using the keyset paging,
+     * null when using the page numbers
+     * @see #isKeyset()
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+    /**
+     * @return true if this page context uses the keyset paging instead of page numbers
+     */
+    public boolean isKeyset() {
+        return continuation != null;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -120,7 +172,8 @@ public class PageContext {
 
         PageContext that = (PageContext) o;
 
-        return pageSize == that.pageSize && pageNumber == that.pageNumber && this.order.equals(that.order);
+        return pageSize == that.pageSize && pageNumber == that.pageNumber && this.order.equals(that.order)
+                && totalSizeMode == that.totalSizeMode && Objects.equals(continuation, that.continuation);
 
     }
 
@@ -133,7 +186,33 @@ public class PageContext {
 
     @Override public String toString() {
         return "PagingState[" + "order=" + order + ", pageNumber=" + pageNumber + ", pageSize=" +
-                pageSize + ']';
+                pageSize + ", totalSizeMode=" + totalSizeMode + ", continuation=" + continuation + ']';
+    }
+
+    /**
+     * Computing the exact total size of the results requires processing all of them, even if only a single page of
+     * them is going to be returned. This enum lets the caller choose how much work should be spent on computing the
+     * total size.
+     */
+    public enum TotalSizeMode {
+        /**
+         * The total size is computed exactly. This is the default.
+         */
+        EXACT,
+
+        /**
+         * Only a lower bound of the total size is computed. If there are more results than the end of the requested
+         * page, the total size is reported as {@link PageContext#getEnd()} + 1, otherwise it is exact. This is
+         * enough to decide whether there is a next page or not while only processing a single element past the end
+         * of the page.
+         */
+        ESTIMATED,
+
+        /**
+         * The total size is not computed at all and the processing of the results stops at the end of the requested
+         * page. The {@link Page#getTotalSize()} of such pages is -1.
+         */
+        NONE
     }
 
 }
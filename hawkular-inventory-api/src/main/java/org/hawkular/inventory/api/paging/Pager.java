@@ -17,6 +17,7 @@
 package org.hawkular.inventory.api.paging;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
 /**
@@ -51,10 +52,36 @@ public final class Pager extends PageContext {
     }
 
     /**
-     * @return a pager that returns at most a single result.
+     * @return a pager that returns at most a single result. The total size of the results is not computed.
      */
     public static Pager single() {
-        return new Pager(0, 1, Order.unspecified());
+        return new Pager(0, 1, TotalSizeMode.NONE, Order.unspecified());
+    }
+
+    /**
+     * Creates a pager for the keyset paging. The first page is obtained by passing a null or empty continuation,
+     * the subsequent pages by passing the continuation token obtained from the previous page (see
+     * {@link Page#getContinuation()}).
+     *
+     * @param pageSize     the number of the elements on the page
+     * @param continuation the continuation token or null for the first page
+     * @param orders       the ordering of the results
+     * @return a new pager instance
+     */
+    public static Pager keyset(int pageSize, String continuation, Order... orders) {
+        return keyset(pageSize, continuation, Arrays.asList(orders));
+    }
+
+    /**
+     * Same as {@link #keyset(int, String, Order...)} but the ordering represented by a collection.
+     *
+     * @param pageSize     the number of the elements on the page
+     * @param continuation the continuation token or null for the first page
+     * @param orders       the ordering of the results
+     * @return a new pager instance
+     */
+    public static Pager keyset(int pageSize, String continuation, Iterable<Order> orders) {
+        return new Pager(0, pageSize, TotalSizeMode.NONE, continuation == null ? "" : continuation, orders);
     }
 
     /**
@@ -76,17 +103,53 @@ public final class Pager extends PageContext {
         super(pageNumber, pageSize, orders);
     }
 
+    /**
+     * @param pageNumber    see {@link #Pager(int, int, Order...)}
+     * @param pageSize      see {@link #Pager(int, int, Order...)}
+     * @param totalSizeMode how to determine the total size of the results
+     * @param orders        see {@link #Pager(int, int, Order...)}
+     */
+    public Pager(int pageNumber, int pageSize, TotalSizeMode totalSizeMode, Order... orders) {
+        super(pageNumber, pageSize, totalSizeMode, orders);
+    }
+
+    /**
+     * @param pageNumber    see {@link #Pager(int, int, Order...)}
+     * @param pageSize      see {@link #Pager(int, int, Order...)}
+     * @param totalSizeMode how to determine the total size of the results
+     * @param orders        see {@link #Pager(int, int, Order...)}
+     */
+    public Pager(int pageNumber, int pageSize, TotalSizeMode totalSizeMode, Iterable<Order> orders) {
+        super(pageNumber, pageSize, totalSizeMode, orders);
+    }
+
+    /**
+     * @param pageNumber    see {@link #Pager(int, int, Order...)}
+     * @param pageSize      see {@link #Pager(int, int, Order...)}
+     * @param totalSizeMode how to determine the total size of the results
+     * @param continuation  the continuation token for the keyset paging, see {@link #getContinuation()}
+     * @param orders        see {@link #Pager(int, int, Order...)}
+     */
+    public Pager(int pageNumber, int pageSize, TotalSizeMode totalSizeMode, String continuation,
+            Iterable<Order> orders) {
+        super(pageNumber, pageSize, totalSizeMode, continuation, orders);
+    }
+
     /**
      * If this is a limited pager ({@link #isLimited()}), returns the pager pointing to the next page of the results.
      *
      * If this is an unlimited pager, then simply returns this very pager because there can be no other page of the
      * results.
      *
+     * <p>The keyset pagers cannot determine the next page on their own, because it depends on the last element of
+     * the current page. This method therefore returns this very pager. Use the {@link Page#getContinuation()} to
+     * construct the pager of the next page instead.
+     *
      * @return a new pager instance
      */
     public Pager nextPage() {
-        if (getPageSize() >= 0) {
-            return new Pager(getPageNumber() + 1, getPageSize(), getOrder());
+        if (getPageSize() >= 0 && !isKeyset()) {
+            return new Pager(getPageNumber() + 1, getPageSize(), getTotalSizeMode(), getOrder());
         } else {
             return this;
         }
@@ -102,8 +165,8 @@ public final class Pager extends PageContext {
      * @return a new pager instance
      */
     public Pager previousPage() {
-        if (getPageNumber() > 0 && getPageSize() >= 0) {
-            return new Pager(getPageNumber() - 1, getPageSize(), getOrder());
+        if (getPageNumber() > 0 && getPageSize() >= 0 && !isKeyset()) {
+            return new Pager(getPageNumber() - 1, getPageSize(), getTotalSizeMode(), getOrder());
         } else {
             return this;
         }
@@ -113,10 +176,22 @@ public final class Pager extends PageContext {
         private int pageNumber;
         private int pageSize;
         private List<Order> order = new ArrayList<>();
+        private TotalSizeMode totalSizeMode = TotalSizeMode.EXACT;
+        private String continuation;
 
         private Builder() {
         }
 
+        public Builder withContinuation(String continuation) {
+            this.continuation = continuation;
+            return this;
+        }
+
+        public Builder withTotalSizeMode(TotalSizeMode totalSizeMode) {
+            this.totalSizeMode = totalSizeMode;
+            return this;
+        }
+
         public Builder withPageSize(int size) {
             pageSize = size;
             return this;
@@ -146,7 +221,7 @@ public final class Pager extends PageContext {
         }
 
         public Pager build() {
-            return new Pager(pageNumber, pageSize, order);
+            return new Pager(pageNumber, pageSize, totalSizeMode, continuation, order);
         }
     }
 }
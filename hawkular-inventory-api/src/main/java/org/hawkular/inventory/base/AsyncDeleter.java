@@ -0,0 +1,356 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import static org.hawkular.inventory.api.Action.deleted;
+import static org.hawkular.inventory.api.Relationships.Direction.both;
+import static org.hawkular.inventory.api.Relationships.Direction.outgoing;
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.defines;
+import static org.hawkular.inventory.api.Relationships.WellKnown.hasData;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hawkular.inventory.api.DeleteJob;
+import org.hawkular.inventory.api.EntityNotFoundException;
+import org.hawkular.inventory.api.Log;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.base.spi.CommitFailureException;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+
+/**
+ * Implementation of the {@link org.hawkular.inventory.api.Inventory#deleteAsync(CanonicalPath)}.
+ *
+ * <p>The jobs are run one after another on a dedicated thread. Each job first checks in a single read-only
+ * transaction that none of the entities to be deleted defines an entity outside of the deleted subtree. Then it
+ * repeatedly looks for at most "chunk size" leaves of the containment tree (skipping the entities that still define
+ * something), deletes them in a single transaction and sends out the notifications about them and their
+ * relationships. The deleted entity itself is the last one to go. That way no transaction and no in-memory state is
+ * larger than a single chunk, regardless of the size of the deleted subtree.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class AsyncDeleter<BE> implements AutoCloseable {
+    private static final int MAX_REMEMBERED_JOBS = 100;
+
+    private final TraversalContext<BE, Tenant> context;
+    private final InventoryBackend<BE> backend;
+    private final int chunkSize;
+    private final Map<String, Job> jobs = new LinkedHashMap<>();
+    private ExecutorService executor;
+
+    AsyncDeleter(TraversalContext<BE, Tenant> context) {
+        this.context = context;
+        this.backend = context.backend;
+        this.chunkSize = Integer.parseInt(context.configuration.getProperty(BaseInventory.DELETE_CHUNK_SIZE, "1000"));
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The delete chunk size must be positive.");
+        }
+    }
+
+    DeleteJob start(CanonicalPath path) {
+        if (!path.isDefined() || !Entity.class.isAssignableFrom(path.getSegment().getElementType())) {
+            throw new IllegalArgumentException("Only entities can be deleted asynchronously but " + path +
+                    " doesn't point to one.");
+        }
+
+        //fail fast if there is nothing to delete
+        Util.runInTransaction(context, true, (t) -> find(path));
+
+        Job job = new Job(UUID.randomUUID().toString(), path);
+
+        synchronized (jobs) {
+            jobs.put(job.getId(), job);
+            Iterator<Job> it = jobs.values().iterator();
+            while (jobs.size() > MAX_REMEMBERED_JOBS && it.hasNext()) {
+                if (it.next().latch.getCount() == 0) {
+                    it.remove();
+                }
+            }
+        }
+
+        executor().execute(() -> run(job));
+
+        return job;
+    }
+
+    DeleteJob getJob(String id) {
+        synchronized (jobs) {
+            return jobs.get(id);
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+    }
+
+    private synchronized ExecutorService executor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadExecutor((r) -> {
+                Thread t = new Thread(r, "Hawkular Inventory Delete Jobs");
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        return executor;
+    }
+
+    private void run(Job job) {
+        job.status = DeleteJob.Status.RUNNING;
+        try {
+            job.totalCount = Util.runInTransaction(context, true, (t) -> validate(job.getPath()));
+
+            Chunk chunk;
+            do {
+                chunk = Util.runInTransaction(context, false, (t) -> deleteChunk(job.getPath(), t));
+
+                //report the relationship deletions first - it would be strange to report deletion of a relationship
+                //after reporting that an entity on one end of the relationship has been deleted
+                chunk.relationships.forEach((r) -> context.notify(r, deleted()));
+                chunk.entities.forEach((e) -> context.notify(e, deleted()));
+
+                job.deletedCount.addAndGet(chunk.deletedCount);
+            } while (!chunk.rootDeleted);
+
+            job.status = DeleteJob.Status.FINISHED;
+        } catch (RuntimeException e) {
+            Log.LOGGER.wDeleteJobFailed(job.getPath(), job.getDeletedCount(), e);
+            job.error = e;
+            job.status = DeleteJob.Status.FAILED;
+        } finally {
+            job.latch.countDown();
+        }
+    }
+
+    private long validate(CanonicalPath rootPath) {
+        BE root = find(rootPath);
+
+        long count = 1;
+        checkDefinitions(root, rootPath);
+
+        Iterator<BE> closure = backend.getTransitiveClosureOver(root, outgoing, -1, -1, contains.name());
+        while (closure.hasNext()) {
+            checkDefinitions(closure.next(), rootPath);
+            count++;
+        }
+
+        return count;
+    }
+
+    private void checkDefinitions(BE entity, CanonicalPath rootPath) {
+        for (BE rel : backend.getRelationships(entity, outgoing, defines.name())) {
+            CanonicalPath defined = backend.extractCanonicalPath(backend.getRelationshipTarget(rel));
+            if (!isDescendantOrSelf(defined, rootPath)) {
+                throw new IllegalArgumentException("Could not delete entity " + rootPath + ". The entity " +
+                        backend.extractCanonicalPath(entity) + ", which it (indirectly) contains, acts as a" +
+                        " definition for " + defined + ", which is not deleted along with it and would be left" +
+                        " without a definition. This is illegal.");
+            }
+        }
+    }
+
+    private Chunk deleteChunk(CanonicalPath rootPath, InventoryBackend.Transaction transaction)
+            throws CommitFailureException {
+        BE root;
+        try {
+            root = backend.find(rootPath);
+        } catch (ElementNotFoundException e) {
+            //someone deleted the rest of the subtree in the meantime
+            backend.commit(transaction);
+            return new Chunk(Collections.emptyList(), Collections.emptyList(), 0, true);
+        }
+
+        List<BE> leaves = new ArrayList<>();
+        boolean rootDeleted = collectLeaves(root, leaves);
+
+        if (leaves.isEmpty()) {
+            //the only entities left define something that was added to the inventory after the validation
+            throw new IllegalArgumentException("Could not delete entity " + rootPath + ". Some of the entities it" +
+                    " (indirectly) contains act as definitions for entities that are not deleted along with it," +
+                    " which would leave them without a definition. This is illegal.");
+        }
+
+        //convert everything before deleting anything so that all the information and relationships are still there
+        Map<String, Relationship> relationships = new LinkedHashMap<>();
+        List<Object> entities = new ArrayList<>(leaves.size());
+        for (BE leaf : leaves) {
+            for (BE rel : backend.getRelationships(leaf, both)) {
+                if (Util.isRepresentableInAPI(context, rel)) {
+                    relationships.computeIfAbsent(backend.extractId(rel),
+                            (id) -> backend.convert(rel, Relationship.class));
+                }
+            }
+
+            entities.add(backend.convert(leaf, backend.extractType(leaf)));
+        }
+
+        for (BE leaf : leaves) {
+            if (DataEntity.class.equals(backend.extractType(leaf))) {
+                for (BE rel : backend.getRelationships(leaf, outgoing, hasData.name())) {
+                    backend.deleteStructuredData(backend.getRelationshipTarget(rel));
+                }
+            }
+
+            backend.delete(leaf);
+        }
+
+        backend.commit(transaction);
+
+        return new Chunk(entities, relationships.values(), leaves.size(), rootDeleted);
+    }
+
+    /**
+     * Does a depth-first search for the leaves of the containment tree under the root that don't define anything.
+     *
+     * @param root   the root of the tree
+     * @param leaves the list to add the found leaves to, at most {@link #chunkSize} of them
+     * @return true if the root itself was found to be a leaf
+     */
+    private boolean collectLeaves(BE root, List<BE> leaves) {
+        boolean rootIsLeaf = false;
+
+        Deque<Iterator<BE>> stack = new ArrayDeque<>();
+        stack.push(Collections.singletonList(root).iterator());
+
+        while (!stack.isEmpty() && leaves.size() < chunkSize) {
+            Iterator<BE> siblings = stack.peek();
+            if (!siblings.hasNext()) {
+                stack.pop();
+                continue;
+            }
+
+            BE e = siblings.next();
+            Iterator<BE> children = backend.getTransitiveClosureOver(e, outgoing, 1, -1, contains.name());
+            if (children.hasNext()) {
+                stack.push(children);
+            } else if (!backend.hasRelationship(e, outgoing, defines.name())) {
+                leaves.add(e);
+                if (e == root) {
+                    rootIsLeaf = true;
+                }
+            }
+        }
+
+        return rootIsLeaf;
+    }
+
+    @SuppressWarnings("unchecked")
+    private BE find(CanonicalPath path) {
+        try {
+            return backend.find(path);
+        } catch (ElementNotFoundException e) {
+            throw new EntityNotFoundException((Class<? extends Entity<?, ?>>) path.getSegment().getElementType(),
+                    Query.filters(Query.to(path)));
+        }
+    }
+
+    private static boolean isDescendantOrSelf(CanonicalPath path, CanonicalPath ancestor) {
+        List<CanonicalPath.Segment> segments = path.getPath();
+        List<CanonicalPath.Segment> prefix = ancestor.getPath();
+        return segments.size() >= prefix.size() && segments.subList(0, prefix.size()).equals(prefix);
+    }
+
+    private static final class Chunk {
+        final Collection<?> entities;
+        final Collection<Relationship> relationships;
+        final int deletedCount;
+        final boolean rootDeleted;
+
+        Chunk(Collection<?> entities, Collection<Relationship> relationships, int deletedCount,
+                boolean rootDeleted) {
+            this.entities = entities;
+            this.relationships = relationships;
+            this.deletedCount = deletedCount;
+            this.rootDeleted = rootDeleted;
+        }
+    }
+
+    private static final class Job implements DeleteJob {
+        private final String id;
+        private final CanonicalPath path;
+        private final AtomicLong deletedCount = new AtomicLong();
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private volatile Status status = Status.PENDING;
+        private volatile long totalCount = -1;
+        private volatile RuntimeException error;
+
+        Job(String id, CanonicalPath path) {
+            this.id = id;
+            this.path = path;
+        }
+
+        @Override
+        public String getId() {
+            return id;
+        }
+
+        @Override
+        public CanonicalPath getPath() {
+            return path;
+        }
+
+        @Override
+        public Status getStatus() {
+            return status;
+        }
+
+        @Override
+        public long getTotalCount() {
+            return totalCount;
+        }
+
+        @Override
+        public long getDeletedCount() {
+            return deletedCount.get();
+        }
+
+        @Override
+        public RuntimeException getError() {
+            return error;
+        }
+
+        @Override
+        public boolean await(long timeout, TimeUnit unit) throws InterruptedException {
+            return latch.await(timeout, unit);
+        }
+    }
+}
@@ -17,9 +17,16 @@
 package org.hawkular.inventory.base;
 
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Iterator;
+import java.util.List;
 
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.Change;
 import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.DeleteJob;
+import org.hawkular.inventory.api.FeedSync;
 import org.hawkular.inventory.api.Interest;
 import org.hawkular.inventory.api.Inventory;
 import org.hawkular.inventory.api.Relationships;
@@ -47,12 +54,106 @@ import rx.Observable;
  */
 public abstract class BaseInventory<E> implements Inventory {
 
+    /**
+     * The name of this inventory instance, used in the names of its JMX beans so that multiple inventories can run in
+     * the same JVM. Defaults to "default".
+     */
+    public static final Configuration.Property INSTANCE_NAME = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.instanceName")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_INSTANCE_NAME").build();
+
     public static final Configuration.Property TRANSACTION_RETRIES = Configuration.Property.builder()
             .withPropertyNameAndSystemProperty("hawkular.inventory.transaction.retries")
             .withEnvironmentVariables("HAWKULAR_INVENTORY_TRANSACTION_RETRIES").build();
 
+    /**
+     * Either "sync" (the default) to send the notifications to the subscribers on the thread that modified the
+     * inventory or "async" to send them using a dedicated thread per {@link Interest}.
+     */
+    public static final Configuration.Property NOTIFICATION_DISPATCH = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.notifications.dispatch")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_NOTIFICATIONS_DISPATCH").build();
+
+    /**
+     * The maximum number of notifications waiting to be sent out per {@link Interest} when the dispatch is
+     * asynchronous. Defaults to 1024.
+     */
+    public static final Configuration.Property NOTIFICATION_BUFFER_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.notifications.bufferSize")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_NOTIFICATIONS_BUFFER_SIZE").build();
+
+    /**
+     * What to do when the buffer of the asynchronous dispatch is full. One of "block" (the default, the inventory
+     * waits for the room in the buffer), "drop-oldest" (the oldest waiting notification is thrown away) or "coalesce"
+     * (the new notification replaces the waiting notification about the same element, if any, otherwise the inventory
+     * waits).
+     */
+    public static final Configuration.Property NOTIFICATION_OVERFLOW_POLICY = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.notifications.overflowPolicy")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_NOTIFICATIONS_OVERFLOW_POLICY").build();
+
+    /**
+     * The maximum number of the converted entities kept in the cache for the repeated look-ups by their canonical
+     * paths. Defaults to 0, which disables the cache.
+     */
+    public static final Configuration.Property ENTITY_CACHE_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.cache.size")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_CACHE_SIZE").build();
+
+    /**
+     * The maximum total weight of the entities in the cache, where the weight of an entity is roughly the number of
+     * objects it consists of (the entity itself, its properties and, for resources and metrics, their types). Defaults
+     * to 10 times the {@link #ENTITY_CACHE_SIZE cache size}.
+     */
+    public static final Configuration.Property ENTITY_CACHE_WEIGHT = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.cache.weight")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_CACHE_WEIGHT").build();
+
+    /**
+     * The maximum number of entities deleted in a single transaction by the {@link #deleteAsync(CanonicalPath)
+     * asynchronous deletes}. Defaults to 1000.
+     */
+    public static final Configuration.Property DELETE_CHUNK_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.delete.chunkSize")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_DELETE_CHUNK_SIZE").build();
+
+    /**
+     * The directory to keep the {@link #getChanges(String, long, int) change logs} of the tenants in. If not set, the
+     * changes are not recorded. The changes are written asynchronously after they are committed, so the changes
+     * committed shortly before a crash can be missing from the log.
+     */
+    public static final Configuration.Property CHANGE_LOG_DIRECTORY = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.changes.directory")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_CHANGES_DIRECTORY").build();
+
+    /**
+     * The maximum number of changes stored in a single segment file of the change log of a tenant. Defaults to 10000.
+     */
+    public static final Configuration.Property CHANGE_LOG_SEGMENT_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.changes.segmentSize")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_CHANGES_SEGMENT_SIZE").build();
+
+    /**
+     * The number of the most recent segment files of the change log kept per tenant. The older segments are deleted.
+     * Defaults to 10.
+     */
+    public static final Configuration.Property CHANGE_LOG_RETAINED_SEGMENTS = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.changes.retainedSegments")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_CHANGES_RETAINED_SEGMENTS").build();
+
+    /**
+     * Whether to sync each batch of the changes written to the change log to the disk, so that the written changes
+     * survive an operating system crash or a power failure. Defaults to false.
+     */
+    public static final Configuration.Property CHANGE_LOG_SYNC = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.changes.sync")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_CHANGES_SYNC").build();
+
     private InventoryBackend<E> backend;
     private final ObservableContext observableContext = new ObservableContext();
+    private EntityCache entityCache;
+    private PersistentChangeLog changeLog;
+    private AsyncDeleter<E> asyncDeleter;
     private TraversalContext<E, Tenant> tenantContext;
     private TraversalContext<E, Relationship> relationshipContext;
 
@@ -60,12 +161,20 @@ public abstract class BaseInventory<E> implements Inventory {
     public final void initialize(Configuration configuration) {
         this.backend = doInitialize(configuration);
 
+        observableContext.configure(configuration);
+
+        entityCache = new EntityCache(configuration);
+
+        changeLog = new PersistentChangeLog(configuration);
+
         tenantContext = new TraversalContext<>(this, Query.empty(),
                 Query.path().with(With.type(Tenant.class)).get(), backend, Tenant.class, configuration,
                 observableContext);
 
         relationshipContext = new TraversalContext<>(this, Query.empty(), Query.path().get(), backend,
                 Relationship.class, configuration, observableContext);
+
+        asyncDeleter = new AsyncDeleter<>(tenantContext);
     }
 
     /**
@@ -79,6 +188,20 @@ public abstract class BaseInventory<E> implements Inventory {
 
     @Override
     public final void close() throws Exception {
+        if (asyncDeleter != null) {
+            asyncDeleter.close();
+        }
+
+        observableContext.close();
+
+        if (entityCache != null) {
+            entityCache.clear();
+        }
+
+        if (changeLog != null) {
+            changeLog.close();
+        }
+
         if (backend != null) {
             backend.close();
             backend = null;
@@ -115,6 +238,53 @@ public abstract class BaseInventory<E> implements Inventory {
         return observableContext.getObservableFor(interest);
     }
 
+    /**
+     * @return the queue depths and lags of the asynchronous dispatch of the notifications for the currently observed
+     * interests. Empty if the notifications are dispatched synchronously.
+     * @see #NOTIFICATION_DISPATCH
+     */
+    public Collection<NotificationDispatchGauges> getNotificationDispatchGauges() {
+        return observableContext.getDispatchGauges();
+    }
+
+    @Override
+    public DeleteJob deleteAsync(CanonicalPath path) {
+        return asyncDeleter.start(path);
+    }
+
+    @Override
+    public DeleteJob getDeleteJob(String id) {
+        return asyncDeleter.getJob(id);
+    }
+
+    EntityCache getEntityCache() {
+        return entityCache;
+    }
+
+    PersistentChangeLog getChangeLog() {
+        return changeLog;
+    }
+
+    @Override
+    public BulkCreate.Result createBulk(BulkCreate bulk) {
+        return new BulkCreator<>(tenantContext).create(bulk);
+    }
+
+    @Override
+    public List<Change> getChanges(String tenantId, long since, int limit) {
+        return changeLog.read(tenantId, since, limit);
+    }
+
+    @Override
+    public FeedSync.Result synchronize(CanonicalPath feed, FeedSync sync) {
+        return new FeedSynchronizer<>(this, tenantContext).synchronize(feed, sync);
+    }
+
+    @Override
+    public void rebuildContentHashes(CanonicalPath feed) {
+        new FeedSynchronizer<>(this, tenantContext).rebuildHashes(feed);
+    }
+
     @Override
     public InputStream getGraphSON(String tenantId) {
         return getBackend().getGraphSON(tenantId);
@@ -125,7 +295,15 @@ public abstract class BaseInventory<E> implements Inventory {
                                                                     Relationships.Direction direction, Class<T> clazz,
                                                                     String... relationshipNames) {
 
-        return getBackend().getTransitiveClosureOver(startingPoint, direction, clazz, relationshipNames);
+        //the closure is read from the backend lazily, so it needs to be read before the transaction ends
+        List<T> closure = Util.runInTransaction(tenantContext, true, (t) -> {
+            List<T> ret = new ArrayList<>();
+            getBackend().getTransitiveClosureOver(startingPoint, direction, clazz, relationshipNames)
+                    .forEachRemaining(ret::add);
+            return ret;
+        });
+
+        return closure.iterator();
     }
 
 }
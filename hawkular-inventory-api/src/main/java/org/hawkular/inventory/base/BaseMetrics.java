@@ -68,7 +68,7 @@ public final class BaseMetrics {
                 CanonicalPath tenant = CanonicalPath.of().tenant(parentPath.ids().getTenantId()).get();
                 CanonicalPath metricTypePath = Util.canonicalize(blueprint.getMetricTypePath(), tenant, parentPath,
                         MetricType.class);
-                metricTypeObject = context.backend.find(metricTypePath);
+                metricTypeObject = findReferenced(metricTypePath);
 
             } catch (ElementNotFoundException e) {
                 throw new IllegalArgumentException("A metric type with id '" + blueprint.getMetricTypePath() +
@@ -16,6 +16,8 @@
  */
 package org.hawkular.inventory.base;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
 import org.hawkular.inventory.api.EntityNotFoundException;
@@ -44,6 +46,7 @@ import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.api.paging.Page;
 import org.hawkular.inventory.api.paging.Pager;
 import org.hawkular.inventory.base.spi.ElementNotFoundException;
+import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.hawkular.inventory.base.spi.SwitchElementType;
 
 /**
@@ -121,22 +124,9 @@ public final class BaseRelationships {
                 // if this is a well-known relationship, there might be some semantic checks for it...
                 RelationshipRules.checkCreate(context.backend, origin, direction, name, incidenceObject);
 
-                BE relationshipObject;
-
-                switch (direction) {
-                    case incoming:
-                        relationshipObject = context.backend.relate(incidenceObject, origin, name, properties);
-                        break;
-                    case outgoing:
-                        relationshipObject = context.backend.relate(origin, incidenceObject, name, properties);
-                        break;
-                    case both:
-                        context.backend.relate(incidenceObject, origin, name, properties);
-                        relationshipObject = context.backend.relate(origin, incidenceObject, name, properties);
-                        break;
-                    default:
-                        throw new AssertionError("Unhandled direction when linking. This shouldn't have happened.");
-                }
+                List<BE> relationshipObjects = link(context.backend, origin, direction, name, incidenceObject,
+                        properties);
+                BE relationshipObject = relationshipObjects.get(relationshipObjects.size() - 1);
 
                 context.backend.commit(transaction);
 
@@ -278,4 +268,34 @@ public final class BaseRelationships {
                     get());
         }
     }
+
+    /**
+     * Creates the relationship(s) of given name between the origin and the other end in the provided direction. This
+     * needs to be called within a transaction and the caller is responsible for checking the creation against the
+     * {@link RelationshipRules} beforehand.
+     *
+     * @return the backend representations of the new relationships, the one going out of the origin being the last
+     */
+    static <BE> List<BE> link(InventoryBackend<BE> backend, BE origin, Relationships.Direction direction, String name,
+            BE otherEnd, Map<String, Object> properties) {
+
+        List<BE> ret = new ArrayList<>(2);
+
+        switch (direction) {
+            case incoming:
+                ret.add(backend.relate(otherEnd, origin, name, properties));
+                break;
+            case outgoing:
+                ret.add(backend.relate(origin, otherEnd, name, properties));
+                break;
+            case both:
+                ret.add(backend.relate(otherEnd, origin, name, properties));
+                ret.add(backend.relate(origin, otherEnd, name, properties));
+                break;
+            default:
+                throw new AssertionError("Unhandled direction when linking. This shouldn't have happened.");
+        }
+
+        return ret;
+    }
 }
@@ -77,7 +77,7 @@ public final class BaseResources {
                 CanonicalPath tenant = CanonicalPath.of().tenant(parentPath.ids().getTenantId()).get();
                 CanonicalPath resourceTypePath = Util.canonicalize(blueprint.getResourceTypePath(), tenant,
                         parentPath, ResourceType.class);
-                resourceTypeObject = context.backend.find(resourceTypePath);
+                resourceTypeObject = findReferenced(resourceTypePath);
             } catch (ElementNotFoundException e) {
                 throw new IllegalArgumentException("Resource type '" + blueprint.getResourceTypePath() + "' not found" +
                         " in tenant '" + parentPath.getRoot().getSegment().getElementId() + "'.");
@@ -0,0 +1,462 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import static java.util.stream.Collectors.toList;
+
+import static org.hawkular.inventory.api.Action.created;
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.EntityAlreadyExistsException;
+import org.hawkular.inventory.api.EntityNotFoundException;
+import org.hawkular.inventory.api.Relationships;
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.ElementBlueprintVisitor;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.base.EntityAndPendingNotifications.Notification;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+
+/**
+ * Implementation of the {@link org.hawkular.inventory.api.Inventory#createBulk(BulkCreate)}.
+ *
+ * <p>The blueprints are ordered so that the parents are always created before their children and the relationships
+ * after all the entities. The ordered blueprints are then split into chunks, each of which is persisted in a single
+ * transaction. The entities are created using the same logic as the individual {@code create} calls (see
+ * {@link Mutator#doCreate(Blueprint, Object, Map)}), only without the per-entity transaction and with the parents and
+ * the referenced types looked up only once. The relationships are checked using the same rules and created the same way
+ * as in {@link org.hawkular.inventory.api.Relationships.ReadWrite#linkWith(String, CanonicalPath, Map)}.
+ *
+ * <p>Before anything is persisted, each blueprint is checked for the conditions that would make its creation fail (the
+ * entity already exists, its parent or the referenced types don't exist, etc.). The blueprints that don't pass
+ * the checks are reported as failed, together with all the blueprints that depend on them, while the rest of the
+ * chunk is created. If the transaction of the chunk fails nevertheless, all the blueprints in the chunk are reported
+ * as failed.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class BulkCreator<BE> {
+    private final TraversalContext<BE, Tenant> tenantContext;
+    private final InventoryBackend<BE> backend;
+
+    BulkCreator(TraversalContext<BE, Tenant> tenantContext) {
+        this.tenantContext = tenantContext;
+        this.backend = tenantContext.backend;
+    }
+
+    BulkCreate.Result create(BulkCreate bulk) {
+        List<Item> items = new ArrayList<>();
+        bulk.getBlueprints().forEach((parent, blueprints) -> blueprints.forEach((b) -> items.add(new Item(parent,
+                b))));
+
+        //parents before children, relationships last. The sort is stable so the user-provided order is otherwise kept.
+        items.sort(Comparator.comparingInt(Item::getOrder));
+
+        Set<CanonicalPath> failedPaths = new HashSet<>();
+
+        for (int i = 0; i < items.size(); i += bulk.getChunkSize()) {
+            createChunk(items.subList(i, Math.min(items.size(), i + bulk.getChunkSize())), failedPaths);
+        }
+
+        return new BulkCreate.Result(items.stream().map(Item::toEntry).collect(toList()));
+    }
+
+    private void createChunk(List<Item> chunk, Set<CanonicalPath> failedPaths) {
+        List<Item> created;
+        try {
+            created = Util.runInTransaction(tenantContext, false, (t) -> {
+                List<Item> done = new ArrayList<>();
+                Map<CanonicalPath, BE> resolved = new HashMap<>();
+
+                for (Item item : chunk) {
+                    if (item.error != null) {
+                        continue;
+                    }
+
+                    //all the checks that can fail are done prior to persisting anything, so that a failed item
+                    //doesn't leave anything behind in the transaction
+                    try {
+                        check(item, resolved, failedPaths);
+                    } catch (RuntimeException e) {
+                        item.fail(e, failedPaths);
+                        continue;
+                    }
+
+                    item.result = create(item, resolved);
+                    done.add(item);
+                }
+
+                backend.commit(t);
+
+                return done;
+            });
+        } catch (RuntimeException e) {
+            //the transaction has been rolled back, so nothing from this chunk has been created
+            chunk.stream().filter((i) -> i.error == null).forEach((i) -> i.fail(e, failedPaths));
+            return;
+        }
+
+        created.forEach((i) -> tenantContext.notifyAll(i.result));
+    }
+
+    /**
+     * Checks that the item can be created - i.e. that it doesn't exist yet and that all the entities it references
+     * exist. The referenced entities are remembered in the {@code resolved} map so that they are looked up only once.
+     */
+    private void check(Item item, Map<CanonicalPath, BE> resolved, Set<CanonicalPath> failedPaths) {
+        CanonicalPath missing = item.getFailedDependency(failedPaths);
+        if (missing != null) {
+            throw notFound(missing);
+        }
+
+        if (item.blueprint instanceof Relationship.Blueprint) {
+            Relationship.Blueprint blueprint = (Relationship.Blueprint) item.blueprint;
+
+            if (blueprint.getName() == null) {
+                throw new IllegalArgumentException("name was null");
+            }
+            if (blueprint.getOtherEnd() == null) {
+                throw new IllegalArgumentException("otherEnd was null");
+            }
+
+            BE origin = resolve(item.parent, resolved);
+            BE otherEnd = resolve(blueprint.getOtherEnd(), resolved);
+
+            RelationshipRules.checkCreate(backend, origin, directionOf(blueprint), blueprint.getName(), otherEnd);
+
+            return;
+        }
+
+        if (item.parent != null) {
+            resolve(item.parent, resolved);
+        }
+
+        if (item.path != null) {
+            try {
+                backend.find(item.path);
+                throw new EntityAlreadyExistsException(item.path.getSegment().getElementId(),
+                        Query.filters(Query.to(item.path)));
+            } catch (ElementNotFoundException e) {
+                //good
+            }
+        }
+
+        item.blueprint.accept(new ElementBlueprintVisitor.Simple<Void, Void>() {
+            @Override
+            public Void visitMetric(Metric.Blueprint metric, Void parameter) {
+                CanonicalPath tenant = CanonicalPath.of().tenant(item.parent.ids().getTenantId()).get();
+                try {
+                    resolve(Util.canonicalize(metric.getMetricTypePath(), tenant, item.parent, MetricType.class),
+                            resolved);
+                } catch (EntityNotFoundException e) {
+                    throw new IllegalArgumentException("A metric type with id '" + metric.getMetricTypePath() +
+                            "' not found in tenant '" + tenant.getSegment().getElementId() + "'.");
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitResource(Resource.Blueprint resource, Void parameter) {
+                CanonicalPath tenant = CanonicalPath.of().tenant(item.parent.ids().getTenantId()).get();
+                try {
+                    resolve(Util.canonicalize(resource.getResourceTypePath(), tenant, item.parent,
+                            ResourceType.class), resolved);
+                } catch (EntityNotFoundException e) {
+                    throw new IllegalArgumentException("Resource type '" + resource.getResourceTypePath() +
+                            "' not found in tenant '" + tenant.getSegment().getElementId() + "'.");
+                }
+                return null;
+            }
+        }, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private EntityAndPendingNotifications<?> create(Item item, Map<CanonicalPath, BE> resolved) {
+        if (item.blueprint instanceof Relationship.Blueprint) {
+            return relate(item.parent, (Relationship.Blueprint) item.blueprint, resolved);
+        }
+
+        BE parent = item.parent == null ? null : resolve(item.parent, resolved);
+
+        Mutator<BE, ?, Blueprint, ?, ?> mutator = (Mutator<BE, ?, Blueprint, ?, ?>) mutatorFor(item);
+
+        return mutator.doCreate(item.blueprint, parent, resolved);
+    }
+
+    private EntityAndPendingNotifications<Relationship> relate(CanonicalPath originPath,
+            Relationship.Blueprint blueprint, Map<CanonicalPath, BE> resolved) {
+
+        BE origin = resolve(originPath, resolved);
+        BE otherEnd = resolve(blueprint.getOtherEnd(), resolved);
+
+        List<BE> relationshipObjects = BaseRelationships.link(backend, origin, directionOf(blueprint),
+                blueprint.getName(), otherEnd, blueprint.getProperties());
+
+        List<Notification<?, ?>> notifications = new ArrayList<>(2);
+        Relationship ret = null;
+        for (BE r : relationshipObjects) {
+            ret = backend.convert(r, Relationship.class);
+            notifications.add(new Notification<>(ret, ret, created()));
+        }
+
+        return new EntityAndPendingNotifications<>(ret, notifications);
+    }
+
+    private static Relationships.Direction directionOf(Relationship.Blueprint blueprint) {
+        return blueprint.getDirection() == null ? Relationships.Direction.outgoing : blueprint.getDirection();
+    }
+
+    private BE resolve(CanonicalPath path, Map<CanonicalPath, BE> resolved) {
+        BE ret = resolved.get(path);
+        if (ret == null) {
+            try {
+                ret = backend.find(path);
+            } catch (ElementNotFoundException e) {
+                throw notFound(path);
+            }
+
+            resolved.put(path, ret);
+        }
+
+        return ret;
+    }
+
+    private Mutator<BE, ?, ?, ?, ?> mutatorFor(Item item) {
+        TraversalContext<BE, Tenant> parentContext = item.parent == null ? tenantContext
+                : tenantContext.replacePath(Query.to(item.parent));
+
+        return item.blueprint.accept(new ElementBlueprintVisitor.Simple<Mutator<BE, ?, ?, ?, ?>, Void>() {
+            @Override
+            protected Mutator<BE, ?, ?, ?, ?> defaultAction() {
+                throw new IllegalArgumentException("Unsupported blueprint type: " + item.blueprint);
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitTenant(Tenant.Blueprint tenant, Void parameter) {
+                return new BaseTenants.ReadWrite<>(tenantContext);
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitEnvironment(Environment.Blueprint environment, Void parameter) {
+                return new BaseEnvironments.ReadWrite<>(parentContext.proceedTo(contains, Environment.class).get());
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitFeed(Feed.Blueprint feed, Void parameter) {
+                return new BaseFeeds.ReadWrite<>(parentContext.proceedTo(contains, Feed.class).get());
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitMetric(Metric.Blueprint metric, Void parameter) {
+                return new BaseMetrics.ReadWrite<>(parentContext.proceedTo(contains, Metric.class).get());
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitMetricType(MetricType.Blueprint definition, Void parameter) {
+                return new BaseMetricTypes.ReadWrite<>(parentContext.proceedTo(contains, MetricType.class).get());
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitResource(Resource.Blueprint resource, Void parameter) {
+                return new BaseResources.ReadWrite<>(parentContext.proceedTo(contains, Resource.class).get());
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitResourceType(ResourceType.Blueprint type, Void parameter) {
+                return new BaseResourceTypes.ReadWrite<>(parentContext.proceedTo(contains, ResourceType.class)
+                        .get());
+            }
+
+            @Override
+            public Mutator<BE, ?, ?, ?, ?> visitData(DataEntity.Blueprint<?> data, Void parameter) {
+                return new BaseData.ReadWrite<>(parentContext.proceedTo(contains, DataEntity.class).get());
+            }
+        }, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EntityNotFoundException notFound(CanonicalPath path) {
+        return new EntityNotFoundException((Class<? extends Entity<?, ?>>) path.getSegment().getElementType(),
+                Query.filters(Query.to(path)));
+    }
+
+    /**
+     * A single blueprint to create together with the outcome of its creation.
+     */
+    private static final class Item {
+        final CanonicalPath parent;
+        final Blueprint blueprint;
+
+        /**
+         * The canonical path the new entity is going to have, null for relationships (whose ids are generated) or
+         * if the blueprint is not valid.
+         */
+        final CanonicalPath path;
+
+        EntityAndPendingNotifications<?> result;
+        RuntimeException error;
+
+        Item(CanonicalPath parent, Blueprint blueprint) {
+            this.parent = parent;
+            this.blueprint = blueprint;
+
+            CanonicalPath p = null;
+            try {
+                p = blueprint.accept(new ElementBlueprintVisitor.Simple<CanonicalPath, Void>() {
+                    @Override
+                    public CanonicalPath visitTenant(Tenant.Blueprint tenant, Void parameter) {
+                        if (parent != null) {
+                            throw new IllegalArgumentException("Tenants cannot have a parent.");
+                        }
+                        return CanonicalPath.of().tenant(tenant.getId()).get();
+                    }
+
+                    @Override
+                    public CanonicalPath visitEnvironment(Environment.Blueprint environment, Void parameter) {
+                        return extend(Environment.class, environment.getId());
+                    }
+
+                    @Override
+                    public CanonicalPath visitFeed(Feed.Blueprint feed, Void parameter) {
+                        return extend(Feed.class, feed.getId());
+                    }
+
+                    @Override
+                    public CanonicalPath visitMetric(Metric.Blueprint metric, Void parameter) {
+                        return extend(Metric.class, metric.getId());
+                    }
+
+                    @Override
+                    public CanonicalPath visitMetricType(MetricType.Blueprint definition, Void parameter) {
+                        return extend(MetricType.class, definition.getId());
+                    }
+
+                    @Override
+                    public CanonicalPath visitResource(Resource.Blueprint resource, Void parameter) {
+                        return extend(Resource.class, resource.getId());
+                    }
+
+                    @Override
+                    public CanonicalPath visitResourceType(ResourceType.Blueprint type, Void parameter) {
+                        return extend(ResourceType.class, type.getId());
+                    }
+
+                    @Override
+                    public CanonicalPath visitData(DataEntity.Blueprint<?> data, Void parameter) {
+                        return extend(DataEntity.class, data.getRole().name());
+                    }
+
+                    @Override
+                    public CanonicalPath visitRelationship(Relationship.Blueprint relationship, Void parameter) {
+                        if (parent == null) {
+                            throw new IllegalArgumentException("The origin of the relationship not specified.");
+                        }
+                        return null;
+                    }
+
+                    private CanonicalPath extend(Class<? extends Entity<?, ?>> type, String id) {
+                        if (parent == null) {
+                            throw new IllegalArgumentException("The parent of the new " + type.getSimpleName()
+                                    + " not specified.");
+                        }
+                        //feeds may be assigned a different id by the feed id strategy, so this is only a proposal
+                        return id == null ? null : parent.extend(type, id).get();
+                    }
+                }, null);
+            } catch (IllegalArgumentException e) {
+                error = e;
+            }
+
+            this.path = p;
+        }
+
+        int getOrder() {
+            if (blueprint instanceof Relationship.Blueprint) {
+                return Integer.MAX_VALUE;
+            } else {
+                return parent == null ? 0 : parent.getDepth() + 1;
+            }
+        }
+
+        /**
+         * @return the path to an entity this item needs but which has failed to be created, or null if there is no
+         * such entity
+         */
+        CanonicalPath getFailedDependency(Set<CanonicalPath> failedPaths) {
+            if (failedPaths.isEmpty()) {
+                return null;
+            }
+
+            CanonicalPath ret = failedAncestorOrSelf(parent, failedPaths);
+            if (ret == null && blueprint instanceof Relationship.Blueprint) {
+                ret = failedAncestorOrSelf(((Relationship.Blueprint) blueprint).getOtherEnd(), failedPaths);
+            }
+
+            return ret;
+        }
+
+        void fail(RuntimeException error, Set<CanonicalPath> failedPaths) {
+            this.error = error;
+            this.result = null;
+            //if the entity already exists, the entities depending on it can still be created
+            if (path != null && !(error instanceof EntityAlreadyExistsException)) {
+                failedPaths.add(path);
+            }
+        }
+
+        BulkCreate.Entry toEntry() {
+            return new BulkCreate.Entry(parent, blueprint, result == null ? null : result.getEntity(), error);
+        }
+
+        private static CanonicalPath failedAncestorOrSelf(CanonicalPath path, Set<CanonicalPath> failedPaths) {
+            if (path == null) {
+                return null;
+            }
+
+            Iterator<CanonicalPath> it = path.ascendingIterator();
+            while (it.hasNext()) {
+                CanonicalPath p = it.next();
+                if (failedPaths.contains(p)) {
+                    return p;
+                }
+            }
+
+            return null;
+        }
+    }
+}
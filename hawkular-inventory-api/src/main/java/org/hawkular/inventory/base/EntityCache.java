@@ -0,0 +1,333 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+
+/**
+ * A bounded cache of the elements converted from the backend representation, keyed by their canonical paths.
+ *
+ * <p>The cache is bounded both by the number of the elements and by their total weight. The weight of an element is
+ * an approximation of the number of objects it holds onto (the element itself, its properties and, for resources and
+ * metrics, their types). When either of the limits is exceeded, elements are evicted in an approximately least
+ * recently used order - a few elements are sampled, going round the cache, and the one that was used the longest time
+ * ago is evicted. This way the look-ups only need to record the time of the access and don't need any locking, while
+ * the modifications of the cache are serialized.
+ *
+ * <p>The elements are invalidated using the same notifications that are sent out to the subscribers on the inventory
+ * modifications. Because the notifications are only sent out after the modifications are committed, a reader could
+ * load the old state of an element before the commit and put it into the cache after it has been invalidated. To
+ * prevent that, each invalidation is stamped with the next value of a logical clock, which is recorded for the
+ * invalidated paths (separately for the paths whose whole subtrees were invalidated). An element is only put into the
+ * cache if neither its path, nor the subtree of any of its ancestors, nor its type (for resources and metrics) has been
+ * invalidated since the reader started loading it. So a write only prevents the caching of the elements it could have
+ * affected. The recorded stamps are bounded - once there are too many of them, they are thrown away and all the loads
+ * started before that are refused.
+ *
+ * <p>To avoid scanning the whole cache on invalidation, the cached elements are also indexed by their ancestors and,
+ * in case of resources and metrics, by their types.
+ *
+ * @author agent
+ * @see BaseInventory#ENTITY_CACHE_SIZE
+ * @since 0.2.1
+ */
+final class EntityCache {
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    private final int maxSize;
+    private final long maxWeight;
+    private final int maxInvalidations;
+    private final ConcurrentHashMap<CanonicalPath, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<CanonicalPath, Set<CanonicalPath>> cachedDescendants = new HashMap<>();
+    private final Map<CanonicalPath, Set<CanonicalPath>> cachedInstances = new HashMap<>();
+    private final Map<CanonicalPath, Long> invalidatedPaths = new HashMap<>();
+    private final Map<CanonicalPath, Long> invalidatedSubtrees = new HashMap<>();
+    private long weight;
+    private volatile long clock;
+    private Iterator<Map.Entry<CanonicalPath, Entry>> evictionCandidates;
+    private long oldestAcceptedLoad;
+
+    EntityCache(Configuration configuration) {
+        this.maxSize = Integer.parseInt(configuration.getProperty(BaseInventory.ENTITY_CACHE_SIZE, "0"));
+        if (maxSize < 0) {
+            throw new IllegalArgumentException("The entity cache size cannot be negative.");
+        }
+
+        String weightLimit = configuration.getProperty(BaseInventory.ENTITY_CACHE_WEIGHT, null);
+        this.maxWeight = weightLimit == null ? 10L * maxSize : Long.parseLong(weightLimit);
+        if (maxWeight < 0) {
+            throw new IllegalArgumentException("The entity cache weight cannot be negative.");
+        }
+
+        this.maxInvalidations = Math.max(1024, maxSize);
+    }
+
+    boolean isEnabled() {
+        return maxSize > 0 && maxWeight > 0;
+    }
+
+    /**
+     * @return the current generation of the cache. Obtain this prior to loading an element that should be
+     * {@link #put(CanonicalPath, AbstractElement, long) put} into the cache.
+     */
+    long getGeneration() {
+        return clock;
+    }
+
+    /**
+     * @param path the canonical path of the element
+     * @param type the expected type of the element
+     * @param <E>  the type of the element
+     * @return the cached element or null if it is not in the cache or is not of the expected type
+     */
+    <E> E get(CanonicalPath path, Class<E> type) {
+        Entry e = entries.get(path);
+        if (e == null || !type.isInstance(e.element)) {
+            return null;
+        }
+
+        e.lastUsed = System.nanoTime();
+        return type.cast(e.element);
+    }
+
+    /**
+     * Puts the element into the cache unless it could have been affected by an invalidation since the provided
+     * generation.
+     *
+     * @param path       the canonical path the element was loaded from
+     * @param element    the element
+     * @param generation the generation of the cache obtained prior to loading the element
+     */
+    synchronized void put(CanonicalPath path, AbstractElement<?, ?> element, long generation) {
+        if (!isEnabled() || isInvalidatedSince(path, element, generation)) {
+            return;
+        }
+
+        remove(path);
+
+        Entry e = new Entry(element);
+        entries.put(path, e);
+        weight += e.weight;
+
+        for (int i = 1; i <= path.getDepth(); ++i) {
+            cachedDescendants.computeIfAbsent(path.up(i), (p) -> new HashSet<>()).add(path);
+        }
+
+        if (e.typePath != null) {
+            cachedInstances.computeIfAbsent(e.typePath, (p) -> new HashSet<>()).add(path);
+        }
+
+        while (entries.size() > maxSize || weight > maxWeight) {
+            evictOne();
+        }
+    }
+
+    /**
+     * Removes all the cached elements that could be affected by the provided action on the element.
+     *
+     * @param element the element on which the action occurred
+     * @param action  the action
+     */
+    synchronized void invalidate(Object element, Action<?, ?> action) {
+        if (!isEnabled() || !(element instanceof AbstractElement)) {
+            return;
+        }
+
+        long stamp = ++clock;
+
+        CanonicalPath path = ((AbstractElement<?, ?>) element).getPath();
+
+        if (element instanceof Relationship) {
+            //the relationships influence the converted entities they connect (e.g. a metric contains its type)
+            invalidatePath(path, stamp);
+            invalidatePath(((Relationship) element).getSource(), stamp);
+            invalidatePath(((Relationship) element).getTarget(), stamp);
+        } else if (action == Action.deleted()) {
+            //the deleted entity takes all its contained entities with it
+            invalidateSubtree(path, stamp);
+        } else {
+            invalidatePath(path, stamp);
+        }
+
+        if (action != Action.created() && (element instanceof ResourceType || element instanceof MetricType)) {
+            //resources and metrics hold onto their types, invalidatePath() has recorded the type's stamp already
+            Set<CanonicalPath> instances = cachedInstances.get(path);
+            if (instances != null) {
+                new ArrayList<>(instances).forEach(this::remove);
+            }
+        }
+
+        if (invalidatedPaths.size() + invalidatedSubtrees.size() > maxInvalidations) {
+            //any load started before now might have been affected by the stamps we're throwing away
+            invalidatedPaths.clear();
+            invalidatedSubtrees.clear();
+            oldestAcceptedLoad = clock;
+        }
+    }
+
+    synchronized void clear() {
+        entries.clear();
+        cachedDescendants.clear();
+        cachedInstances.clear();
+        invalidatedPaths.clear();
+        invalidatedSubtrees.clear();
+        weight = 0;
+        oldestAcceptedLoad = ++clock;
+    }
+
+    private boolean isInvalidatedSince(CanonicalPath path, AbstractElement<?, ?> element, long generation) {
+        if (generation < oldestAcceptedLoad || isStampedAfter(invalidatedPaths, path, generation)) {
+            return true;
+        }
+
+        for (int i = 0; i <= path.getDepth(); ++i) {
+            if (isStampedAfter(invalidatedSubtrees, path.up(i), generation)) {
+                return true;
+            }
+        }
+
+        CanonicalPath typePath = Entry.typePathOf(element);
+        return typePath != null && isStampedAfter(invalidatedPaths, typePath, generation);
+    }
+
+    private static boolean isStampedAfter(Map<CanonicalPath, Long> stamps, CanonicalPath path, long generation) {
+        Long stamp = stamps.get(path);
+        return stamp != null && stamp > generation;
+    }
+
+    private void invalidatePath(CanonicalPath path, long stamp) {
+        invalidatedPaths.put(path, stamp);
+        remove(path);
+    }
+
+    private void invalidateSubtree(CanonicalPath path, long stamp) {
+        invalidatedSubtrees.put(path, stamp);
+        remove(path);
+
+        Set<CanonicalPath> descendants = cachedDescendants.get(path);
+        if (descendants != null) {
+            new ArrayList<>(descendants).forEach(this::remove);
+        }
+    }
+
+    /**
+     * Evicts the least recently used of the next few elements in the iteration order of the cache. The iteration
+     * continues where the previous eviction stopped, so that all the elements get sampled eventually.
+     */
+    private void evictOne() {
+        CanonicalPath victim = null;
+        long victimLastUsed = Long.MAX_VALUE;
+
+        for (int i = 0; i < EVICTION_SAMPLE_SIZE && !entries.isEmpty(); ++i) {
+            if (evictionCandidates == null || !evictionCandidates.hasNext()) {
+                evictionCandidates = entries.entrySet().iterator();
+            }
+
+            Map.Entry<CanonicalPath, Entry> candidate = evictionCandidates.next();
+            if (entries.get(candidate.getKey()) != candidate.getValue()) {
+                //the iterator is weakly consistent and can return elements that have been removed or replaced since
+                continue;
+            }
+
+            if (victim == null ||candidate.getValue().lastUsed - victimLastUsed < 0) {
+                victim = candidate.getKey();
+                victimLastUsed = candidate.getValue().lastUsed;
+            }
+        }
+
+        if (victim != null) {
+            remove(victim);
+        }
+    }
+
+    private void remove(CanonicalPath path) {
+        Entry e = entries.remove(path);
+        if (e != null) {
+            unindex(path, e);
+        }
+    }
+
+    private void unindex(CanonicalPath path, Entry e) {
+        weight -= e.weight;
+
+        for (int i = 1; i <= path.getDepth(); ++i) {
+            removeFromIndex(cachedDescendants, path.up(i), path);
+        }
+
+        if (e.typePath != null) {
+            removeFromIndex(cachedInstances, e.typePath, path);
+        }
+    }
+
+    private static void removeFromIndex(Map<CanonicalPath, Set<CanonicalPath>> index, CanonicalPath key,
+            CanonicalPath path) {
+        Set<CanonicalPath> paths = index.get(key);
+        if (paths != null && paths.remove(path) && paths.isEmpty()) {
+            index.remove(key);
+        }
+    }
+
+    private static final class Entry {
+        final AbstractElement<?, ?> element;
+        final CanonicalPath typePath;
+        final int weight;
+        volatile long lastUsed = System.nanoTime();
+
+        Entry(AbstractElement<?, ?> element) {
+            this.element = element;
+            this.typePath = typePathOf(element);
+            this.weight = weigh(element);
+        }
+
+        static CanonicalPath typePathOf(AbstractElement<?, ?> element) {
+            if (element instanceof Resource) {
+                return ((Resource) element).getType().getPath();
+            } else if (element instanceof Metric) {
+                return ((Metric) element).getType().getPath();
+            } else {
+                return null;
+            }
+        }
+
+        private static int weigh(AbstractElement<?, ?> element) {
+            int ret = 1 + element.getProperties().size();
+            if (element instanceof Resource) {
+                ret += 1 + ((Resource) element).getType().getProperties().size();
+            } else if (element instanceof Metric) {
+                ret += 1 + ((Metric) element).getType().getProperties().size();
+            }
+
+            return ret;
+        }
+    }
+}
@@ -0,0 +1,505 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import static org.hawkular.inventory.api.Relationships.Direction.outgoing;
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.defines;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.EntityNotFoundException;
+import org.hawkular.inventory.api.FeedSync;
+import org.hawkular.inventory.api.ResolvableToSingle;
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.ContentHash;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.ElementBlueprintVisitor;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+
+/**
+ * Implementation of the {@link org.hawkular.inventory.api.Inventory#synchronize(CanonicalPath, FeedSync)}.
+ *
+ * <p>First, the content hashes of all the nodes of the provided tree are computed (see {@link ContentHash}). Then, in
+ * a single read-only transaction, the tree is compared with the stored contents of the feed top-down. A subtree
+ * whose hash equals the content hash stored by the backend is skipped as a whole. Otherwise the own hashes of the
+ * entity are compared to find out whether the entity itself needs updating and the comparison descends to its
+ * children. The entities that can't be updated to the desired state (because their resource or metric type or
+ * the data type of the metric type changed) are deleted and created anew. A type cannot be deleted while it still
+ * defines some entities, so all the entities defined by a replaced type are replaced, too. If some of them are not
+ * in the feed, the synchronization is refused before anything is written.
+ *
+ * <p>Only after the whole plan is known, the changes are applied - the stale entities are deleted first (the resources
+ * and metrics before the types they might be defined by), then the changed entities are updated and finally the
+ * missing entities are created using {@link BulkCreator} (the types before the resources and metrics).
+ *
+ * <p>Right before the changes are applied, the content hash of the feed is checked again. If it differs from the one
+ * the plan was made against, the feed has been modified concurrently and the plan is made again. The changes are
+ * applied in several transactions though, so the modifications made concurrently with applying them are not
+ * detected.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class FeedSynchronizer<BE> {
+    private final BaseInventory<BE> inventory;
+    private final TraversalContext<BE, Tenant> tenantContext;
+    private final InventoryBackend<BE> backend;
+
+    FeedSynchronizer(BaseInventory<BE> inventory, TraversalContext<BE, Tenant> tenantContext) {
+        this.inventory = inventory;
+        this.tenantContext = tenantContext;
+        this.backend = tenantContext.backend;
+    }
+
+    FeedSync.Result synchronize(CanonicalPath feedPath, FeedSync sync) {
+        checkFeed(feedPath);
+
+        Hashes hashes = new Hashes(CanonicalPath.of().tenant(feedPath.ids().getTenantId()).get());
+
+        sync.getChildren().forEach((n) -> hashes.compute(feedPath, n));
+
+        int attempts = 0;
+        while (true) {
+            Plan plan = plan(feedPath, sync, hashes);
+
+            if (plan.isEmpty() || Objects.equals(plan.storedFeedHash, storedFeedHash(feedPath))) {
+                return apply(plan, sync.getChunkSize());
+            }
+
+            if (++attempts >= tenantContext.getTransactionRetriesCount()) {
+                throw new IllegalStateException("The contents of the feed " + feedPath + " kept changing while it" +
+                        " was being synchronized.");
+            }
+        }
+    }
+
+    void rebuildHashes(CanonicalPath feedPath) {
+        checkFeed(feedPath);
+
+        Util.runInTransaction(tenantContext, false, (t) -> {
+            backend.rebuildContentHashes(findFeed(feedPath));
+            backend.commit(t);
+            return null;
+        });
+    }
+
+    private Plan plan(CanonicalPath feedPath, FeedSync sync, Hashes hashes) {
+        Plan plan = new Plan();
+
+        Util.runInTransaction(tenantContext, true, (t) -> {
+            BE feed = findFeed(feedPath);
+
+            long feedHash = ContentHash.combine(ContentHash.of(backend.convert(feed, Feed.class)),
+                    hashes.sum(sync.getChildren()));
+
+            plan.storedFeedHash = backend.getContentHash(feed);
+
+            if (Objects.equals(feedHash, plan.storedFeedHash)) {
+                plan.unchangedCount = hashes.content.size();
+            } else {
+                compare(feedPath, feed, sync.getChildren(), hashes, plan);
+                replaceDefinedEntities(feedPath, hashes, plan);
+            }
+
+            return null;
+        });
+
+        return plan;
+    }
+
+    private Long storedFeedHash(CanonicalPath feedPath) {
+        return Util.runInTransaction(tenantContext, true, (t) -> backend.getContentHash(findFeed(feedPath)));
+    }
+
+    private static void checkFeed(CanonicalPath feedPath) {
+        if (!feedPath.isDefined() || !Feed.class.equals(feedPath.getSegment().getElementType())) {
+            throw new IllegalArgumentException("The path " + feedPath + " doesn't point to a feed.");
+        }
+    }
+
+    private BE findFeed(CanonicalPath feedPath) {
+        try {
+            return backend.find(feedPath);
+        } catch (ElementNotFoundException e) {
+            throw new EntityNotFoundException(Feed.class, Query.filters(Query.to(feedPath)));
+        }
+    }
+
+    private void compare(CanonicalPath parentPath, BE parent, List<FeedSync.Node> nodes, Hashes hashes, Plan plan) {
+        Map<CanonicalPath, BE> existing = new HashMap<>();
+        for (BE rel : backend.getRelationships(parent, outgoing, contains.name())) {
+            BE child = backend.getRelationshipTarget(rel);
+            existing.put(backend.extractCanonicalPath(child), child);
+        }
+
+        for (FeedSync.Node node : nodes) {
+            CanonicalPath path = hashes.paths.get(node);
+            BE current = existing.remove(path);
+
+            if (current == null) {
+                plan.create(parentPath, node);
+                continue;
+            }
+
+            if (Objects.equals(hashes.content.get(node), backend.getContentHash(current))) {
+                plan.unchangedCount += hashes.countSubtree(node);
+                continue;
+            }
+
+            plan.comparedCount++;
+            Entity<?, ?> entity = (Entity<?, ?>) backend.convert(current, backend.extractType(current));
+            if (ContentHash.of(entity) != hashes.own.get(node)) {
+                AbstractElement.Update update = updateOf(entity, hashes.definingTypes.get(node),
+                        node.getBlueprint());
+
+                if (update == null) {
+                    plan.delete(path);
+                    plan.create(parentPath, node);
+                    if (isType(path)) {
+                        plan.replacedTypes.put(path, current);
+                    }
+                    continue;
+                }
+
+                plan.updates.put(path, update);
+            } else {
+                plan.unchangedCount++;
+            }
+
+            compare(path, current, node.getChildren(), hashes, plan);
+        }
+
+        existing.keySet().forEach(plan::delete);
+    }
+
+    /**
+     * Makes sure that all the entities defined by the types that are going to be replaced are replaced too, so that
+     * the types can be deleted.
+     */
+    private void replaceDefinedEntities(CanonicalPath feedPath, Hashes hashes, Plan plan) {
+        if (plan.replacedTypes.isEmpty()) {
+            return;
+        }
+
+        Map<CanonicalPath, FeedSync.Node> nodes = new HashMap<>();
+        hashes.paths.forEach((n, p) -> nodes.put(p, n));
+
+        Set<CanonicalPath> deleted = new HashSet<>(plan.deletes);
+
+        plan.replacedTypes.forEach((typePath, type) -> {
+            for (BE rel : backend.getRelationships(type, outgoing, defines.name())) {
+                CanonicalPath path = backend.extractCanonicalPath(backend.getRelationshipTarget(rel));
+                if (!isInSubtree(path, Collections.singleton(feedPath))) {
+                    throw new IllegalArgumentException("Cannot replace the type " + typePath + " with a type of" +
+                            " a different kind, because it also defines " + path + ", which is not in the feed.");
+                }
+
+                if (isInSubtree(path, deleted)) {
+                    //either gone from the feed or already being replaced
+                    continue;
+                }
+
+                if (plan.updates.remove(path) == null) {
+                    plan.unchangedCount--;
+                }
+
+                plan.delete(path);
+                plan.create(path.up(), nodes.get(path));
+                deleted.add(path);
+            }
+        });
+    }
+
+    /**
+     * @return true if the path or any of its ancestors is among the provided paths
+     */
+    private static boolean isInSubtree(CanonicalPath path, Set<CanonicalPath> roots) {
+        for (int i = 0; i <= path.getDepth(); ++i) {
+            if (roots.contains(path.up(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the update object to bring the entity to the state described by the blueprint or null if that's not
+     * possible using an update
+     */
+    private static AbstractElement.Update updateOf(Entity<?, ?> entity, CanonicalPath definingType,
+            Blueprint blueprint) {
+        return blueprint.accept(new ElementBlueprintVisitor.Simple<AbstractElement.Update, Void>() {
+            @Override
+            protected AbstractElement.Update defaultAction() {
+                throw new IllegalArgumentException("Unsupported blueprint type: " + blueprint);
+            }
+
+            @Override
+            public AbstractElement.Update visitMetric(Metric.Blueprint metric, Void parameter) {
+                if (!((Metric) entity).getType().getPath().equals(definingType)) {
+                    return null;
+                }
+                return Metric.Update.builder().withProperties(metric.getProperties()).build();
+            }
+
+            @Override
+            public AbstractElement.Update visitMetricType(MetricType.Blueprint type, Void parameter) {
+                if (((MetricType) entity).getType() != type.getType()) {
+                    return null;
+                }
+                return MetricType.Update.builder().withProperties(type.getProperties()).withUnit(type.getUnit())
+                        .build();
+            }
+
+            @Override
+            public AbstractElement.Update visitResource(Resource.Blueprint resource, Void parameter) {
+                if (!((Resource) entity).getType().getPath().equals(definingType)) {
+                    return null;
+                }
+                return Resource.Update.builder().withProperties(resource.getProperties()).build();
+            }
+
+            @Override
+            public AbstractElement.Update visitResourceType(ResourceType.Blueprint type, Void parameter) {
+                return ResourceType.Update.builder().withProperties(type.getProperties()).build();
+            }
+
+            @Override
+            public AbstractElement.Update visitData(DataEntity.Blueprint<?> data, Void parameter) {
+                return DataEntity.Update.builder().withProperties(data.getProperties()).withValue(data.getValue())
+                        .build();
+            }
+        }, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private FeedSync.Result apply(Plan plan, int chunkSize) {
+        //resources and metrics first, so that the types are no longer used by them when they're deleted
+        plan.deletes.sort((a, b) -> Boolean.compare(isType(a), isType(b)));
+        for (CanonicalPath p : plan.deletes) {
+            inventory.inspect(p, ResolvableToSingle.class).delete();
+        }
+
+        plan.updates.forEach((p, u) -> inventory.inspect(p, ResolvableToSingle.class).update(u));
+
+        BulkCreate.Builder bulk = BulkCreate.builder().withChunkSize(chunkSize);
+        plan.typeCreates.forEach((n) -> addToBulk(n.parent, n.node, bulk));
+        plan.creates.forEach((n) -> addToBulk(n.parent, n.node, bulk));
+
+        BulkCreate.Result created = new BulkCreator<>(tenantContext).create(bulk.build());
+
+        return new FeedSync.Result(new ArrayList<>(plan.updates.keySet()), plan.deletes, created,
+                plan.unchangedCount, plan.comparedCount);
+    }
+
+    private static void addToBulk(CanonicalPath parent, FeedSync.Node node, BulkCreate.Builder bulk) {
+        bulk.create(parent, node.getBlueprint());
+        CanonicalPath path = parent.extend(Hashes.typeOf(node), Hashes.idOf(node)).get();
+        node.getChildren().forEach((c) -> addToBulk(path, c, bulk));
+    }
+
+    private static boolean isType(CanonicalPath path) {
+        Class<?> type = path.getSegment().getElementType();
+        return ResourceType.class.equals(type) || MetricType.class.equals(type);
+    }
+
+    /**
+     * The hashes of the nodes of the tree, computed bottom-up so that each node is hashed only once.
+     */
+    private static final class Hashes {
+        final CanonicalPath tenant;
+        final Map<FeedSync.Node, CanonicalPath> paths = new IdentityHashMap<>();
+        final Map<FeedSync.Node, CanonicalPath> definingTypes = new IdentityHashMap<>();
+        final Map<FeedSync.Node, Long> own = new IdentityHashMap<>();
+        final Map<FeedSync.Node, Long> content = new IdentityHashMap<>();
+
+        Hashes(CanonicalPath tenant) {
+            this.tenant = tenant;
+        }
+
+        long compute(CanonicalPath parent, FeedSync.Node node) {
+            Class<?> type = typeOf(node);
+            checkContainment(parent, type);
+
+            CanonicalPath path = parent.extend(type, idOf(node)).get();
+            CanonicalPath definingType = definingTypeOf(parent, node.getBlueprint());
+
+            long ownHash = ContentHash.of(node.getBlueprint(), definingType);
+            long children = 0;
+            for (FeedSync.Node c : node.getChildren()) {
+                children += compute(path, c);
+            }
+
+            long hash = ContentHash.combine(ownHash, children);
+
+            paths.put(node, path);
+            definingTypes.put(node, definingType);
+            own.put(node, ownHash);
+            content.put(node, hash);
+
+            return hash;
+        }
+
+        long sum(List<FeedSync.Node> nodes) {
+            long ret = 0;
+            for (FeedSync.Node n : nodes) {
+                ret += content.get(n);
+            }
+            return ret;
+        }
+
+        long countSubtree(FeedSync.Node node) {
+            long ret = 1;
+            for (FeedSync.Node c : node.getChildren()) {
+                ret += countSubtree(c);
+            }
+            return ret;
+        }
+
+        private CanonicalPath definingTypeOf(CanonicalPath parent, Blueprint blueprint) {
+            if (blueprint instanceof Resource.Blueprint) {
+                return Util.canonicalize(((Resource.Blueprint) blueprint).getResourceTypePath(), tenant, parent,
+                        ResourceType.class);
+            } else if (blueprint instanceof Metric.Blueprint) {
+                return Util.canonicalize(((Metric.Blueprint) blueprint).getMetricTypePath(), tenant, parent,
+                        MetricType.class);
+            } else {
+                return null;
+            }
+        }
+
+        private static void checkContainment(CanonicalPath parent, Class<?> type) {
+            Class<?> parentType = parent.getSegment().getElementType();
+
+            boolean valid;
+            if (Feed.class.equals(parentType)) {
+                valid = !DataEntity.class.equals(type);
+            } else if (Resource.class.equals(parentType)) {
+                valid = Resource.class.equals(type) || DataEntity.class.equals(type);
+            } else if (ResourceType.class.equals(parentType)) {
+                valid = DataEntity.class.equals(type);
+            } else {
+                valid = false;
+            }
+
+            if (!valid) {
+                throw new IllegalArgumentException("Entity of type '" + type.getSimpleName() + "' cannot be" +
+                        " contained in " + parent + ".");
+            }
+        }
+
+        static Class<?> typeOf(FeedSync.Node node) {
+            return node.getBlueprint().accept(new ElementBlueprintVisitor.Simple<Class<?>, Void>() {
+                @Override
+                protected Class<?> defaultAction() {
+                    throw new IllegalArgumentException("Unsupported blueprint type: " + node.getBlueprint());
+                }
+
+                @Override
+                public Class<?> visitMetric(Metric.Blueprint metric, Void parameter) {
+                    return Metric.class;
+                }
+
+                @Override
+                public Class<?> visitMetricType(MetricType.Blueprint definition, Void parameter) {
+                    return MetricType.class;
+                }
+
+                @Override
+                public Class<?> visitResource(Resource.Blueprint resource, Void parameter) {
+                    return Resource.class;
+                }
+
+                @Override
+                public Class<?> visitResourceType(ResourceType.Blueprint type, Void parameter) {
+                    return ResourceType.class;
+                }
+
+                @Override
+                public Class<?> visitData(DataEntity.Blueprint<?> data, Void parameter) {
+                    return DataEntity.class;
+                }
+            }, null);
+        }
+
+        static String idOf(FeedSync.Node node) {
+            Blueprint blueprint = node.getBlueprint();
+            return blueprint instanceof DataEntity.Blueprint ? ((DataEntity.Blueprint<?>) blueprint).getRole().name()
+                    : ((Entity.Blueprint) blueprint).getId();
+        }
+    }
+
+    private final class Plan {
+        final List<CanonicalPath> deletes = new ArrayList<>();
+        final Map<CanonicalPath, AbstractElement.Update> updates = new LinkedHashMap<>();
+        final List<Create> typeCreates = new ArrayList<>();
+        final List<Create> creates = new ArrayList<>();
+        final Map<CanonicalPath, BE> replacedTypes = new HashMap<>();
+        long unchangedCount;
+        long comparedCount;
+
+        /**
+         * The content hash of the feed stored by the backend at the time the plan was made.
+         */
+        Long storedFeedHash;
+
+        boolean isEmpty() {
+            return deletes.isEmpty() && updates.isEmpty() && typeCreates.isEmpty() && creates.isEmpty();
+        }
+
+        void create(CanonicalPath parent, FeedSync.Node node) {
+            Class<?> type = Hashes.typeOf(node);
+            (ResourceType.class.equals(type) || MetricType.class.equals(type) ? typeCreates : creates)
+                    .add(new Create(parent, node));
+        }
+
+        void delete(CanonicalPath path) {
+            deletes.add(path);
+        }
+    }
+
+    private static final class Create {
+        final CanonicalPath parent;
+        final FeedSync.Node node;
+
+        Create(CanonicalPath parent, FeedSync.Node node) {
+            this.parent = parent;
+            this.node = node;
+        }
+    }
+}
@@ -27,6 +27,7 @@ import org.hawkular.inventory.api.RelationNotFoundException;
 import org.hawkular.inventory.api.ResolvableToMany;
 import org.hawkular.inventory.api.ResolvableToSingle;
 import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.CanonicalPath;
 import org.hawkular.inventory.api.model.Entity;
 import org.hawkular.inventory.api.paging.Page;
 import org.hawkular.inventory.api.paging.Pager;
@@ -47,7 +48,22 @@ abstract class Fetcher<BE, E extends AbstractElement<?, U>, U extends AbstractEl
     @SuppressWarnings("unchecked")
     @Override
     public E entity() throws EntityNotFoundException, RelationNotFoundException {
-        return loadEntity((b, e) -> e);
+        EntityCache cache = context.inventory.getEntityCache();
+        CanonicalPath path = cache.isEnabled() ? Query.canonicalPathOf(context.select().get()) : null;
+        if (path == null) {
+            return loadEntity((b, e) -> e);
+        }
+
+        E cached = cache.get(path, context.entityClass);
+        if (cached != null && isApplicable(cached)) {
+            return cached;
+        }
+
+        long generation = cache.getGeneration();
+        E entity = loadEntity((b, e) -> e);
+        cache.put(path, entity, generation);
+
+        return entity;
     }
 
     /**
@@ -148,7 +164,8 @@ abstract class Fetcher<BE, E extends AbstractElement<?, U>, U extends AbstractEl
             List<T> converted = intermediate.stream().map((p) -> conversionFunction.apply(p.first, p.second))
                     .collect(toList());
 
-            return new Page<>(converted, intermediate.getPageContext(), intermediate.getTotalSize());
+            return new Page<>(converted, intermediate.getPageContext(), intermediate.getTotalSize(),
+                    intermediate.getContinuation());
         });
     }
 
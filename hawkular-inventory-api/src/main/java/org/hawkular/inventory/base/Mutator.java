@@ -21,7 +21,10 @@ import static org.hawkular.inventory.api.Relationships.Direction.outgoing;
 import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
 import static org.hawkular.inventory.api.filters.With.id;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 
 import org.hawkular.inventory.api.EntityAlreadyExistsException;
 import org.hawkular.inventory.api.EntityNotFoundException;
@@ -33,8 +36,8 @@ import org.hawkular.inventory.api.model.ElementTypeVisitor;
 import org.hawkular.inventory.api.model.Entity;
 import org.hawkular.inventory.api.model.Relationship;
 import org.hawkular.inventory.api.model.Tenant;
-import org.hawkular.inventory.api.paging.Page;
-import org.hawkular.inventory.api.paging.Pager;
+import org.hawkular.inventory.base.EntityAndPendingNotifications.Notification;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
 
 /**
  * @author Lukas Krejci
@@ -43,6 +46,12 @@ import org.hawkular.inventory.api.paging.Pager;
 abstract class Mutator<BE, E extends Entity<?, U>, B extends Blueprint, U extends AbstractElement.Update, Id>
         extends Traversal<BE, E> {
 
+    /**
+     * The entities the caller of {@link #doCreate(Blueprint, Object, Map)} has already looked up in the current
+     * transaction, so that they don't need to be looked up again while wiring up the new entity.
+     */
+    private Map<CanonicalPath, BE> knownEntities = Collections.emptyMap();
+
     protected Mutator(TraversalContext<BE, E> context) {
         super(context);
     }
@@ -66,53 +75,95 @@ abstract class Mutator<BE, E extends Entity<?, U>, B extends Blueprint, U extend
      */
     protected final Query doCreate(B blueprint) {
         return mutating((transaction) -> {
-            String id = getProposedId(blueprint);
+            BE parent = getParent();
 
-            Query existenceCheck = context.hop().filter().with(id(id)).get();
+            EntityAndPendingNotifications<E> newEntity = doCreate(blueprint, parent);
 
-            Page<BE> results = context.backend.query(existenceCheck, Pager.single());
+            context.backend.commit(transaction);
 
-            if (!results.isEmpty()) {
-                throw new EntityAlreadyExistsException(id, Query.filters(existenceCheck));
-            }
+            context.notifyAll(newEntity);
 
-            BE parent = getParent();
-            CanonicalPath parentCanonicalPath = parent == null ? null : context.backend.extractCanonicalPath(parent);
-
-            EntityAndPendingNotifications<E> newEntity;
-            BE containsRel = null;
-
-            CanonicalPath entityPath;
-            if (parent == null) {
-                if (context.entityClass == Tenant.class) {
-                    entityPath = CanonicalPath.of().tenant(id).get();
-                } else {
-                    throw new IllegalStateException("Could not find the parent of the entity to be created," +
-                            "yet the entity is not a tenant: " + blueprint);
-                }
-            } else {
-                entityPath = parentCanonicalPath.extend(context.entityClass, id).get();
-            }
+            return Query.to(newEntity.getEntity().getPath());
+        });
+    }
 
-            BE entityObject = context.backend.persist(entityPath, blueprint);
+    /**
+     * Creates the new entity under the provided parent. This needs to be called within a transaction and neither
+     * commits it nor sends out any notifications. The notifications about the creation of the entity, its containment
+     * in the parent and any other notifications resulting from the wiring up of the new entity are returned instead.
+     *
+     * @param blueprint the blueprint of the new entity
+     * @param parent    the parent of the new entity or null if the entity is a tenant
+     * @return the new entity together with the notifications to send out once the transaction is committed
+     */
+    final EntityAndPendingNotifications<E> doCreate(B blueprint, BE parent) {
+        return doCreate(blueprint, parent, Collections.emptyMap());
+    }
 
-            if (parentCanonicalPath != null) {
-                //no need to check for contains rules - we're connecting a newly created entity
-                containsRel = context.backend.relate(parent, entityObject, contains.name(), Collections.emptyMap());
-            }
+    /**
+     * Same as {@link #doCreate(Blueprint, Object)} but the entities referenced by the blueprint (e.g. the type of the
+     * new entity) are first looked for in the provided map of entities already looked up by the caller.
+     *
+     * @param blueprint     the blueprint of the new entity
+     * @param parent        the parent of the new entity or null if the entity is a tenant
+     * @param knownEntities the backend representations of already looked up entities keyed by their canonical paths
+     * @return the new entity together with the notifications to send out once the transaction is committed
+     */
+    final EntityAndPendingNotifications<E> doCreate(B blueprint, BE parent, Map<CanonicalPath, BE> knownEntities) {
+        this.knownEntities = knownEntities;
+        try {
+            return create(blueprint, parent);
+        } finally {
+            this.knownEntities = Collections.emptyMap();
+        }
+    }
 
-            newEntity = wireUpNewEntity(entityObject, blueprint, parentCanonicalPath, parent);
+    private EntityAndPendingNotifications<E> create(B blueprint, BE parent) {
+        String id = getProposedId(blueprint);
 
-            context.backend.commit(transaction);
+        CanonicalPath parentCanonicalPath = parent == null ? null : context.backend.extractCanonicalPath(parent);
 
-            context.notify(newEntity.getEntity(), created());
-            if (containsRel != null) {
-                context.notify(context.backend.convert(containsRel, Relationship.class), created());
+        CanonicalPath entityPath;
+        if (parent == null) {
+            if (context.entityClass == Tenant.class) {
+                entityPath = CanonicalPath.of().tenant(id).get();
+            } else {
+                throw new IllegalStateException("Could not find the parent of the entity to be created," +
+                        "yet the entity is not a tenant: " + blueprint);
             }
-            context.notifyAll(newEntity);
-
-            return Query.to(entityPath);
-        });
+        } else {
+            entityPath = parentCanonicalPath.extend(context.entityClass, id).get();
+        }
+
+        try {
+            context.backend.find(entityPath);
+            throw new EntityAlreadyExistsException(id, Query.filters(Query.to(entityPath)));
+        } catch (ElementNotFoundException e) {
+            //good, we can continue
+        }
+
+        BE entityObject = context.backend.persist(entityPath, blueprint);
+
+        BE containsRel = null;
+        if (parentCanonicalPath != null) {
+            //no need to check for contains rules - we're connecting a newly created entity
+            containsRel = context.backend.relate(parent, entityObject, contains.name(), Collections.emptyMap());
+        }
+
+        EntityAndPendingNotifications<E> wiredUp = wireUpNewEntity(entityObject, blueprint, parentCanonicalPath,
+                parent);
+
+        E entity = wiredUp.getEntity();
+
+        List<Notification<?, ?>> notifications = new ArrayList<>();
+        notifications.add(new Notification<>(entity, entity, created()));
+        if (containsRel != null) {
+            Relationship rel = context.backend.convert(containsRel, Relationship.class);
+            notifications.add(new Notification<>(rel, rel, created()));
+        }
+        notifications.addAll(wiredUp.getNotifications());
+
+        return new EntityAndPendingNotifications<>(entity, notifications);
     }
 
     public final void update(Id id, U update) throws EntityNotFoundException {
@@ -158,18 +209,12 @@ abstract class Mutator<BE, E extends Entity<?, U>, B extends Blueprint, U extend
             @SuppressWarnings("unchecked")
             @Override
             protected BE defaultAction() {
-                Page<BE> res = context.backend.query(context.sourcePath, Pager.single());
-
-                if (res.isEmpty()) {
-                    Class<? extends Entity<?, ?>> parentEntityClass = null;
-                    if (context.previous != null && Entity.class.isAssignableFrom(context.previous.entityClass)) {
-                        parentEntityClass = (Class<? extends Entity<?, ?>>) context.previous.entityClass;
-                    }
-
-                    throw new EntityNotFoundException(parentEntityClass, Query.filters(context.sourcePath));
+                Class<? extends Entity<?, ?>> parentEntityClass = null;
+                if (context.previous != null && Entity.class.isAssignableFrom(context.previous.entityClass)) {
+                    parentEntityClass = (Class<? extends Entity<?, ?>>) context.previous.entityClass;
                 }
 
-                return res.get(0);
+                return Util.getSingle(context.backend, context.sourcePath, parentEntityClass);
             }
 
             @Override
@@ -179,6 +224,19 @@ abstract class Mutator<BE, E extends Entity<?, U>, B extends Blueprint, U extend
         }, null);
     }
 
+    /**
+     * Looks up an entity referenced by the blueprint of the entity being created. This is to be used by the
+     * implementations of {@link #wireUpNewEntity(Object, Blueprint, CanonicalPath, Object)}.
+     *
+     * @param path the canonical path of the referenced entity
+     * @return the backend representation of the entity
+     * @throws ElementNotFoundException if the entity doesn't exist
+     */
+    protected final BE findReferenced(CanonicalPath path) throws ElementNotFoundException {
+        BE ret = knownEntities.get(path);
+        return ret == null ? context.backend.find(path) : ret;
+    }
+
     protected BE relate(BE source, BE target, String relationshipName) {
         RelationshipRules.checkCreate(context.backend, source, outgoing, relationshipName, target);
         return context.backend.relate(source, target, relationshipName, null);
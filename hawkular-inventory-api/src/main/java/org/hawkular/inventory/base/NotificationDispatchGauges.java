@@ -0,0 +1,61 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import org.hawkular.inventory.api.Interest;
+
+/**
+ * The current state of the asynchronous dispatch of the notifications for a single interest.
+ *
+ * @author agent
+ * @see BaseInventory#NOTIFICATION_DISPATCH
+ * @since 0.2.1
+ */
+public interface NotificationDispatchGauges {
+
+    /**
+     * @return the interest the notifications are dispatched for
+     */
+    Interest<?, ?> getInterest();
+
+    /**
+     * @return the number of notifications waiting to be dispatched
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the maximum number of notifications that can wait to be dispatched
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return the number of milliseconds the oldest notification waiting to be dispatched has been waiting or 0 if
+     * there are no notifications waiting
+     */
+    long getLag();
+
+    /**
+     * @return the number of notifications thrown away because the buffer was full
+     */
+    long getDroppedCount();
+
+    /**
+     * @return the number of notifications that replaced an older notification about the same element waiting in the
+     * buffer
+     */
+    long getCoalescedCount();
+}
@@ -0,0 +1,365 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Interest;
+import org.hawkular.inventory.api.Log;
+import org.hawkular.inventory.api.model.AbstractElement;
+
+import rx.Observer;
+
+/**
+ * Dispatches the notifications for a single interest on a dedicated thread, so that the slow subscribers don't slow
+ * down the callers modifying the inventory.
+ *
+ * <p>The notifications are buffered in a bounded queue. What happens when the queue is full is governed by the
+ * {@link OverflowPolicy}.
+ *
+ * <p>The gauges of the dispatcher are registered in the platform MBean server under the
+ * {@code org.hawkular.inventory:type=NotificationDispatcher,inventory="<instance name>",entity=<entity type>,
+ * action=<action>} name for as long as the dispatcher is running. The instance name comes from the
+ * {@link BaseInventory#INSTANCE_NAME} configuration property.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class NotificationDispatcher<C> implements Observer<C>, NotificationDispatchGauges {
+    private final Interest<C, ?> interest;
+    private final Observer<C> target;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Pending<C>> queue;
+
+    /**
+     * The newest pending notification about each element, used to coalesce the notifications in O(1). Only maintained
+     * with the {@link OverflowPolicy#COALESCE} policy.
+     */
+    private final Map<Object, Pending<C>> pendingByKey;
+    private boolean stopped;
+
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+
+    private final Thread worker;
+    private ObjectName gaugesName;
+
+    NotificationDispatcher(String instanceName, Interest<C, ?> interest, Observer<C> target, int capacity,
+            OverflowPolicy overflowPolicy) {
+        this.interest = interest;
+        this.target = target;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayDeque<>(capacity);
+        this.pendingByKey = overflowPolicy == OverflowPolicy.COALESCE ? new HashMap<>() : null;
+
+        this.worker = new Thread(this::dispatchLoop, "Hawkular Inventory Notifications (" + interest + ")");
+        this.worker.setDaemon(true);
+        this.worker.start();
+
+        registerGauges(instanceName);
+    }
+
+    @Override
+    public void onNext(C c) {
+        Pending<C> p = new Pending<>(c, pendingByKey == null ? null : keyOf(c), System.nanoTime());
+
+        lock.lock();
+        try {
+            if (stopped) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+
+            if (queue.size() >= capacity) {
+                switch (overflowPolicy) {
+                    case DROP_OLDEST:
+                        forget(queue.pollFirst());
+                        droppedCount.incrementAndGet();
+                        break;
+                    case COALESCE:
+                        if (coalesce(p)) {
+                            return;
+                        }
+                        //no notification to coalesce with, so wait for the room like with BLOCK
+                        awaitRoom();
+                        break;
+                    default:
+                        awaitRoom();
+                }
+            }
+
+            if (stopped || queue.size() >= capacity) {
+                //we've been interrupted or stopped while waiting for room
+                droppedCount.incrementAndGet();
+                return;
+            }
+
+            queue.addLast(p);
+            if (pendingByKey != null) {
+                pendingByKey.put(p.key, p);
+            }
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void onCompleted() {
+        stop();
+    }
+
+    @Override
+    public void onError(Throwable e) {
+        stop();
+    }
+
+    /**
+     * Stops accepting new notifications. The notifications already in the queue are still dispatched, after which the
+     * dispatch thread finishes.
+     */
+    void stop() {
+        lock.lock();
+        try {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+
+        unregisterGauges();
+    }
+
+    /**
+     * Waits for the dispatch thread to finish after the dispatcher has been {@link #stop() stopped}.
+     *
+     * @param timeout the maximum time to wait
+     * @param unit    the unit of the timeout
+     * @return true if the dispatch thread finished, false if the timeout elapsed before that
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        worker.join(unit.toMillis(timeout));
+        return !worker.isAlive();
+    }
+
+    @Override
+    public Interest<?, ?> getInterest() {
+        return interest;
+    }
+
+    @Override
+    public int getQueueDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return capacity;
+    }
+
+    @Override
+    public long getLag() {
+        lock.lock();
+        try {
+            Pending<C> oldest = queue.peekFirst();
+            return oldest == null ? 0 : TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - oldest.enqueuedAt);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    @Override
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    private void awaitRoom() {
+        try {
+            while (queue.size() >= capacity && !stopped) {
+                notFull.await();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Replaces the pending notification about the same element as the provided one, keeping the position of the
+     * original in the queue.
+     *
+     * @return true if the notification was coalesced with a pending one, false otherwise
+     */
+    private boolean coalesce(Pending<C> p) {
+        Pending<C> q = pendingByKey.get(p.key);
+        if (q == null) {
+            return false;
+        }
+
+        q.value = p.value;
+        coalescedCount.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Must be called for every notification leaving the queue.
+     */
+    private void forget(Pending<C> p) {
+        if (pendingByKey != null && p != null) {
+            //a newer notification about the same element might have taken the place in the index
+            pendingByKey.remove(p.key, p);
+        }
+    }
+
+    private static Object keyOf(Object value) {
+        if (value instanceof AbstractElement) {
+            return ((AbstractElement<?, ?>) value).getPath();
+        } else if (value instanceof Action.Update) {
+            return keyOf(((Action.Update<?, ?>) value).getOriginalEntity());
+        } else {
+            return value;
+        }
+    }
+
+    private void dispatchLoop() {
+        while (true) {
+            C value;
+
+            lock.lock();
+            try {
+                while (queue.isEmpty() && !stopped) {
+                    notEmpty.awaitUninterruptibly();
+                }
+
+                Pending<C> p = queue.pollFirst();
+                if (p == null) {
+                    //stopped and nothing left to dispatch
+                    return;
+                }
+                forget(p);
+
+                value = p.value;
+                notFull.signal();
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                target.onNext(value);
+            } catch (Exception e) {
+                Log.LOGGER.wErrorSendingEvent(e);
+            }
+        }
+    }
+
+    private void registerGauges(String instanceName) {
+        String name = "org.hawkular.inventory:type=NotificationDispatcher,inventory=" + ObjectName.quote(instanceName)
+                + ",entity=" + interest.getEntityType().getSimpleName() + ",action="
+                + interest.getAction().asEnum().name();
+        try {
+            gaugesName = new ObjectName(name);
+            ManagementFactory.getPlatformMBeanServer().registerMBean(
+                    new StandardMBean(this, NotificationDispatchGauges.class), gaugesName);
+        } catch (JMException e) {
+            Log.LOGGER.wFailedToRegisterDispatchGauges(name, e);
+            gaugesName = null;
+        }
+    }
+
+    private void unregisterGauges() {
+        if (gaugesName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(gaugesName);
+        } catch (JMException e) {
+            Log.LOGGER.debugf(e, "Failed to unregister the notification dispatch gauges %s", gaugesName);
+        } finally {
+            gaugesName = null;
+        }
+    }
+
+    /**
+     * What to do with a new notification if the dispatch queue is full.
+     */
+    enum OverflowPolicy {
+        /**
+         * The caller waits until there is room in the queue.
+         */
+        BLOCK,
+
+        /**
+         * The oldest notification in the queue is thrown away.
+         */
+        DROP_OLDEST,
+
+        /**
+         * The new notification replaces a pending notification about the same element. If there is no such
+         * notification, the caller waits until there is room in the queue.
+         */
+        COALESCE;
+
+        static OverflowPolicy fromString(String value) {
+            return valueOf(value.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private static final class Pending<C> {
+        C value;
+        final Object key;
+        final long enqueuedAt;
+
+        Pending(C value, Object key, long enqueuedAt) {
+            this.value = value;
+            this.key = key;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
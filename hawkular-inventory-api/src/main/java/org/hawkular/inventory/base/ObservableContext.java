@@ -16,16 +16,24 @@
  */
 package org.hawkular.inventory.base;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Configuration;
 import org.hawkular.inventory.api.Interest;
 import org.hawkular.inventory.api.Log;
 
 import rx.Observable;
+import rx.Observer;
 import rx.Subscriber;
 import rx.functions.Action0;
 import rx.observers.SafeSubscriber;
@@ -35,12 +43,61 @@ import rx.subjects.Subject;
 /**
  * Hold the observables corresponding to different interests for being notified about on inventory.
  *
+ * <p>By default the notifications are pushed to the subscribers synchronously on the thread that performed the
+ * change. If configured so using {@link BaseInventory#NOTIFICATION_DISPATCH}, each interest gets a
+ * {@link NotificationDispatcher dispatcher} with a bounded buffer and a dedicated thread, which decouples the
+ * subscribers from the callers modifying the inventory.
+ *
  * @author Lukas Krejci
  * @since 0.0.1
  */
 final class ObservableContext {
     private final Map<Interest<?, ?>, SubjectAndWrapper<?>> observables = new ConcurrentHashMap<>();
 
+    /**
+     * The observers to notify keyed by the action and the concrete class of the entity the action was performed on.
+     * The routes are computed lazily for each new class and are thrown away each time the set of interests changes.
+     */
+    private volatile Map<Action<?, ?>, Map<Class<?>, List<Observer<?>>>> routes = new ConcurrentHashMap<>();
+    private volatile String instanceName = "default";
+    private volatile boolean asynchronous;
+    private volatile int bufferSize = 1024;
+    private volatile NotificationDispatcher.OverflowPolicy overflowPolicy = NotificationDispatcher.OverflowPolicy.BLOCK;
+
+    /**
+     * Reads the dispatch settings from the configuration. The settings only apply to the interests that are first
+     * subscribed to after this call.
+     *
+     * @param configuration the configuration of the inventory
+     */
+    void configure(Configuration configuration) {
+        instanceName = configuration.getProperty(BaseInventory.INSTANCE_NAME, "default");
+        asynchronous = "async".equalsIgnoreCase(configuration.getProperty(BaseInventory.NOTIFICATION_DISPATCH,
+                "sync"));
+        bufferSize = Integer.parseInt(configuration.getProperty(BaseInventory.NOTIFICATION_BUFFER_SIZE, "1024"));
+        overflowPolicy = NotificationDispatcher.OverflowPolicy.fromString(
+                configuration.getProperty(BaseInventory.NOTIFICATION_OVERFLOW_POLICY, "block"));
+
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("The notification buffer size must be positive.");
+        }
+    }
+
+    /**
+     * @return the gauges of the asynchronous dispatchers of the currently observed interests
+     */
+    Collection<NotificationDispatchGauges> getDispatchGauges() {
+        return observables.values().stream().map((s) -> s.dispatcher).filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Stops all the asynchronous dispatchers. The notifications already waiting are still dispatched.
+     */
+    void close() {
+        observables.values().forEach(SubjectAndWrapper::stop);
+    }
+
     public <C> Observable<C> getObservableFor(Interest<C, ?> interest) {
         SubjectAndWrapper<C> sub = getSubjectAndWrapper(interest, true);
         return sub.wrapper;
@@ -51,9 +108,38 @@ final class ObservableContext {
     }
 
     @SuppressWarnings("unchecked")
-    public <C, T> Iterator<Subject<C, C>> matchingSubjects(Action<C, T> action, T object) {
-        return observables.entrySet().stream().filter((e) -> e.getKey().matches(action, object))
-                .map((e) -> ((SubjectAndWrapper<C>) e.getValue()).subject).iterator();
+    public <C, T> Iterator<Observer<C>> matchingObservers(Action<C, T> action, T object) {
+        if (object == null) {
+            return Collections.emptyIterator();
+        }
+
+        //read the routes before the observables, so that we never cache a route computed from an outdated set of
+        //interests (see invalidateRoutes())
+        Map<Class<?>, List<Observer<?>>> byClass = routes.computeIfAbsent(action, (a) -> new ConcurrentHashMap<>());
+
+        List<Observer<?>> observers = byClass.computeIfAbsent(object.getClass(), (cls) -> route(action, cls));
+
+        return ((List<Observer<C>>) (List<?>) observers).iterator();
+    }
+
+    private List<Observer<?>> route(Action<?, ?> action, Class<?> entityClass) {
+        List<Observer<?>> ret = new ArrayList<>(1);
+
+        observables.forEach((interest, sub) -> {
+            if (interest.getAction() == action && interest.getEntityType().isAssignableFrom(entityClass)) {
+                ret.add(sub.input);
+            }
+        });
+
+        return ret.isEmpty() ? Collections.emptyList() : Collections.unmodifiableList(ret);
+    }
+
+    /**
+     * Must be called after each modification of the {@link #observables}. The readers that picked up the old routes
+     * may still store their results into them but those will be thrown away with them.
+     */
+    private void invalidateRoutes() {
+        routes = new ConcurrentHashMap<>();
     }
 
     private <C> SubjectAndWrapper<C> getSubjectAndWrapper(Interest<C, ?> interest, boolean initialize) {
@@ -61,7 +147,13 @@ final class ObservableContext {
         SubjectAndWrapper<C> sub = (SubjectAndWrapper<C>) observables.get(interest);
 
         if (initialize && sub == null) {
-            SubscriptionTracker tracker = new SubscriptionTracker(() -> observables.remove(interest));
+            SubscriptionTracker tracker = new SubscriptionTracker(() -> {
+                SubjectAndWrapper<?> removed = observables.remove(interest);
+                invalidateRoutes();
+                if (removed != null) {
+                    removed.stop();
+                }
+            });
             Subject<C, C> subject = PublishSubject.<C>create().toSerialized();
 
             //error handling:
@@ -71,8 +163,13 @@ final class ObservableContext {
             wrapper = subject.lift(new OperatorIgnoreError<>()).doOnSubscribe(tracker.onSubscribe())
                     .doOnUnsubscribe(tracker.onUnsubscribe());
 
-            sub = new SubjectAndWrapper<>(subject, wrapper);
+            NotificationDispatcher<C> dispatcher = asynchronous
+                    ? new NotificationDispatcher<>(instanceName, interest, subject, bufferSize, overflowPolicy)
+                    : null;
+
+            sub = new SubjectAndWrapper<>(subject, wrapper, dispatcher);
             observables.put(interest, sub);
+            invalidateRoutes();
         }
 
         return sub;
@@ -103,10 +200,20 @@ final class ObservableContext {
     private static class SubjectAndWrapper<T> {
         final Subject<T, T> subject;
         final Observable<T> wrapper;
+        final NotificationDispatcher<T> dispatcher;
+        final Observer<T> input;
 
-        private SubjectAndWrapper(Subject<T, T> subject, Observable<T> wrapper) {
+        private SubjectAndWrapper(Subject<T, T> subject, Observable<T> wrapper, NotificationDispatcher<T> dispatcher) {
             this.subject = subject;
             this.wrapper = wrapper;
+            this.dispatcher = dispatcher;
+            this.input = dispatcher == null ? subject : dispatcher;
+        }
+
+        void stop() {
+            if (dispatcher != null) {
+                dispatcher.stop();
+            }
         }
     }
 
@@ -0,0 +1,645 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Change;
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.Log;
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Relationship;
+
+/**
+ * The append-only log of the changes of each tenant, stored on the local disk.
+ *
+ * <p>The changes are recorded using the same notifications that are sent out to the subscribers on the inventory
+ * modifications, i.e. only after the modifications are committed. Each tenant has its own directory with the log
+ * split into segment files. Each segment holds at most {@link BaseInventory#CHANGE_LOG_SEGMENT_SIZE} changes and is
+ * named after the sequence number of its first change, so that the segment containing a given change can be found
+ * without reading the others. Once there are more than {@link BaseInventory#CHANGE_LOG_RETAINED_SEGMENTS} segments,
+ * the oldest ones are deleted.
+ *
+ * <p>The committing threads only put the changes in a bounded queue. They are written to the disk by a dedicated
+ * writer thread in batches, each batch being flushed (and, if {@link BaseInventory#CHANGE_LOG_SYNC} is enabled, synced
+ * to the disk) as a whole. A change is durable only once the batch containing it has been written (and synced). If the
+ * writer falls behind so much that the queue is full, the committing threads wait for it for a while. The reads of
+ * the log wait for the changes recorded before them to be written, so that the callers can read their own changes.
+ *
+ * <p>The log is best-effort with respect to the inventory: the changes committed but not yet written when the process
+ * crashes are lost, because the inventory and the log are not updated atomically. So are the changes that could not
+ * be queued in time. To let the consumers detect that, the log has an epoch that is stored with each change. The epoch
+ * is kept across clean restarts and incremented whenever the log is opened after an unclean shutdown or some changes
+ * were lost. A consumer seeing a change with an epoch different from the one of the last change it has seen needs to
+ * re-read the inventory.
+ *
+ * <p>A change is stored as its epoch, sequence number, timestamp, action and canonical path. A record only partially
+ * written (because of a crash) is cut off when the log of the tenant is opened again.
+ *
+ * @author agent
+ * @see BaseInventory#CHANGE_LOG_DIRECTORY
+ * @since 0.2.1
+ */
+final class PersistentChangeLog implements AutoCloseable {
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String EPOCH_FILE = "epoch";
+    private static final String CLEAN_SHUTDOWN_FILE = "clean";
+    private static final int MAX_BATCH_SIZE = 1000;
+    private static final int MAX_QUEUE_SIZE = 100_000;
+    private static final long ENQUEUE_TIMEOUT_MILLIS = 1000;
+
+    /**
+     * The epoch, the sequence number, the timestamp, the action and the longest path {@code writeUTF()} can write.
+     */
+    private static final int MAX_RECORD_LENGTH = 8 + 8 + 8 + 1 + 2 + 65535;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final int retainedSegments;
+    private final boolean sync;
+    private final Map<String, TenantLog> tenants = new ConcurrentHashMap<>();
+
+    private final BlockingQueue<PendingChange> queue = new LinkedBlockingQueue<>(MAX_QUEUE_SIZE);
+    private final AtomicLong recordedCount = new AtomicLong();
+    private final AtomicLong lostCount = new AtomicLong();
+    private long epoch;
+    private final Object progress = new Object();
+    private long writtenCount;
+    private final Thread writer;
+    private volatile boolean running;
+
+    PersistentChangeLog(Configuration configuration) {
+        String dir = configuration.getProperty(BaseInventory.CHANGE_LOG_DIRECTORY, null);
+        this.directory = dir == null ? null : Paths.get(dir);
+
+        this.segmentSize = Integer.parseInt(configuration.getProperty(BaseInventory.CHANGE_LOG_SEGMENT_SIZE,
+                "10000"));
+        if (segmentSize <= 0) {
+            throw new IllegalArgumentException("The change log segment size must be positive.");
+        }
+
+        this.retainedSegments = Integer.parseInt(configuration.getProperty(
+                BaseInventory.CHANGE_LOG_RETAINED_SEGMENTS, "10"));
+        if (retainedSegments <= 0) {
+            throw new IllegalArgumentException("The number of the retained change log segments must be positive.");
+        }
+
+        this.sync = Boolean.parseBoolean(configuration.getProperty(BaseInventory.CHANGE_LOG_SYNC, "false"));
+
+        if (isEnabled()) {
+            try {
+                this.epoch = openEpoch();
+            } catch (IOException e) {
+                throw new IllegalStateException("Failed to initialize the change log in " + directory + ".", e);
+            }
+
+            this.running = true;
+            this.writer = new Thread(this::writeLoop, "Hawkular Inventory Change Log Writer");
+            this.writer.setDaemon(true);
+            this.writer.start();
+        } else {
+            this.writer = null;
+        }
+    }
+
+    boolean isEnabled() {
+        return directory != null;
+    }
+
+    /**
+     * Queues the change of the element to be written to the log of its tenant. The failures to write to the log are
+     * only logged, because the change has already been committed.
+     *
+     * @param element the changed element
+     * @param action  the action performed on the element
+     */
+    void record(Object element, Action<?, ?> action) {
+        if (!running || !(element instanceof AbstractElement)) {
+            return;
+        }
+
+        CanonicalPath path = ((AbstractElement<?, ?>) element).getPath();
+        String tenantId = element instanceof Relationship
+                ? ((Relationship) element).getSource().ids().getTenantId()
+                : path.ids().getTenantId();
+
+        if (tenantId == null) {
+            return;
+        }
+
+        PendingChange change = new PendingChange(tenantId, System.currentTimeMillis(), action.asEnum(), path);
+
+        boolean queued;
+        try {
+            queued = queue.offer(change, ENQUEUE_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+
+        if (queued) {
+            recordedCount.incrementAndGet();
+        } else {
+            //the writer starts a new epoch, so that the consumers can find out about the lost change
+            lostCount.incrementAndGet();
+            Log.LOGGER.wChangeLogQueueFull(path, tenantId);
+        }
+    }
+
+    /**
+     * @return the number of changes that could not be written to the log, because the writer was falling behind
+     */
+    long getLostCount() {
+        return lostCount.get();
+    }
+
+    /**
+     * See {@link org.hawkular.inventory.api.Inventory#getChanges(String, long, int)}.
+     */
+    List<Change> read(String tenantId, long since, int limit) {
+        if (!isEnabled()) {
+            throw new IllegalStateException("The change log is not enabled. Set the '" +
+                    BaseInventory.CHANGE_LOG_DIRECTORY.getPropertyName() + "' configuration property to enable it.");
+        }
+
+        if (limit <= 0) {
+            throw new IllegalArgumentException("The limit must be positive.");
+        }
+
+        awaitWritten(recordedCount.get());
+
+        try {
+            return tenant(tenantId).read(since, limit);
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to read the change log of tenant '" + tenantId + "'.", e);
+        }
+    }
+
+    /**
+     * Stops accepting new changes, writes the changes still waiting in the queue and closes the log files.
+     */
+    @Override
+    public void close() {
+        if (writer == null) {
+            return;
+        }
+
+        running = false;
+
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        boolean clean = true;
+        for (TenantLog log : tenants.values()) {
+            try {
+                log.close();
+            } catch (IOException e) {
+                //nothing we can do about it here
+                clean = false;
+            }
+        }
+        tenants.clear();
+
+        if (clean) {
+            try {
+                Files.createDirectories(directory);
+                Files.write(directory.resolve(CLEAN_SHUTDOWN_FILE), new byte[0]);
+            } catch (IOException e) {
+                //the next start will start a new epoch, which is safe
+            }
+        }
+    }
+
+    /**
+     * Reads the epoch of the log and increments it if the log has not been closed cleanly.
+     */
+    private long openEpoch() throws IOException {
+        Path epochFile = directory.resolve(EPOCH_FILE);
+        Path cleanFile = directory.resolve(CLEAN_SHUTDOWN_FILE);
+
+        long stored = 0;
+        if (Files.exists(epochFile)) {
+            try {
+                stored = Long.parseLong(new String(Files.readAllBytes(epochFile), "UTF-8").trim());
+            } catch (NumberFormatException e) {
+                //a corrupted epoch file is handled just like the unclean shutdown
+            }
+        }
+
+        boolean clean = stored > 0 && Files.deleteIfExists(cleanFile);
+        if (clean) {
+            return stored;
+        }
+
+        Files.createDirectories(directory);
+        storeEpoch(stored + 1);
+        return stored + 1;
+    }
+
+    private void storeEpoch(long epoch) throws IOException {
+        //always synced, because the consumers must never see two different epochs with the same number
+        try (FileChannel ch = FileChannel.open(directory.resolve(EPOCH_FILE), StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ch.write(ByteBuffer.wrap(Long.toString(epoch).getBytes("UTF-8")));
+            ch.force(true);
+        }
+    }
+
+    private void awaitWritten(long count) {
+        synchronized (progress) {
+            while (writtenCount < count && writer.isAlive()) {
+                try {
+                    progress.wait(100);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+        }
+    }
+
+    private void writeLoop() {
+        List<PendingChange> batch = new ArrayList<>();
+        Set<TenantLog> written = Collections.newSetFromMap(new IdentityHashMap<>());
+        long knownLostCount = 0;
+
+        while (running || !queue.isEmpty()) {
+            try {
+                PendingChange first = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+
+                batch.add(first);
+                queue.drainTo(batch, MAX_BATCH_SIZE - 1);
+            } catch (InterruptedException e) {
+                //we're being shut down forcefully - write what we have and leave
+                running = false;
+                queue.drainTo(batch);
+            }
+
+            long lost = lostCount.get();
+            if (lost != knownLostCount) {
+                try {
+                    storeEpoch(epoch + 1);
+                    epoch++;
+                    knownLostCount = lost;
+                } catch (IOException e) {
+                    Log.LOGGER.wChangeLogEpochNotStored(epoch + 1, e);
+                }
+            }
+
+            for (PendingChange c : batch) {
+                try {
+                    TenantLog log = tenant(c.tenantId);
+                    log.append(epoch, c.timestamp, c.action, c.path);
+                    written.add(log);
+                } catch (IOException e) {
+                    Log.LOGGER.wChangeLogAppendFailed(c.path, c.tenantId, e);
+                }
+            }
+
+            //this is the durability point of the whole batch
+            for (TenantLog log : written) {
+                try {
+                    log.flush();
+                } catch (IOException e) {
+                    Log.LOGGER.wChangeLogAppendFailed(CanonicalPath.of().tenant(log.tenantId).get(), log.tenantId, e);
+                }
+            }
+
+            synchronized (progress) {
+                writtenCount += batch.size();
+                progress.notifyAll();
+            }
+
+            batch.clear();
+            written.clear();
+        }
+    }
+
+    private TenantLog tenant(String tenantId) throws IOException {
+        try {
+            //the log must only be opened once, because opening it cuts off the partially written record
+            return tenants.computeIfAbsent(tenantId, (id) -> {
+                try {
+                    return new TenantLog(id, directory.resolve(URLEncoder.encode(id, "UTF-8")));
+                } catch (UnsupportedEncodingException e) {
+                    throw new AssertionError("UTF-8 not supported.", e);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    private static Path segmentFile(Path directory, long firstSequenceNumber) {
+        return directory.resolve(String.format("%020d", firstSequenceNumber) + SEGMENT_SUFFIX);
+    }
+
+    /**
+     * Reads the changes from the stream until it's exhausted or a partially written record is encountered.
+     *
+     * @param in       the stream to read from
+     * @param consumer called for each change, should return false to stop the reading
+     * @return the number of bytes of the complete records read
+     */
+    private static long readRecords(InputStream in, RecordConsumer consumer) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        long position = 0;
+        while (true) {
+            Change change;
+            int length;
+            try {
+                length = data.readInt();
+                if (length <= 0 || length > MAX_RECORD_LENGTH) {
+                    //garbage after a partially written record
+                    return position;
+                }
+                byte[] record = new byte[length];
+                data.readFully(record);
+                change = decode(record);
+            } catch (EOFException e) {
+                return position;
+            }
+
+            if (change == null) {
+                return position;
+            }
+
+            position += 4 + length;
+
+            if (!consumer.accept(change)) {
+                return position;
+            }
+        }
+    }
+
+    private static byte[] encode(long epoch, long sequenceNumber, long timestamp, Action.Enumerated action,
+            CanonicalPath path) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0); //placeholder for the length
+        out.writeLong(epoch);
+        out.writeLong(sequenceNumber);
+        out.writeLong(timestamp);
+        out.writeByte(action.ordinal());
+        out.writeUTF(path.toString());
+        out.flush();
+
+        byte[] ret = bytes.toByteArray();
+        int length = ret.length - 4;
+        ret[0] = (byte) (length >>> 24);
+        ret[1] = (byte) (length >>> 16);
+        ret[2] = (byte) (length >>> 8);
+        ret[3] = (byte) length;
+
+        return ret;
+    }
+
+    /**
+     * @return the decoded change or null if the record is corrupted
+     */
+    private static Change decode(byte[] record) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            long epoch = in.readLong();
+            long sequenceNumber = in.readLong();
+            long timestamp = in.readLong();
+            int action = in.readByte();
+            if (action < 0 || action >= Action.Enumerated.values().length) {
+                return null;
+            }
+            CanonicalPath path = CanonicalPath.fromString(in.readUTF());
+
+            return new Change(epoch, sequenceNumber, timestamp, Action.Enumerated.values()[action], path);
+        } catch (EOFException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    @FunctionalInterface
+    private interface RecordConsumer {
+        boolean accept(Change change);
+    }
+
+    private static final class PendingChange {
+        final String tenantId;
+        final long timestamp;
+        final Action.Enumerated action;
+        final CanonicalPath path;
+
+        PendingChange(String tenantId, long timestamp, Action.Enumerated action, CanonicalPath path) {
+            this.tenantId = tenantId;
+            this.timestamp = timestamp;
+            this.action = action;
+            this.path = path;
+        }
+    }
+
+    private final class TenantLog {
+        private final String tenantId;
+        private final Path directory;
+
+        /**
+         * The segment files keyed by the sequence numbers of their first changes.
+         */
+        private final TreeMap<Long, Path> segments = new TreeMap<>();
+        private long nextSequenceNumber = 1;
+        private int currentSegmentCount;
+        private FileChannel channel;
+        private OutputStream out;
+
+        TenantLog(String tenantId, Path directory) throws IOException {
+            this.tenantId = tenantId;
+            this.directory = directory;
+
+            if (!Files.isDirectory(directory)) {
+                return;
+            }
+
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + SEGMENT_SUFFIX)) {
+                for (Path f : files) {
+                    String name = f.getFileName().toString();
+                    try {
+                        segments.put(Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length())), f);
+                    } catch (NumberFormatException e) {
+                        //not our file
+                    }
+                }
+            }
+
+            if (segments.isEmpty()) {
+                return;
+            }
+
+            Map.Entry<Long, Path> last = segments.lastEntry();
+            long[] lastSequenceNumber = {last.getKey() - 1};
+            int[] count = {0};
+
+            long validLength;
+            try (InputStream in = Files.newInputStream(last.getValue())) {
+                validLength = readRecords(in, (c) -> {
+                    lastSequenceNumber[0] = c.getSequenceNumber();
+                    count[0]++;
+                    return true;
+                });
+            }
+
+            //cut off the partially written record, if any
+            try (FileChannel ch = FileChannel.open(last.getValue(), StandardOpenOption.WRITE)) {
+                if (ch.size() > validLength) {
+                    ch.truncate(validLength);
+                }
+            }
+
+            nextSequenceNumber = lastSequenceNumber[0] + 1;
+            currentSegmentCount = count[0];
+        }
+
+        synchronized void append(long epoch, long timestamp, Action.Enumerated action, CanonicalPath path)
+                throws IOException {
+            if (out == null || currentSegmentCount >= segmentSize) {
+                roll();
+            }
+
+            out.write(encode(epoch, nextSequenceNumber, timestamp, action, path));
+
+            nextSequenceNumber++;
+            currentSegmentCount++;
+        }
+
+        /**
+         * Writes out the buffered changes and syncs them to the disk if configured to.
+         */
+        synchronized void flush() throws IOException {
+            if (out == null) {
+                return;
+            }
+
+            out.flush();
+            if (sync) {
+                channel.force(false);
+            }
+        }
+
+        List<Change> read(long since, int limit) throws IOException {
+            List<Path> files;
+            synchronized (this) {
+                if (segments.isEmpty()) {
+                    return Collections.emptyList();
+                }
+
+                //start with the segment that contains the first requested change
+                Long start = segments.floorKey(since + 1);
+                files = new ArrayList<>((start == null ? segments : segments.tailMap(start, true)).values());
+            }
+
+            List<Change> ret = new ArrayList<>();
+            for (Path f : files) {
+                try (InputStream in = Files.newInputStream(f)) {
+                    readRecords(in, (c) -> {
+                        if (c.getSequenceNumber() > since) {
+                            ret.add(c);
+                        }
+                        return ret.size() < limit;
+                    });
+                } catch (NoSuchFileException e) {
+                    //the segment has been deleted by the retention in the meantime
+                    continue;
+                }
+
+                if (ret.size() >= limit) {
+                    break;
+                }
+            }
+
+            return ret;
+        }
+
+        synchronized void close() throws IOException {
+            if (out != null) {
+                flush();
+                out.close();
+                out = null;
+                channel = null;
+            }
+        }
+
+        private void roll() throws IOException {
+            Files.createDirectories(directory);
+
+            Path file;
+            if (out == null && !segments.isEmpty() && currentSegmentCount < segmentSize) {
+                //continue in the last segment found on the disk
+                file = segments.lastEntry().getValue();
+            } else {
+                close();
+                file = segmentFile(directory, nextSequenceNumber);
+                segments.put(nextSequenceNumber, file);
+                currentSegmentCount = 0;
+
+                while (segments.size() > retainedSegments) {
+                    Files.deleteIfExists(segments.pollFirstEntry().getValue());
+                }
+            }
+
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.APPEND);
+            out = new BufferedOutputStream(Channels.newOutputStream(channel));
+        }
+    }
+}
@@ -32,9 +32,11 @@ import java.util.stream.Collectors;
 import org.hawkular.inventory.api.filters.Filter;
 import org.hawkular.inventory.api.filters.Related;
 import org.hawkular.inventory.api.filters.RelationWith;
+import org.hawkular.inventory.api.filters.With;
 import org.hawkular.inventory.api.model.CanonicalPath;
 import org.hawkular.inventory.api.model.Entity;
 import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.base.spi.NoopFilter;
 
 /**
@@ -144,6 +146,196 @@ public final class Query {
         return bld.get();
     }
 
+    /**
+     * Tries to find the canonical path of the single element the provided query resolves to.
+     *
+     * <p>This is the case if the query has no branches and only consists of the type and id filters of the
+     * individual entities on the path interleaved with hops over the "contains" relationship, i.e. it is the same as
+     * the query produced by {@link #to(CanonicalPath)} (modulo the exact placement of the filters and path fragments).
+     * The last entity on such path can also be pinned using a single {@link With.CanonicalPaths} filter, as long as
+     * the rest of the query agrees with it.
+     *
+     * <p>This enables the callers to look up such elements directly using {@link
+     * org.hawkular.inventory.base.spi.InventoryBackend#find(CanonicalPath)} instead of traversing the whole path.
+     *
+     * @param query the query to inspect
+     * @return the canonical path of the single element the query resolves to or null if the query cannot be
+     * represented as a canonical path
+     */
+    public static CanonicalPath canonicalPathOf(Query query) {
+        if (query == null || !query.getSubTrees().isEmpty() || query.getFragments() == null) {
+            return null;
+        }
+
+        QueryFragment[] fragments = query.getFragments();
+
+        List<Class<?>> types = new ArrayList<>();
+        List<String> ids = new ArrayList<>();
+        CanonicalPath pinned = null;
+        boolean relationship = false;
+        boolean first = true;
+
+        for (QueryFragment qf : fragments) {
+            Filter f = qf.getFilter();
+
+            if (f instanceof NoopFilter) {
+                continue;
+            }
+
+            if (relationship) {
+                //nothing can follow the id of the relationship
+                return null;
+            }
+
+            if (first) {
+                first = false;
+                if (f instanceof RelationWith.Ids) {
+                    String[] relIds = ((RelationWith.Ids) f).getIds();
+                    if (relIds.length != 1) {
+                        return null;
+                    }
+                    relationship = true;
+                    types.add(Relationship.class);
+                    ids.add(relIds[0]);
+                    continue;
+                }
+
+                types.add(null);
+                ids.add(null);
+            }
+
+            int last = types.size() - 1;
+
+            if (f instanceof With.Types) {
+                Class<?>[] ts = ((With.Types) f).getTypes();
+                if (ts.length != 1 || (types.get(last) != null && !types.get(last).equals(ts[0]))) {
+                    return null;
+                }
+                types.set(last, ts[0]);
+            } else if (f instanceof With.Ids) {
+                String[] is = ((With.Ids) f).getIds();
+                if (is.length != 1 || (ids.get(last) != null && !ids.get(last).equals(is[0]))) {
+                    return null;
+                }
+                ids.set(last, is[0]);
+            } else if (f instanceof With.CanonicalPaths) {
+                CanonicalPath[] ps = ((With.CanonicalPaths) f).getPaths();
+                if (ps.length != 1 || (pinned != null && !pinned.equals(ps[0]))) {
+                    return null;
+                }
+                pinned = ps[0];
+            } else if (f.getClass() == Related.class && qf instanceof PathFragment
+                    && contains.name().equals(((Related) f).getRelationshipName())
+                    && ((Related) f).getEntityRole() == Related.EntityRole.SOURCE
+                    && ((Related) f).getEntityPath() == null && ((Related) f).getRelationshipId() == null) {
+                if (pinned != null) {
+                    return null;
+                }
+                types.add(null);
+                ids.add(null);
+            } else {
+                return null;
+            }
+        }
+
+        if (types.isEmpty()) {
+            return null;
+        }
+
+        if (pinned != null) {
+            List<CanonicalPath.Segment> segments = pinned.getPath();
+            if (segments.size() != types.size()) {
+                return null;
+            }
+
+            for (int i = 0; i < segments.size(); ++i) {
+                CanonicalPath.Segment s = segments.get(i);
+                if ((types.get(i) != null && !types.get(i).equals(s.getElementType()))
+                        || (ids.get(i) != null && !ids.get(i).equals(s.getElementId()))) {
+                    return null;
+                }
+            }
+
+            return pinned;
+        }
+
+        try {
+            CanonicalPath.Extender ret = CanonicalPath.empty();
+            for (int i = 0; i < types.size(); ++i) {
+                Class<?> type = types.get(i);
+                String id = ids.get(i);
+                if (type == null || id == null) {
+                    return null;
+                }
+
+                ret = ret.extend(new CanonicalPath.Segment(type, id));
+            }
+
+            return ret.get();
+        } catch (IllegalArgumentException e) {
+            //the query doesn't follow the valid progression of types, so it doesn't resolve to anything. Let's leave
+            //it up to the caller to run the query.
+            return null;
+        }
+    }
+
+    /**
+     * Tries to find the tenant the provided query starts in. This is the case if the first entity on the query is
+     * pinned to a single tenant, either by the type and id filters or by the canonical paths.
+     *
+     * <p>Note that this doesn't mean that the query cannot leave the tenant, because a relationship can lead to an
+     * entity in a different tenant.
+     *
+     * @param query the query to inspect
+     * @return the id of the tenant the query starts in or null if it cannot be determined
+     */
+    public static String tenantOf(Query query) {
+        while (query != null && (query.getFragments() == null || query.getFragments().length == 0)) {
+            query = query.getSubTrees().size() == 1 ? query.getSubTrees().get(0) : null;
+        }
+
+        if (query == null) {
+            return null;
+        }
+
+        boolean tenantType = false;
+        String id = null;
+        String pinnedTenant = null;
+
+        for (QueryFragment qf : query.getFragments()) {
+            Filter f = qf.getFilter();
+
+            if (f instanceof Related) {
+                //the first entity on the path ends with the first hop
+                break;
+            }
+
+            if (f instanceof With.Types) {
+                Class<?>[] ts = ((With.Types) f).getTypes();
+                tenantType |= ts.length == 1 && Tenant.class.equals(ts[0]);
+            } else if (f instanceof With.Ids) {
+                String[] is = ((With.Ids) f).getIds();
+                if (is.length == 1) {
+                    id = is[0];
+                }
+            } else if (f instanceof With.CanonicalPaths) {
+                for (CanonicalPath p : ((With.CanonicalPaths) f).getPaths()) {
+                    String tenant = p.ids().getTenantId();
+                    if (tenant == null || (pinnedTenant != null && !pinnedTenant.equals(tenant))) {
+                        return null;
+                    }
+                    pinnedTenant = tenant;
+                }
+            }
+        }
+
+        if (pinnedTenant != null) {
+            return pinnedTenant;
+        }
+
+        return tenantType ? id : null;
+    }
+
     /**
      * @return an empty query
      */
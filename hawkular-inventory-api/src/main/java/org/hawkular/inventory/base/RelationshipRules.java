@@ -131,7 +131,7 @@ public final class RelationshipRules {
         }
 
         if (direction == Relationships.Direction.incoming) {
-            Iterator<E> closure = backend.getTransitiveClosureOver(origin, outgoing, relationship);
+            Iterator<E> closure = backend.getTransitiveClosureOver(origin, outgoing, -1, -1, relationship);
 
             while (closure.hasNext()) {
                 E e = closure.next();
@@ -142,7 +142,7 @@ public final class RelationshipRules {
                 }
             }
         } else if (direction == outgoing) {
-            Iterator<E> closure = backend.getTransitiveClosureOver(origin, incoming, relationship);
+            Iterator<E> closure = backend.getTransitiveClosureOver(origin, incoming, -1, -1, relationship);
 
             while (closure.hasNext()) {
                 E e = closure.next();
@@ -33,7 +33,7 @@ import org.hawkular.inventory.base.EntityAndPendingNotifications.Notification;
 import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.hawkular.inventory.base.spi.SwitchElementType;
 
-import rx.subjects.Subject;
+import rx.Observer;
 
 /**
  * Holds the data needed throughout the construction of inventory traversal.
@@ -237,10 +237,13 @@ public final class TraversalContext<BE, E extends AbstractElement<?, ?>> {
      * @param <V>           the type of the entity on which the action occurred
      */
     <C, V> void notify(V entity, C actionContext, Action<C, V> action) {
-        Iterator<Subject<C, C>> subjects = observableContext.matchingSubjects(action, entity);
-        while (subjects.hasNext()) {
-            Subject<C, C> s = subjects.next();
-            s.onNext(actionContext);
+        inventory.getEntityCache().invalidate(entity, action);
+        inventory.getChangeLog().record(entity, action);
+
+        Iterator<Observer<C>> observers = observableContext.matchingObservers(action, entity);
+        while (observers.hasNext()) {
+            Observer<C> o = observers.next();
+            o.onNext(actionContext);
         }
     }
 
@@ -46,6 +46,7 @@ import org.hawkular.inventory.api.model.Entity;
 import org.hawkular.inventory.api.model.Path;
 import org.hawkular.inventory.api.model.Relationship;
 import org.hawkular.inventory.api.model.RelativePath;
+import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.api.paging.Page;
 import org.hawkular.inventory.api.paging.Pager;
 import org.hawkular.inventory.base.EntityAndPendingNotifications.Notification;
@@ -71,9 +72,12 @@ final class Util {
 
         int maxFailures = context.getTransactionRetriesCount();
 
+        //only the writers can make use of knowing the tenant they're going to modify
+        String tenantId = readOnly ? null : writtenTenant(context);
+
         while (failures++ < maxFailures) {
             try {
-                InventoryBackend.Transaction t = context.backend.startTransaction(!readOnly);
+                InventoryBackend.Transaction t = context.backend.startTransaction(!readOnly, tenantId);
                 try {
                     R ret = payload.run(t);
                     if (readOnly) {
@@ -95,6 +99,22 @@ final class Util {
         throw new TransactionFailureException(lastException, failures);
     }
 
+    /**
+     * The writers confined to a single tenant can run concurrently with the writers in the other tenants. Creating or
+     * deleting the tenants themselves changes the structure of the whole graph though, so the writes to the tenant
+     * entities are never confined to the tenant.
+     *
+     * @param context the context of the writer
+     * @return the id of the tenant the writer modifies or null if it is not confined to a single tenant
+     */
+    private static String writtenTenant(TraversalContext<?, ?> context) {
+        if (Tenant.class.equals(context.entityClass)) {
+            return null;
+        }
+
+        return Query.tenantOf(context.select().get());
+    }
+
     @FunctionalInterface
     public interface PotentiallyCommittingPayload<R> {
         R run(InventoryBackend.Transaction t) throws CommitFailureException;
@@ -102,6 +122,16 @@ final class Util {
 
     public static <BE> BE getSingle(InventoryBackend<BE> backend, Query query,
             Class<? extends Entity<?, ?>> entityType) {
+        CanonicalPath path = Query.canonicalPathOf(query);
+        if (path != null) {
+            //the query leads to a single well-known element, so we can look it up directly instead of traversing to it
+            try {
+                return backend.find(path);
+            } catch (ElementNotFoundException e) {
+                throw new EntityNotFoundException(entityType, Query.filters(query));
+            }
+        }
+
         Page<BE> results = backend.query(query, Pager.single());
 
         if (results.isEmpty()) {
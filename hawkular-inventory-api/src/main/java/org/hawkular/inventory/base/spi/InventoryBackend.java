@@ -52,6 +52,23 @@ public interface InventoryBackend<E> extends AutoCloseable {
      */
     Transaction startTransaction(boolean mutating);
 
+    /**
+     * Starts a transaction in the backend, hinting at the tenant the transaction is going to work with.
+     *
+     * <p>The backends can use the hint to let the transactions in different tenants proceed concurrently. The hint is
+     * not a guarantee though - relationships can span tenants - so the backend must still be prepared for the
+     * transaction touching the data of other tenants.
+     *
+     * <p>The default implementation ignores the hint and calls {@link #startTransaction(boolean)}.
+     *
+     * @param mutating whether there will be calls mutating the data or not
+     * @param tenantId the id of the tenant the transaction works in or null if not known
+     * @return the newly started transaction
+     */
+    default Transaction startTransaction(boolean mutating, String tenantId) {
+        return startTransaction(mutating);
+    }
+
     /**
      * Tries to find an element at given canonical path.
      *
@@ -116,6 +133,25 @@ public interface InventoryBackend<E> extends AutoCloseable {
     Iterator<E> getTransitiveClosureOver(E startingPoint, Relationships.Direction direction,
             String... relationshipNames);
 
+    /**
+     * Similar to {@link #getTransitiveClosureOver(Object, Relationships.Direction, String...)} but the closure can
+     * be bounded and is guaranteed to be evaluated lazily, breadth-first, reporting each element only once. The
+     * starting point is not part of the closure.
+     *
+     * <p>Because the closure is evaluated on demand, the callers must not modify the relationships being followed
+     * while iterating over the results.
+     *
+     * @param startingPoint     the starting element
+     * @param direction         any of the valid directions including {@link Relationships.Direction#both}.
+     * @param maxDepth          the maximum distance of the returned elements from the starting point, -1 for unlimited
+     * @param maxBreadth        the maximum number of elements at the same distance from the starting point, -1 for
+     *                          unlimited
+     * @param relationshipNames the names of the relationships to follow when composing the transitive closure
+     * @return an iterator over the transitive closure
+     */
+    Iterator<E> getTransitiveClosureOver(E startingPoint, Relationships.Direction direction, int maxDepth,
+            int maxBreadth, String... relationshipNames);
+
     /**
      * Checks whether there exists any relationship in given direction relative to the given entity with given name.
      *
@@ -285,6 +321,33 @@ public interface InventoryBackend<E> extends AutoCloseable {
      */
     void deleteStructuredData(E dataRepresentation);
 
+    /**
+     * Returns the hash of the content of the entity and all the entities it (transitively) contains, as defined by
+     * {@link org.hawkular.inventory.api.model.ContentHash}. The hash enables the synchronization of the feeds to skip
+     * the unchanged subtrees.
+     *
+     * <p>The default implementation returns null, meaning that the backend doesn't maintain the content hashes and
+     * the entities need to be compared one by one.
+     *
+     * @param entity the backend-specific representation of the entity
+     * @return the content hash of the entity or null if not known
+     */
+    default Long getContentHash(E entity) {
+        return null;
+    }
+
+    /**
+     * Recomputes the content hashes of the provided feed and all the entities in it from their current contents,
+     * regardless of the hashes currently stored with them. The changes are not committed by this method.
+     *
+     * <p>The default implementation does nothing, because the backends not maintaining the content hashes have nothing
+     * to recompute.
+     *
+     * @param feed the backend-specific representation of the feed
+     */
+    default void rebuildContentHashes(E feed) {
+    }
+
     /**
      * Commits the transaction.
      * @param transaction the transaction to commit
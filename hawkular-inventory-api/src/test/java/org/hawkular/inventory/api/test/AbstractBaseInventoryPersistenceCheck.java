@@ -17,6 +17,7 @@
 package org.hawkular.inventory.api.test;
 
 import static java.util.Arrays.asList;
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 import static org.hamcrest.core.IsEqual.equalTo;
@@ -48,8 +49,13 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Properties;
+import java.util.Scanner;
 import java.util.Set;
 import java.util.Spliterators;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiFunction;
 import java.util.function.Consumer;
 import java.util.function.Function;
@@ -57,13 +63,19 @@ import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 
 import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.Change;
 import org.hawkular.inventory.api.Configuration;
 import org.hawkular.inventory.api.Data;
+import org.hawkular.inventory.api.DeleteJob;
+import org.hawkular.inventory.api.EntityAlreadyExistsException;
 import org.hawkular.inventory.api.EntityNotFoundException;
 import org.hawkular.inventory.api.Environments;
 import org.hawkular.inventory.api.FeedAlreadyRegisteredException;
+import org.hawkular.inventory.api.FeedSync;
 import org.hawkular.inventory.api.Feeds;
 import org.hawkular.inventory.api.Interest;
+import org.hawkular.inventory.api.MetricTypes;
 import org.hawkular.inventory.api.Metrics;
 import org.hawkular.inventory.api.RelationNotFoundException;
 import org.hawkular.inventory.api.Relationships;
@@ -99,10 +111,12 @@ import org.hawkular.inventory.api.model.StructuredData;
 import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.api.paging.Order;
 import org.hawkular.inventory.api.paging.Page;
+import org.hawkular.inventory.api.paging.PageContext;
 import org.hawkular.inventory.api.paging.Pager;
 import org.hawkular.inventory.base.BaseInventory;
 import org.hawkular.inventory.base.PathFragment;
 import org.hawkular.inventory.base.Query;
+import org.hawkular.inventory.base.spi.ElementNotFoundException;
 import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.junit.After;
 import org.junit.Assert;
@@ -122,6 +136,14 @@ public abstract class AbstractBaseInventoryPersistenceCheck<E> {
 
     protected abstract void destroyStorage() throws Exception;
 
+    /**
+     * Subclasses can use this to modify the configuration of the inventory before it is initialized.
+     *
+     * @param configuration the configuration properties loaded from the file in the "graph.config" system property
+     */
+    protected void configure(Properties configuration) {
+    }
+
     @Before
     public void setup() throws Exception {
         Properties ps = new Properties();
@@ -129,6 +151,8 @@ public abstract class AbstractBaseInventoryPersistenceCheck<E> {
             ps.load(f);
         }
 
+        configure(ps);
+
         Configuration config = Configuration.builder().withFeedIdStrategy(
                 new AcceptWithFallbackFeedIdStrategy(new RandomUUIDFeedIdStrategy()))
                 .withConfiguration(ps)
@@ -1237,6 +1261,206 @@ public abstract class AbstractBaseInventoryPersistenceCheck<E> {
         assert ms.size() == 0;
     }
 
+    @Test
+    public void testPagingWithoutExactTotal() throws Exception {
+        Metrics.Multiple metrics = inventory.tenants().getAll().environments().getAll().feedlessMetrics().getAll();
+
+        Pager firstPage = new Pager(0, 1, PageContext.TotalSizeMode.NONE, Order.by("id", Order.Direction.DESCENDING));
+
+        Page<Metric> ms = metrics.entities(firstPage);
+        Assert.assertEquals(1, ms.size());
+        Assert.assertEquals(-1, ms.getTotalSize());
+
+        ms = metrics.entities(firstPage.nextPage().nextPage().nextPage());
+        Assert.assertTrue(ms.isEmpty());
+        Assert.assertEquals(-1, ms.getTotalSize());
+
+        firstPage = new Pager(0, 1, PageContext.TotalSizeMode.ESTIMATED, Order.by("id", Order.Direction.DESCENDING));
+
+        ms = metrics.entities(firstPage);
+        Assert.assertEquals(1, ms.size());
+        //there are more results than the single page, so the estimate should say there's at least one more
+        Assert.assertEquals(2, ms.getTotalSize());
+
+        ms = metrics.entities(firstPage.nextPage().nextPage());
+        Assert.assertEquals(1, ms.size());
+        //this is the last page, so the estimate is exact
+        Assert.assertEquals(3, ms.getTotalSize());
+    }
+
+    @Test
+    public void testKeysetPaging() throws Exception {
+        Metrics.Multiple metrics = inventory.tenants().getAll().environments().getAll().feedlessMetrics().getAll();
+
+        List<String> all = metrics.entities(Pager.unlimited(Order.by("id", Order.Direction.DESCENDING))).stream()
+                .map(Metric::getId).collect(toList());
+
+        List<String> keyset = new ArrayList<>();
+
+        Page<Metric> ms = metrics.entities(Pager.keyset(1, null, Order.by("id", Order.Direction.DESCENDING)));
+        Assert.assertEquals(1, ms.size());
+        keyset.add(ms.get(0).getId());
+
+        while (ms.getContinuation() != null) {
+            ms = metrics.entities(Pager.keyset(1, ms.getContinuation(), Order.by("id", Order.Direction.DESCENDING)));
+            Assert.assertEquals(1, ms.size());
+            keyset.add(ms.get(0).getId());
+        }
+
+        Assert.assertEquals(all, keyset);
+
+        try {
+            metrics.entities(Pager.keyset(1, "not a token", Order.by("id", Order.Direction.DESCENDING)));
+            Assert.fail("Invalid continuation token should have been rejected.");
+        } catch (IllegalArgumentException e) {
+            //good
+        }
+    }
+
+    @Test
+    public void testGraphSONExport() throws Exception {
+        String graphSON;
+        try (Scanner scanner = new Scanner(inventory.getGraphSON("com.acme.tenant"), "UTF-8")) {
+            graphSON = scanner.useDelimiter("\\A").next();
+        }
+
+        assert graphSON.contains("\"/t;com.acme.tenant\"");
+        assert graphSON.contains("\"/t;com.acme.tenant/e;production/f;feed1\"");
+        assert !graphSON.contains("com.example.tenant") : "GraphSON of one tenant should not contain other tenants";
+
+        try {
+            inventory.getGraphSON("non-existent");
+            assert false : "Exporting a non-existent tenant should fail";
+        } catch (EntityNotFoundException e) {
+            //good
+        }
+    }
+
+    @Test
+    public void testBoundedTransitiveClosure() throws Exception {
+        InventoryBackend<E> backend = inventory.getBackend();
+        CanonicalPath tenantPath = CanonicalPath.of().tenant("com.acme.tenant").get();
+        E tenant = backend.find(tenantPath);
+
+        List<CanonicalPath> all = new ArrayList<>();
+        backend.getTransitiveClosureOver(tenant, outgoing, -1, -1, contains.name())
+                .forEachRemaining(e -> all.add(backend.extractCanonicalPath(e)));
+
+        List<CanonicalPath> children = new ArrayList<>();
+        backend.getTransitiveClosureOver(tenant, outgoing, 1, -1, contains.name())
+                .forEachRemaining(e -> children.add(backend.extractCanonicalPath(e)));
+
+        Assert.assertEquals("Each element should be reported only once", new HashSet<>(all).size(), all.size());
+        Assert.assertTrue(all.size() > children.size());
+        Assert.assertFalse(all.contains(tenantPath));
+        children.forEach(p -> Assert.assertEquals(tenantPath, p.up()));
+
+        //the closure is breadth-first, so the direct children come first
+        Assert.assertEquals(children, all.subList(0, children.size()));
+
+        List<CanonicalPath> narrow = new ArrayList<>();
+        backend.getTransitiveClosureOver(tenant, outgoing, 2, 1, contains.name())
+                .forEachRemaining(e -> narrow.add(backend.extractCanonicalPath(e)));
+
+        //at most 1 element on each of the 2 levels
+        Assert.assertTrue(!narrow.isEmpty() && narrow.size() <= 2);
+        Assert.assertEquals(tenantPath, narrow.get(0).up());
+        if (narrow.size() == 2) {
+            Assert.assertEquals(narrow.get(0), narrow.get(1).up());
+        }
+
+        Assert.assertFalse(backend.getTransitiveClosureOver(tenant, outgoing, 0, -1, contains.name()).hasNext());
+    }
+
+    @Test
+    public void testBulkCreate() throws Exception {
+        CanonicalPath tenant = CanonicalPath.of().tenant("bulk").get();
+        CanonicalPath env = tenant.extend(Environment.class, "env").get();
+        CanonicalPath res = env.extend(Resource.class, "res").get();
+        CanonicalPath metric = env.extend(Metric.class, "m").get();
+
+        try {
+            //the blueprints are deliberately out of order, children before parents
+            BulkCreate.Result result = inventory.createBulk(BulkCreate.builder()
+                    .create(res, new Relationship.Blueprint(outgoing, "bulkRel", metric, null))
+                    .create(res, new Resource.Blueprint("child", "/rt"))
+                    .create(env, new Resource.Blueprint("res", "/rt"))
+                    .create(env, new Metric.Blueprint("/mt", "m"))
+                    .create(env, new Metric.Blueprint("/nonexistent", "failing"))
+                    .create(tenant, Environment.Blueprint.builder().withId("env").build())
+                    .create(tenant, new ResourceType.Blueprint("rt"))
+                    .create(tenant, new MetricType.Blueprint("mt", MetricUnit.BYTES, MetricDataType.COUNTER))
+                    .create(null, new Tenant.Blueprint("bulk"))
+                    .create(null, new Tenant.Blueprint("bulk"))
+                    .withChunkSize(3).build());
+
+            Assert.assertFalse(result.isSuccess());
+            Assert.assertEquals(10, result.getEntries().size());
+
+            List<BulkCreate.Entry> failures = result.getEntries().stream().filter((e) -> !e.isSuccess())
+                    .collect(toList());
+            Assert.assertEquals(2, failures.size());
+            Assert.assertTrue(failures.stream()
+                    .anyMatch((e) -> e.getError() instanceof EntityAlreadyExistsException));
+            Assert.assertTrue(failures.stream().anyMatch((e) -> e.getError() instanceof IllegalArgumentException));
+
+            Assert.assertTrue(inventory.inspect(res.extend(Resource.class, "child").get(), Resources.Single.class)
+                    .exists());
+            Assert.assertTrue(inventory.inspect(metric, Metrics.Single.class).exists());
+            Assert.assertFalse(inventory.inspect(env.extend(Metric.class, "failing").get(), Metrics.Single.class)
+                    .exists());
+            Assert.assertEquals(1, inventory.inspect(res, Resources.Single.class).relationships(outgoing)
+                    .named("bulkRel").entities().size());
+        } finally {
+            inventory.tenants().delete("bulk");
+        }
+    }
+
+    @Test
+    public void testAsyncDelete() throws Exception {
+        CanonicalPath tenant = CanonicalPath.of().tenant("asyncDelete").get();
+        CanonicalPath env = tenant.extend(Environment.class, "env").get();
+
+        BulkCreate.Builder bulk = BulkCreate.builder()
+                .create(null, new Tenant.Blueprint("asyncDelete"))
+                .create(tenant, Environment.Blueprint.builder().withId("env").build())
+                .create(tenant, new ResourceType.Blueprint("rt"));
+
+        for (int i = 0; i < 10; ++i) {
+            CanonicalPath res = env.extend(Resource.class, "res" + i).get();
+            bulk.create(env, new Resource.Blueprint("res" + i, "/rt"));
+            bulk.create(res, new Resource.Blueprint("child", "/rt"));
+        }
+
+        try {
+            Assert.assertTrue(inventory.createBulk(bulk.build()).isSuccess());
+
+            try {
+                inventory.deleteAsync(env.extend(Resource.class, "nonexistent").get());
+                Assert.fail("Starting a delete job of a non-existent entity should fail.");
+            } catch (EntityNotFoundException e) {
+                //good
+            }
+
+            DeleteJob job = inventory.deleteAsync(env);
+            Assert.assertNotNull(job.getId());
+            Assert.assertEquals(env, job.getPath());
+            Assert.assertSame(job, inventory.getDeleteJob(job.getId()));
+
+            Assert.assertTrue(job.await(30, TimeUnit.SECONDS));
+            Assert.assertEquals(DeleteJob.Status.FINISHED, job.getStatus());
+            Assert.assertNull(job.getError());
+            Assert.assertEquals(21, job.getTotalCount());
+            Assert.assertEquals(21, job.getDeletedCount());
+
+            Assert.assertFalse(inventory.inspect(env, Environments.Single.class).exists());
+            Assert.assertTrue(inventory.inspect(tenant.extend(ResourceType.class, "rt").get(),
+                    ResourceTypes.Single.class).exists());
+        } finally {
+            inventory.tenants().delete("asyncDelete");
+        }
+    }
+
     @Test
     public void testGettingResourcesFromFeedsUsingEnvironments() throws Exception {
         Set<Resource> rs = inventory.tenants().get("com.acme.tenant").environments().get("production").allResources()
@@ -1248,6 +1472,23 @@ public abstract class AbstractBaseInventoryPersistenceCheck<E> {
         Assert.assertTrue(rs.stream().anyMatch((r) -> "feedResource3".equals(r.getId())));
     }
 
+    @Test
+    public void testRecurringQueriesWithDifferentParameters() throws Exception {
+        //the queries below have the same structure and therefore share the translation, which must not leak the
+        //parameters of one query to the other
+        Set<String> acme = inventory.tenants().get("com.acme.tenant").environments().get("production")
+                .allResources().getAll().entities().stream().map(AbstractElement::getId).collect(toSet());
+        Set<String> example = inventory.tenants().get("com.example.tenant").environments().get("test")
+                .allResources().getAll().entities().stream().map(AbstractElement::getId).collect(toSet());
+
+        Assert.assertTrue(acme.contains("host1"));
+        Assert.assertTrue(acme.contains("feedResource1"));
+        Assert.assertFalse(acme.contains("playroom1"));
+        Assert.assertTrue(example.contains("playroom1"));
+        Assert.assertFalse(example.contains("host1"));
+        Assert.assertFalse(example.contains("feedResource1"));
+    }
+
     @Test
     public void testGettingMetricsFromFeedsUsingEnvironments() throws Exception {
         Set<Metric> rs = inventory.tenants().get("com.acme.tenant").environments().get("production").allMetrics()
@@ -1484,6 +1725,23 @@ public abstract class AbstractBaseInventoryPersistenceCheck<E> {
         }
     }
 
+    @Test
+    public void testInspectMetricTypeInFeed() throws Exception {
+        Feed feed = inventory.tenants().get("com.acme.tenant").environments().get("production").feeds()
+                .create(Feed.Blueprint.builder().withId("inspectMetricTypeFeed").build()).entity();
+        try {
+            inventory.inspect(feed.getPath(), Feeds.Single.class).metricTypes()
+                    .create(new MetricType.Blueprint("feedMetricType", MetricUnit.BYTES, MetricDataType.GAUGE));
+
+            CanonicalPath mt = feed.getPath().extend(MetricType.class, "feedMetricType").get();
+
+            MetricTypes.Single access = inventory.inspect(mt, MetricTypes.Single.class);
+            Assert.assertEquals(mt, access.entity().getPath());
+        } finally {
+            inventory.inspect(feed.getPath(), Feeds.Single.class).delete();
+        }
+    }
+
     @Test
     public void testObserveTenants() throws Exception {
         runObserverTest(Tenant.class, 0, 0, () -> {
@@ -1656,6 +1914,249 @@ public abstract class AbstractBaseInventoryPersistenceCheck<E> {
         Assert.assertEquals("ResponseTime", mt.getId());
     }
 
+    @Test
+    public void testBackendFindNonExistent() throws Exception {
+        InventoryBackend<E> backend = inventory.getBackend();
+
+        try {
+            backend.find(CanonicalPath.of().tenant("com.acme.tenant").environment("non-existent").get());
+            Assert.fail("Finding a non-existent entity should have failed.");
+        } catch (ElementNotFoundException e) {
+            //good
+        }
+    }
+
+    @Test
+    public void testBackendFindRelationship() throws Exception {
+        InventoryBackend<E> backend = inventory.getBackend();
+
+        Relationship rel = inventory.tenants().get("com.acme.tenant").environments().get("production")
+                .relationships().named(contains).entities().iterator().next();
+
+        E entity = backend.find(rel.getPath());
+        Relationship found = backend.convert(entity, Relationship.class);
+        Assert.assertEquals(rel.getId(), found.getId());
+        Assert.assertEquals(rel.getSource(), found.getSource());
+        Assert.assertEquals(rel.getTarget(), found.getTarget());
+    }
+
+    @Test
+    public void testCanonicalPathOfQuery() throws Exception {
+        CanonicalPath envPath = CanonicalPath.of().tenant("com.acme.tenant").environment("production").get();
+        CanonicalPath resourcePath = envPath.extend(Resource.class, "host1").get();
+
+        Assert.assertEquals(resourcePath, Query.canonicalPathOf(Query.to(resourcePath)));
+
+        Query q = Query.path().with(type(Tenant.class)).filter().with(id("com.acme.tenant")).path()
+                .with(by(contains), type(Environment.class)).filter().with(id("production")).get();
+        Assert.assertEquals(envPath, Query.canonicalPathOf(q));
+
+        q = Query.path().with(type(Tenant.class), id("com.acme.tenant"), by(contains), type(Environment.class))
+                .filter().with(With.path(envPath)).get();
+        Assert.assertEquals(envPath, Query.canonicalPathOf(q));
+
+        q = Query.path().with(type(Tenant.class), id("com.acme.tenant"), by(contains), type(Feed.class))
+                .filter().with(With.path(envPath)).get();
+        Assert.assertNull(Query.canonicalPathOf(q));
+
+        q = Query.path().with(type(Tenant.class), id("com.acme.tenant"), by(contains), type(Environment.class))
+                .get();
+        Assert.assertNull(Query.canonicalPathOf(q));
+
+        q = Query.path().with(type(Tenant.class), id("com.acme.tenant")).filter().with(by(contains)).get();
+        Assert.assertNull(Query.canonicalPathOf(q));
+
+        q = Query.path().with(type(Tenant.class), With.ids("com.acme.tenant", "com.example.tenant")).get();
+        Assert.assertNull(Query.canonicalPathOf(q));
+    }
+
+    @Test
+    public void testTenantOfQuery() throws Exception {
+        CanonicalPath envPath = CanonicalPath.of().tenant("com.acme.tenant").environment("production").get();
+
+        Assert.assertEquals("com.acme.tenant", Query.tenantOf(Query.to(envPath.extend(Resource.class, "host1")
+                .get())));
+        Assert.assertEquals("com.acme.tenant", Query.tenantOf(Query.path().with(With.path(envPath)).get()));
+        Assert.assertEquals("com.acme.tenant", Query.tenantOf(Query.path().with(type(Tenant.class)).filter()
+                .with(id("com.acme.tenant")).get()));
+
+        Assert.assertNull(Query.tenantOf(Query.empty()));
+        Assert.assertNull(Query.tenantOf(Query.path().with(type(Tenant.class)).get()));
+        Assert.assertNull(Query.tenantOf(Query.path().with(type(Tenant.class),
+                With.ids("com.acme.tenant", "com.example.tenant")).get()));
+        Assert.assertNull(Query.tenantOf(Query.path().with(type(Tenant.class), by(contains), id("com.acme.tenant"))
+                .get()));
+    }
+
+    @Test
+    public void testConcurrentWritesInDifferentTenants() throws Exception {
+        List<String> tenants = asList("concurrent1", "concurrent2", "concurrent3");
+        tenants.forEach((t) -> inventory.tenants().create(new Tenant.Blueprint(t)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(tenants.size());
+        try {
+            List<Future<?>> writers = tenants.stream().map((t) -> executor.submit(() -> {
+                for (int i = 0; i < 10; ++i) {
+                    inventory.tenants().get(t).environments()
+                            .create(Environment.Blueprint.builder().withId("env" + i).build());
+                }
+            })).collect(toList());
+
+            for (Future<?> w : writers) {
+                w.get(30, TimeUnit.SECONDS);
+            }
+
+            for (String t : tenants) {
+                Assert.assertEquals(10, inventory.tenants().get(t).environments().getAll().entities().size());
+            }
+        } finally {
+            executor.shutdownNow();
+            tenants.forEach((t) -> inventory.tenants().delete(t));
+        }
+    }
+
+    @Test
+    public void testFeedSynchronization() throws Exception {
+        String tenantId = "testFeedSynchronization";
+        inventory.tenants().create(new Tenant.Blueprint(tenantId));
+        try {
+            Feed f = inventory.tenants().get(tenantId).environments().create(new Environment.Blueprint("env"))
+                    .feeds().create(Feed.Blueprint.builder().withId("feed").build()).entity();
+            CanonicalPath feed = f.getPath();
+            CanonicalPath rt = feed.extend(ResourceType.class, "rt").get();
+            CanonicalPath mt = feed.extend(MetricType.class, "mt").get();
+            CanonicalPath res = feed.extend(Resource.class, "r").get();
+            CanonicalPath metric = feed.extend(Metric.class, "m").get();
+
+            Function<String, FeedSync.Builder> contents = (value) -> FeedSync.builder()
+                    .add(FeedSync.Node.of(ResourceType.Blueprint.builder().withId("rt").build()))
+                    .add(FeedSync.Node.of(new MetricType.Blueprint("mt", MetricUnit.BYTES, MetricDataType.GAUGE)))
+                    .add(FeedSync.Node.of(Resource.Blueprint.builder().withId("r").withResourceTypePath(rt.toString())
+                                    .withProperty("value", value).build(),
+                            FeedSync.Node.of(DataEntity.Blueprint.<Resources.DataRole>builder()
+                                    .withRole(configuration).withValue(StructuredData.get().string(value)).build())));
+
+            FeedSync.Result result = inventory.synchronize(feed, contents.apply("a")
+                    .add(FeedSync.Node.of(Metric.Blueprint.builder().withId("m").withMetricTypePath(mt.toString())
+                            .build())).build());
+            Assert.assertTrue(result.getCreated().isSuccess());
+            Assert.assertEquals(5, result.getCreated().getEntries().size());
+
+            //nothing changed
+            result = inventory.synchronize(feed, contents.apply("a")
+                    .add(FeedSync.Node.of(Metric.Blueprint.builder().withId("m").withMetricTypePath(mt.toString())
+                            .build())).build());
+            Assert.assertTrue(result.isUnchanged());
+            Assert.assertEquals(5, result.getUnchangedCount());
+            //if the backend maintains the hashes, the whole feed is skipped based on its hash
+            Assert.assertEquals(backend().getContentHash(backend().find(feed)) == null ? 5 : 0,
+                    result.getComparedCount());
+
+            //the incrementally maintained hashes are the same as the ones computed from scratch
+            Long hash = backend().getContentHash(backend().find(feed));
+            inventory.rebuildContentHashes(feed);
+            Assert.assertEquals(hash, backend().getContentHash(backend().find(feed)));
+
+            //the resource and its data changed, the metric is gone
+            result = inventory.synchronize(feed, contents.apply("b").build());
+            Assert.assertEquals(asList(res, res.extend(DataEntity.class, configuration.name()).get()),
+                    result.getUpdated());
+            Assert.assertEquals(Collections.singletonList(metric), result.getDeleted());
+            Assert.assertTrue(result.getCreated().getEntries().isEmpty());
+
+            Resources.Single r = inventory.inspect(res, Resources.Single.class);
+            Assert.assertEquals("b", r.entity().getProperties().get("value"));
+            Assert.assertEquals("b", r.data().get(configuration).entity().getValue().string());
+            Assert.assertFalse(inventory.inspect(feed, Feeds.Single.class).metrics().get("m").exists());
+            Assert.assertTrue(inventory.inspect(mt, ResolvableToSingle.class).exists());
+        } finally {
+            inventory.tenants().delete(tenantId);
+        }
+    }
+
+    @Test
+    public void testFeedSynchronizationReplacingMetricType() throws Exception {
+        String tenantId = "testFeedSynchronizationReplacingMetricType";
+        inventory.tenants().create(new Tenant.Blueprint(tenantId));
+        try {
+            CanonicalPath feed = inventory.tenants().get(tenantId).environments()
+                    .create(new Environment.Blueprint("env")).feeds()
+                    .create(Feed.Blueprint.builder().withId("feed").build()).entity().getPath();
+            CanonicalPath mt = feed.extend(MetricType.class, "mt").get();
+            CanonicalPath metric = feed.extend(Metric.class, "m").get();
+
+            Function<MetricDataType, FeedSync> contents = (dataType) -> FeedSync.builder()
+                    .add(FeedSync.Node.of(new MetricType.Blueprint("mt", MetricUnit.BYTES, dataType)))
+                    .add(FeedSync.Node.of(Metric.Blueprint.builder().withId("m").withMetricTypePath(mt.toString())
+                            .build())).build();
+
+            Assert.assertTrue(inventory.synchronize(feed, contents.apply(MetricDataType.GAUGE)).getCreated()
+                    .isSuccess());
+
+            //the data type cannot be updated, so the type is replaced and so is the unchanged metric it defines
+            FeedSync.Result result = inventory.synchronize(feed, contents.apply(MetricDataType.COUNTER));
+            Assert.assertEquals(new HashSet<>(asList(mt, metric)), new HashSet<>(result.getDeleted()));
+            Assert.assertTrue(result.getUpdated().isEmpty());
+            Assert.assertTrue(result.getCreated().isSuccess());
+            Assert.assertEquals(2, result.getCreated().getEntries().size());
+            Assert.assertEquals(0, result.getUnchangedCount());
+
+            Assert.assertEquals(MetricDataType.COUNTER, inventory.inspect(metric, Metrics.Single.class).entity()
+                    .getType().getType());
+
+            result = inventory.synchronize(feed, contents.apply(MetricDataType.COUNTER));
+            Assert.assertTrue(result.isUnchanged());
+        } finally {
+            inventory.tenants().delete(tenantId);
+        }
+    }
+
+    private InventoryBackend<E> backend() {
+        return inventory.getBackend();
+    }
+
+    @Test
+    public void testChangeLog() throws Exception {
+        try {
+            inventory.getChanges("com.acme.tenant", 0, 1);
+        } catch (IllegalStateException e) {
+            //the change log is not enabled in this configuration
+            return;
+        }
+
+        String tenantId = "testChangeLog";
+        CanonicalPath tenant = CanonicalPath.of().tenant(tenantId).get();
+        CanonicalPath env = tenant.extend(Environment.class, "env").get();
+
+        inventory.tenants().create(new Tenant.Blueprint(tenantId));
+        try {
+            inventory.tenants().get(tenantId).environments().create(new Environment.Blueprint("env"));
+            inventory.inspect(env, Environments.Single.class).update(Environment.Update.builder()
+                    .withProperty("a", "b").build());
+
+            List<Change> changes = inventory.getChanges(tenantId, 0, 100);
+
+            for (int i = 0; i < changes.size(); ++i) {
+                Assert.assertEquals(i + 1, changes.get(i).getSequenceNumber());
+            }
+
+            Assert.assertEquals(tenant, changes.get(0).getPath());
+            Assert.assertEquals(Action.Enumerated.CREATED, changes.get(0).getAction());
+
+            Change last = changes.get(changes.size() - 1);
+            Assert.assertEquals(env, last.getPath());
+            Assert.assertEquals(Action.Enumerated.UPDATED, last.getAction());
+            Assert.assertTrue(changes.stream().anyMatch((c) -> env.equals(c.getPath())
+                    && c.getAction() == Action.Enumerated.CREATED));
+
+            Assert.assertEquals(changes.subList(1, 2).stream().map(Change::getPath).collect(toList()),
+                    inventory.getChanges(tenantId, 1, 1).stream().map(Change::getPath).collect(toList()));
+            Assert.assertTrue(inventory.getChanges(tenantId, last.getSequenceNumber(), 100).isEmpty());
+        } finally {
+            inventory.tenants().delete(tenantId);
+        }
+    }
+
     @Test
     public void testBackendGetRelationship() throws Exception {
         InventoryBackend<E> backend = inventory.getBackend();
@@ -1669,6 +2170,26 @@ public abstract class AbstractBaseInventoryPersistenceCheck<E> {
         Assert.assertEquals("com.acme.tenant", rel.getSource().getSegment().getElementId());
         Assert.assertEquals("production", rel.getTarget().getSegment().getElementId());
         Assert.assertEquals("contains", rel.getName());
+        Assert.assertTrue("Internal properties leaked: " + rel.getProperties(), rel.getProperties().isEmpty());
+
+        Assert.assertTrue(backend.hasRelationship(tenant, environment, contains.name()));
+        Assert.assertFalse(backend.hasRelationship(environment, tenant, contains.name()));
+    }
+
+    @Test
+    public void testRelationshipsById() throws Exception {
+        Relationship r1 = inventory.tenants().get("com.acme.tenant").relationships(outgoing).named(contains)
+                .entities().iterator().next();
+        Relationship r2 = inventory.tenants().get("com.example.tenant").relationships(outgoing).named(contains)
+                .entities().iterator().next();
+
+        Assert.assertEquals(r1, inventory.relationships().get(r1.getId()).entity());
+
+        Set<Relationship> rels = inventory.relationships().getAll(RelationWith.ids(r1.getId(), r2.getId()))
+                .entities();
+        Assert.assertEquals(new HashSet<>(asList(r1, r2)), rels);
+
+        Assert.assertTrue(inventory.relationships().getAll(RelationWith.ids("non-existent")).entities().isEmpty());
     }
 
     @Test
@@ -31,6 +31,7 @@ import org.hawkular.inventory.api.model.Path;
 import org.hawkular.inventory.api.model.Relationship;
 import org.hawkular.inventory.api.model.RelativePath;
 import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
 import org.hawkular.inventory.api.model.Tenant;
 import org.junit.Assert;
 import org.junit.Test;
@@ -347,6 +348,38 @@ public class CanonicalPathTest {
         Assert.assertEquals("/t;t/e;e/f;f/m;%2Fg;", mp.toString());
     }
 
+    @Test
+    public void testRepeatedParsingIsConsistent() throws Exception {
+        String str = "/t;t/e;e/f;f/r;r%2F1/r;r%252";
+        CanonicalPath p1 = CanonicalPath.fromString(str);
+        CanonicalPath p2 = CanonicalPath.fromString(str);
+
+        Assert.assertEquals(p1, p2);
+        Assert.assertEquals(p1.hashCode(), p2.hashCode());
+        Assert.assertEquals(str, p1.toString());
+        Assert.assertEquals(str, p2.toString());
+        checkPath(p2, Tenant.class, "t", Environment.class, "e", Feed.class, "f", Resource.class, "r/1",
+                Resource.class, "r%2");
+
+        //the paths derived from a cached one must not affect it
+        CanonicalPath child = p1.extend(Resource.class, "c").get();
+        Assert.assertEquals(str + "/r;c", child.toString());
+        Assert.assertEquals(str, CanonicalPath.fromString(str).toString());
+        Assert.assertEquals("/t;t/e;e", p1.up(3).toString());
+
+        //ids without anything to encode or decode
+        CanonicalPath plain = CanonicalPath.of().tenant("tenant").environment("env").get();
+        Assert.assertEquals("/t;tenant/e;env", plain.toString());
+        Assert.assertEquals(plain, CanonicalPath.fromString("/t;tenant/e;env"));
+
+        //ids that look like type names
+        checkPath(CanonicalPath.fromString("/t;rt/rt;t"), Tenant.class, "rt", ResourceType.class, "t");
+
+        RelativePath rp = RelativePath.fromString("../../r;x%2Fy");
+        Assert.assertEquals("../../r;x%2Fy", rp.toString());
+        Assert.assertEquals(rp, RelativePath.fromString(rp.toString()));
+    }
+
     @SuppressWarnings("unchecked")
     private void checkPath(CanonicalPath path, Object... pathSpec) {
         Assert.assertEquals(pathSpec.length / 2, path.getPath().size());
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.Tenant;
+import org.junit.Test;
+
+/**
+ * @author agent
+ * @since 0.2.1
+ */
+public class EntityCacheTest {
+
+    private static final CanonicalPath TENANT = CanonicalPath.of().tenant("t").get();
+    private static final CanonicalPath ENV = TENANT.extend(Environment.class, "e").get();
+    private static final CanonicalPath TYPE = TENANT.extend(ResourceType.class, "rt").get();
+    private static final CanonicalPath OTHER_TYPE = TENANT.extend(ResourceType.class, "ort").get();
+    private static final CanonicalPath PARENT = ENV.extend(Resource.class, "parent").get();
+    private static final CanonicalPath CHILD = PARENT.extend(Resource.class, "child").get();
+    private static final CanonicalPath OTHER = ENV.extend(Resource.class, "other").get();
+
+    private final EntityCache cache = new EntityCache(Configuration.builder()
+            .addConfigurationProperty(BaseInventory.ENTITY_CACHE_SIZE.getPropertyName(), "100").build());
+
+    @Test
+    public void testUnrelatedInvalidationDoesNotPreventCaching() throws Exception {
+        long generation = cache.getGeneration();
+        cache.invalidate(resource(OTHER, OTHER_TYPE), Action.updated());
+        cache.put(CHILD, resource(CHILD, TYPE), generation);
+
+        assertNotNull(cache.get(CHILD, Resource.class));
+    }
+
+    @Test
+    public void testInvalidationPreventsCachingOfStaleElement() throws Exception {
+        long generation = cache.getGeneration();
+        cache.invalidate(resource(CHILD, TYPE), Action.updated());
+        cache.put(CHILD, resource(CHILD, TYPE), generation);
+        assertNull(cache.get(CHILD, Resource.class));
+
+        //a load started after the invalidation is fine
+        cache.put(CHILD, resource(CHILD, TYPE), cache.getGeneration());
+        assertNotNull(cache.get(CHILD, Resource.class));
+    }
+
+    @Test
+    public void testDeleteInvalidatesDescendants() throws Exception {
+        cache.put(PARENT, resource(PARENT, TYPE), cache.getGeneration());
+        cache.put(CHILD, resource(CHILD, TYPE), cache.getGeneration());
+        cache.put(OTHER, resource(OTHER, TYPE), cache.getGeneration());
+        cache.put(TENANT, new Tenant(TENANT), cache.getGeneration());
+
+        long generation = cache.getGeneration();
+        cache.invalidate(new Environment(ENV), Action.deleted());
+
+        assertNull(cache.get(PARENT, Resource.class));
+        assertNull(cache.get(CHILD, Resource.class));
+        assertNull(cache.get(OTHER, Resource.class));
+        assertNotNull(cache.get(TENANT, Tenant.class));
+
+        //the descendants loaded before the delete must not be cached
+        cache.put(CHILD, resource(CHILD, TYPE), generation);
+        assertNull(cache.get(CHILD, Resource.class));
+
+        //but the ancestors are not affected by the delete of their child
+        cache.put(TENANT, new Tenant(TENANT), generation);
+        assertNotNull(cache.get(TENANT, Tenant.class));
+    }
+
+    @Test
+    public void testTypeUpdateInvalidatesInstances() throws Exception {
+        cache.put(CHILD, resource(CHILD, TYPE), cache.getGeneration());
+        cache.put(OTHER, resource(OTHER, OTHER_TYPE), cache.getGeneration());
+
+        long generation = cache.getGeneration();
+        cache.invalidate(new ResourceType(TYPE), Action.updated());
+
+        assertNull(cache.get(CHILD, Resource.class));
+        assertNotNull(cache.get(OTHER, Resource.class));
+
+        //the instances loaded with the old type must not be cached
+        cache.put(PARENT, resource(PARENT, TYPE), generation);
+        assertNull(cache.get(PARENT, Resource.class));
+    }
+
+    @Test
+    public void testSizeIsBoundedAndRecentlyUsedElementsAreKept() throws Exception {
+        cache.put(CHILD, resource(CHILD, TYPE), cache.getGeneration());
+
+        for (int i = 0; i < 200; ++i) {
+            CanonicalPath path = ENV.extend(Resource.class, "r" + i).get();
+            cache.put(path, resource(path, TYPE), cache.getGeneration());
+
+            assertNotNull(cache.get(CHILD, Resource.class));
+        }
+
+        int cached = 0;
+        for (int i = 0; i < 200; ++i) {
+            if (cache.get(ENV.extend(Resource.class, "r" + i).get(), Resource.class) != null) {
+                ++cached;
+            }
+        }
+
+        assertEquals(99, cached);
+    }
+
+    private static Resource resource(CanonicalPath path, CanonicalPath typePath) {
+        return new Resource(path, new ResourceType(typePath));
+    }
+}
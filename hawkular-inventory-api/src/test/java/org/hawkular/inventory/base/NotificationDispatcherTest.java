@@ -0,0 +1,246 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Interest;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Tenant;
+import org.junit.After;
+import org.junit.Test;
+
+import rx.Observer;
+
+/**
+ * @author agent
+ * @since 0.2.1
+ */
+public class NotificationDispatcherTest {
+
+    private static final Interest<Tenant, Tenant> INTEREST = Interest.in(Tenant.class).being(Action.created());
+
+    private NotificationDispatcher<Tenant> dispatcher;
+
+    @After
+    public void stopDispatcher() throws Exception {
+        if (dispatcher != null) {
+            dispatcher.stop();
+            assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testOrderingPerInterest() throws Exception {
+        RecordingObserver target = new RecordingObserver(false);
+        dispatcher = new NotificationDispatcher<>("test", INTEREST, target, 1000,
+                NotificationDispatcher.OverflowPolicy.BLOCK);
+
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 100; ++i) {
+            dispatcher.onNext(tenant("t" + i, i));
+            expected.add("t" + i);
+        }
+
+        dispatcher.stop();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(expected, target.ids());
+    }
+
+    @Test
+    public void testBlockPolicy() throws Exception {
+        RecordingObserver target = new RecordingObserver(true);
+        dispatcher = new NotificationDispatcher<>("test", INTEREST, target, 2,
+                NotificationDispatcher.OverflowPolicy.BLOCK);
+
+        fillUp(target, "a", "b", "c");
+
+        Thread producer = new Thread(() -> dispatcher.onNext(tenant("d", 0)));
+        producer.start();
+        producer.join(200);
+        assertTrue("The producer should wait for room in the full queue.", producer.isAlive());
+        assertEquals(2, dispatcher.getQueueDepth());
+
+        target.release.countDown();
+        producer.join(5000);
+        assertFalse(producer.isAlive());
+
+        dispatcher.stop();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(asList("a", "b", "c", "d"), target.ids());
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertEquals(0, dispatcher.getCoalescedCount());
+    }
+
+    @Test
+    public void testDropOldestPolicy() throws Exception {
+        RecordingObserver target = new RecordingObserver(true);
+        dispatcher = new NotificationDispatcher<>("test", INTEREST, target, 2,
+                NotificationDispatcher.OverflowPolicy.DROP_OLDEST);
+
+        fillUp(target, "a", "b", "c");
+        dispatcher.onNext(tenant("d", 0));
+        dispatcher.onNext(tenant("e", 0));
+
+        assertEquals(2, dispatcher.getDroppedCount());
+        assertEquals(2, dispatcher.getQueueDepth());
+
+        target.release.countDown();
+        dispatcher.stop();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(asList("a", "d", "e"), target.ids());
+        assertEquals(0, dispatcher.getCoalescedCount());
+    }
+
+    @Test
+    public void testCoalescePolicy() throws Exception {
+        RecordingObserver target = new RecordingObserver(true);
+        dispatcher = new NotificationDispatcher<>("test", INTEREST, target, 2,
+                NotificationDispatcher.OverflowPolicy.COALESCE);
+
+        fillUp(target, "a", "b", "c");
+        dispatcher.onNext(tenant("b", 1));
+        dispatcher.onNext(tenant("c", 1));
+        dispatcher.onNext(tenant("b", 2));
+
+        assertEquals(3, dispatcher.getCoalescedCount());
+        assertEquals(2, dispatcher.getQueueDepth());
+
+        target.release.countDown();
+        dispatcher.stop();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        //the coalesced notifications keep the position of the original ones but carry the latest state
+        assertEquals(asList("a", "b", "c"), target.ids());
+        assertEquals(asList(0, 2, 1), target.versions());
+        assertEquals(0, dispatcher.getDroppedCount());
+    }
+
+    @Test
+    public void testCloseStopsDispatchThread() throws Exception {
+        RecordingObserver target = new RecordingObserver(true);
+        dispatcher = new NotificationDispatcher<>("test", INTEREST, target, 2,
+                NotificationDispatcher.OverflowPolicy.BLOCK);
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName("org.hawkular.inventory:type=NotificationDispatcher,inventory=\"test\","
+                + "entity=Tenant,action=CREATED");
+        assertTrue(server.isRegistered(name));
+        assertEquals(2, server.getAttribute(name, "QueueCapacity"));
+
+        fillUp(target, "a", "b");
+
+        dispatcher.stop();
+        assertFalse(server.isRegistered(name));
+
+        //stopped dispatcher doesn't accept new notifications
+        dispatcher.onNext(tenant("c", 0));
+        assertEquals(1, dispatcher.getDroppedCount());
+
+        //but still dispatches those already waiting before the dispatch thread finishes
+        assertFalse(dispatcher.awaitTermination(200, TimeUnit.MILLISECONDS));
+        target.release.countDown();
+        assertTrue(dispatcher.awaitTermination(5, TimeUnit.SECONDS));
+
+        assertEquals(asList("a", "b"), target.ids());
+    }
+
+    /**
+     * Sends the first notification and waits until the dispatch thread blocks in the target with it. The rest of the
+     * notifications stay in the queue.
+     */
+    private void fillUp(RecordingObserver target, String first, String... rest) throws InterruptedException {
+        dispatcher.onNext(tenant(first, 0));
+        assertTrue(target.entered.await(5, TimeUnit.SECONDS));
+
+        for (String id : rest) {
+            dispatcher.onNext(tenant(id, 0));
+        }
+    }
+
+    private static Tenant tenant(String id, int version) {
+        return new Tenant(CanonicalPath.of().tenant(id).get(),
+                Collections.<String, Object>singletonMap("version", version));
+    }
+
+    @SafeVarargs
+    private static <T> List<T> asList(T... values) {
+        List<T> ret = new ArrayList<>();
+        Collections.addAll(ret, values);
+        return ret;
+    }
+
+    private static final class RecordingObserver implements Observer<Tenant> {
+        final CountDownLatch entered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        private final boolean blockOnFirst;
+        private final List<Tenant> received = Collections.synchronizedList(new ArrayList<>());
+
+        RecordingObserver(boolean blockOnFirst) {
+            this.blockOnFirst = blockOnFirst;
+        }
+
+        @Override
+        public void onNext(Tenant tenant) {
+            received.add(tenant);
+            if (blockOnFirst && entered.getCount() > 0) {
+                entered.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+
+        @Override
+        public void onCompleted() {
+        }
+
+        @Override
+        public void onError(Throwable e) {
+        }
+
+        List<String> ids() {
+            List<String> ret = new ArrayList<>();
+            received.forEach((t) -> ret.add(t.getId()));
+            return ret;
+        }
+
+        List<Object> versions() {
+            List<Object> ret = new ArrayList<>();
+            received.forEach((t) -> ret.add(t.getProperties().get("version")));
+            return ret;
+        }
+    }
+}
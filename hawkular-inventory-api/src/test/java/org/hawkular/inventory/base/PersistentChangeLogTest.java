@@ -0,0 +1,206 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.base;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Change;
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Tenant;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * @author agent
+ * @since 0.2.1
+ */
+public class PersistentChangeLogTest {
+
+    private static final CanonicalPath TENANT = CanonicalPath.of().tenant("t").get();
+    private static final CanonicalPath ENV = TENANT.extend(Environment.class, "e").get();
+
+    private Path directory;
+
+    @Before
+    public void createDirectory() throws IOException {
+        directory = Files.createTempDirectory("changes");
+    }
+
+    @After
+    public void deleteDirectory() throws IOException {
+        try (Stream<Path> files = Files.walk(directory)) {
+            files.sorted(Comparator.reverseOrder()).forEach((f) -> f.toFile().delete());
+        }
+    }
+
+    @Test
+    public void testRecordedChangesAreReadBack() throws Exception {
+        try (PersistentChangeLog log = open()) {
+            log.record(new Tenant(TENANT), Action.created());
+            log.record(new Environment(ENV), Action.created());
+            log.record(new Environment(ENV), Action.updated());
+
+            //the reads wait for the queued changes to be written
+            List<Change> changes = log.read("t", 0, 100);
+
+            assertEquals(3, changes.size());
+            assertEquals(TENANT, changes.get(0).getPath());
+            assertEquals(Action.Enumerated.UPDATED, changes.get(2).getAction());
+            for (int i = 0; i < changes.size(); ++i) {
+                assertEquals(i + 1, changes.get(i).getSequenceNumber());
+            }
+
+            assertEquals(1, log.read("t", 1, 1).size());
+            assertTrue(log.read("t", 3, 100).isEmpty());
+        }
+    }
+
+    @Test
+    public void testSequenceContinuesAfterReopen() throws Exception {
+        try (PersistentChangeLog log = open()) {
+            log.record(new Tenant(TENANT), Action.created());
+            log.record(new Environment(ENV), Action.created());
+        }
+
+        try (PersistentChangeLog log = open()) {
+            log.record(new Environment(ENV), Action.deleted());
+
+            List<Change> changes = log.read("t", 2, 100);
+            assertEquals(1, changes.size());
+            assertEquals(3, changes.get(0).getSequenceNumber());
+            assertEquals(Action.Enumerated.DELETED, changes.get(0).getAction());
+        }
+    }
+
+    @Test
+    public void testChangesAfterCloseAreIgnored() throws Exception {
+        PersistentChangeLog log = open();
+        log.record(new Tenant(TENANT), Action.created());
+        log.close();
+        log.record(new Environment(ENV), Action.created());
+
+        try (PersistentChangeLog reopened = open()) {
+            assertEquals(1, reopened.read("t", 0, 100).size());
+        }
+    }
+
+    @Test
+    public void testOldSegmentsAreDeleted() throws Exception {
+        try (PersistentChangeLog log = open()) {
+            for (int i = 0; i < 7; ++i) {
+                log.record(new Environment(ENV), Action.updated());
+            }
+
+            //7 changes in segments of 2 changes make 4 segments, only the last 2 of them are retained
+            List<Change> changes = log.read("t", 0, 100);
+            assertEquals(3, changes.size());
+            assertEquals(5, changes.get(0).getSequenceNumber());
+            assertEquals(7, changes.get(2).getSequenceNumber());
+        }
+
+        try (Stream<Path> segments = Files.list(directory.resolve("t"))) {
+            assertEquals(2, segments.count());
+        }
+    }
+
+    @Test
+    public void testPartiallyWrittenTailIsTruncated() throws Exception {
+        try (PersistentChangeLog log = open()) {
+            log.record(new Tenant(TENANT), Action.created());
+        }
+
+        Path segment;
+        try (Stream<Path> segments = Files.list(directory.resolve("t"))) {
+            segment = segments.findFirst().get();
+        }
+        long validSize = Files.size(segment);
+
+        //a record length that can never be valid followed by a few bytes of the record
+        Files.write(segment, new byte[] {0x7f, 0, 0, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        try (PersistentChangeLog log = open()) {
+            //the tenant log is opened lazily
+            assertEquals(1, log.read("t", 0, 100).size());
+            assertEquals(validSize, Files.size(segment));
+
+            log.record(new Environment(ENV), Action.created());
+
+            List<Change> changes = log.read("t", 0, 100);
+            assertEquals(2, changes.size());
+            assertEquals(2, changes.get(1).getSequenceNumber());
+            assertEquals(ENV, changes.get(1).getPath());
+        }
+    }
+
+    @Test
+    public void testEpochIsKeptAfterCleanShutdown() throws Exception {
+        long epoch;
+        try (PersistentChangeLog log = open()) {
+            log.record(new Tenant(TENANT), Action.created());
+            epoch = log.read("t", 0, 1).get(0).getEpoch();
+        }
+
+        try (PersistentChangeLog log = open()) {
+            log.record(new Environment(ENV), Action.created());
+            assertEquals(epoch, log.read("t", 1, 1).get(0).getEpoch());
+        }
+    }
+
+    @Test
+    public void testEpochChangesAfterUncleanShutdown() throws Exception {
+        PersistentChangeLog crashed = open();
+        long epoch;
+        try {
+            crashed.record(new Tenant(TENANT), Action.created());
+            epoch = crashed.read("t", 0, 1).get(0).getEpoch();
+
+            //the first log has not been closed, so the second one has to assume some changes might have been lost
+            try (PersistentChangeLog log = open()) {
+                log.record(new Environment(ENV), Action.created());
+
+                List<Change> changes = log.read("t", 0, 100);
+                assertEquals(2, changes.size());
+                assertEquals(epoch, changes.get(0).getEpoch());
+                assertNotEquals(epoch, changes.get(1).getEpoch());
+            }
+        } finally {
+            crashed.close();
+        }
+    }
+
+    private PersistentChangeLog open() {
+        return new PersistentChangeLog(Configuration.builder()
+                .addConfigurationProperty(BaseInventory.CHANGE_LOG_DIRECTORY.getPropertyName(), directory.toString())
+                .addConfigurationProperty(BaseInventory.CHANGE_LOG_SEGMENT_SIZE.getPropertyName(), "2")
+                .addConfigurationProperty(BaseInventory.CHANGE_LOG_RETAINED_SEGMENTS.getPropertyName(), "2")
+                .addConfigurationProperty(BaseInventory.CHANGE_LOG_SYNC.getPropertyName(), "true").build());
+    }
+}
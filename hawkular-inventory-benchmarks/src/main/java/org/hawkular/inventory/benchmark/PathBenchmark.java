@@ -0,0 +1,115 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.Path;
+import org.hawkular.inventory.api.model.PathSegmentCodec;
+import org.hawkular.inventory.api.model.Resource;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Parsing, serialization and extension of the paths. Every REST call and most of the backend operations go through
+ * these.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PathBenchmark {
+
+    private String canonicalString;
+    private String encodedCanonicalString;
+    private CanonicalPath canonicalPath;
+    private CanonicalPath tenant;
+    private CanonicalPath resource;
+    private String partiallyUntypedCanonical;
+    private String partiallyUntypedRelative;
+    private String segment;
+    private String encodedSegment;
+
+    @Setup
+    public void setup() {
+        canonicalString = "/t;com.acme.tenant/e;production/r;host1/r;jvm/r;datasource/m;heap-used";
+        encodedCanonicalString = "/t;com.acme.tenant/e;production/r;host%2F1/r;jvm%3B8/r;data%20source/m;heap-used";
+        canonicalPath = CanonicalPath.fromString(canonicalString);
+        tenant = canonicalPath.getRoot();
+        resource = CanonicalPath.fromString("/t;com.acme.tenant/e;production/r;host1/r;jvm");
+        partiallyUntypedCanonical = "/e;production/r;host1/r;jvm/r;datasource";
+        partiallyUntypedRelative = "../../m;heap-used";
+        segment = "data source/with;special%characters";
+        encodedSegment = PathSegmentCodec.encode(segment);
+    }
+
+    @Benchmark
+    public CanonicalPath canonicalPathFromString() {
+        return CanonicalPath.fromString(canonicalString);
+    }
+
+    @Benchmark
+    public CanonicalPath canonicalPathFromEncodedString() {
+        return CanonicalPath.fromString(encodedCanonicalString);
+    }
+
+    @Benchmark
+    public String canonicalPathToString() {
+        return canonicalPath.toString();
+    }
+
+    @Benchmark
+    public CanonicalPath canonicalPathExtend() {
+        return resource.extend(Resource.class, "datasource").extend(Metric.class, "heap-used").get();
+    }
+
+    @Benchmark
+    public Path pathFromPartiallyUntypedCanonicalString() {
+        return Path.fromPartiallyUntypedString(partiallyUntypedCanonical, tenant, resource, Entity.class);
+    }
+
+    @Benchmark
+    public Path pathFromPartiallyUntypedRelativeString() {
+        return Path.fromPartiallyUntypedString(partiallyUntypedRelative, tenant, resource, Metric.class);
+    }
+
+    @Benchmark
+    public String segmentEncode() {
+        return PathSegmentCodec.encode(segment);
+    }
+
+    @Benchmark
+    public String segmentDecode() {
+        return PathSegmentCodec.decode(encodedSegment);
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.base.Query;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Translation of canonical paths into the queries. This is done for each entity looked up by its path.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private CanonicalPath shallow;
+    private CanonicalPath deep;
+    private Query deepQuery;
+
+    @Setup
+    public void setup() {
+        shallow = CanonicalPath.fromString("/t;com.acme.tenant/e;production");
+        deep = CanonicalPath.fromString("/t;com.acme.tenant/e;production/r;host1/r;jvm/r;datasource/m;heap-used");
+        deepQuery = Query.to(deep);
+    }
+
+    @Benchmark
+    public Query queryToShallowPath() {
+        return Query.to(shallow);
+    }
+
+    @Benchmark
+    public Query queryToDeepPath() {
+        return Query.to(deep);
+    }
+
+    @Benchmark
+    public CanonicalPath canonicalPathOfQuery() {
+        return Query.canonicalPathOf(deepQuery);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.json.InventoryJacksonConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * (De)serialization of the structured data (i.e. configurations and their schemas) to and from JSON using the
+ * serializers from the JSON helper module, as used by the REST API and the bus.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StructuredDataBenchmark {
+
+    /**
+     * The number of the entries in the top level map, each of which is a small map with a nested list.
+     */
+    @Param({"10", "1000"})
+    public int size;
+
+    private ObjectMapper mapper;
+    private StructuredData data;
+    private String json;
+
+    @Setup
+    public void setup() throws IOException {
+        mapper = new ObjectMapper();
+        InventoryJacksonConfig.configure(mapper);
+
+        StructuredData.MapBuilder map = StructuredData.get().map();
+        for (int i = 0; i < size; ++i) {
+            map.putMap("property" + i)
+                    .putString("name", "Property " + i)
+                    .putBool("enabled", i % 2 == 0)
+                    .putIntegral("count", (long) i)
+                    .putFloatingPoint("ratio", i / 3.0)
+                    .putList("values").addIntegral(1L).addIntegral(2L).addString("three").closeList()
+                    .closeMap();
+        }
+
+        data = map.build();
+        json = mapper.writeValueAsString(data);
+    }
+
+    @Benchmark
+    public String serialize() throws IOException {
+        return mapper.writeValueAsString(data);
+    }
+
+    @Benchmark
+    public StructuredData deserialize() throws IOException {
+        return mapper.readValue(json, StructuredData.class);
+    }
+}
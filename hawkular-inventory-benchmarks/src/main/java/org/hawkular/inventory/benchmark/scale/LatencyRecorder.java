@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.benchmark.scale;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Records the latencies of a single operation type on a single thread. The recorders of all the threads are merged
+ * once the measurement is over, so the recording itself doesn't need any synchronization.
+ *
+ * <p>All the samples are kept so that the percentiles are exact.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class LatencyRecorder {
+    private long[] samples = new long[1024];
+    private int count;
+    private long errors;
+
+    void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, samples.length * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    void recordError() {
+        errors++;
+    }
+
+    static Stats merge(Collection<LatencyRecorder> recorders, long durationNanos) {
+        int total = 0;
+        long errors = 0;
+        for (LatencyRecorder r : recorders) {
+            total += r.count;
+            errors += r.errors;
+        }
+
+        long[] all = new long[total];
+        int pos = 0;
+        for (LatencyRecorder r : recorders) {
+            System.arraycopy(r.samples, 0, all, pos, r.count);
+            pos += r.count;
+        }
+
+        Arrays.sort(all);
+
+        return new Stats(all, errors, durationNanos);
+    }
+
+    /**
+     * The summary of the latencies of a single operation type. The latencies are in microseconds.
+     */
+    static final class Stats {
+        private final long count;
+        private final long errors;
+        private final double throughput;
+        private final double mean;
+        private final double p50;
+        private final double p90;
+        private final double p99;
+        private final double p999;
+        private final double max;
+
+        private Stats(long[] sorted, long errors, long durationNanos) {
+            this.count = sorted.length;
+            this.errors = errors;
+            this.throughput = durationNanos == 0 ? 0 : sorted.length * 1e9 / durationNanos;
+
+            long sum = 0;
+            for (long s : sorted) {
+                sum += s;
+            }
+
+            this.mean = sorted.length == 0 ? 0 : micros(sum) / sorted.length;
+            this.p50 = percentile(sorted, 0.5);
+            this.p90 = percentile(sorted, 0.9);
+            this.p99 = percentile(sorted, 0.99);
+            this.p999 = percentile(sorted, 0.999);
+            this.max = sorted.length == 0 ? 0 : micros(sorted[sorted.length - 1]);
+        }
+
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+
+            int idx = (int) Math.ceil(percentile * sorted.length) - 1;
+            return micros(sorted[Math.max(0, idx)]);
+        }
+
+        private static double micros(long nanos) {
+            return nanos / 1000d;
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getErrors() {
+            return errors;
+        }
+
+        /**
+         * @return the number of the successful operations per second
+         */
+        double getThroughput() {
+            return throughput;
+        }
+
+        double getMean() {
+            return mean;
+        }
+
+        double getP50() {
+            return p50;
+        }
+
+        double getP90() {
+            return p90;
+        }
+
+        double getP99() {
+            return p99;
+        }
+
+        double getP999() {
+            return p999;
+        }
+
+        double getMax() {
+            return max;
+        }
+    }
+}
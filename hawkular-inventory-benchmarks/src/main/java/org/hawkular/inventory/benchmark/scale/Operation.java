@@ -0,0 +1,182 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.benchmark.scale;
+
+import java.util.Deque;
+import java.util.Random;
+
+import org.hawkular.inventory.api.Feeds;
+import org.hawkular.inventory.api.Inventory;
+import org.hawkular.inventory.api.Resources;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.paging.Order;
+import org.hawkular.inventory.api.paging.Pager;
+
+/**
+ * The operations the workload is composed of. All of them go through the public inventory API.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+enum Operation {
+    /**
+     * Reads a random resource.
+     */
+    readResource {
+        @Override
+        boolean execute(Context ctx) {
+            ctx.inventory.inspect(ctx.randomResource(), Resources.Single.class).entity();
+            return true;
+        }
+    },
+
+    /**
+     * Reads the first page of the children of a random resource.
+     */
+    getChildren {
+        @Override
+        boolean execute(Context ctx) {
+            ctx.inventory.inspect(ctx.randomParentResource(), Resources.Single.class).allChildren().getAll()
+                    .entities(ctx.pager);
+            return true;
+        }
+    },
+
+    /**
+     * Reads the first page of the top level resources of a random feed.
+     */
+    listFeedResources {
+        @Override
+        boolean execute(Context ctx) {
+            ctx.inventory.inspect(ctx.topology.randomFeed(ctx.tenantId, ctx.random), Feeds.Single.class)
+                    .resources().getAll().entities(ctx.pager);
+            return true;
+        }
+    },
+
+    /**
+     * Reads all the metrics of a random resource.
+     */
+    readMetrics {
+        @Override
+        boolean execute(Context ctx) {
+            ctx.inventory.inspect(ctx.randomResource(), Resources.Single.class).metrics().getAll().entities();
+            return true;
+        }
+    },
+
+    /**
+     * Reads the configuration of a random resource. Does nothing if the topology doesn't contain any data.
+     */
+    readData {
+        @Override
+        boolean execute(Context ctx) {
+            if (ctx.topology.getDataSize() == 0) {
+                return false;
+            }
+
+            ctx.inventory.inspect(ctx.randomResource(), Resources.Single.class).data()
+                    .get(Resources.DataRole.configuration).entity();
+            return true;
+        }
+    },
+
+    /**
+     * Creates a new child resource of a random resource.
+     */
+    createResource {
+        @Override
+        boolean execute(Context ctx) {
+            CanonicalPath parent = ctx.randomResource();
+            String id = "new-" + ctx.threadId + "-" + ctx.counter++;
+            ctx.inventory.inspect(parent, Resources.Single.class).containedChildren()
+                    .create(new Resource.Blueprint(id, "/" + Topology.RESOURCE_TYPE));
+            ctx.created.push(parent.extend(Resource.class, id).get());
+            return true;
+        }
+    },
+
+    /**
+     * Updates the properties of a random resource.
+     */
+    updateResource {
+        @Override
+        boolean execute(Context ctx) {
+            ctx.inventory.inspect(ctx.randomResource(), Resources.Single.class)
+                    .update(Resource.Update.builder().withProperty("updated", ctx.counter++).build());
+            return true;
+        }
+    },
+
+    /**
+     * Deletes the resource last created by the current thread. Does nothing if there is no such resource.
+     */
+    deleteResource {
+        @Override
+        boolean execute(Context ctx) {
+            CanonicalPath path = ctx.created.poll();
+            if (path == null) {
+                return false;
+            }
+
+            ctx.inventory.inspect(path, Resources.Single.class).delete();
+            return true;
+        }
+    };
+
+    /**
+     * Executes the operation.
+     *
+     * @param ctx the state of the thread executing the operation
+     * @return true if the operation was performed, false if it was skipped and should not be measured
+     */
+    abstract boolean execute(Context ctx);
+
+    /**
+     * The state of a single worker thread.
+     */
+    static final class Context {
+        final Inventory inventory;
+        final Topology topology;
+        final String tenantId;
+        final Random random;
+        final Pager pager;
+        final int threadId;
+        final Deque<CanonicalPath> created;
+        long counter;
+
+        Context(Inventory inventory, Topology topology, String tenantId, long seed, int pageSize, int threadId,
+                Deque<CanonicalPath> created) {
+            this.inventory = inventory;
+            this.topology = topology;
+            this.tenantId = tenantId;
+            this.random = new Random(seed);
+            this.pager = new Pager(0, pageSize, Order.unspecified());
+            this.threadId = threadId;
+            this.created = created;
+        }
+
+        CanonicalPath randomResource() {
+            return topology.randomResource(tenantId, random);
+        }
+
+        CanonicalPath randomParentResource() {
+            return topology.randomParentResource(tenantId, random);
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.benchmark.scale;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.feeds.AcceptWithFallbackFeedIdStrategy;
+import org.hawkular.inventory.api.feeds.RandomUUIDFeedIdStrategy;
+import org.hawkular.inventory.impl.tinkerpop.TinkerpopInventory;
+
+/**
+ * An in-process workload driver measuring how the inventory scales with the size of the data. It runs a mix of reads
+ * and writes through the public inventory API on a number of threads against an in-memory TinkerGraph populated with
+ * a synthetic {@link Topology}, once for each of the requested topologies.
+ *
+ * <p>The driver is configured using system properties. The topology properties accept a comma-separated list of
+ * values and the driver runs the workload against every combination of them:
+ * <ul>
+ *     <li>{@code environments} - the number of environments in the tenant (default 1)
+ *     <li>{@code feeds} - the number of feeds in each environment (default 1)
+ *     <li>{@code depth} - the depth of the resource tree in each feed (default 2)
+ *     <li>{@code breadth} - the number of child resources of each non-leaf resource (default 10, 100)
+ *     <li>{@code metrics} - the number of metrics of each resource (default 1)
+ *     <li>{@code dataSize} - the number of entries in the configuration of each resource (default 10)
+ * </ul>
+ * The workload properties are:
+ * <ul>
+ *     <li>{@code threads} - the number of the threads executing the workload (default 4)
+ *     <li>{@code warmup} - the duration of the warmup in seconds (default 10)
+ *     <li>{@code duration} - the duration of the measurement in seconds (default 30)
+ *     <li>{@code pageSize} - the page size of the reads of multiple entities (default 100)
+ *     <li>{@code seed} - the seed of the random generators, which makes the runs repeatable (default 42)
+ *     <li>{@code mix} - the relative weights of the {@link Operation operations}, e.g.
+ *     {@code readResource=10,createResource=1}
+ *     <li>{@code output} - the CSV file to write the results to (default {@code target/scalability.csv})
+ * </ul>
+ *
+ * <p>All the system properties are also passed to the inventory as its configuration, so that the inventory can be
+ * tuned the same way as when deployed.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public final class ScalabilityHarness {
+    private static final String TENANT_ID = "scalability";
+    private static final String DEFAULT_MIX = "readResource=30,getChildren=15,listFeedResources=5,readMetrics=15," +
+            "readData=10,createResource=10,updateResource=10,deleteResource=5";
+
+    private final int threads;
+    private final long warmupNanos;
+    private final long durationNanos;
+    private final int pageSize;
+    private final long seed;
+    private final Operation[] operations;
+    private final int[] cumulativeWeights;
+
+    private ScalabilityHarness(int threads, int warmupSeconds, int durationSeconds, int pageSize, long seed,
+            Map<Operation, Integer> mix) {
+        this.threads = threads;
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(warmupSeconds);
+        this.durationNanos = TimeUnit.SECONDS.toNanos(durationSeconds);
+        this.pageSize = pageSize;
+        this.seed = seed;
+
+        this.operations = new Operation[mix.size()];
+        this.cumulativeWeights = new int[mix.size()];
+        int i = 0;
+        int total = 0;
+        for (Map.Entry<Operation, Integer> e : mix.entrySet()) {
+            total += e.getValue();
+            operations[i] = e.getKey();
+            cumulativeWeights[i++] = total;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        List<Topology> topologies = new ArrayList<>();
+        for (int environments : ints("environments", "1")) {
+            for (int feeds : ints("feeds", "1")) {
+                for (int depth : ints("depth", "2")) {
+                    for (int breadth : ints("breadth", "10,100")) {
+                        for (int metrics : ints("metrics", "1")) {
+                            for (int dataSize : ints("dataSize", "10")) {
+                                topologies.add(new Topology(environments, feeds, depth, breadth, metrics, dataSize));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        ScalabilityHarness harness = new ScalabilityHarness(Integer.getInteger("threads", 4),
+                Integer.getInteger("warmup", 10), Integer.getInteger("duration", 30),
+                Integer.getInteger("pageSize", 100), Long.getLong("seed", 42),
+                parseMix(System.getProperty("mix", DEFAULT_MIX)));
+
+        Path output = Paths.get(System.getProperty("output", "target/scalability.csv"));
+        if (output.getParent() != null) {
+            Files.createDirectories(output.getParent());
+        }
+
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(output, StandardCharsets.UTF_8))) {
+            csv.println("environments,feeds,depth,breadth,metrics,dataSize,resources,threads,operation,count,errors," +
+                    "throughput,meanUs,p50Us,p90Us,p99Us,p999Us,maxUs");
+
+            for (Topology topology : topologies) {
+                harness.run(topology, csv);
+                csv.flush();
+            }
+        }
+
+        System.out.println("Results written to " + output.toAbsolutePath());
+    }
+
+    private void run(Topology topology, PrintWriter csv) throws Exception {
+        System.out.println(topology);
+
+        TinkerpopInventory inventory = new TinkerpopInventory();
+        inventory.initialize(Configuration.builder()
+                .withFeedIdStrategy(new AcceptWithFallbackFeedIdStrategy(new RandomUUIDFeedIdStrategy()))
+                .withConfiguration(System.getProperties()).build());
+
+        try {
+            long start = System.nanoTime();
+            long entityCount = topology.populate(inventory, TENANT_ID);
+            long populateNanos = System.nanoTime() - start;
+
+            double populateThroughput = entityCount * 1e9 / populateNanos;
+            System.out.printf(Locale.ROOT, "  populated %d entities in %.1f s (%.0f entities/s)%n", entityCount,
+                    populateNanos / 1e9, populateThroughput);
+            csv.println(String.format(Locale.ROOT, "%s,populate,%d,0,%.1f,,,,,,", csvPrefix(topology), entityCount,
+                    populateThroughput));
+
+            Map<Operation, LatencyRecorder.Stats> stats = measure(inventory, topology);
+
+            System.out.printf(Locale.ROOT, "  %-18s %10s %7s %10s %10s %10s %10s %10s %10s%n", "operation", "count",
+                    "errors", "ops/s", "p50 [us]", "p90 [us]", "p99 [us]", "p999 [us]", "max [us]");
+
+            stats.forEach((op, s) -> {
+                System.out.printf(Locale.ROOT, "  %-18s %10d %7d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                        op.name(), s.getCount(), s.getErrors(), s.getThroughput(), s.getP50(), s.getP90(),
+                        s.getP99(), s.getP999(), s.getMax());
+                csv.println(String.format(Locale.ROOT, "%s,%s,%d,%d,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f,%.1f",
+                        csvPrefix(topology), op.name(), s.getCount(), s.getErrors(), s.getThroughput(), s.getMean(),
+                        s.getP50(), s.getP90(), s.getP99(), s.getP999(), s.getMax()));
+            });
+        } finally {
+            inventory.close();
+        }
+    }
+
+    private Map<Operation, LatencyRecorder.Stats> measure(TinkerpopInventory inventory, Topology topology)
+            throws InterruptedException {
+
+        List<Map<Operation, LatencyRecorder>> recorders = new ArrayList<>();
+        List<Throwable> failures = new ArrayList<>();
+        CountDownLatch done = new CountDownLatch(threads);
+
+        long warmupEnd = System.nanoTime() + warmupNanos;
+        long measurementEnd = warmupEnd + durationNanos;
+
+        for (int i = 0; i < threads; ++i) {
+            Operation.Context ctx = new Operation.Context(inventory, topology, TENANT_ID, seed + i, pageSize, i,
+                    new ArrayDeque<>());
+            Map<Operation, LatencyRecorder> threadRecorders = new EnumMap<>(Operation.class);
+            recorders.add(threadRecorders);
+
+            Thread t = new Thread(() -> {
+                try {
+                    execute(ctx, warmupEnd, new EnumMap<>(Operation.class));
+                    execute(ctx, measurementEnd, threadRecorders);
+                } catch (Throwable e) {
+                    synchronized (failures) {
+                        failures.add(e);
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, "Scalability Worker " + i);
+
+            t.start();
+        }
+
+        done.await();
+
+        if (!failures.isEmpty()) {
+            throw new IllegalStateException("Workload thread failed.", failures.get(0));
+        }
+
+        Map<Operation, LatencyRecorder.Stats> ret = new LinkedHashMap<>();
+        for (Operation op : operations) {
+            List<LatencyRecorder> opRecorders = new ArrayList<>();
+            recorders.forEach((m) -> {
+                LatencyRecorder r = m.get(op);
+                if (r != null) {
+                    opRecorders.add(r);
+                }
+            });
+
+            ret.put(op, LatencyRecorder.merge(opRecorders, durationNanos));
+        }
+
+        return ret;
+    }
+
+    private void execute(Operation.Context ctx, long end, Map<Operation, LatencyRecorder> recorders) {
+        int totalWeight = cumulativeWeights[cumulativeWeights.length - 1];
+
+        while (System.nanoTime() < end) {
+            int pick = ctx.random.nextInt(totalWeight);
+            int i = 0;
+            while (cumulativeWeights[i] <= pick) {
+                i++;
+            }
+
+            Operation op = operations[i];
+            LatencyRecorder recorder = recorders.computeIfAbsent(op, (o) -> new LatencyRecorder());
+
+            long start = System.nanoTime();
+            try {
+                if (op.execute(ctx)) {
+                    recorder.record(System.nanoTime() - start);
+                }
+            } catch (RuntimeException e) {
+                recorder.recordError();
+            }
+        }
+    }
+
+    private String csvPrefix(Topology t) {
+        return t.getEnvironments() + "," + t.getFeeds() + "," + t.getDepth() + "," + t.getBreadth() + "," +
+                t.getMetrics() + "," + t.getDataSize() + "," + t.getResourceCount() + "," + threads;
+    }
+
+    private static int[] ints(String property, String defaultValue) {
+        String[] values = System.getProperty(property, defaultValue).split(",");
+        int[] ret = new int[values.length];
+        for (int i = 0; i < values.length; ++i) {
+            ret[i] = Integer.parseInt(values[i].trim());
+        }
+        return ret;
+    }
+
+    private static Map<Operation, Integer> parseMix(String mix) {
+        Map<Operation, Integer> ret = new EnumMap<>(Operation.class);
+        for (String entry : mix.split(",")) {
+            String[] parts = entry.split("=");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid entry in the operation mix: '" + entry + "'. The" +
+                        " entries should have the form 'operation=weight'.");
+            }
+
+            int weight = Integer.parseInt(parts[1].trim());
+            if (weight < 0) {
+                throw new IllegalArgumentException("The weight of an operation cannot be negative: '" + entry + "'.");
+            }
+
+            if (weight > 0) {
+                ret.put(Operation.valueOf(parts[0].trim()), weight);
+            }
+        }
+
+        if (ret.isEmpty()) {
+            throw new IllegalArgumentException("The operation mix is empty.");
+        }
+
+        return ret;
+    }
+}
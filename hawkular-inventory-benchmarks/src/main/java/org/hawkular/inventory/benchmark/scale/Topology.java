@@ -0,0 +1,284 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.benchmark.scale;
+
+import static org.hawkular.inventory.api.Relationships.Direction.outgoing;
+import static org.hawkular.inventory.api.Relationships.WellKnown.incorporates;
+
+import java.util.Random;
+
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.Inventory;
+import org.hawkular.inventory.api.Resources;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.DataEntity;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricDataType;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.MetricUnit;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.api.model.Tenant;
+
+/**
+ * A synthetic inventory topology of a single tenant.
+ *
+ * <p>The tenant contains {@code environments} environments, each with {@code feeds} feeds. Each feed contains a tree
+ * of resources {@code depth} levels deep, each non-leaf resource having {@code breadth} child resources. Each
+ * resource incorporates {@code metrics} metrics (contained in the feed) and has a configuration with
+ * {@code dataSize} entries (or none if {@code dataSize} is 0).
+ *
+ * <p>The ids of the entities are derived from their positions in the topology so that the paths of the entities can
+ * be generated without having to remember them, which matters with millions of resources.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public final class Topology {
+    static final String RESOURCE_TYPE = "rt";
+    static final String METRIC_TYPE = "mt";
+
+    private final int environments;
+    private final int feeds;
+    private final int depth;
+    private final int breadth;
+    private final int metrics;
+    private final int dataSize;
+
+    /**
+     * The number of resources on each level of the resource tree of a single feed, i.e. {@code breadth^(level + 1)}.
+     */
+    private final long[] levelSizes;
+    private final long resourcesPerFeed;
+
+    public Topology(int environments, int feeds, int depth, int breadth, int metrics, int dataSize) {
+        if (environments < 1 || feeds < 1 || depth < 1 || breadth < 1) {
+            throw new IllegalArgumentException("There must be at least 1 environment, feed, level and resource on" +
+                    " a level.");
+        }
+
+        if (metrics < 0 || dataSize < 0) {
+            throw new IllegalArgumentException("The number of metrics and the data size cannot be negative.");
+        }
+
+        this.environments = environments;
+        this.feeds = feeds;
+        this.depth = depth;
+        this.breadth = breadth;
+        this.metrics = metrics;
+        this.dataSize = dataSize;
+
+        levelSizes = new long[depth];
+        long levelSize = 1;
+        long total = 0;
+        for (int i = 0; i < depth; ++i) {
+            levelSize *= breadth;
+            levelSizes[i] = levelSize;
+            total += levelSize;
+        }
+        resourcesPerFeed = total;
+    }
+
+    public int getEnvironments() {
+        return environments;
+    }
+
+    public int getFeeds() {
+        return feeds;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getBreadth() {
+        return breadth;
+    }
+
+    public int getMetrics() {
+        return metrics;
+    }
+
+    public int getDataSize() {
+        return dataSize;
+    }
+
+    /**
+     * @return the total number of resources in the topology
+     */
+    public long getResourceCount() {
+        return resourcesPerFeed * feeds * environments;
+    }
+
+    /**
+     * Creates the topology in the provided inventory. The entities are created using the bulk creation, one feed at a
+     * time, so that the memory needed to describe the topology is bounded by the size of a single feed.
+     *
+     * @param inventory the inventory to create the topology in
+     * @param tenantId  the id of the tenant to create the topology in
+     * @return the number of created entities
+     */
+    public long populate(Inventory inventory, String tenantId) {
+        CanonicalPath tenant = CanonicalPath.of().tenant(tenantId).get();
+
+        BulkCreate.Builder bulk = BulkCreate.builder()
+                .create(null, new Tenant.Blueprint(tenantId))
+                .create(tenant, new ResourceType.Blueprint(RESOURCE_TYPE))
+                .create(tenant, new MetricType.Blueprint(METRIC_TYPE, MetricUnit.MILLISECONDS, MetricDataType.GAUGE));
+
+        for (int e = 0; e < environments; ++e) {
+            bulk.create(tenant, Environment.Blueprint.builder().withId(environmentId(e)).build());
+        }
+
+        long count = persist(inventory, bulk.build());
+
+        StructuredData configuration = dataSize == 0 ? null : configuration();
+
+        for (int e = 0; e < environments; ++e) {
+            CanonicalPath env = tenant.extend(Environment.class, environmentId(e)).get();
+            for (int f = 0; f < feeds; ++f) {
+                CanonicalPath feed = env.extend(Feed.class, feedId(f)).get();
+
+                bulk = BulkCreate.builder().create(env, new Feed.Blueprint(feedId(f), null));
+                addResources(bulk, feed, feed, "", 0, configuration);
+
+                count += persist(inventory, bulk.build());
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * @param tenantId the tenant the topology has been created in
+     * @param random   the random generator to use
+     * @return the path to a random feed of the topology
+     */
+    public CanonicalPath randomFeed(String tenantId, Random random) {
+        return CanonicalPath.of().tenant(tenantId).environment(environmentId(random.nextInt(environments)))
+                .feed(feedId(random.nextInt(feeds))).get();
+    }
+
+    /**
+     * Generates a path to a random resource. All the resources have the same probability of being chosen.
+     *
+     * @param tenantId the tenant the topology has been created in
+     * @param random   the random generator to use
+     * @return the path to a random resource of the topology
+     */
+    public CanonicalPath randomResource(String tenantId, Random random) {
+        return randomResource(tenantId, random, depth);
+    }
+
+    /**
+     * Similar to {@link #randomResource(String, Random)} but only chooses from the resources that have children
+     * (unless the topology is only 1 level deep, in which case no resource has children).
+     */
+    public CanonicalPath randomParentResource(String tenantId, Random random) {
+        return randomResource(tenantId, random, Math.max(1, depth - 1));
+    }
+
+    private CanonicalPath randomResource(String tenantId, Random random, int maxDepth) {
+        long total = 0;
+        for (int i = 0; i < maxDepth; ++i) {
+            total += levelSizes[i];
+        }
+
+        //choose the level with a probability proportional to the number of resources on it
+        long pick = (long) (random.nextDouble() * total);
+        int level = 0;
+        while (level < maxDepth - 1 && pick >= levelSizes[level]) {
+            pick -= levelSizes[level++];
+        }
+
+        CanonicalPath.Extender path = randomFeed(tenantId, random).modified();
+        for (int i = 0; i <= level; ++i) {
+            path = path.extend(Resource.class, resourceId(random.nextInt(breadth)));
+        }
+
+        return path.get();
+    }
+
+    private void addResources(BulkCreate.Builder bulk, CanonicalPath feed, CanonicalPath parent, String idPrefix,
+            int level, StructuredData configuration) {
+        for (int i = 0; i < breadth; ++i) {
+            String id = resourceId(i);
+            CanonicalPath resource = parent.extend(Resource.class, id).get();
+
+            bulk.create(parent, new Resource.Blueprint(id, "/" + RESOURCE_TYPE));
+
+            for (int m = 0; m < metrics; ++m) {
+                //metrics live directly in the feed, so their ids need to be unique across the whole resource tree
+                String metricId = idPrefix + id + "-m" + m;
+                bulk.create(feed, new Metric.Blueprint("/" + METRIC_TYPE, metricId));
+                bulk.create(resource, new Relationship.Blueprint(outgoing, incorporates.name(),
+                        feed.extend(Metric.class, metricId).get(), null));
+            }
+
+            if (configuration != null) {
+                bulk.create(resource, DataEntity.Blueprint.<Resources.DataRole>builder()
+                        .withRole(Resources.DataRole.configuration).withValue(configuration).build());
+            }
+
+            if (level + 1 < depth) {
+                addResources(bulk, feed, resource, idPrefix + id + ".", level + 1, configuration);
+            }
+        }
+    }
+
+    private StructuredData configuration() {
+        StructuredData.MapBuilder map = StructuredData.get().map();
+        for (int i = 0; i < dataSize; ++i) {
+            map.putString("property" + i, "value of the property number " + i);
+        }
+        return map.build();
+    }
+
+    private static long persist(Inventory inventory, BulkCreate bulk) {
+        BulkCreate.Result result = inventory.createBulk(bulk);
+        if (!result.isSuccess()) {
+            RuntimeException error = result.getEntries().stream().filter((e) -> !e.isSuccess()).findFirst()
+                    .get().getError();
+            throw new IllegalStateException("Failed to create the topology.", error);
+        }
+
+        return result.getEntries().size();
+    }
+
+    static String environmentId(int index) {
+        return "env" + index;
+    }
+
+    static String feedId(int index) {
+        return "feed" + index;
+    }
+
+    static String resourceId(int index) {
+        return "r" + index;
+    }
+
+    @Override
+    public String toString() {
+        return "Topology[environments=" + environments + ", feeds=" + feeds + ", depth=" + depth + ", breadth=" +
+                breadth + ", metrics=" + metrics + ", dataSize=" + dataSize + ", resources=" + getResourceCount() +
+                "]";
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import static org.hawkular.inventory.api.Relationships.Direction.outgoing;
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.incorporates;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.feeds.AcceptWithFallbackFeedIdStrategy;
+import org.hawkular.inventory.api.feeds.RandomUUIDFeedIdStrategy;
+import org.hawkular.inventory.api.filters.Related;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricDataType;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.MetricUnit;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.api.model.Tenant;
+import org.hawkular.inventory.base.Query;
+import org.hawkular.inventory.base.spi.InventoryBackend;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.gremlin.java.GremlinPipeline;
+
+/**
+ * The translation of the queries into the Gremlin pipelines and the conversion of the graph elements into the
+ * inventory entities, measured against an in-memory TinkerGraph.
+ *
+ * <p>This lives in the package of the Tinkerpop implementation, because the filter applicators and the pipeline are
+ * not public. For the same reason the benchmark methods only expose them as public types to the code generated by
+ * JMH.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TinkerpopBackendBenchmark {
+
+    /**
+     * The number of the resources (each incorporating a single metric) in the environment.
+     */
+    @Param({"100", "10000"})
+    public int resourceCount;
+
+    private TinkerpopInventory inventory;
+    private InventoryBackend<Element> backend;
+    private Element tenant;
+    private Element resource;
+    private Element metric;
+    private Query query;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        inventory = new TinkerpopInventory();
+        inventory.initialize(Configuration.builder()
+                .withFeedIdStrategy(new AcceptWithFallbackFeedIdStrategy(new RandomUUIDFeedIdStrategy())).build());
+
+        CanonicalPath tenantPath = CanonicalPath.of().tenant("benchmark").get();
+        CanonicalPath envPath = tenantPath.extend(Environment.class, "env").get();
+
+        BulkCreate.Builder bulk = BulkCreate.builder()
+                .create(null, new Tenant.Blueprint("benchmark"))
+                .create(tenantPath, Environment.Blueprint.builder().withId("env").build())
+                .create(tenantPath, new ResourceType.Blueprint("rt"))
+                .create(tenantPath, new MetricType.Blueprint("mt", MetricUnit.BYTES, MetricDataType.GAUGE));
+
+        for (int i = 0; i < resourceCount; ++i) {
+            CanonicalPath metricPath = envPath.extend(Metric.class, "m" + i).get();
+            bulk.create(envPath, new Resource.Blueprint("r" + i, "/rt"));
+            bulk.create(envPath, new Metric.Blueprint("/mt", "m" + i));
+            bulk.create(envPath.extend(Resource.class, "r" + i).get(),
+                    new Relationship.Blueprint(outgoing, incorporates.name(), metricPath, null));
+        }
+
+        if (!inventory.createBulk(bulk.build()).isSuccess()) {
+            throw new IllegalStateException("Failed to set up the benchmark data.");
+        }
+
+        backend = inventory.getBackend();
+
+        InventoryBackend.Transaction tx = backend.startTransaction(false);
+        try {
+            tenant = backend.find(tenantPath);
+            resource = backend.find(envPath.extend(Resource.class, "r0").get());
+            metric = backend.find(envPath.extend(Metric.class, "m0").get());
+        } finally {
+            backend.commit(tx);
+        }
+
+        //all the metrics of all the resources in the environment
+        query = Query.path().with(Related.by(contains), With.type(Environment.class), With.id("env"))
+                .with(Related.by(contains), With.type(Resource.class))
+                .with(Related.by(incorporates), With.type(Metric.class)).get();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        inventory.close();
+    }
+
+    @Benchmark
+    public GremlinPipeline<Element, Element> applyFilters() {
+        HawkularPipeline<Element, Element> q = new HawkularPipeline<>(tenant);
+        FilterApplicator.applyAll(query, q);
+        return q;
+    }
+
+    @Benchmark
+    public List<Element> applyFiltersAndEvaluate() {
+        HawkularPipeline<Element, Element> q = new HawkularPipeline<>(tenant);
+        FilterApplicator.applyAll(query, q);
+        return q.toList();
+    }
+
+    @Benchmark
+    public Resource convertResource() {
+        return backend.convert(resource, Resource.class);
+    }
+
+    @Benchmark
+    public Metric convertMetric() {
+        return backend.convert(metric, Metric.class);
+    }
+}
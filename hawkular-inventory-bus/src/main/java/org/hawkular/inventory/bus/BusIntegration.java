@@ -16,10 +16,17 @@
  */
 package org.hawkular.inventory.bus;
 
+import static org.hawkular.inventory.bus.Log.LOG;
+
+import java.lang.management.ManagementFactory;
 import java.util.HashSet;
 import java.util.Set;
 
 import javax.jms.JMSException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
 import javax.jms.TopicConnectionFactory;
 import javax.naming.InitialContext;
 import javax.naming.NamingException;
@@ -51,6 +58,7 @@ public final class BusIntegration {
     private final Set<Subscription> subscriptions = new HashSet<>();
     private Configuration configuration;
     private InitialContext namingContext;
+    private ObjectName metricsName;
 
     public BusIntegration(Inventory inventory) {
         this.inventory = inventory;
@@ -69,17 +77,55 @@ public final class BusIntegration {
         TopicConnectionFactory tcf = (TopicConnectionFactory) namingContext.lookup(
                 configuration.getConnectionFactoryJndiName());
 
-        this.messageSender = new MessageSender(tcf, configuration.getInventoryChangesTopicName());
+        this.messageSender = new MessageSender(tcf, configuration);
 
+        registerMetrics();
         install();
     }
 
     public void stop() throws NamingException {
         uninstall();
+        messageSender.close();
+        unregisterMetrics();
         namingContext.close();
         namingContext = null;
     }
 
+    /**
+     * @return the metrics of the publishing of the inventory events or null if the integration is not started
+     */
+    public PublisherMetrics getPublisherMetrics() {
+        return namingContext == null ? null : messageSender;
+    }
+
+    private void registerMetrics() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String name = "org.hawkular.inventory:type=BusPublisher,inventory="
+                + ObjectName.quote(configuration.getInventoryInstanceName()) + ",topic="
+                + ObjectName.quote(messageSender.getTopicName());
+        try {
+            metricsName = new ObjectName(name);
+            server.registerMBean(new StandardMBean(messageSender, PublisherMetrics.class), metricsName);
+        } catch (JMException e) {
+            LOG.failedToRegisterMetrics(name, e);
+            metricsName = null;
+        }
+    }
+
+    private void unregisterMetrics() {
+        if (metricsName == null) {
+            return;
+        }
+
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+        } catch (JMException e) {
+            LOG.debugf(e, "Failed to unregister the publisher metrics %s", metricsName);
+        } finally {
+            metricsName = null;
+        }
+    }
+
     private void install() {
         install(inventory, subscriptions, Tenant.class, messageSender);
         install(inventory, subscriptions, ResourceType.class, messageSender);
@@ -93,6 +139,7 @@ public final class BusIntegration {
 
     private void uninstall() {
         subscriptions.forEach(Subscription::unsubscribe);
+        subscriptions.clear();
     }
 
     private static <U extends AbstractElement.Update, T extends AbstractElement<?, U>>
@@ -32,6 +32,11 @@ public final class Configuration {
 
     private final String connectionFactoryJndiName;
     private final String entityChangesTopicName;
+    private final int batchSize;
+    private final long flushInterval;
+    private final int queueCapacity;
+    private final long sendTimeout;
+    private final String inventoryInstanceName;
 
     public static Configuration fromProperties(Properties properties) {
         Map<String, String> map = new HashMap<>();
@@ -57,6 +62,11 @@ public final class Configuration {
     public static Configuration fromEnumMap(Map<Property, String> map) {
         String connectionFactoryJndiName = null;
         String entityChangesTopicName = null;
+        int batchSize = 0;
+        long flushInterval = 0;
+        int queueCapacity = 0;
+        long sendTimeout = 0;
+        String inventoryInstanceName = null;
 
         for (Property p : Property.values()) {
             String value = map.get(p);
@@ -71,10 +81,34 @@ public final class Configuration {
                 case INVENTORY_CHANGES_TOPIC_NAME:
                     entityChangesTopicName = value;
                     break;
+                case BATCH_SIZE:
+                    batchSize = positive(p, Integer.parseInt(value));
+                    break;
+                case FLUSH_INTERVAL:
+                    flushInterval = positive(p, Long.parseLong(value));
+                    break;
+                case QUEUE_CAPACITY:
+                    queueCapacity = positive(p, Integer.parseInt(value));
+                    break;
+                case SEND_TIMEOUT:
+                    sendTimeout = positive(p, Long.parseLong(value));
+                    break;
+                case INVENTORY_INSTANCE_NAME:
+                    inventoryInstanceName = value;
+                    break;
             }
         }
 
-        return new Configuration(connectionFactoryJndiName, entityChangesTopicName);
+        return new Configuration(connectionFactoryJndiName, entityChangesTopicName, batchSize, flushInterval,
+                queueCapacity, sendTimeout, inventoryInstanceName);
+    }
+
+    private static <N extends Number> N positive(Property property, N value) {
+        if (value.longValue() <= 0) {
+            throw new IllegalArgumentException("The value of " + property.getPropertyName() + " must be positive.");
+        }
+
+        return value;
     }
 
     public static Configuration getDefaultConfiguration() {
@@ -85,9 +119,15 @@ public final class Configuration {
         return new Builder();
     }
 
-    private Configuration(String connectionFactoryJndiName, String entityChangesTopicName) {
+    private Configuration(String connectionFactoryJndiName, String entityChangesTopicName, int batchSize,
+            long flushInterval, int queueCapacity, long sendTimeout, String inventoryInstanceName) {
         this.connectionFactoryJndiName = connectionFactoryJndiName;
         this.entityChangesTopicName = entityChangesTopicName;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.queueCapacity = queueCapacity;
+        this.sendTimeout = sendTimeout;
+        this.inventoryInstanceName = inventoryInstanceName;
     }
 
     public String getConnectionFactoryJndiName() {
@@ -98,6 +138,44 @@ public final class Configuration {
         return entityChangesTopicName;
     }
 
+    /**
+     * @return the maximum number of events published to the bus in a single transaction
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the maximum time in milliseconds an event can wait in the buffer before it is published to the bus
+     */
+    public long getFlushInterval() {
+        return flushInterval;
+    }
+
+    /**
+     * @return the maximum number of events waiting to be published. If the buffer is full, the inventory waits until
+     * there is room in it again, but at most {@link #getSendTimeout()} milliseconds.
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * @return the maximum time in milliseconds to wait for room in a full buffer. The event is discarded if the wait
+     * times out.
+     */
+    public long getSendTimeout() {
+        return sendTimeout;
+    }
+
+    /**
+     * @return the name of the inventory instance whose events are published, used in the name of the JMX bean with the
+     * publisher metrics. Should be the same as the {@code hawkular.inventory.instanceName} of the inventory itself.
+     */
+    public String getInventoryInstanceName() {
+        return inventoryInstanceName;
+    }
+
     public Builder modify() {
         EnumMap<Property, String> m = new EnumMap<>(Property.class);
         toMap().forEach((k, v) -> m.put(Property.valueOf(k), v));
@@ -110,6 +188,11 @@ public final class Configuration {
 
         ret.put(Property.CONNECTION_FACTORY_JNDI_NAME.propertyName, connectionFactoryJndiName);
         ret.put(Property.INVENTORY_CHANGES_TOPIC_NAME.propertyName, entityChangesTopicName);
+        ret.put(Property.BATCH_SIZE.propertyName, Integer.toString(batchSize));
+        ret.put(Property.FLUSH_INTERVAL.propertyName, Long.toString(flushInterval));
+        ret.put(Property.QUEUE_CAPACITY.propertyName, Integer.toString(queueCapacity));
+        ret.put(Property.SEND_TIMEOUT.propertyName, Long.toString(sendTimeout));
+        ret.put(Property.INVENTORY_INSTANCE_NAME.propertyName, inventoryInstanceName);
 
         return ret;
     }
@@ -118,7 +201,12 @@ public final class Configuration {
         CONNECTION_FACTORY_JNDI_NAME("java:/HawkularBusConnectionFactory",
                 "hawkular.inventory.bus.connectionFactoryJndiName"),
         INVENTORY_CHANGES_TOPIC_NAME("java:/topic/HawkularInventoryChanges",
-                "hawkular.inventory.bus.inventoryChangesTopicName");
+                "hawkular.inventory.bus.inventoryChangesTopicName"),
+        BATCH_SIZE("100", "hawkular.inventory.bus.batchSize"),
+        FLUSH_INTERVAL("100", "hawkular.inventory.bus.flushInterval"),
+        QUEUE_CAPACITY("10000", "hawkular.inventory.bus.queueCapacity"),
+        SEND_TIMEOUT("1000", "hawkular.inventory.bus.sendTimeout"),
+        INVENTORY_INSTANCE_NAME("default", "hawkular.inventory.instanceName");
 
         private final String defaultValue;
         private final String propertyName;
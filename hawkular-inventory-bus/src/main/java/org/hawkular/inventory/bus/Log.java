@@ -18,6 +18,7 @@ package org.hawkular.inventory.bus;
 
 import org.jboss.logging.BasicLogger;
 import org.jboss.logging.Logger;
+import org.jboss.logging.annotations.Cause;
 import org.jboss.logging.annotations.LogMessage;
 import org.jboss.logging.annotations.Message;
 import org.jboss.logging.annotations.MessageLogger;
@@ -39,4 +40,21 @@ public interface Log extends BasicLogger {
     @LogMessage(level = Logger.Level.WARN)
     @Message(id = 310001, value = "Failed to send message: %s")
     void failedToSendMessage(String message);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 310002, value = "Failed to publish a batch of %d inventory events to %s. The events were discarded.")
+    void failedToPublishBatch(int size, String topicName, @Cause Throwable cause);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 310003, value = "Failed to register the publisher metrics under the name [%s].")
+    void failedToRegisterMetrics(String name, @Cause Throwable cause);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 310004, value = "Interrupted while waiting for the pending inventory events to be published.")
+    void interruptedWhileClosing();
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 310005, value = "The buffer of the events to publish to %s stayed full for %d ms. Discarded the" +
+            " event: %s")
+    void bufferFull(String topicName, long timeout, String message);
 }
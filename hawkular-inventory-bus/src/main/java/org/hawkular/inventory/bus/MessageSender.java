@@ -18,49 +18,301 @@ package org.hawkular.inventory.bus;
 
 import static org.hawkular.inventory.bus.Log.LOG;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.jms.JMSException;
+import javax.jms.Session;
+import javax.jms.TextMessage;
+import javax.jms.TopicConnection;
 import javax.jms.TopicConnectionFactory;
+import javax.jms.TopicPublisher;
+import javax.jms.TopicSession;
 
-import org.hawkular.bus.common.ConnectionContextFactory;
-import org.hawkular.bus.common.Endpoint;
-import org.hawkular.bus.common.MessageProcessor;
-import org.hawkular.bus.common.producer.ProducerConnectionContext;
 import org.hawkular.inventory.api.Interest;
 import org.hawkular.inventory.bus.api.InventoryEvent;
 
 /**
+ * Publishes the inventory events to a topic on the bus.
+ *
+ * <p>The events are not sent immediately but are put into a bounded buffer. A background thread publishes them in
+ * batches using a long-lived connection and a transacted session. A batch is committed when either
+ * {@link Configuration#getBatchSize()} events have been collected or when {@link Configuration#getFlushInterval()}
+ * milliseconds elapsed since the first event in the batch was received, whichever comes first.
+ *
+ * <p>If the buffer is full, {@link #send(Interest, Object)} blocks until there is room in it again, but at most
+ * {@link Configuration#getSendTimeout()} milliseconds, after which the event is discarded. If a batch fails to be
+ * published, its events are discarded and the connection is re-established for the next batch. The discarded events
+ * are counted in {@link #getDiscardedEventCount()}.
+ *
+ * <p>The events are enqueued under the read lock of {@link #closeLock}, while {@link #close()} stops accepting them
+ * under its write lock. Once the flusher sees that the sender is no longer running, no event can be enqueued anymore,
+ * so the final drain of the buffer publishes all the accepted events.
+ *
  * @author Lukas Krejci
  * @since 0.0.1
  */
-final class MessageSender {
+final class MessageSender implements PublisherMetrics, AutoCloseable {
     private final String topicName;
     private final TopicConnectionFactory topicConnectionFactory;
-    private final MessageProcessor messageProcessor;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final int queueCapacity;
+    private final long sendTimeoutMillis;
+    private final BlockingQueue<PendingEvent> queue;
+    private final ReadWriteLock closeLock = new ReentrantReadWriteLock();
+    private final Thread flusher;
+    private volatile boolean running;
+
+    //these are only ever touched by the flusher thread
+    private TopicConnection connection;
+    private TopicSession session;
+    private TopicPublisher publisher;
 
-    public MessageSender(TopicConnectionFactory  topicConnectionFactory, String topicName) {
+    private final AtomicLong publishedEventCount = new AtomicLong();
+    private final AtomicLong discardedEventCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failedFlushCount = new AtomicLong();
+    private final AtomicLong totalFlushLatency = new AtomicLong();
+    private volatile long lastFlushLatency;
+    private volatile long maxFlushLatency;
+
+    public MessageSender(TopicConnectionFactory topicConnectionFactory, Configuration configuration) {
         this.topicConnectionFactory = topicConnectionFactory;
-        this.topicName = topicName;
+        this.topicName = configuration.getInventoryChangesTopicName();
+        this.batchSize = configuration.getBatchSize();
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(configuration.getFlushInterval());
+        this.queueCapacity = configuration.getQueueCapacity();
+        this.sendTimeoutMillis = configuration.getSendTimeout();
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
 
-        this.messageProcessor = new MessageProcessor();
+        this.running = true;
+        this.flusher = new Thread(this::flushLoop, "Hawkular Inventory Bus Publisher (" + topicName + ")");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
     }
 
     public void send(Interest<?, ?> interest, Object inventoryEvent) {
         InventoryEvent<?> message = InventoryEvent.from(interest.getAction(), inventoryEvent);
         Map<String, String> headers = toHeaders(interest);
 
-        try (ConnectionContextFactory ccf = new ConnectionContextFactory(topicConnectionFactory)) {
+        closeLock.readLock().lock();
+        try {
+            if (!running) {
+                LOG.failedToSendMessage(message.toString());
+                discardedEventCount.incrementAndGet();
+                return;
+            }
+
+            if (!queue.offer(new PendingEvent(message, headers), sendTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                LOG.bufferFull(topicName, sendTimeoutMillis, message.toString());
+                discardedEventCount.incrementAndGet();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.failedToSendMessage(message.toString());
+            discardedEventCount.incrementAndGet();
+        } finally {
+            closeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stops accepting new events, publishes the events still waiting in the buffer and closes the connection to the
+     * bus.
+     */
+    @Override
+    public void close() {
+        stopAccepting();
+
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOG.interruptedWhileClosing();
+        }
+    }
+
+    @Override
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    @Override
+    public long getPublishedEventCount() {
+        return publishedEventCount.get();
+    }
+
+    @Override
+    public long getDiscardedEventCount() {
+        return discardedEventCount.get();
+    }
+
+    @Override
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    @Override
+    public long getFailedFlushCount() {
+        return failedFlushCount.get();
+    }
+
+    @Override
+    public long getLastFlushLatency() {
+        return TimeUnit.NANOSECONDS.toMicros(lastFlushLatency);
+    }
+
+    @Override
+    public long getMaxFlushLatency() {
+        return TimeUnit.NANOSECONDS.toMicros(maxFlushLatency);
+    }
+
+    @Override
+    public long getAverageFlushLatency() {
+        long flushes = flushCount.get() + failedFlushCount.get();
+        return flushes == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalFlushLatency.get() / flushes);
+    }
+
+    String getTopicName() {
+        return topicName;
+    }
+
+    /**
+     * Waits for the senders that are in the middle of enqueueing an event and makes sure no new event is enqueued.
+     */
+    private void stopAccepting() {
+        closeLock.writeLock().lock();
+        try {
+            running = false;
+        } finally {
+            closeLock.writeLock().unlock();
+        }
+    }
+
+    private void flushLoop() {
+        List<PendingEvent> batch = new ArrayList<>(batchSize);
+
+        try {
+            while (running) {
+                try {
+                    PendingEvent first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+
+                    batch.add(first);
+
+                    long deadline = System.nanoTime() + flushIntervalNanos;
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long wait = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || wait <= 0) {
+                            break;
+                        }
+
+                        PendingEvent next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    //we're being shut down forcefully - publish what we have and leave
+                    stopAccepting();
+                }
+
+                if (!batch.isEmpty()) {
+                    flush(batch);
+                    batch.clear();
+                }
+            }
+
+            //no longer running, so no sender can be adding to the queue - publish everything that is left in it
+            while (queue.drainTo(batch, batchSize) > 0) {
+                flush(batch);
+                batch.clear();
+            }
+        } finally {
+            disconnect();
+        }
+    }
+
+    private void flush(List<PendingEvent> batch) {
+        long start = System.nanoTime();
+
+        try {
+            connect();
+
+            for (PendingEvent e : batch) {
+                TextMessage message = session.createTextMessage(e.event.toJSON());
+                for (Map.Entry<String, String> h : e.headers.entrySet()) {
+                    message.setStringProperty(h.getKey(), h.getValue());
+                }
+
+                publisher.publish(message);
+            }
 
-            ProducerConnectionContext producerConnectionContext = ccf.createProducerConnectionContext(
-                    new Endpoint(Endpoint.Type.TOPIC, topicName));
-            messageProcessor.send(producerConnectionContext, message, headers);
+            session.commit();
 
-            Log.LOG.tracef("Sent message %s with headers %s to %s", message, headers,
-                    producerConnectionContext.getDestination());
+            publishedEventCount.addAndGet(batch.size());
+            flushCount.incrementAndGet();
+
+            LOG.tracef("Published a batch of %d inventory events to %s", batch.size(), topicName);
+        } catch (JMSException | RuntimeException e) {
+            LOG.failedToPublishBatch(batch.size(), topicName, e);
+            discardedEventCount.addAndGet(batch.size());
+            failedFlushCount.incrementAndGet();
+
+            //the connection might be broken, let's start afresh with the next batch
+            disconnect();
+        } finally {
+            long latency = System.nanoTime() - start;
+            lastFlushLatency = latency;
+            totalFlushLatency.addAndGet(latency);
+            if (latency > maxFlushLatency) {
+                maxFlushLatency = latency;
+            }
+        }
+    }
+
+    private void connect() throws JMSException {
+        if (connection != null) {
+            return;
+        }
+
+        connection = topicConnectionFactory.createTopicConnection();
+        session = connection.createTopicSession(true, Session.SESSION_TRANSACTED);
+        publisher = session.createPublisher(session.createTopic(topicName));
+    }
+
+    private void disconnect() {
+        if (connection == null) {
+            return;
+        }
+
+        try {
+            //closing the connection closes the session and the publisher, too, and rolls back the uncommitted work
+            connection.close();
         } catch (JMSException e) {
-            LOG.failedToSendMessage(message.toString());
+            LOG.debugf(e, "Failed to close the connection to the topic %s", topicName);
+        } finally {
+            connection = null;
+            session = null;
+            publisher = null;
         }
     }
 
@@ -76,4 +328,14 @@ final class MessageSender {
     private String firstLetterLowercased(String source) {
         return Character.toLowerCase(source.charAt(0)) + source.substring(1);
     }
+
+    private static final class PendingEvent {
+        final InventoryEvent<?> event;
+        final Map<String, String> headers;
+
+        PendingEvent(InventoryEvent<?> event, Map<String, String> headers) {
+            this.event = event;
+            this.headers = headers;
+        }
+    }
 }
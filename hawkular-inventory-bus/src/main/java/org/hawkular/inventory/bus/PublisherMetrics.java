@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.bus;
+
+/**
+ * The metrics of the publishing of the inventory events to the bus. These are registered in the platform MBean server
+ * by the {@link BusIntegration} under the
+ * {@code org.hawkular.inventory:type=BusPublisher,inventory="<instance name>",topic="<topic name>"} name, where the
+ * instance name is taken from {@link Configuration#getInventoryInstanceName()}.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public interface PublisherMetrics {
+
+    /**
+     * @return the number of events waiting to be published
+     */
+    int getQueueDepth();
+
+    /**
+     * @return the maximum number of events that can wait to be published
+     */
+    int getQueueCapacity();
+
+    /**
+     * @return the total number of events successfully published
+     */
+    long getPublishedEventCount();
+
+    /**
+     * @return the total number of events that could not be published
+     */
+    long getDiscardedEventCount();
+
+    /**
+     * @return the number of batches committed to the bus
+     */
+    long getFlushCount();
+
+    /**
+     * @return the number of batches that failed to be committed
+     */
+    long getFailedFlushCount();
+
+    /**
+     * @return the time it took to publish and commit the last batch, in microseconds
+     */
+    long getLastFlushLatency();
+
+    /**
+     * @return the longest time it took to publish and commit a batch, in microseconds
+     */
+    long getMaxFlushLatency();
+
+    /**
+     * @return the average time it takes to publish and commit a batch, in microseconds
+     */
+    long getAverageFlushLatency();
+}
@@ -25,6 +25,7 @@ import static org.junit.Assert.assertThat;
 import java.util.HashMap;
 import java.util.Map;
 
+import org.apache.activemq.ActiveMQConnectionFactory;
 import org.hawkular.bus.common.ConnectionContextFactory;
 import org.hawkular.bus.common.Endpoint;
 import org.hawkular.bus.common.MessageProcessor;
@@ -33,6 +34,7 @@ import org.hawkular.bus.common.producer.ProducerConnectionContext;
 import org.hawkular.bus.common.test.SimpleTestListener;
 import org.hawkular.bus.common.test.VMEmbeddedBrokerWrapper;
 import org.hawkular.inventory.api.Action;
+import org.hawkular.inventory.api.Interest;
 import org.hawkular.inventory.api.model.CanonicalPath;
 import org.hawkular.inventory.api.model.Environment;
 import org.hawkular.inventory.api.model.Feed;
@@ -249,4 +251,53 @@ public class BusTest {
             broker.stop();
         }
     }
+
+    @Test
+    public void publishBufferedEvents() throws Exception {
+        ConnectionContextFactory consumerFactory = null;
+        MessageSender sender = null;
+
+        VMEmbeddedBrokerWrapper broker = new VMEmbeddedBrokerWrapper();
+        broker.start();
+
+        try {
+            String brokerURL = broker.getBrokerURL();
+            Endpoint endpoint = new Endpoint(Endpoint.Type.TOPIC, "testt");
+
+            consumerFactory = new ConnectionContextFactory(brokerURL);
+            ConsumerConnectionContext consumerContext = consumerFactory.createConsumerConnectionContext(endpoint);
+            SimpleTestListener<TenantEvent> tenantListener = new SimpleTestListener<>(TenantEvent.class);
+            new MessageProcessor().listen(consumerContext, tenantListener);
+
+            Configuration config = Configuration.builder()
+                    .with(Configuration.Property.INVENTORY_CHANGES_TOPIC_NAME, "testt")
+                    .with(Configuration.Property.BATCH_SIZE, "10")
+                    .with(Configuration.Property.FLUSH_INTERVAL, "50").build();
+
+            sender = new MessageSender(new ActiveMQConnectionFactory(brokerURL), config);
+
+            Tenant tenant = new Tenant(CanonicalPath.fromString("/t;c"), objectProperties);
+            sender.send(Interest.in(Tenant.class).being(Action.created()), tenant);
+
+            tenantListener.waitForMessage(3);
+            TenantEvent received = tenantListener.getReceivedMessage();
+            assertNotNull(received);
+            assertEquals(tenant.getPath(), received.getObject().getPath());
+            assertEquals("created", received.getHeaders().get("action"));
+            assertEquals("tenant", received.getHeaders().get("entityType"));
+
+            sender.close();
+            assertEquals(1, sender.getPublishedEventCount());
+            assertEquals(1, sender.getFlushCount());
+            assertEquals(0, sender.getQueueDepth());
+        } finally {
+            if (sender != null) {
+                sender.close();
+            }
+            if (consumerFactory != null) {
+                consumerFactory.close();
+            }
+            broker.stop();
+        }
+    }
 }
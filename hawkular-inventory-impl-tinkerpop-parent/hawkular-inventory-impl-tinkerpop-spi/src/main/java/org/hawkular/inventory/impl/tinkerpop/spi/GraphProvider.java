@@ -16,6 +16,8 @@
  */
 package org.hawkular.inventory.impl.tinkerpop.spi;
 
+import java.util.Map;
+
 import org.hawkular.inventory.api.Configuration;
 import org.hawkular.inventory.base.spi.InventoryBackend;
 
@@ -54,6 +56,21 @@ public interface GraphProvider<G extends TransactionalGraph> {
      */
     void ensureIndices(G graph, IndexSpec... indexSpecs);
 
+    /**
+     * Makes sure that the concurrent updates of the provided properties of a single element cannot silently overwrite
+     * each other. The implementation uses this for the properties it updates by reading their current value and
+     * writing a new value computed from it.
+     *
+     * <p>The default implementation does nothing, which is enough for the graphs that serialize the writers or detect
+     * the conflicting writes themselves.
+     *
+     * @param graph      the graph instance (coming from the
+     *                   {@link #instantiateGraph(org.hawkular.inventory.api.Configuration)} call)
+     * @param properties the names of the properties and their data types
+     */
+    default void ensureConsistentProperties(G graph, Map<String, Class<?>> properties) {
+    }
+
     /**
      * Starts a new transaction in the graph.
      *
@@ -68,6 +85,42 @@ public interface GraphProvider<G extends TransactionalGraph> {
         return new InventoryBackend.Transaction(mutating);
     }
 
+    /**
+     * Starts a new transaction in the graph, knowing the tenant the transaction is (most probably) going to work in.
+     * The graphs that need to serialize the writers can use this to only serialize the writers of the same tenant.
+     * Note that the tenant is only a hint, the transaction can still touch the data of other tenants through the
+     * relationships crossing the tenants.
+     *
+     * <p>The default implementation ignores the tenant and calls {@link #startTransaction(TransactionalGraph,
+     * boolean)}.
+     *
+     * @param graph    the graph to start the transaction in
+     * @param mutating whether the transaction will mutate the storage or not
+     * @param tenantId the id of the tenant or null if not known
+     * @return a transaction handle
+     */
+    default InventoryBackend.Transaction startTransaction(G graph, boolean mutating, String tenantId) {
+        return startTransaction(graph, mutating);
+    }
+
+    /**
+     * Returns the graph that the work done in the transaction should be performed against.
+     *
+     * <p>Graph databases that support explicit transaction handles (that are not bound to the current thread) can
+     * return the handle here, so that the transactions can be freely moved between threads and can be tuned for
+     * their purpose (e.g. read-only transactions).
+     *
+     * <p>The default implementation returns the provided graph, i.e. the work is done in the thread-bound
+     * transaction of the graph.
+     *
+     * @param graph the graph the transaction was started in
+     * @param t     the transaction obtained from {@link #startTransaction(TransactionalGraph, boolean)}
+     * @return the graph to use for the work done in the transaction
+     */
+    default TransactionalGraph getTransactionGraph(G graph, InventoryBackend.Transaction t) {
+        return graph;
+    }
+
     /**
      * Commits the transaction in the graph.
      *
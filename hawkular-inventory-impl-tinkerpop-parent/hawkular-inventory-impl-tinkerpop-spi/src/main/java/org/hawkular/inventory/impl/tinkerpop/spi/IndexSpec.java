@@ -17,25 +17,67 @@
 package org.hawkular.inventory.impl.tinkerpop.spi;
 
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 
 /**
+ * Describes an index the inventory needs for good performance.
+ *
+ * <p>There are two kinds of indices:
+ * <ul>
+ *     <li>graph indices, that look up vertices or edges by the values of their properties across the whole graph,
+ *     <li>vertex-centric indices, that look up the edges with given label incident on a single vertex by the values
+ *     of the properties of the edges. Such index makes it possible to find a single edge among the (possibly many)
+ *     edges of a vertex without iterating over all of them. Vertex-centric indices are always defined on edges and
+ *     are recognized by having an {@link #getEdgeLabel() edge label}.
+ * </ul>
+ *
  * @author Lukas Krejci
  * @since 0.0.1
  */
 public final class IndexSpec {
     private final Map<String, Class<?>> properties;
     private final Class<? extends Element> elementType;
+    private final boolean unique;
+    private final String edgeLabel;
+    private final Direction direction;
 
     public static Builder builder() {
         return new Builder();
     }
 
     public IndexSpec(Class<? extends Element> elementType, Map<String, Class<?>> properties) {
+        this(elementType, properties, false);
+    }
+
+    public IndexSpec(Class<? extends Element> elementType, Map<String, Class<?>> properties, boolean unique) {
+        this(elementType, properties, unique, null, null);
+    }
+
+    /**
+     * @param elementType the type of the indexed elements, must be {@link Edge} for vertex-centric indices
+     * @param properties  the indexed properties (the sort keys of the vertex-centric indices, in the iteration
+     *                    order of the map)
+     * @param unique      whether the combination of the properties is unique
+     * @param edgeLabel   the label of the edges to create the vertex-centric index for or null for graph indices
+     * @param direction   the direction of the edges to index with a vertex-centric index, {@link Direction#BOTH}
+     *                    if null
+     */
+    public IndexSpec(Class<? extends Element> elementType, Map<String, Class<?>> properties, boolean unique,
+            String edgeLabel, Direction direction) {
+        if (edgeLabel != null && !Edge.class.equals(elementType)) {
+            throw new IllegalArgumentException("Vertex-centric indices can only be defined on edges.");
+        }
+
         this.elementType = elementType;
         this.properties = properties;
+        this.unique = unique;
+        this.edgeLabel = edgeLabel;
+        this.direction = direction == null ? Direction.BOTH : direction;
     }
 
     public Class<? extends Element> getElementType() {
@@ -46,14 +88,47 @@ public final class IndexSpec {
         return properties;
     }
 
+    /**
+     * @return true if the combination of the values of the indexed properties is unique across all elements of the
+     * indexed type, i.e. a lookup using this index returns at most a single element
+     */
+    public boolean isUnique() {
+        return unique;
+    }
+
+    /**
+     * @return the label of the edges indexed by this vertex-centric index or null if this is a graph index
+     */
+    public String getEdgeLabel() {
+        return edgeLabel;
+    }
+
+    /**
+     * @return the direction of the edges (as seen from the vertex) indexed by the vertex-centric index
+     */
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * @return true if this is a vertex-centric index, false if it is a graph index
+     */
+    public boolean isVertexCentric() {
+        return edgeLabel != null;
+    }
+
     @Override
     public String toString() {
-        return "IndexSpec[type=" + elementType.getSimpleName() + ",properties=" + properties + "]";
+        return "IndexSpec[type=" + elementType.getSimpleName() + ",properties=" + properties + ",unique=" + unique
+                + (edgeLabel == null ? "" : ",edgeLabel=" + edgeLabel + ",direction=" + direction) + "]";
     }
 
     public static final class Builder {
-        private final Map<String, Class<?>> properties = new HashMap<>();
+        private final Map<String, Class<?>> properties = new LinkedHashMap<>();
         private Class<? extends Element> elementType;
+        private boolean unique;
+        private String edgeLabel;
+        private Direction direction;
 
         private Builder() {
 
@@ -69,8 +144,37 @@ public final class IndexSpec {
             return this;
         }
 
+        public Builder withUnique(boolean unique) {
+            this.unique = unique;
+            return this;
+        }
+
+        /**
+         * Makes the index a vertex-centric index of the edges with the provided label. The element type of such
+         * index is implicitly {@link Edge}.
+         *
+         * @param edgeLabel the label of the edges to index
+         * @param direction the direction of the edges to index
+         * @return this builder
+         */
+        public Builder withEdgeLabel(String edgeLabel, Direction direction) {
+            this.elementType = Edge.class;
+            this.edgeLabel = edgeLabel;
+            this.direction = direction;
+            return this;
+        }
+
         public IndexSpec build() {
-            return new IndexSpec(elementType, properties);
+            if (edgeLabel != null) {
+                //the order of the sort keys matters for the vertex-centric indices
+                return new IndexSpec(elementType, properties, unique, edgeLabel, direction);
+            }
+
+            //the graph indices are named after their properties in the iteration order of a hash map, so keep it that
+            //way for the existing indices to keep their names
+            Map<String, Class<?>> props = new HashMap<>();
+            properties.forEach(props::put);
+            return new IndexSpec(elementType, props, unique, null, null);
         }
     }
 }
@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import static com.tinkerpop.blueprints.Direction.IN;
+import static com.tinkerpop.blueprints.Direction.OUT;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.util.wrappers.event.listener.GraphChangedListener;
+
+/**
+ * Records the changes made by a writer in the "snapshot" transaction mode of the {@link TinkerGraphProvider}, so that
+ * they can be applied on top of the version of the graph committed by another writer in the meantime.
+ *
+ * <p>The elements are identified by their ids, which are the same in all the versions of the graph. If a change can
+ * no longer be applied, because the element it modifies was removed or its property changed in the meantime, the
+ * replay fails with an {@link IllegalStateException}.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class ChangeLog implements GraphChangedListener {
+    private final List<Consumer<Graph>> changes = new ArrayList<>();
+
+    /**
+     * Applies the recorded changes to the provided graph.
+     *
+     * @param graph the graph to modify
+     * @throws IllegalStateException if the changes conflict with the state of the graph
+     */
+    void replay(Graph graph) {
+        changes.forEach((c) -> c.accept(graph));
+    }
+
+    @Override
+    public void vertexAdded(Vertex vertex) {
+        Object id = vertex.getId();
+        changes.add((g) -> g.addVertex(id));
+    }
+
+    @Override
+    public void vertexPropertyChanged(Vertex vertex, String key, Object oldValue, Object setValue) {
+        Object id = vertex.getId();
+        changes.add((g) -> setProperty(vertex(g, id), key, oldValue, setValue));
+    }
+
+    @Override
+    public void vertexPropertyRemoved(Vertex vertex, String key, Object removedValue) {
+        Object id = vertex.getId();
+        changes.add((g) -> removeProperty(vertex(g, id), key, removedValue));
+    }
+
+    @Override
+    public void vertexRemoved(Vertex vertex, Map<String, Object> props) {
+        Object id = vertex.getId();
+        changes.add((g) -> g.removeVertex(vertex(g, id)));
+    }
+
+    @Override
+    public void edgeAdded(Edge edge) {
+        Object id = edge.getId();
+        Object outId = edge.getVertex(OUT).getId();
+        Object inId = edge.getVertex(IN).getId();
+        String label = edge.getLabel();
+        changes.add((g) -> g.addEdge(id, vertex(g, outId), vertex(g, inId), label));
+    }
+
+    @Override
+    public void edgePropertyChanged(Edge edge, String key, Object oldValue, Object setValue) {
+        Object id = edge.getId();
+        changes.add((g) -> setProperty(edge(g, id), key, oldValue, setValue));
+    }
+
+    @Override
+    public void edgePropertyRemoved(Edge edge, String key, Object removedValue) {
+        Object id = edge.getId();
+        changes.add((g) -> removeProperty(edge(g, id), key, removedValue));
+    }
+
+    @Override
+    public void edgeRemoved(Edge edge, Map<String, Object> props) {
+        Object id = edge.getId();
+        changes.add((g) -> g.removeEdge(edge(g, id)));
+    }
+
+    private static void setProperty(Element element, String key, Object expectedValue, Object value) {
+        checkUnchanged(element, key, expectedValue);
+        element.setProperty(key, value);
+    }
+
+    private static void removeProperty(Element element, String key, Object expectedValue) {
+        checkUnchanged(element, key, expectedValue);
+        element.removeProperty(key);
+    }
+
+    private static void checkUnchanged(Element element, String key, Object expectedValue) {
+        if (!Objects.equals(element.getProperty(key), expectedValue)) {
+            throw new IllegalStateException("Property '" + key + "' of element " + element.getId() + " has been" +
+                    " concurrently modified.");
+        }
+    }
+
+    private static Vertex vertex(Graph graph, Object id) {
+        Vertex ret = graph.getVertex(id);
+        if (ret == null) {
+            throw new IllegalStateException("Vertex " + id + " has been concurrently removed.");
+        }
+        return ret;
+    }
+
+    private static Edge edge(Graph graph, Object id) {
+        Edge ret = graph.getEdge(id);
+        if (ret == null) {
+            throw new IllegalStateException("Edge " + id + " has been concurrently removed.");
+        }
+        return ret;
+    }
+}
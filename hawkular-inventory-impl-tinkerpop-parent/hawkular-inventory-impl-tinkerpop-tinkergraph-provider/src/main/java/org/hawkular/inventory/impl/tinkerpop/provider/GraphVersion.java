@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import java.util.Arrays;
+
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+/**
+ * An immutable version of the graph in the "snapshot" transaction mode of the {@link TinkerGraphProvider}. It consists
+ * of a base TinkerGraph that is never modified and the layers of changes committed on top of it, the oldest first.
+ *
+ * <p>The sequence number of a version counts the commits it contains. It doesn't change when the layers are flattened
+ * into a new base, so it identifies the contents of the version regardless of how they are stored.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class GraphVersion {
+    final TinkerGraph base;
+    final long sequence;
+    final Layer[] layers;
+
+    GraphVersion(TinkerGraph base, long sequence, Layer... layers) {
+        this.base = base;
+        this.sequence = sequence;
+        this.layers = layers;
+    }
+
+    /**
+     * @param layer the layer to add
+     * @return a new version with the provided layer on top of the layers of this version
+     */
+    GraphVersion with(Layer layer) {
+        Layer[] newLayers = Arrays.copyOf(layers, layers.length + 1);
+        newLayers[layers.length] = layer;
+        return new GraphVersion(base, sequence + 1, newLayers);
+    }
+
+    /**
+     * Replaces the base and the layers of an older version of this version with the provided graph, which must be
+     * equivalent to that older version.
+     *
+     * @param older     the older version this version has been created from by adding layers
+     * @param flattened the graph with the same contents as the older version
+     * @return the new version with the same contents as this version
+     */
+    GraphVersion rebase(GraphVersion older, TinkerGraph flattened) {
+        if (!isDescendantOf(older)) {
+            throw new IllegalArgumentException("The provided version is not an ancestor of this version.");
+        }
+
+        return new GraphVersion(flattened, sequence, Arrays.copyOfRange(layers, older.layers.length, layers.length));
+    }
+
+    /**
+     * @param older the version to check
+     * @return true if this version was created from the provided version by adding layers (or is the same)
+     */
+    boolean isDescendantOf(GraphVersion older) {
+        if (older.base != base || older.layers.length > layers.length) {
+            return false;
+        }
+
+        for (int i = 0; i < older.layers.length; ++i) {
+            if (older.layers[i] != layers[i]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+}
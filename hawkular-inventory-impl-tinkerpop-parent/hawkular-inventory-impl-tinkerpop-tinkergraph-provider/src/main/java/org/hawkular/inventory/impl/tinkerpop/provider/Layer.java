@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The changes made to the graph by a single writer in the "snapshot" transaction mode of the
+ * {@link TinkerGraphProvider}. The layer is only modified by the writer that owns it and becomes immutable once it is
+ * committed as a part of a {@link GraphVersion}.
+ *
+ * <p>A vertex or an edge that is modified in the layer gets a full copy of its properties in it. The edges added to
+ * an existing vertex are only recorded as additions to its adjacency, so that modifying a vertex with many edges
+ * doesn't need to copy them. The removed elements are recorded as tombstones, the edges of a removed vertex are
+ * removed, too.
+ *
+ * <p>The values of the indexed keys set in the layer are indexed in it, so that the lookups by them don't need to
+ * scan the graph. The index only records the candidates, the callers need to check that the element still has the
+ * value.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class Layer {
+    final Map<String, VertexDelta> vertices = new HashMap<>();
+    final Map<String, EdgeDelta> edges = new HashMap<>();
+    final Map<String, Map<Object, Set<String>>> vertexIndex = new HashMap<>();
+    final Map<String, Map<Object, Set<String>>> edgeIndex = new HashMap<>();
+
+    boolean isEmpty() {
+        return vertices.isEmpty() && edges.isEmpty();
+    }
+
+    static void index(Map<String, Map<Object, Set<String>>> index, String key, Object value, String id) {
+        index.computeIfAbsent(key, (k) -> new HashMap<>()).computeIfAbsent(value, (v) -> new HashSet<>()).add(id);
+    }
+
+    static Set<String> lookup(Map<String, Map<Object, Set<String>>> index, String key, Object value) {
+        Map<Object, Set<String>> values = index.get(key);
+        return values == null ? null : values.get(value);
+    }
+
+    static final class VertexDelta {
+        /**
+         * True if the vertex has been removed in the layer.
+         */
+        boolean removed;
+
+        /**
+         * The properties of the vertex or null if they were not modified in the layer.
+         */
+        Map<String, Object> properties;
+
+        /**
+         * The ids of the outgoing edges added in the layer or null if there are none.
+         */
+        List<String> addedOutEdges;
+
+        /**
+         * The ids of the incoming edges added in the layer or null if there are none.
+         */
+        List<String> addedInEdges;
+
+        /**
+         * @return true if this delta determines the state of the vertex, i.e. whether it exists and what its
+         * properties are, false if it only adds edges to it
+         */
+        boolean definesState() {
+            return removed || properties != null;
+        }
+
+        void addOutEdge(String id) {
+            if (addedOutEdges == null) {
+                addedOutEdges = new ArrayList<>(2);
+            }
+            addedOutEdges.add(id);
+        }
+
+        void addInEdge(String id) {
+            if (addedInEdges == null) {
+                addedInEdges = new ArrayList<>(2);
+            }
+            addedInEdges.add(id);
+        }
+    }
+
+    static final class EdgeDelta {
+        final boolean removed;
+        final String label;
+        final String outId;
+        final String inId;
+        final Map<String, Object> properties;
+
+        EdgeDelta(String label, String outId, String inId, Map<String, Object> properties) {
+            this.removed = false;
+            this.label = label;
+            this.outId = outId;
+            this.inId = inId;
+            this.properties = properties;
+        }
+
+        private EdgeDelta() {
+            this.removed = true;
+            this.label = null;
+            this.outId = null;
+            this.inId = null;
+            this.properties = null;
+        }
+
+        static EdgeDelta removed() {
+            return new EdgeDelta();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+/**
+ * The metrics of the locks serializing the writers in the {@link TinkerGraphProvider}. These are registered in the
+ * platform MBean server under the
+ * {@code org.hawkular.inventory:type=TinkerGraphLocks,inventory="<instance name>",graph="<graph id>"} name.
+ *
+ * <p>In the "locking" transaction mode, all the writers take the graph-wide structure lock. In the "snapshot" mode,
+ * the writers in a known tenant take the lock of that tenant and only share the structure lock, which is taken
+ * exclusively by the writers that cannot be attributed to a single tenant, like the creation or deletion of tenants.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public interface LockMetrics {
+
+    /**
+     * @return the number of times a tenant lock was acquired
+     */
+    long getTenantLockAcquisitionCount();
+
+    /**
+     * @return the total time spent waiting for the tenant locks, in microseconds
+     */
+    long getTenantLockWaitTime();
+
+    /**
+     * @return the longest time spent waiting for a tenant lock, in microseconds
+     */
+    long getMaxTenantLockWaitTime();
+
+    /**
+     * @return the number of times the structure lock was acquired
+     */
+    long getStructureLockAcquisitionCount();
+
+    /**
+     * @return the total time spent waiting for the structure lock, in microseconds
+     */
+    long getStructureLockWaitTime();
+
+    /**
+     * @return the longest time spent waiting for the structure lock, in microseconds
+     */
+    long getMaxStructureLockWaitTime();
+
+    /**
+     * @return the number of tenants that are being written to or waited for. The lock of a tenant is discarded once
+     *         there are no writers in it.
+     */
+    int getTenantCount();
+
+    /**
+     * @return the number of commits that had to apply their changes on top of the changes committed concurrently
+     * in other tenants
+     */
+    long getMergedCommitCount();
+
+    /**
+     * @return the number of commits that failed, because they conflicted with the changes committed concurrently
+     */
+    long getConflictCount();
+}
@@ -0,0 +1,771 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import static com.tinkerpop.blueprints.Direction.IN;
+import static com.tinkerpop.blueprints.Direction.OUT;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Features;
+import com.tinkerpop.blueprints.GraphQuery;
+import com.tinkerpop.blueprints.KeyIndexableGraph;
+import com.tinkerpop.blueprints.Parameter;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.VertexQuery;
+import com.tinkerpop.blueprints.util.DefaultGraphQuery;
+import com.tinkerpop.blueprints.util.DefaultVertexQuery;
+import com.tinkerpop.blueprints.util.ElementHelper;
+import com.tinkerpop.blueprints.util.StringFactory;
+import com.tinkerpop.blueprints.util.VerticesFromEdgesIterable;
+
+/**
+ * A view of a {@link GraphVersion} used by the transactions in the "snapshot" mode of the {@link TinkerGraphProvider}.
+ *
+ * <p>The state of an element is looked up in the layer of the writer (if any), then in the layers of the version from
+ * the newest to the oldest and finally in the base graph. The modifications are only ever recorded in the layer of
+ * the writer, the version itself is never modified. A view without a layer is read-only.
+ *
+ * <p>The elements returned from the view are just handles holding the id of the element (and the immutable label and
+ * vertices of an edge), so they always reflect the state of the element in the view.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class OverlayGraph implements KeyIndexableGraph {
+    private final GraphVersion version;
+    private final Layer layer;
+    private final AtomicLong ids;
+
+    /**
+     * @param version the version of the graph to view
+     * @param layer   the layer to record the modifications in or null if the view is read-only
+     * @param ids     the generator of the ids of the new elements
+     */
+    OverlayGraph(GraphVersion version, Layer layer, AtomicLong ids) {
+        this.version = version;
+        this.layer = layer;
+        this.ids = ids;
+    }
+
+    /**
+     * @return the layer the modifications are recorded in or null if the view is read-only
+     */
+    Layer getLayer() {
+        return layer;
+    }
+
+    @Override
+    public Features getFeatures() {
+        return version.base.getFeatures();
+    }
+
+    @Override
+    public Vertex addVertex(Object id) {
+        String vid = id == null ? nextId() : id.toString();
+        if (vertexExists(vid)) {
+            throw new IllegalArgumentException("Vertex with id " + vid + " already exists.");
+        }
+
+        Layer.VertexDelta d = new Layer.VertexDelta();
+        d.properties = new HashMap<>();
+        writableLayer().vertices.put(vid, d);
+
+        return new OverlayVertex(this, vid);
+    }
+
+    @Override
+    public Vertex getVertex(Object id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Vertex id cannot be null.");
+        }
+
+        String vid = id.toString();
+        return vertexExists(vid) ? new OverlayVertex(this, vid) : null;
+    }
+
+    @Override
+    public void removeVertex(Vertex vertex) {
+        String vid = vertex.getId().toString();
+        if (!vertexExists(vid)) {
+            throw new IllegalStateException("Vertex with id " + vid + " does not exist.");
+        }
+
+        Layer l = writableLayer();
+
+        for (Edge e : incidentEdges(vid, Direction.BOTH)) {
+            String eid = e.getId().toString();
+            //self-loops are reported twice
+            if (edgeExists(eid)) {
+                l.edges.put(eid, Layer.EdgeDelta.removed());
+            }
+        }
+
+        Layer.VertexDelta d = new Layer.VertexDelta();
+        d.removed = true;
+        l.vertices.put(vid, d);
+    }
+
+    @Override
+    public Iterable<Vertex> getVertices() {
+        return () -> new LazyIterator<>(allIds(version.base.getVertices(), (l) -> l.vertices,
+                (id) -> version.base.getVertex(id) != null),
+                (id) -> vertexExists(id) ? new OverlayVertex(this, id) : null);
+    }
+
+    @Override
+    public Iterable<Vertex> getVertices(String key, Object value) {
+        Iterable<Vertex> candidates;
+        if (getIndexedKeys(Vertex.class).contains(key)) {
+            Set<String> indexed = new LinkedHashSet<>();
+            for (Vertex v : version.base.getVertices(key, value)) {
+                indexed.add(v.getId().toString());
+            }
+            forEachLayer((l) -> addAll(indexed, Layer.lookup(l.vertexIndex, key, value)));
+
+            List<Vertex> vs = new ArrayList<>(indexed.size());
+            indexed.forEach((id) -> vs.add(new OverlayVertex(this, id)));
+            candidates = vs;
+        } else {
+            candidates = getVertices();
+        }
+
+        //the missing vertices have no properties
+        return () -> new LazyIterator<>(Collections.singleton(candidates.iterator()).iterator(),
+                (v) -> Objects.equals(value, vertexProperty(v.getId().toString(), key)) ? v : null);
+    }
+
+    @Override
+    public Edge addEdge(Object id, Vertex outVertex, Vertex inVertex, String label) {
+        if (label == null) {
+            throw new IllegalArgumentException("Edge label cannot be null.");
+        }
+
+        String eid = id == null ? nextId() : id.toString();
+        String outId = outVertex.getId().toString();
+        String inId = inVertex.getId().toString();
+
+        if (!vertexExists(outId) || !vertexExists(inId)) {
+            throw new IllegalStateException("Cannot connect vertices " + outId + " and " + inId + ", at least one of" +
+                    " them does not exist.");
+        }
+
+        if (edgeExists(eid)) {
+            throw new IllegalArgumentException("Edge with id " + eid + " already exists.");
+        }
+
+        Layer l = writableLayer();
+        l.edges.put(eid, new Layer.EdgeDelta(label, outId, inId, new HashMap<>()));
+        l.vertices.computeIfAbsent(outId, (i) -> new Layer.VertexDelta()).addOutEdge(eid);
+        l.vertices.computeIfAbsent(inId, (i) -> new Layer.VertexDelta()).addInEdge(eid);
+
+        return new OverlayEdge(this, eid, label, outId, inId);
+    }
+
+    @Override
+    public Edge getEdge(Object id) {
+        if (id == null) {
+            throw new IllegalArgumentException("Edge id cannot be null.");
+        }
+
+        return edge(id.toString());
+    }
+
+    @Override
+    public void removeEdge(Edge edge) {
+        String eid = edge.getId().toString();
+        if (!edgeExists(eid)) {
+            throw new IllegalStateException("Edge with id " + eid + " does not exist.");
+        }
+
+        writableLayer().edges.put(eid, Layer.EdgeDelta.removed());
+    }
+
+    @Override
+    public Iterable<Edge> getEdges() {
+        return () -> new LazyIterator<>(allIds(version.base.getEdges(), (l) -> l.edges,
+                (id) -> version.base.getEdge(id) != null), this::edge);
+    }
+
+    @Override
+    public Iterable<Edge> getEdges(String key, Object value) {
+        Iterable<Edge> candidates;
+        if (getIndexedKeys(Edge.class).contains(key)) {
+            Set<String> indexed = new LinkedHashSet<>();
+            for (Edge e : version.base.getEdges(key, value)) {
+                indexed.add(e.getId().toString());
+            }
+            forEachLayer((l) -> addAll(indexed, Layer.lookup(l.edgeIndex, key, value)));
+
+            List<Edge> es = new ArrayList<>(indexed.size());
+            for (String id : indexed) {
+                Edge e = edge(id);
+                if (e != null) {
+                    es.add(e);
+                }
+            }
+            candidates = es;
+        } else {
+            candidates = getEdges();
+        }
+
+        return () -> new LazyIterator<>(Collections.singleton(candidates.iterator()).iterator(),
+                (e) -> Objects.equals(value, edgeProperty(e.getId().toString(), key)) ? e : null);
+    }
+
+    @Override
+    public GraphQuery query() {
+        return new DefaultGraphQuery(this);
+    }
+
+    @Override
+    public void shutdown() {
+        //the versions are shut down by the provider
+    }
+
+    @Override
+    public <T extends Element> void dropKeyIndex(String key, Class<T> elementClass) {
+        throw new UnsupportedOperationException("The key indices can only be managed on the base graph.");
+    }
+
+    @Override
+    public <T extends Element> void createKeyIndex(String key, Class<T> elementClass,
+            @SuppressWarnings("rawtypes") Parameter... indexParameters) {
+        throw new UnsupportedOperationException("The key indices can only be managed on the base graph.");
+    }
+
+    @Override
+    public <T extends Element> Set<String> getIndexedKeys(Class<T> elementClass) {
+        return version.base.getIndexedKeys(elementClass);
+    }
+
+    @Override
+    public String toString() {
+        return StringFactory.graphString(this, "layers:" + version.layers.length);
+    }
+
+    private Layer writableLayer() {
+        if (layer == null) {
+            throw new IllegalStateException("The graph cannot be modified in a read-only transaction.");
+        }
+        return layer;
+    }
+
+    private String nextId() {
+        return Long.toString(ids.getAndIncrement());
+    }
+
+    /**
+     * Calls the action on the layers of the version from the oldest to the newest and finally on the layer of the
+     * writer.
+     */
+    private void forEachLayer(Consumer<Layer> action) {
+        for (Layer l : version.layers) {
+            action.accept(l);
+        }
+
+        if (layer != null) {
+            action.accept(layer);
+        }
+    }
+
+    /**
+     * Lists the ids of all the elements in the base graph and the layers, each only once and without copying them
+     * (except for the elements of the writer's own layer that can change during the iteration). The ids of the
+     * removed elements are included, too.
+     *
+     * @param base        the elements of the base graph
+     * @param elements    the elements of given type in a layer
+     * @param isInBase    checks whether the element with given id exists in the base graph
+     */
+    private Iterator<Iterator<String>> allIds(Iterable<? extends Element> base,
+            Function<Layer, Map<String, ?>> elements, Predicate<String> isInBase) {
+        List<Iterator<String>> ret = new ArrayList<>(version.layers.length + 2);
+        ret.add(new LazyIterator<>(Collections.singleton(base.iterator()).iterator(), (e) -> e.getId().toString()));
+
+        for (int i = 0; i < version.layers.length; ++i) {
+            int layerIndex = i;
+            Iterator<String> ids = elements.apply(version.layers[i]).keySet().iterator();
+            ret.add(new LazyIterator<>(Collections.singleton(ids).iterator(),
+                    (id) -> isFirstOccurrence(id, layerIndex, elements, isInBase) ? id : null));
+        }
+
+        if (layer != null) {
+            Iterator<String> ids = new ArrayList<>(elements.apply(layer).keySet()).iterator();
+            ret.add(new LazyIterator<>(Collections.singleton(ids).iterator(),
+                    (id) -> isFirstOccurrence(id, version.layers.length, elements, isInBase) ? id : null));
+        }
+
+        return ret.iterator();
+    }
+
+    private boolean isFirstOccurrence(String id, int layerIndex, Function<Layer, Map<String, ?>> elements,
+            Predicate<String> isInBase) {
+        for (int i = 0; i < layerIndex; ++i) {
+            if (elements.apply(version.layers[i]).containsKey(id)) {
+                return false;
+            }
+        }
+
+        return !isInBase.test(id);
+    }
+
+    private static void addAll(Set<String> target, Set<String> source) {
+        if (source != null) {
+            target.addAll(source);
+        }
+    }
+
+    /**
+     * @return the newest delta determining the state of the vertex or null if the vertex is not modified since the
+     * base graph
+     */
+    private Layer.VertexDelta vertexState(String id) {
+        if (layer != null) {
+            Layer.VertexDelta d = layer.vertices.get(id);
+            if (d != null && d.definesState()) {
+                return d;
+            }
+        }
+
+        for (int i = version.layers.length - 1; i >= 0; --i) {
+            Layer.VertexDelta d = version.layers[i].vertices.get(id);
+            if (d != null && d.definesState()) {
+                return d;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the newest delta of the edge or null if the edge is not modified since the base graph
+     */
+    private Layer.EdgeDelta edgeState(String id) {
+        if (layer != null) {
+            Layer.EdgeDelta d = layer.edges.get(id);
+            if (d != null) {
+                return d;
+            }
+        }
+
+        for (int i = version.layers.length - 1; i >= 0; --i) {
+            Layer.EdgeDelta d = version.layers[i].edges.get(id);
+            if (d != null) {
+                return d;
+            }
+        }
+
+        return null;
+    }
+
+    private boolean vertexExists(String id) {
+        Layer.VertexDelta d = vertexState(id);
+        return d == null ? version.base.getVertex(id) != null : !d.removed;
+    }
+
+    private boolean edgeExists(String id) {
+        Layer.EdgeDelta d = edgeState(id);
+        return d == null ? version.base.getEdge(id) != null : !d.removed;
+    }
+
+    private OverlayEdge edge(String id) {
+        Layer.EdgeDelta d = edgeState(id);
+        if (d != null) {
+            return d.removed ? null : new OverlayEdge(this, id, d.label, d.outId, d.inId);
+        }
+
+        Edge e = version.base.getEdge(id);
+        return e == null ? null : baseEdge(e);
+    }
+
+    private OverlayEdge baseEdge(Edge e) {
+        return new OverlayEdge(this, e.getId().toString(), e.getLabel(), e.getVertex(OUT).getId().toString(),
+                e.getVertex(IN).getId().toString());
+    }
+
+    private List<Edge> incidentEdges(String vertexId, Direction direction, String... labels) {
+        List<Edge> ret = new ArrayList<>();
+        if (direction != IN) {
+            collectEdges(vertexId, OUT, labels, ret);
+        }
+
+        if (direction != OUT) {
+            collectEdges(vertexId, IN, labels, ret);
+        }
+
+        return ret;
+    }
+
+    private void collectEdges(String vertexId, Direction direction, String[] labels, List<Edge> result) {
+        Vertex base = version.base.getVertex(vertexId);
+        if (base != null) {
+            for (Edge e : base.getEdges(direction, labels)) {
+                String id = e.getId().toString();
+                if (edgeState(id) == null) {
+                    result.add(baseEdge(e));
+                } else {
+                    OverlayEdge oe = edge(id);
+                    if (oe != null) {
+                        result.add(oe);
+                    }
+                }
+            }
+        }
+
+        forEachLayer((l) -> {
+            Layer.VertexDelta d = l.vertices.get(vertexId);
+            List<String> added = d == null ? null : (direction == OUT ? d.addedOutEdges : d.addedInEdges);
+            if (added == null) {
+                return;
+            }
+
+            for (String id : added) {
+                OverlayEdge e = edge(id);
+                if (e != null && hasLabel(e.label, labels)) {
+                    result.add(e);
+                }
+            }
+        });
+    }
+
+    private static boolean hasLabel(String label, String[] labels) {
+        if (labels.length == 0) {
+            return true;
+        }
+
+        for (String l : labels) {
+            if (l.equals(label)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private Object vertexProperty(String id, String key) {
+        Layer.VertexDelta d = vertexState(id);
+        if (d != null) {
+            return d.removed ? null : d.properties.get(key);
+        }
+
+        Vertex v = version.base.getVertex(id);
+        return v == null ? null : v.getProperty(key);
+    }
+
+    private Map<String, Object> vertexProperties(String id) {
+        Layer.VertexDelta d = vertexState(id);
+        if (d != null) {
+            return d.removed ? null : d.properties;
+        }
+
+        Vertex v = version.base.getVertex(id);
+        return v == null ? null : propertiesOf(v);
+    }
+
+    private Map<String, Object> writableVertexProperties(String id) {
+        Layer l = writableLayer();
+        Layer.VertexDelta d = l.vertices.get(id);
+        if (d == null || !d.definesState()) {
+            Map<String, Object> current = vertexProperties(id);
+            if (current == null) {
+                throw new IllegalStateException("Vertex with id " + id + " does not exist.");
+            }
+
+            if (d == null) {
+                d = new Layer.VertexDelta();
+                l.vertices.put(id, d);
+            }
+            d.properties = new HashMap<>(current);
+        } else if (d.removed) {
+            throw new IllegalStateException("Vertex with id " + id + " does not exist.");
+        }
+
+        return d.properties;
+    }
+
+    private void setVertexProperty(String id, String key, Object value) {
+        writableVertexProperties(id).put(key, value);
+        if (getIndexedKeys(Vertex.class).contains(key)) {
+            Layer.index(layer.vertexIndex, key, value, id);
+        }
+    }
+
+    private Object edgeProperty(String id, String key) {
+        Layer.EdgeDelta d = edgeState(id);
+        if (d != null) {
+            return d.removed ? null : d.properties.get(key);
+        }
+
+        Edge e = version.base.getEdge(id);
+        return e == null ? null : e.getProperty(key);
+    }
+
+    private Map<String, Object> edgeProperties(String id) {
+        Layer.EdgeDelta d = edgeState(id);
+        if (d != null) {
+            return d.removed ? null : d.properties;
+        }
+
+        Edge e = version.base.getEdge(id);
+        return e == null ? null : propertiesOf(e);
+    }
+
+    private Map<String, Object> writableEdgeProperties(String id) {
+        Layer l = writableLayer();
+        Layer.EdgeDelta d = l.edges.get(id);
+        if (d == null) {
+            OverlayEdge e = edge(id);
+            if (e == null) {
+                throw new IllegalStateException("Edge with id " + id + " does not exist.");
+            }
+
+            d = new Layer.EdgeDelta(e.label, e.outId, e.inId, new HashMap<>(edgeProperties(id)));
+            l.edges.put(id, d);
+        } else if (d.removed) {
+            throw new IllegalStateException("Edge with id " + id + " does not exist.");
+        }
+
+        return d.properties;
+    }
+
+    private void setEdgeProperty(String id, String key, Object value) {
+        writableEdgeProperties(id).put(key, value);
+        if (getIndexedKeys(Edge.class).contains(key)) {
+            Layer.index(layer.edgeIndex, key, value, id);
+        }
+    }
+
+    private static Map<String, Object> propertiesOf(Element e) {
+        Map<String, Object> ret = new HashMap<>();
+        for (String key : e.getPropertyKeys()) {
+            ret.put(key, e.getProperty(key));
+        }
+        return ret;
+    }
+
+    private static Set<String> keysOf(Map<String, Object> properties) {
+        return properties == null ? Collections.emptySet() : new HashSet<>(properties.keySet());
+    }
+
+    /**
+     * Lazily iterates over the mapped elements of the sources, skipping the elements mapped to null.
+     */
+    private static final class LazyIterator<S, T> implements Iterator<T> {
+        private final Iterator<? extends Iterator<? extends S>> sources;
+        private final Function<? super S, ? extends T> mapping;
+        private Iterator<? extends S> current = Collections.emptyIterator();
+        private T next;
+
+        LazyIterator(Iterator<? extends Iterator<? extends S>> sources, Function<? super S, ? extends T> mapping) {
+            this.sources = sources;
+            this.mapping = mapping;
+        }
+
+        @Override
+        public boolean hasNext() {
+            while (next == null) {
+                while (!current.hasNext()) {
+                    if (!sources.hasNext()) {
+                        return false;
+                    }
+                    current = sources.next();
+                }
+
+                next = mapping.apply(current.next());
+            }
+
+            return true;
+        }
+
+        @Override
+        public T next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            T ret = next;
+            next = null;
+            return ret;
+        }
+    }
+
+    private abstract static class OverlayElement implements Element {
+        final OverlayGraph graph;
+        final String id;
+
+        OverlayElement(OverlayGraph graph, String id) {
+            this.graph = graph;
+            this.id = id;
+        }
+
+        @Override
+        public Object getId() {
+            return id;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return ElementHelper.areEqual(this, o);
+        }
+
+        @Override
+        public int hashCode() {
+            return id.hashCode();
+        }
+    }
+
+    private static final class OverlayVertex extends OverlayElement implements Vertex {
+
+        OverlayVertex(OverlayGraph graph, String id) {
+            super(graph, id);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getProperty(String key) {
+            return (T) graph.vertexProperty(id, key);
+        }
+
+        @Override
+        public Set<String> getPropertyKeys() {
+            return keysOf(graph.vertexProperties(id));
+        }
+
+        @Override
+        public void setProperty(String key, Object value) {
+            ElementHelper.validateProperty(this, key, value);
+            graph.setVertexProperty(id, key, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T removeProperty(String key) {
+            return (T) graph.writableVertexProperties(id).remove(key);
+        }
+
+        @Override
+        public void remove() {
+            graph.removeVertex(this);
+        }
+
+        @Override
+        public Iterable<Edge> getEdges(Direction direction, String... labels) {
+            return graph.incidentEdges(id, direction, labels);
+        }
+
+        @Override
+        public Iterable<Vertex> getVertices(Direction direction, String... labels) {
+            return new VerticesFromEdgesIterable(this, direction, labels);
+        }
+
+        @Override
+        public VertexQuery query() {
+            return new DefaultVertexQuery(this);
+        }
+
+        @Override
+        public Edge addEdge(String label, Vertex inVertex) {
+            return graph.addEdge(null, this, inVertex, label);
+        }
+
+        @Override
+        public String toString() {
+            return StringFactory.vertexString(this);
+        }
+    }
+
+    private static final class OverlayEdge extends OverlayElement implements Edge {
+        final String label;
+        final String outId;
+        final String inId;
+
+        OverlayEdge(OverlayGraph graph, String id, String label, String outId, String inId) {
+            super(graph, id);
+            this.label = label;
+            this.outId = outId;
+            this.inId = inId;
+        }
+
+        @Override
+        public Vertex getVertex(Direction direction) {
+            switch (direction) {
+                case OUT:
+                    return new OverlayVertex(graph, outId);
+                case IN:
+                    return new OverlayVertex(graph, inId);
+                default:
+                    throw new IllegalArgumentException("Only the in and out vertices of an edge can be obtained.");
+            }
+        }
+
+        @Override
+        public String getLabel() {
+            return label;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T getProperty(String key) {
+            return (T) graph.edgeProperty(id, key);
+        }
+
+        @Override
+        public Set<String> getPropertyKeys() {
+            return keysOf(graph.edgeProperties(id));
+        }
+
+        @Override
+        public void setProperty(String key, Object value) {
+            ElementHelper.validateProperty(this, key, value);
+            graph.setEdgeProperty(id, key, value);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <T> T removeProperty(String key) {
+            return (T) graph.writableEdgeProperties(id).remove(key);
+        }
+
+        @Override
+        public void remove() {
+            graph.removeEdge(this);
+        }
+
+        @Override
+        public String toString() {
+            return StringFactory.edgeString(this);
+        }
+    }
+}
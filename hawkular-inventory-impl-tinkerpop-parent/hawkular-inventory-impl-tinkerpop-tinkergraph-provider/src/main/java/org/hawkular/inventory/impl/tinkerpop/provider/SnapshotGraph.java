@@ -0,0 +1,52 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.util.wrappers.event.EventGraph;
+
+/**
+ * A single version of the graph as seen by a transaction in the "snapshot" mode of the {@link TinkerGraphProvider}.
+ *
+ * <p>The transaction is committed or rolled back by the provider, so the transactional methods of the graph do
+ * nothing. The changes made by a writer are recorded in the provided change log.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class SnapshotGraph extends EventGraph<OverlayGraph> implements TransactionalGraph {
+
+    SnapshotGraph(OverlayGraph version, ChangeLog changes) {
+        super(version);
+        if (changes != null) {
+            addListener(changes);
+        }
+    }
+
+    @Override
+    @SuppressWarnings("deprecation")
+    public void stopTransaction(Conclusion conclusion) {
+    }
+
+    @Override
+    public void commit() {
+    }
+
+    @Override
+    public void rollback() {
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.hawkular.inventory.base.spi.InventoryBackend;
+
+/**
+ * A transaction in the "snapshot" mode of the {@link TinkerGraphProvider}.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class SnapshotTransaction extends InventoryBackend.Transaction {
+    private final SnapshotGraph graph;
+    private final GraphVersion origin;
+    private final ChangeLog changes;
+    private final TransactionLocks.Permit permit;
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    SnapshotTransaction(SnapshotGraph graph) {
+        this(false, graph, null, null, null);
+    }
+
+    SnapshotTransaction(boolean mutating, SnapshotGraph graph, GraphVersion origin, ChangeLog changes,
+            TransactionLocks.Permit permit) {
+        super(mutating);
+        this.graph = graph;
+        this.origin = origin;
+        this.changes = changes;
+        this.permit = permit;
+    }
+
+    /**
+     * @return the version of the graph this transaction works with
+     */
+    SnapshotGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * @return the version of the graph the layer of the writer was started on top of, null for readers
+     */
+    GraphVersion getOrigin() {
+        return origin;
+    }
+
+    /**
+     * @return the layer with the changes made by the writer, null for readers
+     */
+    Layer getLayer() {
+        return graph.getBaseGraph().getLayer();
+    }
+
+    /**
+     * @return the changes made by the writer, null for readers
+     */
+    ChangeLog getChanges() {
+        return changes;
+    }
+
+    /**
+     * @return the locks held by the writer, null for readers
+     */
+    TransactionLocks.Permit getPermit() {
+        return permit;
+    }
+
+    /**
+     * Marks the transaction as finished.
+     *
+     * @return true if the transaction was not finished before, false otherwise
+     */
+    boolean finish() {
+        return finished.compareAndSet(false, true);
+    }
+}
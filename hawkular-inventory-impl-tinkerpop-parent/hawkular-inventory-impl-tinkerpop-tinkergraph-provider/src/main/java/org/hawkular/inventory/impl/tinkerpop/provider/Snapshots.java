@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+import com.tinkerpop.blueprints.util.GraphHelper;
+
+/**
+ * The versions of a TinkerGraph used in the "snapshot" transaction mode of the {@link TinkerGraphProvider}.
+ *
+ * <p>The current version of the graph is never modified. The read-only transactions simply work with the version that
+ * was current when they started. A mutating transaction records its changes in a private {@link Layer} on top of the
+ * version that was current when it started. On commit, the layer is added on top of the current version, creating the
+ * new current version. On rollback, the layer is simply forgotten. Neither of that copies the graph.
+ *
+ * <p>The mutating transactions in the same tenant are serialized, while the ones in different tenants can run
+ * concurrently. If another writer committed while a transaction was running, the changes of the transaction are
+ * replayed into a new layer on top of the new current version instead of replacing it, so that no changes can get
+ * lost. The writers with an unknown tenant exclude all the other writers.
+ *
+ * <p>Each lookup has to go through all the layers of a version, so once there are {@value #MAX_LAYERS} of them, they
+ * are flattened into a new base graph in the background. The cost of the copy is thus amortized over many commits
+ * and is not paid by the writers.
+ *
+ * <p>The ids of the new elements are generated from a counter shared by all the versions, so that an element created
+ * in one version can never get the id of an element from another version.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class Snapshots {
+    static final int MAX_LAYERS = 16;
+
+    private final TransactionLocks locks;
+    private final AtomicLong ids;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+    private final ExecutorService compactor;
+    private volatile GraphVersion current;
+
+    Snapshots(TinkerGraph initial, TransactionLocks locks) {
+        this.current = new GraphVersion(initial, 0);
+        this.locks = locks;
+        this.ids = new AtomicLong(maxNumericId(initial) + 1);
+        this.compactor = Executors.newSingleThreadExecutor((r) -> {
+            Thread t = new Thread(r, "Hawkular Inventory TinkerGraph Compaction");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    SnapshotTransaction start(boolean mutating, String tenantId) {
+        if (!mutating) {
+            return new SnapshotTransaction(new SnapshotGraph(new OverlayGraph(current, null, ids), null));
+        }
+
+        TransactionLocks.Permit permit = locks.acquire(tenantId);
+        try {
+            GraphVersion origin = current;
+            ChangeLog changes = new ChangeLog();
+            return new SnapshotTransaction(true, new SnapshotGraph(new OverlayGraph(origin, new Layer(), ids),
+                    changes), origin, changes, permit);
+        } catch (RuntimeException e) {
+            permit.release();
+            throw e;
+        }
+    }
+
+    void commit(SnapshotTransaction t) {
+        if (!t.isMutating() || !t.finish()) {
+            return;
+        }
+
+        try {
+            synchronized (this) {
+                Layer committed = t.getLayer();
+
+                if (current.sequence != t.getOrigin().sequence) {
+                    //a writer in another tenant committed in the meantime, so our changes need to be applied on top
+                    //of its changes
+                    committed = new Layer();
+                    try {
+                        t.getChanges().replay(new OverlayGraph(current, committed, ids));
+                    } catch (RuntimeException e) {
+                        locks.conflicted();
+                        throw e;
+                    }
+                    locks.merged();
+                }
+
+                if (!committed.isEmpty()) {
+                    current = current.with(committed);
+                }
+            }
+        } finally {
+            t.getPermit().release();
+        }
+
+        if (current.layers.length >= MAX_LAYERS && compacting.compareAndSet(false, true)) {
+            try {
+                compactor.execute(this::compact);
+            } catch (RuntimeException e) {
+                //the compactor has been shut down
+                compacting.set(false);
+            }
+        }
+    }
+
+    void rollback(SnapshotTransaction t) {
+        if (t.isMutating() && t.finish()) {
+            //the layer of the writer is simply forgotten
+            t.getPermit().release();
+        }
+    }
+
+    /**
+     * @return a read-only view of the current version of the graph
+     */
+    Graph latest() {
+        return new OverlayGraph(current, null, ids);
+    }
+
+    /**
+     * Makes the provided graph contain the same data as the current version and makes it the base of the current
+     * version. No more compactions are done after this.
+     *
+     * @param target the graph to update
+     */
+    void writeBack(TinkerGraph target) {
+        compactor.shutdownNow();
+
+        TransactionLocks.Permit permit = locks.acquire(null);
+        try {
+            synchronized (this) {
+                GraphVersion source = current;
+                if (source.base == target && source.layers.length == 0) {
+                    return;
+                }
+
+                //the target cannot be cleared while it is still being read from
+                TinkerGraph data = source.base == target ? flatten(source) : null;
+                TinkerGraph indexed = data == null ? source.base : data;
+
+                target.clear();
+                copyKeyIndices(indexed, target);
+                GraphHelper.copyGraph(data == null ? new OverlayGraph(source, null, ids) : data, target);
+
+                current = new GraphVersion(target, source.sequence);
+            }
+        } finally {
+            permit.release();
+        }
+    }
+
+    private void compact() {
+        try {
+            GraphVersion version = current;
+            TinkerGraph flattened = flatten(version);
+
+            synchronized (this) {
+                //the version could have been written back in the meantime
+                if (current.isDescendantOf(version)) {
+                    current = current.rebase(version, flattened);
+                }
+            }
+        } finally {
+            compacting.set(false);
+        }
+    }
+
+    private TinkerGraph flatten(GraphVersion version) {
+        TinkerGraph ret = new TinkerGraph();
+
+        //create the indices first so that they are filled in while copying
+        copyKeyIndices(version.base, ret);
+        GraphHelper.copyGraph(new OverlayGraph(version, null, ids), ret);
+
+        return ret;
+    }
+
+    private static void copyKeyIndices(TinkerGraph source, TinkerGraph target) {
+        for (String key : source.getIndexedKeys(Vertex.class)) {
+            target.createKeyIndex(key, Vertex.class);
+        }
+
+        for (String key : source.getIndexedKeys(Edge.class)) {
+            target.createKeyIndex(key, Edge.class);
+        }
+    }
+    private static long maxNumericId(TinkerGraph graph) {
+        long max = -1;
+        for (Vertex v : graph.getVertices()) {
+            max = Math.max(max, numericId(v));
+        }
+
+        for (Edge e : graph.getEdges()) {
+            max = Math.max(max, numericId(e));
+        }
+
+        return max;
+    }
+
+    private static long numericId(Element e) {
+        try {
+            return Long.parseLong(e.getId().toString());
+        } catch (NumberFormatException ex) {
+            return -1;
+        }
+    }
+}
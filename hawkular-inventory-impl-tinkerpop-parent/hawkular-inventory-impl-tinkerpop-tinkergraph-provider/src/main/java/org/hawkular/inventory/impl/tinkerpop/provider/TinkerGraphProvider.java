@@ -16,42 +16,121 @@
  */
 package org.hawkular.inventory.impl.tinkerpop.provider;
 
+import java.lang.management.ManagementFactory;
 import java.util.Collections;
 import java.util.List;
+import java.util.Set;
 import java.util.WeakHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 
+import javax.management.JMException;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
 import org.apache.commons.configuration.MapConfiguration;
 import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.base.BaseInventory;
 import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.hawkular.inventory.impl.tinkerpop.spi.GraphProvider;
 import org.hawkular.inventory.impl.tinkerpop.spi.IndexSpec;
 
+import com.tinkerpop.blueprints.Edge;
+import com.tinkerpop.blueprints.GraphQuery;
 import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
 import com.tinkerpop.blueprints.util.wrappers.wrapped.WrappedGraph;
 
 /**
+ * Provides the in-memory TinkerGraph, optionally persisted to a directory.
+ *
+ * <p>TinkerGraph doesn't support transactions, so they are simulated in one of the two modes configured using the
+ * {@link #TRANSACTIONS} property:
+ * <ul>
+ *     <li>{@code locking} (the default) - the transactions are serialized using a read/write lock on the whole graph.
+ *     The changes are applied directly to the graph and cannot be rolled back.
+ *     <li>{@code snapshot} - the readers see an immutable snapshot of the graph that was current when their
+ *     transaction started and never block. A writer records its changes in a private layer on top of the graph that
+ *     is atomically published on commit or thrown away on rollback, the graph itself is not copied. Only the writers
+ *     in the same tenant are serialized, the writers in different tenants run concurrently and their changes are
+ *     merged on commit. A commit conflicting with the changes committed concurrently (which can only happen with
+ *     relationships across tenants) fails and is retried. Once enough layers pile up, they are merged into a new copy
+ *     of the graph in the background, so this mode can temporarily need twice the memory of the graph. The reads done
+ *     outside of any transaction see the latest committed state of the graph, the writes need to be done in
+ *     a transaction.
+ * </ul>
+ *
+ * <p>The time the writers spend waiting for each other is exposed as {@link LockMetrics} in the platform MBean
+ * server. The MBean is named after the directory the graph is persisted to or, if the graph is not persisted,
+ * numbered in the order the in-memory graphs were created in.
+ *
  * @author Lukas Krejci
  * @since 0.0.1
  */
 public final class TinkerGraphProvider implements GraphProvider<TinkerGraphProvider.WrappedTinkerGraph> {
 
+    /**
+     * Either "locking" (the default) or "snapshot". See the class javadoc for the description of the modes.
+     */
+    public static final Configuration.Property TRANSACTIONS = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.tinkergraph.transactions")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERGRAPH_TRANSACTIONS").build();
+
     private final WeakHashMap<WrappedTinkerGraph, ReentrantReadWriteLock> transactionLocks = new WeakHashMap<>();
     @Override
     public WrappedTinkerGraph instantiateGraph(Configuration configuration) {
+        String mode = configuration.getProperty(TRANSACTIONS, "locking");
+        boolean snapshots;
+        if ("snapshot".equalsIgnoreCase(mode)) {
+            snapshots = true;
+        } else if ("locking".equalsIgnoreCase(mode)) {
+            snapshots = false;
+        } else {
+            throw new IllegalArgumentException("Unsupported TinkerGraph transaction mode: '" + mode + "'. Use either" +
+                    " 'locking' or 'snapshot'.");
+        }
+
         return new WrappedTinkerGraph(new MapConfiguration(
                 configuration.getImplementationConfiguration(
-                        Collections.singleton(PropertyKey.DIRECTORY_NAME))));
+                        Collections.singleton(PropertyKey.DIRECTORY_NAME))), snapshots,
+                configuration.getProperty(BaseInventory.INSTANCE_NAME, "default"));
     }
 
     @Override
     public void ensureIndices(WrappedTinkerGraph graph, IndexSpec... indexSpecs) {
-        //don't bother with this for a demo graph
+        //TinkerGraph only supports single-key indices, so just make sure all the keys are indexed. That is enough
+        //for the lookups by a single property (like the canonical path) to not have to scan the whole graph.
+        TinkerGraph g = graph.getBaseGraph();
+        for (IndexSpec spec : indexSpecs) {
+            if (spec.isVertexCentric()) {
+                //TinkerGraph keeps the edges of a vertex in memory, grouped by label, there's nothing to index there
+                continue;
+            }
+
+            Set<String> indexedKeys = g.getIndexedKeys(spec.getElementType());
+            for (String key : spec.getProperties().keySet()) {
+                if (!indexedKeys.contains(key)) {
+                    g.createKeyIndex(key, spec.getElementType());
+                }
+            }
+        }
     }
 
     @Override
     public InventoryBackend.Transaction startTransaction(WrappedTinkerGraph graph, boolean mutating) {
+        return startTransaction(graph, mutating, null);
+    }
+
+    @Override
+    public InventoryBackend.Transaction startTransaction(WrappedTinkerGraph graph, boolean mutating,
+            String tenantId) {
+        if (graph.snapshots != null) {
+            return graph.snapshots.start(mutating, tenantId);
+        }
+
+        //TinkerGraph itself cannot be modified concurrently, so in this mode all the writers need to be serialized
+
         ReentrantReadWriteLock lock;
         synchronized (transactionLocks) {
             lock = transactionLocks.get(graph);
@@ -62,7 +141,7 @@ public final class TinkerGraphProvider implements GraphProvider<TinkerGraphProvi
         }
 
         if (mutating) {
-            lock.writeLock().lock();
+            graph.locks.lockStructure(lock.writeLock());
         } else {
             lock.readLock().lock();
         }
@@ -70,8 +149,18 @@ public final class TinkerGraphProvider implements GraphProvider<TinkerGraphProvi
         return new SimulatedSerializedTransaction(mutating, lock);
     }
 
+    @Override
+    public TransactionalGraph getTransactionGraph(WrappedTinkerGraph graph, InventoryBackend.Transaction t) {
+        return t instanceof SnapshotTransaction ? ((SnapshotTransaction) t).getGraph() : graph;
+    }
+
     @Override
     public void commit(WrappedTinkerGraph graph, InventoryBackend.Transaction t) {
+        if (t instanceof SnapshotTransaction) {
+            graph.snapshots.commit((SnapshotTransaction) t);
+            return;
+        }
+
         try {
             graph.commit();
         } finally {
@@ -81,6 +170,11 @@ public final class TinkerGraphProvider implements GraphProvider<TinkerGraphProvi
 
     @Override
     public void rollback(WrappedTinkerGraph graph, InventoryBackend.Transaction t) {
+        if (t instanceof SnapshotTransaction) {
+            graph.snapshots.rollback((SnapshotTransaction) t);
+            return;
+        }
+
         try {
             graph.rollback();
         } finally {
@@ -98,9 +192,124 @@ public final class TinkerGraphProvider implements GraphProvider<TinkerGraphProvi
     }
 
     static final class WrappedTinkerGraph extends WrappedGraph<TinkerGraph> implements TransactionalGraph {
+        private static final AtomicInteger IN_MEMORY_GRAPHS = new AtomicInteger();
+
+        private final TransactionLocks locks = new TransactionLocks();
+        private final Snapshots snapshots;
+        private ObjectName metricsName;
 
-        public WrappedTinkerGraph(org.apache.commons.configuration.Configuration configuration) {
+        public WrappedTinkerGraph(org.apache.commons.configuration.Configuration configuration, boolean snapshots,
+                String instanceName) {
             super(new TinkerGraph(configuration));
+            this.snapshots = snapshots ? new Snapshots(getBaseGraph(), locks) : null;
+            registerMetrics(instanceName, configuration.getString(PropertyKey.DIRECTORY_NAME.getPropertyName(), null));
+        }
+
+        @Override
+        public void shutdown() {
+            if (snapshots != null) {
+                //only the base graph is persisted, so make it reflect the latest snapshot
+                snapshots.writeBack(getBaseGraph());
+            }
+
+            unregisterMetrics();
+            super.shutdown();
+        }
+
+        //in the snapshot mode, the base graph is only updated on shutdown, so the access outside of the transactions
+        //needs to go to the latest snapshot
+
+        @Override
+        public Vertex addVertex(Object id) {
+            checkNotSnapshots();
+            return super.addVertex(id);
+        }
+
+        @Override
+        public Vertex getVertex(Object id) {
+            return snapshots == null ? super.getVertex(id) : snapshots.latest().getVertex(id);
+        }
+
+        @Override
+        public void removeVertex(Vertex vertex) {
+            checkNotSnapshots();
+            super.removeVertex(vertex);
+        }
+
+        @Override
+        public Iterable<Vertex> getVertices() {
+            return snapshots == null ? super.getVertices() : snapshots.latest().getVertices();
+        }
+
+        @Override
+        public Iterable<Vertex> getVertices(String key, Object value) {
+            return snapshots == null ? super.getVertices(key, value) : snapshots.latest().getVertices(key, value);
+        }
+
+        @Override
+        public Edge addEdge(Object id, Vertex outVertex, Vertex inVertex, String label) {
+            checkNotSnapshots();
+            return super.addEdge(id, outVertex, inVertex, label);
+        }
+
+        @Override
+        public Edge getEdge(Object id) {
+            return snapshots == null ? super.getEdge(id) : snapshots.latest().getEdge(id);
+        }
+
+        @Override
+        public void removeEdge(Edge edge) {
+            checkNotSnapshots();
+            super.removeEdge(edge);
+        }
+
+        @Override
+        public Iterable<Edge> getEdges() {
+            return snapshots == null ? super.getEdges() : snapshots.latest().getEdges();
+        }
+
+        @Override
+        public Iterable<Edge> getEdges(String key, Object value) {
+            return snapshots == null ? super.getEdges(key, value) : snapshots.latest().getEdges(key, value);
+        }
+
+        @Override
+        public GraphQuery query() {
+            return snapshots == null ? super.query() : snapshots.latest().query();
+        }
+
+        private void checkNotSnapshots() {
+            if (snapshots != null) {
+                throw new IllegalStateException("In the snapshot transaction mode, the graph can only be modified" +
+                        " in a transaction.");
+            }
+        }
+
+        private void registerMetrics(String instanceName, String directory) {
+            String graph = directory == null ? "in-memory-" + IN_MEMORY_GRAPHS.incrementAndGet() : directory;
+            try {
+                metricsName = new ObjectName("org.hawkular.inventory:type=TinkerGraphLocks,inventory="
+                        + ObjectName.quote(instanceName) + ",graph=" + ObjectName.quote(graph));
+                ManagementFactory.getPlatformMBeanServer().registerMBean(new StandardMBean(locks, LockMetrics.class),
+                        metricsName);
+            } catch (JMException e) {
+                //the metrics are not essential for the graph to work
+                metricsName = null;
+            }
+        }
+
+        private void unregisterMetrics() {
+            if (metricsName == null) {
+                return;
+            }
+
+            try {
+                ManagementFactory.getPlatformMBeanServer().unregisterMBean(metricsName);
+            } catch (JMException e) {
+                //ignore, there's nothing we can do about it
+            } finally {
+                metricsName = null;
+            }
         }
 
         @Override
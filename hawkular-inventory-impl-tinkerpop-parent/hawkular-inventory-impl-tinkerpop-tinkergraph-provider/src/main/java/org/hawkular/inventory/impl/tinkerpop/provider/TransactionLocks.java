@@ -0,0 +1,176 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.provider;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * The locks of the writers of a single graph together with their metrics.
+ *
+ * <p>The locks are semaphores rather than reentrant locks, because they are not bound to a thread - a transaction can
+ * be committed from a different thread than the one it was started in.
+ *
+ * <p>The lock of a tenant only exists while there are writers holding or waiting for it, so that the locks of the
+ * tenants that are no longer written to (or no longer exist) don't pile up.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class TransactionLocks implements LockMetrics {
+    private static final int ALL = Integer.MAX_VALUE;
+
+    //each tenant writer takes a single permit, the writers in an unknown tenant take them all
+    private final Semaphore structure = new Semaphore(ALL, true);
+    private final ConcurrentHashMap<String, Stripe> tenants = new ConcurrentHashMap<>();
+
+    private final WaitStatistics tenantWaits = new WaitStatistics();
+    private final WaitStatistics structureWaits = new WaitStatistics();
+    private final AtomicLong mergedCommits = new AtomicLong();
+    private final AtomicLong conflicts = new AtomicLong();
+
+    /**
+     * Acquires the locks needed to write to the provided tenant. If the tenant is not known, the writer excludes all
+     * the other writers.
+     *
+     * @param tenantId the id of the tenant to write to or null if not known
+     * @return the permit to release once the writer is done
+     */
+    Permit acquire(String tenantId) {
+        if (tenantId == null) {
+            structureWaits.acquire(structure, ALL);
+            return () -> structure.release(ALL);
+        }
+
+        //the map is only ever modified atomically in compute*(), so the users of a stripe are counted reliably
+        Stripe tenant = tenants.compute(tenantId, (t, s) -> {
+            Stripe ret = s == null ? new Stripe() : s;
+            ret.users++;
+            return ret;
+        });
+
+        //always in this order, so that the exclusive writers cannot deadlock with the tenant ones
+        structureWaits.acquire(structure, 1);
+        tenantWaits.acquire(tenant.semaphore, 1);
+
+        return () -> {
+            tenant.semaphore.release();
+            tenants.computeIfPresent(tenantId, (t, s) -> --s.users == 0 ? null : s);
+            structure.release();
+        };
+    }
+
+    /**
+     * Locks the provided lock, recording the time spent waiting for it as the wait for the structure lock.
+     *
+     * @param lock the graph-wide lock to lock
+     */
+    void lockStructure(Lock lock) {
+        long start = System.nanoTime();
+        lock.lock();
+        structureWaits.record(System.nanoTime() - start);
+    }
+
+    void merged() {
+        mergedCommits.incrementAndGet();
+    }
+
+    void conflicted() {
+        conflicts.incrementAndGet();
+    }
+
+    @Override
+    public long getTenantLockAcquisitionCount() {
+        return tenantWaits.count.get();
+    }
+
+    @Override
+    public long getTenantLockWaitTime() {
+        return TimeUnit.NANOSECONDS.toMicros(tenantWaits.total.get());
+    }
+
+    @Override
+    public long getMaxTenantLockWaitTime() {
+        return TimeUnit.NANOSECONDS.toMicros(tenantWaits.max.get());
+    }
+
+    @Override
+    public long getStructureLockAcquisitionCount() {
+        return structureWaits.count.get();
+    }
+
+    @Override
+    public long getStructureLockWaitTime() {
+        return TimeUnit.NANOSECONDS.toMicros(structureWaits.total.get());
+    }
+
+    @Override
+    public long getMaxStructureLockWaitTime() {
+        return TimeUnit.NANOSECONDS.toMicros(structureWaits.max.get());
+    }
+
+    @Override
+    public int getTenantCount() {
+        return tenants.size();
+    }
+
+    @Override
+    public long getMergedCommitCount() {
+        return mergedCommits.get();
+    }
+
+    @Override
+    public long getConflictCount() {
+        return conflicts.get();
+    }
+
+    @FunctionalInterface
+    interface Permit {
+        void release();
+    }
+
+    private static final class Stripe {
+        final Semaphore semaphore = new Semaphore(1, true);
+
+        /**
+         * The number of the writers holding or waiting for the semaphore. Only accessed from within the atomic
+         * updates of the map of the stripes.
+         */
+        int users;
+    }
+
+    private static final class WaitStatistics {
+        final AtomicLong count = new AtomicLong();
+        final AtomicLong total = new AtomicLong();
+        final AtomicLong max = new AtomicLong();
+
+        void acquire(Semaphore semaphore, int permits) {
+            long start = System.nanoTime();
+            semaphore.acquireUninterruptibly(permits);
+            record(System.nanoTime() - start);
+        }
+
+        void record(long waitNanos) {
+            count.incrementAndGet();
+            total.addAndGet(waitNanos);
+            max.accumulateAndGet(waitNanos, Math::max);
+        }
+    }
+}
@@ -42,5 +42,11 @@ public interface Log {
     @LogMessage(level = Logger.Level.INFO)
     @Message(id = 1502, value = "Waiting for the index '%s' to become registered.")
     void iWaitingForIndexRegistration(String indexName);
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 1503, value = "The index '%s' has been created over property keys that already exist in the" +
+            " database. The elements stored before its creation are not indexed by it until the database is" +
+            " reindexed.")
+    void wIndexNeedsReindex(String indexName);
 }
 
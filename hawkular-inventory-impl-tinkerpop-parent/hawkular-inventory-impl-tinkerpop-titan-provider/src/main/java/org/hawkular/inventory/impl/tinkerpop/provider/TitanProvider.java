@@ -20,41 +20,125 @@ import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.configuration.MapConfiguration;
 import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.hawkular.inventory.impl.tinkerpop.spi.GraphProvider;
 import org.hawkular.inventory.impl.tinkerpop.spi.IndexSpec;
 
+import com.thinkaurelius.titan.core.EdgeLabel;
 import com.thinkaurelius.titan.core.PropertyKey;
 import com.thinkaurelius.titan.core.TitanFactory;
 import com.thinkaurelius.titan.core.TitanGraph;
+import com.thinkaurelius.titan.core.TitanTransaction;
+import com.thinkaurelius.titan.core.TransactionBuilder;
+import com.thinkaurelius.titan.core.schema.ConsistencyModifier;
 import com.thinkaurelius.titan.core.schema.TitanManagement;
+import com.tinkerpop.blueprints.TransactionalGraph;
+import com.tinkerpop.blueprints.Vertex;
 
 /**
  * @author Lukas Krejci
  * @since 0.0.1
  */
 public class TitanProvider implements GraphProvider<TitanGraph> {
+
+    /**
+     * The size of the vertex cache of the read-only transactions. The reads typically touch only a handful of
+     * vertices, so they can do with a much smaller cache than the writes. If not set, the Titan's default transaction
+     * cache size is used.
+     */
+    public static final Configuration.Property READ_TRANSACTION_VERTEX_CACHE_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.titan.read-transaction.vertex-cache-size")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_TITAN_READ_TRANSACTION_VERTEX_CACHE_SIZE").build();
+
+    private int readTransactionVertexCacheSize;
+
     @Override
     public TitanGraph instantiateGraph(Configuration configuration) {
+        readTransactionVertexCacheSize = Integer.parseInt(configuration.getProperty(
+                READ_TRANSACTION_VERTEX_CACHE_SIZE, "0"));
+
         return TitanFactory.open(new MapConfiguration(configuration.getImplementationConfiguration(
                 EnumSet.allOf(PropertyKeys.class))));
     }
 
+    /**
+     * Opens a new explicit Titan transaction. Unlike the thread-bound transaction of the graph, it can be used from
+     * any thread. The read-only transactions are opened as such, so that Titan can skip the locking and the
+     * bookkeeping of the mutations in them.
+     */
+    @Override
+    public InventoryBackend.Transaction startTransaction(TitanGraph graph, boolean mutating) {
+        TransactionBuilder bld = graph.buildTransaction();
+        if (!mutating) {
+            bld.readOnly();
+            if (readTransactionVertexCacheSize > 0) {
+                bld.setVertexCacheSize(readTransactionVertexCacheSize);
+            }
+        }
+
+        return new TitanTransactionHandle(mutating, bld.start());
+    }
+
+    @Override
+    public TransactionalGraph getTransactionGraph(TitanGraph graph, InventoryBackend.Transaction t) {
+        return ((TitanTransactionHandle) t).transaction;
+    }
+
+    @Override
+    public void commit(TitanGraph graph, InventoryBackend.Transaction t) {
+        TitanTransactionHandle h = (TitanTransactionHandle) t;
+        if (h.isMutating()) {
+            h.transaction.commit();
+        } else {
+            //there's nothing to persist in a read-only transaction, so just release it
+            h.transaction.rollback();
+        }
+    }
+
+    @Override
+    public void rollback(TitanGraph graph, InventoryBackend.Transaction t) {
+        TitanTransaction tx = ((TitanTransactionHandle) t).transaction;
+        //the rollback might follow a failed commit, after which the transaction is already closed
+        if (tx.isOpen()) {
+            tx.rollback();
+        }
+    }
+
+    /**
+     * Creates the missing property keys and indices.
+     *
+     * <p>Note that Titan only indexes the data written after an index has been created. If an index is created over
+     * the property keys that are already used in the database (i.e. when upgrading a database created by a previous
+     * version of the inventory that didn't define the index, like the unique index on the canonical paths), the
+     * existing elements are not covered by it and the uniqueness of the existing values is not checked. Such databases
+     * need to be reindexed using the Titan's offline reindexing tools (see the "Upgrading a Titan database" section of
+     * the README). A warning is logged for each such index.
+     */
     @Override
     public void ensureIndices(TitanGraph graph, IndexSpec... indexSpecs) {
         Map<String, Class<?>> undefinedPropertyKeys = new HashMap<>();
         Map<String, PropertyKey> definedPropertyKeys = new HashMap<>();
         Map<String, IndexSpec> undefinedIndices = new HashMap<>();
+        Map<String, IndexSpec> undefinedEdgeIndices = new HashMap<>();
+        Set<String> indicesOverExistingKeys = new HashSet<>();
 
         TitanManagement mgmt = graph.getManagementSystem();
 
         for (IndexSpec spec : indexSpecs) {
-            String indexName = getIndexName(spec.getProperties().keySet());
-            if (mgmt.getGraphIndex(indexName) == null) {
+            String indexName = getIndexName(spec);
+            if (spec.isVertexCentric()) {
+                if (!mgmt.containsEdgeLabel(spec.getEdgeLabel())
+                        || mgmt.getRelationIndex(mgmt.getEdgeLabel(spec.getEdgeLabel()), indexName) == null) {
+                    undefinedEdgeIndices.put(indexName, spec);
+                }
+            } else if (mgmt.getGraphIndex(indexName) == null) {
                 undefinedIndices.put(indexName, spec);
             }
 
@@ -71,6 +155,10 @@ public class TitanProvider implements GraphProvider<TitanGraph> {
                                 key.getDataType() + "'.");
                     }
                     definedPropertyKeys.put(p.getKey(), key);
+
+                    if (undefinedIndices.containsKey(indexName) || undefinedEdgeIndices.containsKey(indexName)) {
+                        indicesOverExistingKeys.add(indexName);
+                    }
                 }
             }
         }
@@ -89,22 +177,87 @@ public class TitanProvider implements GraphProvider<TitanGraph> {
                 bld.addKey(definedPropertyKeys.get(k));
             }
 
+            if (e.getValue().isUnique()) {
+                bld.unique();
+            }
+
             bld.buildCompositeIndex();
         }
 
+        //the vertex-centric indices make it possible to find a single edge among the many edges of a vertex without
+        //iterating over all of them. Note that an index defined on a label that is already used in the database only
+        //applies to the existing edges after a reindex.
+        for (Map.Entry<String, IndexSpec> e : undefinedEdgeIndices.entrySet()) {
+            String labelName = e.getValue().getEdgeLabel();
+            EdgeLabel label = mgmt.containsEdgeLabel(labelName) ? mgmt.getEdgeLabel(labelName)
+                    : mgmt.makeEdgeLabel(labelName).make();
+
+            PropertyKey[] sortKeys = e.getValue().getProperties().keySet().stream().map(definedPropertyKeys::get)
+                    .toArray(PropertyKey[]::new);
+
+            mgmt.buildEdgeIndex(label, e.getKey(), e.getValue().getDirection(), sortKeys);
+        }
+
         mgmt.commit();
+
+        indicesOverExistingKeys.forEach(Log.LOG::wIndexNeedsReindex);
     }
 
-    private String getIndexName(Iterable<String> propertyNames) {
-        StringBuilder bld = new StringBuilder("by");
+    /**
+     * Declares the property keys with the {@link ConsistencyModifier#LOCK} consistency, so that Titan acquires a lock
+     * on each updated property and the concurrent transactions updating the same property of the same vertex fail
+     * on commit instead of one of them silently overwriting the value written by the other.
+     */
+    @Override
+    public void ensureConsistentProperties(TitanGraph graph, Map<String, Class<?>> properties) {
+        TitanManagement mgmt = graph.getManagementSystem();
+
+        for (Map.Entry<String, Class<?>> p : properties.entrySet()) {
+            PropertyKey key = mgmt.getPropertyKey(p.getKey());
+            if (key == null) {
+                key = mgmt.makePropertyKey(p.getKey()).dataType(p.getValue()).make();
+            } else if (!key.getDataType().equals(p.getValue())) {
+                throw new IllegalStateException("There already is a key '" + key.getName() + "' with a different" +
+                        " data type than expected. Expected: '" + p.getValue() + "', actual: '" +
+                        key.getDataType() + "'.");
+            }
 
-        for (String propertyName : propertyNames) {
+            if (mgmt.getConsistency(key) != ConsistencyModifier.LOCK) {
+                mgmt.setConsistency(key, ConsistencyModifier.LOCK);
+            }
+        }
+
+        mgmt.commit();
+    }
+
+    private String getIndexName(IndexSpec spec) {
+        StringBuilder bld;
+        if (spec.isVertexCentric()) {
+            //the vertex-centric index names are scoped by the edge label, but make them unique anyway
+            bld = new StringBuilder(spec.getEdgeLabel()).append("_").append(spec.getDirection().name().toLowerCase())
+                    .append("_by");
+        } else {
+            //vertex indices keep their original names so that existing databases don't get reindexed
+            bld = new StringBuilder(Vertex.class.equals(spec.getElementType()) ? "by" :
+                    spec.getElementType().getSimpleName().toLowerCase() + "_by");
+        }
+
+        for (String propertyName : spec.getProperties().keySet()) {
             bld.append("_").append(propertyName);
         }
 
         return bld.toString();
     }
 
+    private static final class TitanTransactionHandle extends InventoryBackend.Transaction {
+        private final TitanTransaction transaction;
+
+        TitanTransactionHandle(boolean mutating, TitanTransaction transaction) {
+            super(mutating);
+            this.transaction = transaction;
+        }
+    }
+
     @SuppressWarnings("unused")
     private enum PropertyKeys implements Configuration.Property {
         STORAGE_HOSTNAME("storage.hostname", "hawkular.inventory.titan.storage.hostname",
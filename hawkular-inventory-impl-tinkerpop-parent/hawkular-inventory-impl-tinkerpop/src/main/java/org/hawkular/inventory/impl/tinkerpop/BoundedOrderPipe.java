@@ -0,0 +1,114 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PriorityQueue;
+
+import com.tinkerpop.pipes.AbstractPipe;
+import com.tinkerpop.pipes.util.FastNoSuchElementException;
+import com.tinkerpop.pipes.util.PipeHelper;
+
+/**
+ * Similar to the {@link com.tinkerpop.pipes.transform.OrderPipe} but only emits the first {@code limit} elements in
+ * the order. Unlike the order pipe, this pipe doesn't hold on to all the elements, it only keeps the {@code limit}
+ * smallest elements seen so far, which makes it O(N log limit) in time and O(limit) in memory.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+class BoundedOrderPipe<S> extends AbstractPipe<S, S> {
+    private final Comparator<? super S> comparator;
+    private final int limit;
+    private Iterator<S> sorted;
+
+    /**
+     * @param comparator the comparator to order the elements with
+     * @param limit      the maximum number of elements to emit, -1 for no limit
+     */
+    public BoundedOrderPipe(Comparator<? super S> comparator, int limit) {
+        this.comparator = comparator;
+        this.limit = limit;
+    }
+
+    @Override
+    protected S processNextStart() {
+        if (sorted == null) {
+            sorted = collect();
+        }
+
+        if (!sorted.hasNext()) {
+            throw FastNoSuchElementException.instance();
+        }
+
+        return sorted.next();
+    }
+
+    private Iterator<S> collect() {
+        List<S> ret;
+
+        if (limit < 0) {
+            ret = new ArrayList<>();
+            try {
+                while (true) {
+                    ret.add(this.starts.next());
+                }
+            } catch (NoSuchElementException e) {
+                //done
+            }
+        } else if (limit == 0) {
+            ret = new ArrayList<>(0);
+        } else {
+            //the head of the queue is the "greatest" element, i.e. the one to throw away if we find a smaller one
+            PriorityQueue<S> heap = new PriorityQueue<>(limit + 1, (a, b) -> comparator.compare(b, a));
+            try {
+                while (true) {
+                    S s = this.starts.next();
+                    if (heap.size() < limit) {
+                        heap.add(s);
+                    } else if (comparator.compare(s, heap.peek()) < 0) {
+                        heap.poll();
+                        heap.add(s);
+                    }
+                }
+            } catch (NoSuchElementException e) {
+                //done
+            }
+
+            ret = new ArrayList<>(heap);
+        }
+
+        ret.sort(comparator);
+
+        return ret.iterator();
+    }
+
+    @Override
+    public void reset() {
+        this.sorted = null;
+        super.reset();
+    }
+
+    @Override
+    public String toString() {
+        return PipeHelper.makePipeString(this, this.limit);
+    }
+}
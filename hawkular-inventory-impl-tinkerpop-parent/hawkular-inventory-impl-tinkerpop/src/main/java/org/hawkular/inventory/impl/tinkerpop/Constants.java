@@ -17,10 +17,13 @@
 package org.hawkular.inventory.impl.tinkerpop;
 
 import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__metric_data_type;
+import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__structuredDataBlob;
 import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__structuredDataIndex;
 import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__structuredDataKey;
 import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__structuredDataType;
 import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__structuredDataValue;
+import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__targetEid;
+import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__targetType;
 import static org.hawkular.inventory.impl.tinkerpop.Constants.Property.__unit;
 
 import java.util.Arrays;
@@ -45,6 +48,12 @@ import org.hawkular.inventory.api.model.Tenant;
  */
 final class Constants {
 
+    /**
+     * The {@link Property#__type} of the single vertex holding the information about the graph itself rather than
+     * about some entity.
+     */
+    static final String METADATA_TYPE = "__metadata";
+
     /**
      * The vertices in the graph have certain well-known properties.
      */
@@ -77,6 +86,34 @@ final class Constants {
          */
         __cp,
 
+        /**
+         * Present on edges, this is a copy of the {@link #__type} of the target vertex of the edge. Together with
+         * {@link #__targetEid} it is used as the sort key of the vertex-centric indices that make it possible to find
+         * a single edge among many edges of the same label going out of a vertex.
+         */
+        __targetType,
+
+        /**
+         * Present on edges, this is a copy of the {@link #__eid} of the target vertex of the edge.
+         */
+        __targetEid,
+
+        /**
+         * Present on the entities in feeds, the hash of the own content of the entity as computed by
+         * {@link org.hawkular.inventory.api.model.ContentHash}.
+         */
+        __ownHash,
+
+        /**
+         * Present on the entities in feeds, the sum of the {@link #__contentHash}es of the contained entities.
+         */
+        __childrenHash,
+
+        /**
+         * Present on the entities in feeds, the hash of the entity together with everything it contains.
+         */
+        __contentHash,
+
         /**
          * The type of the data stored by the structured data vertex
          */
@@ -96,7 +133,20 @@ final class Constants {
          * The name of the property on the structured data vertex that holds the primitive value of that vertex.
          * List and maps don't hold the value directly but instead have edges going out to the child vertices.
          */
-        __structuredDataValue;
+        __structuredDataValue,
+
+        /**
+         * The name of the property on the structured data vertex that holds the whole structured data encoded using
+         * the {@link StructuredDataCodec}. Such vertex has no child vertices.
+         */
+        __structuredDataBlob,
+
+        /**
+         * Present on the {@link #METADATA_TYPE metadata} vertex, the version of the layout of the data in the graph.
+         * The data are migrated to the current layout when the graph is loaded and this records that the migration
+         * doesn't need to run again.
+         */
+        __dataVersion;
 
 
         public static String mapUserDefined(String property) {
@@ -114,28 +164,20 @@ final class Constants {
     enum Type {
         tenant(Tenant.class), environment(Environment.class), feed(Feed.class),
         resourceType(ResourceType.class), metricType(MetricType.class, __unit, __metric_data_type),
-        resource(Resource.class), metric(Metric.class), relationship(Relationship.class),
+        resource(Resource.class), metric(Metric.class), relationship(Relationship.class, __targetType, __targetEid),
         dataEntity(DataEntity.class), structuredData(StructuredData.class, __structuredDataType, __structuredDataValue,
-                __structuredDataIndex, __structuredDataKey);
+                __structuredDataIndex, __structuredDataKey, __structuredDataBlob);
 
         private final String[] mappedProperties;
         private final Class<?> entityType;
 
         Type(Class<?> entityType, Property... mappedProperties) {
             this.entityType = entityType;
-            this.mappedProperties = new String[mappedProperties.length + 3];
-            Arrays.setAll(this.mappedProperties, i -> {
-                switch (i) {
-                    case 0:
-                        return Property.__type.name();
-                    case 1:
-                        return Property.__eid.name();
-                    case 2:
-                        return Property.__cp.name();
-                    default:
-                        return mappedProperties[i - 3].name();
-                }
-            });
+            Property[] common = {Property.__type, Property.__eid, Property.__cp, Property.__ownHash,
+                    Property.__childrenHash, Property.__contentHash};
+            this.mappedProperties = new String[mappedProperties.length + common.length];
+            Arrays.setAll(this.mappedProperties, i -> i < common.length ? common[i].name()
+                    : mappedProperties[i - common.length].name());
         }
 
         public static Type of(AbstractElement<?, ?> e) {
@@ -0,0 +1,211 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Memoizes the conversion of the resource types and metric types the resources and metrics are defined by, so that
+ * converting many resources or metrics of the same type doesn't convert the type over and over again.
+ *
+ * <p>The types are memoized by the ids of their vertices for the duration of a single query (see
+ * {@link #scoped(Function)}) and, optionally, in a bounded LRU cache shared by all queries. The shared cache is
+ * invalidated whenever a transaction that modified a type finishes. Until then, the modifying thread bypasses the
+ * shared cache so that it doesn't leak the uncommitted state to the other threads.
+ *
+ * <p>A transaction can see a snapshot of the graph older than the last invalidation, so the types it converts are
+ * only put in the shared cache if no invalidation happened since the transaction started (see
+ * {@link #transactionStarted()}).
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class DefiningTypes {
+    private final ThreadLocal<Map<Object, Object>> queryScope = new ThreadLocal<>();
+    private final ThreadLocal<TransactionState> transaction = new ThreadLocal<>();
+    private final Map<Object, Object> shared;
+    private long generation;
+
+    /**
+     * @param sharedSize the maximum number of types memoized across the queries, 0 to only memoize per query
+     */
+    DefiningTypes(int sharedSize) {
+        if (sharedSize < 0) {
+            throw new IllegalArgumentException("The size of the type cache cannot be negative.");
+        }
+
+        this.shared = sharedSize == 0 ? null : new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                return size() > sharedSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the memoized conversion of the type vertex or converts it using the provided converter.
+     *
+     * @param typeVertex the vertex of the resource type or metric type
+     * @param type       the expected type of the converted type
+     * @param converter  the converter to use if the type has not been converted yet
+     * @param <T>        the type of the converted type
+     * @return the converted type
+     */
+    <T> T resolve(Vertex typeVertex, Class<T> type, BiFunction<Vertex, Class<T>, T> converter) {
+        Object id = typeVertex.getId();
+
+        Map<Object, Object> scope = queryScope.get();
+        if (scope != null) {
+            Object t = scope.get(id);
+            if (type.isInstance(t)) {
+                return type.cast(t);
+            }
+        }
+
+        TransactionState tx = transaction.get();
+        boolean useShared = shared != null && (tx == null || !tx.typesModified);
+        long gen = 0;
+        if (useShared) {
+            synchronized (shared) {
+                Object t = shared.get(id);
+                if (type.isInstance(t)) {
+                    if (scope != null) {
+                        scope.put(id, t);
+                    }
+                    return type.cast(t);
+                }
+
+                //the transaction reads the state of the graph as of its start
+                gen = tx == null ? generation : tx.generation;
+            }
+        }
+
+        T ret = converter.apply(typeVertex, type);
+
+        if (scope != null) {
+            scope.put(id, ret);
+        }
+
+        if (useShared) {
+            synchronized (shared) {
+                //don't cache the type if it was modified by someone in the meantime
+                if (gen == generation) {
+                    shared.put(id, ret);
+                }
+            }
+        }
+
+        return ret;
+    }
+
+    /**
+     * Wraps the conversion function so that all the invocations of it share a single memo of the types.
+     *
+     * @param conversion the conversion function used to convert the results of a single query
+     * @param <R>        the type of the converted results
+     * @return the wrapped conversion function
+     */
+    <R> Function<Element, R> scoped(Function<Element, R> conversion) {
+        Map<Object, Object> scope = new HashMap<>();
+        return (e) -> {
+            Map<Object, Object> previous = queryScope.get();
+            queryScope.set(scope);
+            try {
+                return conversion.apply(e);
+            } finally {
+                if (previous == null) {
+                    queryScope.remove();
+                } else {
+                    queryScope.set(previous);
+                }
+            }
+        };
+    }
+
+    /**
+     * To be called when the current thread starts a new transaction, but not when it joins the transaction that is
+     * already active in it.
+     */
+    void transactionStarted() {
+        TransactionState tx = transaction.get();
+        if (tx == null) {
+            tx = new TransactionState();
+            if (shared != null) {
+                synchronized (shared) {
+                    tx.generation = generation;
+                }
+            }
+            transaction.set(tx);
+        }
+
+        //a transaction started within another one keeps the generation of the outer one, which is the older one
+        tx.depth++;
+    }
+
+    /**
+     * To be called when the current thread modifies a resource type or a metric type.
+     */
+    void typeModified() {
+        TransactionState tx = transaction.get();
+        if (tx != null) {
+            tx.typesModified = true;
+        }
+        invalidateShared();
+    }
+
+    /**
+     * To be called when the current thread commits or rolls back a transaction it started, but not when it leaves
+     * a transaction it joined.
+     */
+    void transactionFinished() {
+        TransactionState tx = transaction.get();
+        if (tx == null) {
+            return;
+        }
+
+        if (tx.typesModified) {
+            tx.typesModified = false;
+            invalidateShared();
+        }
+
+        if (--tx.depth == 0) {
+            transaction.remove();
+        }
+    }
+
+    private void invalidateShared() {
+        if (shared != null) {
+            synchronized (shared) {
+                shared.clear();
+                generation++;
+            }
+        }
+    }
+
+    private static final class TransactionState {
+        int depth;
+        long generation;
+        boolean typesModified;
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import java.util.Collections;
+import java.util.Set;
+
+import org.hawkular.inventory.api.model.RelativePath;
+import org.hawkular.inventory.api.model.StructuredData;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * A read-only element representing a part of the structured data stored as a blob on a single vertex (see
+ * {@link StructuredDataCodec}). The data isn't decoded until it is {@link #decode(boolean) asked for}.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class EmbeddedStructuredData implements Element {
+    private final byte[] blob;
+    private final int offset;
+
+    EmbeddedStructuredData(byte[] blob, int offset) {
+        this.blob = blob;
+        this.offset = offset;
+    }
+
+    /**
+     * @param dataVertex the vertex possibly storing the structured data as a blob
+     * @param dataPath   the path to the data inside the blob
+     * @return the element representing the data on the path or null if the vertex doesn't store a blob or if there is
+     * no data on the path
+     */
+    static EmbeddedStructuredData at(Vertex dataVertex, RelativePath dataPath) {
+        byte[] blob = dataVertex.getProperty(Constants.Property.__structuredDataBlob.name());
+        if (blob == null) {
+            return null;
+        }
+
+        int offset = StructuredDataCodec.find(blob, dataPath);
+        return offset < 0 ? null : new EmbeddedStructuredData(blob, offset);
+    }
+
+    StructuredData decode(boolean recurse) {
+        return StructuredDataCodec.decode(blob, offset, recurse);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T getProperty(String key) {
+        if (Constants.Property.__type.name().equals(key)) {
+            return (T) Constants.Type.structuredData.name();
+        } else if (Constants.Property.__structuredDataType.name().equals(key)) {
+            return (T) StructuredDataCodec.getType(blob, offset).name();
+        } else if (Constants.Property.__structuredDataValue.name().equals(key)) {
+            //lists and maps don't have a value, only their children do
+            switch (StructuredDataCodec.getType(blob, offset)) {
+                case list:
+                case map:
+                    return null;
+                default:
+                    return (T) decode(false).getValue();
+            }
+        } else {
+            return null;
+        }
+    }
+
+    @Override
+    public Set<String> getPropertyKeys() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public void setProperty(String key, Object value) {
+        throw new UnsupportedOperationException("Embedded structured data is read-only.");
+    }
+
+    @Override
+    public <T> T removeProperty(String key) {
+        throw new UnsupportedOperationException("Embedded structured data is read-only.");
+    }
+
+    @Override
+    public void remove() {
+        throw new UnsupportedOperationException("Embedded structured data is read-only.");
+    }
+
+    @Override
+    public Object getId() {
+        return null;
+    }
+}
@@ -16,11 +16,9 @@
  */
 package org.hawkular.inventory.impl.tinkerpop;
 
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 
@@ -39,77 +37,61 @@ import org.hawkular.inventory.base.spi.NoopFilter;
 import org.hawkular.inventory.base.spi.SwitchElementType;
 
 /**
- * A filter applicator applies a filter to a Gremlin query.
+ * A filter applicator applies the filters of a query to a Gremlin pipeline.
+ *
+ * <p>The translation of a query is split into two phases. First the structure of the query (the types of the filters,
+ * whether they are applied as paths or filters and the shape of the query tree) is compiled into a
+ * {@link Template} which contains the resolved appliers of the filters and the points where the pipeline needs to
+ * remember or recall its position. The template is then bound to the actual filters of the query and applied to the
+ * pipeline.
+ *
+ * <p>The compiled templates are cached, so that the recurring queries, which differ only in the ids, paths or other
+ * parameters of their filters, only need to do the binding. The cache is direct-mapped (see
+ * {@code PathInterner} in the API) and its size can be set using the
+ * {@code hawkular.inventory.query-template-cache.size} system property. Setting the size to 0 disables the cache.
  *
  * @author Lukas Krejci
  * @author Jirka Kremser
  * @see FilterVisitor
  * @since 0.0.1
  */
-abstract class FilterApplicator<T extends Filter> {
-    private static Map<Class<? extends Filter>, Class<? extends FilterApplicator<?>>> applicators;
+final class FilterApplicator {
+    private static final FilterVisitor VISITOR = new FilterVisitor();
 
-    static {
-        applicators = new HashMap<>();
-        applicators.put(Related.class, RelatedApplicator.class);
-        applicators.put(Contained.class, RelatedApplicator.class);
-        applicators.put(Defined.class, RelatedApplicator.class);
-        applicators.put(Incorporated.class, RelatedApplicator.class);
-        applicators.put(With.Ids.class, WithIdsApplicator.class);
-        applicators.put(With.Types.class, WithTypesApplicator.class);
-        applicators.put(With.PropertyValues.class, WithPropertyValuesApplicator.class);
-        applicators.put(RelationWith.Ids.class, RelationWithIdsApplicator.class);
-        applicators.put(RelationWith.PropertyValues.class, RelationWithPropertiesApplicator.class);
-        applicators.put(RelationWith.SourceOfType.class, RelationWithSourcesOfTypesApplicator.class);
-        applicators.put(RelationWith.TargetOfType.class, RelationWithTargetsOfTypesApplicator.class);
-        applicators.put(RelationWith.SourceOrTargetOfType.class, RelationWithSourcesOrTargetsOfTypesApplicator.class);
-        applicators.put(SwitchElementType.class, SwitchElementTypeApplicator.class);
-        applicators.put(NoopFilter.class, NoopApplicator.class);
-        applicators.put(With.CanonicalPaths.class, CanonicalPathApplicator.class);
-        applicators.put(With.RelativePaths.class, RelativePathApplicator.class);
-        applicators.put(Marker.class, MarkerApplicator.class);
-        applicators.put(With.DataAt.class, DataAtApplicator.class);
-        applicators.put(With.DataValued.class, DataValuedApplicator.class);
-        applicators.put(With.DataOfTypes.class, DataOfTypesApplicator.class);
-    }
+    private static final Map<Class<? extends Filter>, Applier> APPLIERS = new HashMap<>();
 
-    protected final T filter;
-    protected final FilterVisitor visitor = new FilterVisitor();
+    private static final Template[] TEMPLATES = new Template[cacheSize()];
 
-    private FilterApplicator(T f) {
-        this.filter = f;
+    static {
+        APPLIERS.put(Related.class, (q, f) -> VISITOR.visit(q, (Related) f));
+        APPLIERS.put(Contained.class, (q, f) -> VISITOR.visit(q, (Related) f));
+        APPLIERS.put(Defined.class, (q, f) -> VISITOR.visit(q, (Related) f));
+        APPLIERS.put(Incorporated.class, (q, f) -> VISITOR.visit(q, (Related) f));
+        APPLIERS.put(With.Ids.class, (q, f) -> VISITOR.visit(q, (With.Ids) f));
+        APPLIERS.put(With.Types.class, (q, f) -> VISITOR.visit(q, (With.Types) f));
+        APPLIERS.put(With.PropertyValues.class, (q, f) -> VISITOR.visit(q, (With.PropertyValues) f));
+        APPLIERS.put(RelationWith.Ids.class, (q, f) -> VISITOR.visit(q, (RelationWith.Ids) f));
+        APPLIERS.put(RelationWith.PropertyValues.class, (q, f) -> VISITOR.visit(q, (RelationWith.PropertyValues) f));
+        APPLIERS.put(RelationWith.SourceOfType.class, (q, f) -> VISITOR.visit(q, (RelationWith.SourceOfType) f));
+        APPLIERS.put(RelationWith.TargetOfType.class, (q, f) -> VISITOR.visit(q, (RelationWith.TargetOfType) f));
+        APPLIERS.put(RelationWith.SourceOrTargetOfType.class,
+                (q, f) -> VISITOR.visit(q, (RelationWith.SourceOrTargetOfType) f));
+        APPLIERS.put(SwitchElementType.class, (q, f) -> VISITOR.visit(q, (SwitchElementType) f));
+        APPLIERS.put(NoopFilter.class, (q, f) -> VISITOR.visit(q, (NoopFilter) f));
+        APPLIERS.put(With.CanonicalPaths.class, (q, f) -> VISITOR.visit(q, (With.CanonicalPaths) f));
+        APPLIERS.put(With.RelativePaths.class, (q, f) -> VISITOR.visit(q, (With.RelativePaths) f));
+        APPLIERS.put(Marker.class, (q, f) -> VISITOR.visit(q, (Marker) f));
+        APPLIERS.put(With.DataAt.class, (q, f) -> VISITOR.visit(q, (With.DataAt) f));
+        APPLIERS.put(With.DataValued.class, (q, f) -> VISITOR.visit(q, (With.DataValued) f));
+        APPLIERS.put(With.DataOfTypes.class, (q, f) -> VISITOR.visit(q, (With.DataOfTypes) f));
     }
 
-    public static FilterApplicator of(Filter filter) {
-        if (filter == null) {
-            throw new IllegalArgumentException("filter == null");
-        }
-        Class<? extends Filter> filterClazz = filter.getClass();
-        Class<? extends FilterApplicator<?>> applicatorClazz = applicators.get(filterClazz);
-        if (applicatorClazz == null) {
-            throw new IllegalArgumentException("Unsupported filter type " + filterClazz);
-        }
-        Constructor<? extends FilterApplicator<?>> constructor = null;
-        try {
-            constructor = applicatorClazz.getDeclaredConstructor(filterClazz);
-        } catch (NoSuchMethodException e) {
-            try {
-                // Contained, Defined, Owned
-                constructor = applicatorClazz.getDeclaredConstructor(filterClazz.getSuperclass());
-            } catch (NoSuchMethodException e1) {
-                throw new IllegalArgumentException("Unable to create an instance of " + applicatorClazz);
-            }
-        }
-        try {
-            constructor.setAccessible(true);
-            return constructor.newInstance(filter);
-        } catch (InstantiationException | IllegalAccessException | InvocationTargetException e) {
-            throw new IllegalArgumentException("Unable to create an instance of " + applicatorClazz);
-        }
+    private FilterApplicator() {
+
     }
 
     /**
-     * Applies all the filters from the applicator tree to the provided Gremlin query.
+     * Applies all the filters from the query tree to the provided Gremlin query.
      *
      * @param filterTree the tree of filters to apply to the query
      * @param q          the query to update with filters from the tree
@@ -121,294 +103,237 @@ abstract class FilterApplicator<T extends Filter> {
             return;
         }
 
-        if (applyAll(filterTree, q, false)) {
-            q.recall();
-        }
-    }
+        List<Object> shape = new ArrayList<>();
+        List<Filter> filters = new ArrayList<>();
+        describe(filterTree, shape, filters);
 
-    /**
-     * A private impl of the {@code applyAll()} method that tracks the current type of the filter being applied.
-     * The type of the filter is either a path ({@code isFilter == false}) which potentially progresses the query to
-     * next positions in the inventory traversal or a filter ({@code isFilter == true}) which merely trims down the
-     * number of the elements at the current "tail" of the traversal by applying filters to them.
-     *
-     * @param query    the query
-     * @param pipeline the Gremlin pipeline that the query gets translated to
-     * @param isFilter whether we are currently processing filters as filters or path elements
-     * @param <S>      the start element type of the pipeline
-     * @param <E>      the end element type of the pipeline
-     * @return true if after applying the filters, we're the filtering state or false if we are in path-progression
-     * state.
-     */
-    @SuppressWarnings("unchecked")
-    private static <S, E> boolean applyAll(Query query, HawkularPipeline<S, E> pipeline, boolean isFilter) {
-
-        for (QueryFragment qf : query.getFragments()) {
-            boolean thisIsFilter = qf instanceof FilterFragment;
+        Shape key = new Shape(shape.toArray());
 
-            if (thisIsFilter != isFilter) {
-                isFilter = thisIsFilter;
-                if (thisIsFilter) {
-                    pipeline.remember();
-                } else {
-                    pipeline.recall();
-                }
+        Template template = null;
+        int slot = 0;
+        if (TEMPLATES.length > 0) {
+            slot = (key.hashCode() ^ (key.hashCode() >>> 16)) & (TEMPLATES.length - 1);
+            Template cached = TEMPLATES[slot];
+            if (cached != null && cached.shape.equals(key)) {
+                template = cached;
             }
-
-            FilterApplicator.of(qf.getFilter()).applyTo(pipeline);
-        }
-
-
-        if (query.getSubTrees().isEmpty()) {
-            return isFilter;
         }
 
-        if (query.getSubTrees().size() == 1) {
-            return applyAll(query.getSubTrees().get(0), pipeline, isFilter);
-        } else {
-            List<HawkularPipeline<E, ?>> branches = new ArrayList<>();
-            Iterator<Query> it = query.getSubTrees().iterator();
-
-            // apply the first branch - in here, we know there are at least 2 actually
-            HawkularPipeline<E, ?> branch = new HawkularPipeline<>();
-
-            // the branch is a brand new pipeline, so it doesn't make sense for it to inherit
-            // our current filter state.
-            boolean newIsFilter = applyAll(it.next(), branch, false);
-            // close the filter in the branch, if needed
-            if (newIsFilter) {
-                branch.recall();
-            }
-            branches.add(branch);
-
-            while (it.hasNext()) {
-                branch = new HawkularPipeline<>();
-                boolean nextIsFilter = applyAll(it.next(), branch, false);
-                // close the filter in the branch, if needed
-                if (nextIsFilter) {
-                    branch.recall();
-                }
-                if (nextIsFilter != newIsFilter) {
-                    // this shouldn't normally be the case because the base impl extends the query tree
-                    // symmetrically, but here we can't be sure of that.
-                    throw new IllegalArgumentException("The branches of the query [" + query + "] don't change" +
-                            " the path/filter state consistently.");
-                }
-                branches.add(branch);
+        if (template == null) {
+            template = compile(filterTree, key);
+            if (TEMPLATES.length > 0) {
+                TEMPLATES[slot] = template;
             }
-
-            pipeline.copySplit(branches.toArray(new HawkularPipeline[branches.size()])).exhaustMerge();
-
-            return isFilter;
         }
+
+        template.apply(q, filters.toArray(new Filter[filters.size()]), 0);
     }
 
     /**
-     * To be implemented by inheritors, this applies the filter this applicator holds to the provided query taking into
-     * the account the type of the filter.
+     * Walks the query tree in the same order as the compiled template applies the filters and collects the structure
+     * of the query and the filters to bind to the template.
      *
-     * @param query the query to update with filter
+     * <p>The structure consists of the filter type and the path/filter flag of each fragment followed by the number
+     * of subtrees of each node.
      */
-    public abstract void applyTo(HawkularPipeline<?, ?> query);
-
-    public Filter filter() {
-        return filter;
-    }
-
-    @Override
-    public String toString() {
-        return "FilterApplicator[filter=" + filter + "]";
-    }
-
-    private static final class RelatedApplicator extends FilterApplicator<Related> {
-
-        private RelatedApplicator(Related filter) {
-            super(filter);
-        }
-
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
-
-    private static final class WithIdsApplicator extends FilterApplicator<With.Ids> {
-        private WithIdsApplicator(With.Ids filter) {
-            super(filter);
-        }
-
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
-
-    private static final class WithTypesApplicator extends FilterApplicator<With.Types> {
-        private WithTypesApplicator(With.Types filter) {
-            super(filter);
-        }
-
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
-
-    private static final class RelationWithIdsApplicator extends FilterApplicator<RelationWith.Ids> {
-        private RelationWithIdsApplicator(RelationWith.Ids filter) {
-            super(filter);
-        }
-
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
-
-    private static final class RelationWithPropertiesApplicator extends FilterApplicator<RelationWith.PropertyValues> {
-
-        private RelationWithPropertiesApplicator(RelationWith.PropertyValues filter) {
-            super(filter);
-        }
+    private static void describe(Query query, List<Object> shape, List<Filter> filters) {
+        for (QueryFragment qf : query.getFragments()) {
+            Filter f = qf.getFilter();
+            if (f == null) {
+                throw new IllegalArgumentException("filter == null");
+            }
 
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
+            shape.add(f.getClass());
+            shape.add(qf instanceof FilterFragment);
+            filters.add(f);
         }
-    }
-
-    private static final class RelationWithSourcesOfTypesApplicator
-            extends FilterApplicator<RelationWith.SourceOfType> {
 
-        private RelationWithSourcesOfTypesApplicator(RelationWith.SourceOfType filter) {
-            super(filter);
-        }
+        shape.add(query.getSubTrees().size());
 
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
+        for (Query sub : query.getSubTrees()) {
+            describe(sub, shape, filters);
         }
     }
 
-    private static final class RelationWithTargetsOfTypesApplicator
-            extends FilterApplicator<RelationWith.TargetOfType> {
+    /**
+     * Compiles the query tree into a template. The template tracks the current type of the fragments being applied.
+     * The type of the fragment is either a path ({@code isFilter == false}) which potentially progresses the query to
+     * next positions in the inventory traversal or a filter ({@code isFilter == true}) which merely trims down the
+     * number of the elements at the current "tail" of the traversal by applying filters to them.
+     *
+     * @param query the query to compile
+     * @param shape the shape of the query, null for the branches that are not cached on their own
+     * @return the compiled template
+     */
+    private static Template compile(Query query, Shape shape) {
+        List<Op> ops = new ArrayList<>();
+        Template[] branches = null;
 
-        private RelationWithTargetsOfTypesApplicator(RelationWith.TargetOfType filter) {
-            super(filter);
-        }
+        boolean isFilter = false;
 
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
+        Query current = query;
+        while (true) {
+            for (QueryFragment qf : current.getFragments()) {
+                boolean thisIsFilter = qf instanceof FilterFragment;
 
-    }
+                if (thisIsFilter != isFilter) {
+                    isFilter = thisIsFilter;
+                    ops.add(thisIsFilter ? Op.REMEMBER : Op.RECALL);
+                }
 
-    private static final class RelationWithSourcesOrTargetsOfTypesApplicator
-            extends FilterApplicator<RelationWith.SourceOrTargetOfType> {
-        private RelationWithSourcesOrTargetsOfTypesApplicator(RelationWith.SourceOrTargetOfType filter) {
-            super(filter);
-        }
+                Class<? extends Filter> filterClazz = qf.getFilter().getClass();
+                Applier applier = APPLIERS.get(filterClazz);
+                if (applier == null) {
+                    throw new IllegalArgumentException("Unsupported filter type " + filterClazz);
+                }
 
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
+                ops.add(new Op(applier));
+            }
 
-    private static final class SwitchElementTypeApplicator extends FilterApplicator<SwitchElementType> {
-        private SwitchElementTypeApplicator(SwitchElementType filter) {
-            super(filter);
-        }
+            List<Query> subTrees = current.getSubTrees();
+            if (subTrees.size() == 1) {
+                current = subTrees.get(0);
+                continue;
+            }
 
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
+            if (subTrees.size() > 1) {
+                // the branches are brand new pipelines, so it doesn't make sense for them to inherit
+                // our current filter state. Each of them closes its filter state on its own.
+                branches = new Template[subTrees.size()];
+                for (int i = 0; i < branches.length; ++i) {
+                    branches[i] = compile(subTrees.get(i), null);
+                    if (branches[i].endsInFilter != branches[0].endsInFilter) {
+                        // this shouldn't normally be the case because the base impl extends the query tree
+                        // symmetrically, but here we can't be sure of that.
+                        throw new IllegalArgumentException("The branches of the query [" + current + "] don't" +
+                                " change the path/filter state consistently.");
+                    }
+                }
+            }
 
-    private static final class NoopApplicator extends FilterApplicator<NoopFilter> {
-        private NoopApplicator(NoopFilter filter) {
-            super(filter);
+            break;
         }
 
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
+        return new Template(shape, ops.toArray(new Op[ops.size()]), branches, isFilter);
     }
 
-    private static final class WithPropertyValuesApplicator extends FilterApplicator<With.PropertyValues> {
-
-        private WithPropertyValuesApplicator(With.PropertyValues f) {
-            super(f);
+    private static int cacheSize() {
+        int size = Integer.getInteger("hawkular.inventory.query-template-cache.size", 256);
+        if (size <= 0) {
+            return 0;
         }
 
-        @Override
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
+        int ret = 1;
+        while (ret < size) {
+            ret <<= 1;
         }
+        return ret;
     }
 
-    private static final class CanonicalPathApplicator extends FilterApplicator<With.CanonicalPaths> {
-
-        private CanonicalPathApplicator(With.CanonicalPaths f) {
-            super(f);
-        }
-
-        @Override
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
+    @FunctionalInterface
+    private interface Applier {
+        void apply(HawkularPipeline<?, ?> query, Filter filter);
     }
 
-    private static final class RelativePathApplicator extends FilterApplicator<With.RelativePaths> {
+    /**
+     * A single step of the template - either an application of the next filter or a change of the filter state.
+     */
+    private static final class Op {
+        static final Op REMEMBER = new Op(null);
+        static final Op RECALL = new Op(null);
 
-        private RelativePathApplicator(With.RelativePaths f) {
-            super(f);
-        }
+        final Applier applier;
 
-        @Override
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
+        Op(Applier applier) {
+            this.applier = applier;
         }
     }
 
-    private static final class MarkerApplicator extends FilterApplicator<Marker> {
+    /**
+     * The structure of a query, used as the key of the template cache.
+     */
+    private static final class Shape {
+        private final Object[] elements;
+        private final int hash;
 
-        private MarkerApplicator(Marker f) {
-            super(f);
+        Shape(Object[] elements) {
+            this.elements = elements;
+            this.hash = Arrays.hashCode(elements);
         }
 
         @Override
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
-
-    private static final class DataAtApplicator extends FilterApplicator<With.DataAt> {
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Shape)) {
+                return false;
+            }
 
-        private DataAtApplicator(With.DataAt f) {
-            super(f);
+            Shape other = (Shape) o;
+            return hash == other.hash && Arrays.equals(elements, other.elements);
         }
 
         @Override
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
+        public int hashCode() {
+            return hash;
         }
     }
 
-    private static final class DataValuedApplicator extends FilterApplicator<With.DataValued> {
-
-        private DataValuedApplicator(With.DataValued f) {
-            super(f);
-        }
+    /**
+     * A compiled query. The template is immutable and can be shared by many threads.
+     */
+    private static final class Template {
+        final Shape shape;
+        final Op[] ops;
+        final Template[] branches;
+
+        /**
+         * Whether the template is in the filtering state after applying its fragments (not counting the branches,
+         * which don't inherit the filter state and close their filters on their own).
+         */
+        final boolean endsInFilter;
+
+        Template(Shape shape, Op[] ops, Template[] branches, boolean endsInFilter) {
+            this.shape = shape;
+            this.ops = ops;
+            this.branches = branches;
+            this.endsInFilter = endsInFilter;
+        }
+
+        /**
+         * Applies the template to the pipeline, consuming the filters from the provided index.
+         *
+         * @return the index of the first filter not consumed by this template
+         */
+        @SuppressWarnings("unchecked")
+        int apply(HawkularPipeline<?, ?> pipeline, Filter[] filters, int filterIndex) {
+            for (Op op : ops) {
+                if (op == Op.REMEMBER) {
+                    pipeline.remember();
+                } else if (op == Op.RECALL) {
+                    pipeline.recall();
+                } else {
+                    op.applier.apply(pipeline, filters[filterIndex++]);
+                }
+            }
 
-        @Override
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
-        }
-    }
+            if (branches != null) {
+                HawkularPipeline[] branchPipelines = new HawkularPipeline[branches.length];
+                for (int i = 0; i < branches.length; ++i) {
+                    branchPipelines[i] = new HawkularPipeline<>();
+                    filterIndex = branches[i].apply(branchPipelines[i], filters, filterIndex);
+                }
 
-    private static final class DataOfTypesApplicator extends FilterApplicator<With.DataOfTypes> {
+                pipeline.copySplit(branchPipelines).exhaustMerge();
+            }
 
-        private DataOfTypesApplicator(With.DataOfTypes f) {
-            super(f);
-        }
+            //close the filter, if needed
+            if (endsInFilter) {
+                pipeline.recall();
+            }
 
-        @Override
-        public void applyTo(HawkularPipeline<?, ?> query) {
-            visitor.visit(query, filter);
+            return filterIndex;
         }
     }
 }
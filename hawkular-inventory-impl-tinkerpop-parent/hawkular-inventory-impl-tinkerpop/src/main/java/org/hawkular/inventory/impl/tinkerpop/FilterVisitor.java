@@ -35,6 +35,8 @@ import org.hawkular.inventory.base.spi.SwitchElementType;
 
 import com.tinkerpop.blueprints.Compare;
 import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.pipes.AbstractPipe;
 import com.tinkerpop.pipes.Pipe;
 import com.tinkerpop.pipes.filter.PropertyFilterPipe;
 import com.tinkerpop.pipes.util.Pipeline;
@@ -294,7 +296,22 @@ class FilterVisitor {
     @SuppressWarnings("unchecked")
     public void visit(HawkularPipeline<?, ?> query, With.DataAt dataPos) {
         query.out(hasData);
-        for (Path.Segment seg : dataPos.getDataPath().getPath()) {
+
+        //the data can either be stored as a blob on a single vertex or as a tree of vertices. The former are looked
+        //into directly, the latter are traversed.
+        HawkularPipeline<Vertex, Element> blobs = new HawkularPipeline<>();
+        blobs.add(new EmbeddedDataAtPipe(dataPos.getDataPath()));
+
+        HawkularPipeline<Vertex, ?> vertices = new HawkularPipeline<>();
+        vertices.hasNot(Constants.Property.__structuredDataBlob.name());
+        descendToDataVertices(vertices, dataPos.getDataPath());
+
+        query.copySplit(new Pipe[]{blobs, vertices}).exhaustMerge();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void descendToDataVertices(HawkularPipeline<?, ?> query, RelativePath dataPath) {
+        for (Path.Segment seg : dataPath.getPath()) {
             if (RelativePath.Up.class.equals(seg.getElementType())) {
                 query.in(contains);
             } else {
@@ -359,6 +376,28 @@ class FilterVisitor {
         pipeline.hasEid(segment.getElementId());
     }
 
+    /**
+     * Emits the structured data on the given path inside the structured data blobs of the incoming vertices. The
+     * vertices not having the blob or not having any data on the path are skipped.
+     */
+    private static final class EmbeddedDataAtPipe extends AbstractPipe<Vertex, Element> {
+        private final RelativePath dataPath;
+
+        EmbeddedDataAtPipe(RelativePath dataPath) {
+            this.dataPath = dataPath;
+        }
+
+        @Override
+        protected Element processNextStart() {
+            while (true) {
+                Element data = EmbeddedStructuredData.at(this.starts.next(), dataPath);
+                if (data != null) {
+                    return data;
+                }
+            }
+        }
+    }
+
     /**
      * A very simplistic conversion of string to positive integer in only decimal radix.
      *
@@ -18,16 +18,21 @@
 package org.hawkular.inventory.impl.tinkerpop;
 
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.Deque;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import org.hawkular.inventory.api.Relationships;
 import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.paging.ContinuationToken;
 import org.hawkular.inventory.api.paging.Order;
 import org.hawkular.inventory.api.paging.Pager;
 
@@ -62,6 +67,8 @@ final class HawkularPipeline<S, E> extends GremlinPipeline<S, E> implements Clon
 
     private final Map<String, Long> counters = new HashMap<>();
 
+    private String continuation;
+
     public HawkularPipeline() {
     }
 
@@ -148,11 +155,16 @@ final class HawkularPipeline<S, E> extends GremlinPipeline<S, E> implements Clon
         return cast(Element.class).page(pager, (e, p) -> {
             String prop = Constants.Property.mapUserDefined(p);
             return e.getProperty(prop);
-        });
+        }, e -> e.getProperty(Constants.Property.__cp.name()));
     }
 
     public HawkularPipeline<S, E> page(Pager pager,
-            BiFunction<E, String, ? extends Comparable> propertyValueExtractor) {
+            BiFunction<E, String, ? extends Comparable> propertyValueExtractor,
+            Function<E, String> canonicalPathExtractor) {
+
+        if (pager.isKeyset()) {
+            return keysetPage(pager, propertyValueExtractor, canonicalPathExtractor);
+        }
 
         List<Order> order = pager.getOrder();
         if (!order.isEmpty()) {
@@ -185,17 +197,126 @@ final class HawkularPipeline<S, E> extends GremlinPipeline<S, E> implements Clon
         }
 
         if (pager.isLimited()) {
-            this.drainedRange(pager.getStart(), pager.getEnd() - 1);
+            switch (pager.getTotalSizeMode()) {
+                case EXACT:
+                    //we need to go through all the results to be able to count them
+                    this.drainedRange(pager.getStart(), pager.getEnd() - 1);
+                    break;
+                case ESTIMATED:
+                    //1 element past the end of the page tells us whether there are more results
+                    this.range(pager.getStart(), pager.getEnd());
+                    break;
+                case NONE:
+                    this.range(pager.getStart(), pager.getEnd() - 1);
+                    break;
+            }
+        }
+
+        return this;
+    }
+
+    /**
+     * Instead of ordering all the results and skipping to the start of the page, the keyset paging only keeps
+     * the elements that sort after the continuation token of the pager and of those only keeps the first page in
+     * memory.
+     *
+     * <p>The canonical path of the elements is used as the last sort key so that the ordering is total and
+     * the continuation token identifies the position in the results unambiguously.
+     */
+    @SuppressWarnings("unchecked")
+    private HawkularPipeline<S, E> keysetPage(Pager pager,
+            BiFunction<E, String, ? extends Comparable> propertyValueExtractor,
+            Function<E, String> canonicalPathExtractor) {
+
+        List<Order> order = pager.getOrder().stream().filter(Order::isSpecific).collect(Collectors.toList());
+
+        Function<E, ContinuationToken> tokenizer = e -> {
+            List<Comparable<?>> values = new ArrayList<>(order.size());
+            for (Order o : order) {
+                values.add(propertyValueExtractor.apply(e, o.getField()));
+            }
+            return new ContinuationToken(values, canonicalPathExtractor.apply(e));
+        };
+
+        //the elements are compared many times while ordering, so the values are compared directly, without creating
+        //the tokens
+        Comparator<E> comparator = (a, b) -> {
+            for (Order o : order) {
+                Comparable va = propertyValueExtractor.apply(a, o.getField());
+                Comparable vb = propertyValueExtractor.apply(b, o.getField());
+                int ret = o.isAscending() ? safeCompare(va, vb) : safeCompare(vb, va);
+                if (ret != 0) {
+                    return ret;
+                }
+            }
+
+            return safeCompare(canonicalPathExtractor.apply(a), canonicalPathExtractor.apply(b));
+        };
+
+        if (!pager.getContinuation().isEmpty()) {
+            ContinuationToken after = ContinuationToken.fromString(pager.getContinuation());
+            if (after.getSortValues().size() != order.size()) {
+                throw new IllegalArgumentException("The continuation token doesn't correspond to the ordering "
+                        + order + ".");
+            }
+
+            this.filter(e -> {
+                for (int i = 0; i < order.size(); ++i) {
+                    Comparable v = propertyValueExtractor.apply(e, order.get(i).getField());
+                    Comparable va = after.getSortValues().get(i);
+                    int ret = order.get(i).isAscending() ? safeCompare(v, va) : safeCompare(va, v);
+                    if (ret != 0) {
+                        return ret > 0;
+                    }
+                }
+
+                return safeCompare(canonicalPathExtractor.apply(e), after.getCanonicalPath()) > 0;
+            });
         }
 
+        if (!pager.isLimited()) {
+            add(new BoundedOrderPipe<>(comparator, -1));
+            return this;
+        }
+
+        int pageSize = pager.getPageSize();
+
+        //1 more than the page size, so that we know whether there is a next page or not
+        add(new BoundedOrderPipe<>(comparator, pageSize + 1));
+
+        int[] index = new int[1];
+        Object[] last = new Object[1];
+        this.filter(e -> {
+            if (index[0]++ < pageSize) {
+                last[0] = e;
+                return true;
+            } else {
+                continuation = last[0] == null ? null : tokenizer.apply((E) last[0]).toString();
+                return false;
+            }
+        });
+
         return this;
     }
 
-    private static <T extends Comparable<T>> int safeCompare(T a, T b) {
+    /**
+     * @return the continuation token of the next page if this pipeline was keyset paged and there are more results
+     * than fit on the page. Only available after the pipeline has been fully iterated.
+     */
+    public String getContinuation() {
+        return continuation;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static int safeCompare(Comparable a, Comparable b) {
         if (a == null) {
             return b == null ? 0 : -1;
         } else if (b == null) {
             return 1;
+        } else if (a.getClass() != b.getClass()) {
+            //a property can have values of different types on different elements, which cannot be compared to each
+            //other. Let's at least order them consistently.
+            return a.getClass().getName().compareTo(b.getClass().getName());
         } else {
             return a.compareTo(b);
         }
@@ -33,30 +33,156 @@ final class InventoryContext<G extends TransactionalGraph> {
     private final G graph;
     private final TinkerpopInventory inventory;
     private final GraphProvider<G> graphProvider;
+    private final boolean structuredDataAsBlobs;
+    private final int typeCacheSize;
+    private final ThreadLocal<ActiveTransaction> activeTransaction = new ThreadLocal<>();
 
-    public InventoryContext(TinkerpopInventory inventory, G graph, GraphProvider<G> graphProvider) {
+    public InventoryContext(TinkerpopInventory inventory, G graph, GraphProvider<G> graphProvider,
+            boolean structuredDataAsBlobs, int typeCacheSize) {
         this.inventory = inventory;
         this.graph = graph;
         this.graphProvider = graphProvider;
+        this.structuredDataAsBlobs = structuredDataAsBlobs;
+        this.typeCacheSize = typeCacheSize;
     }
 
     public TinkerpopInventory getInventory() {
         return inventory;
     }
 
+    /**
+     * @return the graph of the transaction active in the current thread
+     * @throws IllegalStateException if there is no transaction active in the current thread
+     */
     public TransactionalGraph getGraph() {
-        return graph;
+        ActiveTransaction active = activeTransaction.get();
+        if (active == null) {
+            throw new IllegalStateException("The graph can only be accessed in a transaction but there is none" +
+                    " active in the current thread.");
+        }
+
+        return active.graph;
+    }
+
+    /**
+     * @return true if there is a transaction active in the current thread
+     */
+    public boolean isTransactionActive() {
+        return activeTransaction.get() != null;
+    }
+
+    /**
+     * @return true if the new structured data should be stored as a single blob instead of a tree of vertices
+     */
+    public boolean isStructuredDataAsBlobs() {
+        return structuredDataAsBlobs;
     }
 
-    public InventoryBackend.Transaction startTransaction(boolean mutating) {
-        return graphProvider.startTransaction(graph, mutating);
+    /**
+     * @return the maximum number of resource types and metric types to keep converted across queries
+     */
+    public int getTypeCacheSize() {
+        return typeCacheSize;
+    }
+
+    /**
+     * Starts a new transaction and makes it the active transaction of the current thread until it is committed or
+     * rolled back. All the work done through {@link #getGraph()} in the meantime is done in that transaction.
+     *
+     * <p>A transaction started while another one is active in the thread joins the active one (unless the new one is
+     * mutating and the active one is not), which is what used to happen with the thread-bound transactions of the
+     * graphs.
+     *
+     * @param mutating whether the transaction is going to mutate the graph
+     * @param tenantId the tenant the transaction is going to work in or null if not known
+     * @return the transaction handle
+     */
+    public InventoryBackend.Transaction startTransaction(boolean mutating, String tenantId) {
+        ActiveTransaction active = activeTransaction.get();
+        if (active != null && (active.transaction.isMutating() || !mutating)) {
+            active.joined++;
+            return active.transaction;
+        }
+
+        InventoryBackend.Transaction t = graphProvider.startTransaction(graph, mutating, tenantId);
+        activeTransaction.set(new ActiveTransaction(t, graphProvider.getTransactionGraph(graph, t), active));
+        return t;
     }
 
     public void commit(InventoryBackend.Transaction t) {
-        graphProvider.commit(graph, t);
+        ActiveTransaction active = activeTransaction.get();
+        if (active != null && active.transaction == t && active.joined > 0) {
+            //the outermost transaction commits the work
+            active.joined--;
+            return;
+        }
+
+        try {
+            if (active != null && active.transaction == t && active.rollbackOnly) {
+                graphProvider.rollback(graph, t);
+                throw new IllegalStateException("Cannot commit a transaction, a part of which has been rolled back.");
+            }
+
+            graphProvider.commit(graph, t);
+        } finally {
+            deactivate(active, t);
+        }
     }
 
     public void rollback(InventoryBackend.Transaction t) {
-        graphProvider.rollback(graph, t);
+        ActiveTransaction active = activeTransaction.get();
+        if (active != null && active.transaction == t && active.joined > 0) {
+            active.joined--;
+            active.rollbackOnly = true;
+            return;
+        }
+
+        try {
+            graphProvider.rollback(graph, t);
+        } finally {
+            deactivate(active, t);
+        }
+    }
+
+    /**
+     * @param t the transaction to check
+     * @return true if the transaction is active in the current thread and has been joined by a transaction that is
+     * not committed or rolled back yet, i.e. if committing or rolling it back would not finish it yet
+     */
+    public boolean isJoined(InventoryBackend.Transaction t) {
+        ActiveTransaction active = activeTransaction.get();
+        return active != null && active.transaction == t && active.joined > 0;
+    }
+
+    /**
+     * Shuts down the graph.
+     */
+    public void shutdown() {
+        graph.shutdown();
+    }
+
+    private void deactivate(ActiveTransaction active, InventoryBackend.Transaction t) {
+        if (active != null && active.transaction == t) {
+            if (active.outer == null) {
+                activeTransaction.remove();
+            } else {
+                activeTransaction.set(active.outer);
+            }
+        }
+    }
+
+    private static final class ActiveTransaction {
+        final InventoryBackend.Transaction transaction;
+        final TransactionalGraph graph;
+        final ActiveTransaction outer;
+        int joined;
+        boolean rollbackOnly;
+
+        ActiveTransaction(InventoryBackend.Transaction transaction, TransactionalGraph graph,
+                ActiveTransaction outer) {
+            this.transaction = transaction;
+            this.graph = graph;
+            this.outer = outer;
+        }
     }
 }
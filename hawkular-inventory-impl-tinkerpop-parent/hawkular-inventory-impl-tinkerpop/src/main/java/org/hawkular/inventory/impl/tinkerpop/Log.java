@@ -17,6 +17,7 @@
 package org.hawkular.inventory.impl.tinkerpop;
 
 import org.jboss.logging.Logger;
+import org.jboss.logging.annotations.Cause;
 import org.jboss.logging.annotations.LogMessage;
 import org.jboss.logging.annotations.Message;
 import org.jboss.logging.annotations.MessageLogger;
@@ -38,4 +39,8 @@ interface Log {
     @LogMessage(level = Logger.Level.INFO)
     @Message(id = 1000, value = "Using graph provider: %s")
     void iUsingGraphProvider(String backend);
+
+    @LogMessage(level = Logger.Level.DEBUG)
+    @Message(id = 1001, value = "Failed to write the GraphSON dump of tenant %s.")
+    void dFailedToWriteGraphSON(String tenantId, @Cause Throwable cause);
 }
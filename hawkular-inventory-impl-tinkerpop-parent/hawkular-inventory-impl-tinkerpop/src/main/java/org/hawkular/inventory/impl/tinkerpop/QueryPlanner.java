@@ -0,0 +1,346 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hawkular.inventory.api.filters.Filter;
+import org.hawkular.inventory.api.filters.Marker;
+import org.hawkular.inventory.api.filters.RelationFilter;
+import org.hawkular.inventory.api.filters.RelationWith;
+import org.hawkular.inventory.api.filters.With;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.StructuredData;
+import org.hawkular.inventory.base.Query;
+import org.hawkular.inventory.base.QueryFragment;
+import org.hawkular.inventory.base.spi.NoopFilter;
+
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Graph;
+import com.tinkerpop.blueprints.util.MultiIterable;
+
+/**
+ * Translates the queries that don't have an explicit starting point into Gremlin pipelines.
+ *
+ * <p>A literal translation of such query would start with a scan of all the vertices (or edges) in the graph and only
+ * then apply the filters. Instead, the planner looks for the most selective condition that can be looked up using
+ * the indices defined in {@link TinkerpopInventory} and starts the pipeline from the results of such lookup.
+ *
+ * <p>In the order of preference, the pipeline starts with:
+ * <ol>
+ *     <li>the single element, if the whole query resolves to a canonical path (see
+ *     {@link Query#canonicalPathOf(Query)}),
+ *     <li>a lookup of the canonical paths mentioned in the filters applied to the starting elements or a lookup of
+ *     the relationships by their ids,
+ *     <li>a lookup using the composite index on type and id, if both types and ids are specified for the starting
+ *     elements,
+ *     <li>a lookup of all elements of the specified types,
+ *     <li>a scan of the whole graph, if none of the above is possible.
+ * </ol>
+ *
+ * <p>Only the entities and relationships have their canonical paths indexed. The canonical paths of structured data
+ * therefore are never looked up, the query falls back to the next option instead.
+ *
+ * <p>Apart from the first case, the filters are still applied to the results of the lookup. That is cheap, because
+ * the lookup greatly reduces the number of elements to check, and keeps the semantics of the query intact.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class QueryPlanner {
+
+    /**
+     * Relative cost of a lookup of a single element through a unique (or nearly unique) index.
+     */
+    private static final int INDEX_SEEK_COST = 1;
+
+    /**
+     * Relative cost of a lookup of all the elements of a single type. This is going to be significantly more
+     * expensive than an index seek, but still much cheaper than a scan of the whole graph.
+     */
+    private static final int TYPE_SCAN_COST = 10_000;
+
+    private QueryPlanner() {
+
+    }
+
+    /**
+     * Translates the query into a pipeline starting at the most selective index lookup possible.
+     *
+     * @param graph the graph to query
+     * @param query the query to translate
+     * @return the pipeline corresponding to the query
+     */
+    public static HawkularPipeline<?, ? extends Element> translate(Graph graph, Query query) {
+        QueryFragment[] fragments = query.getFragments();
+
+        boolean edges = fragments.length > 0 && fragments[0].getFilter() instanceof RelationFilter;
+
+        CanonicalPath path = Query.canonicalPathOf(query);
+        if (path != null && isIndexed(path)) {
+            //the query resolves to a single element, so all the filters are implied by the lookup
+            return new HawkularPipeline<Element, Element>(lookup(graph, path));
+        }
+
+        Seek seek = chooseSeek(fragments, edges);
+
+        HawkularPipeline<?, ? extends Element> q;
+        if (seek != null) {
+            q = new HawkularPipeline<Element, Element>(seek.lookup(graph));
+        } else if (edges) {
+            q = new HawkularPipeline<>(graph).E();
+        } else {
+            //the metadata vertex is not an entity
+            q = new HawkularPipeline<>(graph).V().hasNot(Constants.Property.__type.name(), Constants.METADATA_TYPE);
+        }
+
+        FilterApplicator.applyAll(query, q);
+
+        return q;
+    }
+
+    /**
+     * Only the entities and relationships have their canonical path stored with them. Structured data are located
+     * by descending from the data entities.
+     *
+     * @param path the canonical path to check
+     * @return true if the element on the path can be looked up using {@link #lookup(Graph, CanonicalPath)}
+     */
+    static boolean isIndexed(CanonicalPath path) {
+        for (CanonicalPath.Segment s : path.getPath()) {
+            if (StructuredData.class.equals(s.getElementType())) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Looks up the element by its canonical path. The path must be {@link #isIndexed(CanonicalPath) indexed}.
+     */
+    static Iterable<? extends Element> lookup(Graph graph, CanonicalPath path) {
+        String cp = path.toString();
+        return Relationship.class.equals(path.getSegment().getElementType())
+                ? graph.getEdges(Constants.Property.__cp.name(), cp)
+                : graph.getVertices(Constants.Property.__cp.name(), cp);
+    }
+
+    /**
+     * Collects the index-able conditions from the filters applied to the starting elements of the query and chooses
+     * the cheapest lookup.
+     *
+     * <p>Only the fragments up to the first one that moves the traversal away from the starting elements are
+     * considered.
+     */
+    private static Seek chooseSeek(QueryFragment[] fragments, boolean edges) {
+        String[] types = null;
+        String[] ids = null;
+        String[] paths = null;
+        String[] relationshipIds = null;
+
+        for (QueryFragment qf : fragments) {
+            Filter f = qf.getFilter();
+
+            if (f instanceof NoopFilter || f instanceof Marker || f instanceof With.PropertyValues
+                    || f instanceof RelationWith.PropertyValues) {
+                //these don't move from the current element, so we can look past them
+                continue;
+            }
+
+            if (f instanceof With.Types && !edges) {
+                if (types == null) {
+                    With.Types ts = (With.Types) f;
+                    types = new String[ts.getTypes().length];
+                    for (int i = 0; i < types.length; ++i) {
+                        types[i] = Constants.Type.of(ts.getTypes()[i]).name();
+                    }
+                }
+            } else if (f instanceof With.Ids && !edges) {
+                if (ids == null) {
+                    ids = ((With.Ids) f).getIds();
+                }
+            } else if (f instanceof With.CanonicalPaths) {
+                if (paths == null) {
+                    CanonicalPath[] ps = ((With.CanonicalPaths) f).getPaths();
+                    String[] strs = new String[ps.length];
+                    for (int i = 0; i < strs.length; ++i) {
+                        if (!isIndexed(ps[i])) {
+                            //the seek would miss this path
+                            strs = null;
+                            break;
+                        }
+                        strs[i] = ps[i].toString();
+                    }
+                    paths = strs;
+                }
+            } else if (f instanceof RelationWith.Ids && edges) {
+                if (relationshipIds == null) {
+                    relationshipIds = ((RelationWith.Ids) f).getIds();
+                }
+            } else {
+                break;
+            }
+        }
+
+        Seek best = null;
+
+        if (paths != null) {
+            best = new CanonicalPathSeek(paths, edges);
+        }
+
+        if (relationshipIds != null) {
+            best = cheaper(best, new RelationshipIdSeek(relationshipIds));
+        }
+
+        if (types != null && ids != null) {
+            best = cheaper(best, new TypeAndIdSeek(types, ids));
+        } else if (types != null) {
+            best = cheaper(best, new TypeSeek(types));
+        }
+
+        return best;
+    }
+
+    private static Seek cheaper(Seek a, Seek b) {
+        if (a == null) {
+            return b;
+        } else if (b == null) {
+            return a;
+        } else {
+            return a.cost() <= b.cost() ? a : b;
+        }
+    }
+
+    private abstract static class Seek {
+        abstract int cost();
+
+        abstract Iterable<Element> lookup(Graph graph);
+    }
+
+    private static final class CanonicalPathSeek extends Seek {
+        private final String[] paths;
+        private final boolean edges;
+
+        CanonicalPathSeek(String[] paths, boolean edges) {
+            this.paths = paths;
+            this.edges = edges;
+        }
+
+        @Override
+        int cost() {
+            return paths.length * INDEX_SEEK_COST;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Iterable<Element> lookup(Graph graph) {
+            List<Iterable<Element>> results = new ArrayList<>(paths.length);
+            for (String p : paths) {
+                results.add((Iterable<Element>) (edges ? graph.getEdges(Constants.Property.__cp.name(), p)
+                        : graph.getVertices(Constants.Property.__cp.name(), p)));
+            }
+
+            return new MultiIterable<>(results);
+        }
+    }
+
+    /**
+     * Looks up the edges using the index on their ids. This avoids the need to construct the canonical paths of the
+     * relationships only to look them up by those.
+     */
+    private static final class RelationshipIdSeek extends Seek {
+        private final String[] ids;
+
+        RelationshipIdSeek(String[] ids) {
+            this.ids = ids;
+        }
+
+        @Override
+        int cost() {
+            return ids.length * INDEX_SEEK_COST;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Iterable<Element> lookup(Graph graph) {
+            List<Iterable<Element>> results = new ArrayList<>(ids.length);
+            for (String id : ids) {
+                results.add((Iterable<Element>) (Iterable<?>) graph.getEdges(Constants.Property.__eid.name(), id));
+            }
+
+            return new MultiIterable<>(results);
+        }
+    }
+
+    private static final class TypeAndIdSeek extends Seek {
+        private final String[] types;
+        private final String[] ids;
+
+        TypeAndIdSeek(String[] types, String[] ids) {
+            this.types = types;
+            this.ids = ids;
+        }
+
+        @Override
+        int cost() {
+            return types.length * ids.length * INDEX_SEEK_COST;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Iterable<Element> lookup(Graph graph) {
+            List<Iterable<Element>> results = new ArrayList<>(types.length * ids.length);
+            for (String type : types) {
+                for (String id : ids) {
+                    results.add((Iterable<Element>) (Iterable<?>) graph.query()
+                            .has(Constants.Property.__type.name(), type)
+                            .has(Constants.Property.__eid.name(), id).vertices());
+                }
+            }
+
+            return new MultiIterable<>(results);
+        }
+    }
+
+    private static final class TypeSeek extends Seek {
+        private final String[] types;
+
+        TypeSeek(String[] types) {
+            this.types = types;
+        }
+
+        @Override
+        int cost() {
+            return types.length * TYPE_SCAN_COST;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        Iterable<Element> lookup(Graph graph) {
+            List<Iterable<Element>> results = new ArrayList<>(types.length);
+            for (String type : types) {
+                results.add((Iterable<Element>) (Iterable<?>) graph.getVertices(Constants.Property.__type.name(),
+                        type));
+            }
+
+            return new MultiIterable<>(results);
+        }
+    }
+}
@@ -0,0 +1,501 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.hawkular.inventory.api.model.Path;
+import org.hawkular.inventory.api.model.RelativePath;
+import org.hawkular.inventory.api.model.StructuredData;
+
+/**
+ * Encodes the structured data into a compact binary form that can be stored in a single property of a vertex.
+ *
+ * <p>The blob starts with a header of a magic byte and the version of the format, so that the format can evolve and
+ * the blobs written in an unsupported format are detected instead of being misinterpreted. The header is followed by
+ * the top-level value.
+ *
+ * <p>Each value is stored as a single type byte followed by the payload:
+ * <ul>
+ *     <li>bool - 1 byte,
+ *     <li>integral - 8 bytes,
+ *     <li>floating point - 8 bytes,
+ *     <li>string - 4 bytes of length followed by the UTF-8 bytes,
+ *     <li>undefined - no payload,
+ *     <li>list - 4 bytes of the element count followed by the elements, each prefixed by 4 bytes of its encoded length,
+ *     <li>map - 4 bytes of the entry count followed by the entries, each consisting of the key encoded as a string and
+ *     the value prefixed by 4 bytes of its encoded length.
+ * </ul>
+ *
+ * <p>The length prefixes make it possible to skip over the elements that are not of interest when looking for the
+ * data on some path, so that only the requested part of the data needs to be decoded.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class StructuredDataCodec {
+    private static final byte MAGIC = (byte) 0xD5;
+    private static final byte VERSION = 1;
+    private static final int HEADER_LENGTH = 2;
+
+    private static final byte BOOL = 0;
+    private static final byte INTEGRAL = 1;
+    private static final byte FLOATING_POINT = 2;
+    private static final byte STRING = 3;
+    private static final byte UNDEFINED = 4;
+    private static final byte LIST = 5;
+    private static final byte MAP = 6;
+
+    private StructuredDataCodec() {
+
+    }
+
+    public static byte[] encode(StructuredData data) {
+        Output out = new Output();
+        out.writeByte(MAGIC);
+        out.writeByte(VERSION);
+        encode(data, out);
+        return out.toByteArray();
+    }
+
+    /**
+     * @param blob    the encoded data
+     * @param recurse whether to decode the contents of lists and maps or just return them empty
+     * @return the decoded data
+     * @throws IllegalArgumentException if the blob is not in a supported format
+     */
+    public static StructuredData decode(byte[] blob, boolean recurse) {
+        checkHeader(blob);
+        return decode(blob, HEADER_LENGTH, recurse);
+    }
+
+    /**
+     * Decodes the data starting at given offset in the blob.
+     *
+     * @param blob    the encoded data
+     * @param offset  the offset of the value as returned from {@link #find(byte[], RelativePath)}
+     * @param recurse whether to decode the contents of lists and maps or just return them empty
+     * @return the decoded data
+     */
+    public static StructuredData decode(byte[] blob, int offset, boolean recurse) {
+        Input in = new Input(blob, offset);
+        byte type = in.readByte();
+        switch (type) {
+            case BOOL:
+                return StructuredData.get().bool(in.readByte() != 0);
+            case INTEGRAL:
+                return StructuredData.get().integral(in.readLong());
+            case FLOATING_POINT:
+                return StructuredData.get().floatingPoint(Double.longBitsToDouble(in.readLong()));
+            case STRING:
+                return StructuredData.get().string(in.readString());
+            case UNDEFINED:
+                return StructuredData.get().undefined();
+            case LIST:
+                StructuredData.ListBuilder lst = StructuredData.get().list();
+                if (recurse) {
+                    decodeList(in, lst);
+                }
+                return lst.build();
+            case MAP:
+                StructuredData.MapBuilder mp = StructuredData.get().map();
+                if (recurse) {
+                    decodeMap(in, mp);
+                }
+                return mp.build();
+            default:
+                throw new IllegalArgumentException("Unknown structured data type stored in db: " + type);
+        }
+    }
+
+    /**
+     * @return the type of the top-level value in the blob
+     */
+    public static StructuredData.Type getType(byte[] blob, int offset) {
+        switch (blob[offset]) {
+            case BOOL:
+                return StructuredData.Type.bool;
+            case INTEGRAL:
+                return StructuredData.Type.integral;
+            case FLOATING_POINT:
+                return StructuredData.Type.floatingPoint;
+            case STRING:
+                return StructuredData.Type.string;
+            case UNDEFINED:
+                return StructuredData.Type.undefined;
+            case LIST:
+                return StructuredData.Type.list;
+            case MAP:
+                return StructuredData.Type.map;
+            default:
+                throw new IllegalArgumentException("Unknown structured data type stored in db: " + blob[offset]);
+        }
+    }
+
+    /**
+     * Finds the offset of the value on the provided path without decoding any of the values along the way.
+     *
+     * @param blob     the encoded data
+     * @param dataPath the path to the value
+     * @return the offset of the value or -1 if there is no value on the path
+     * @throws IllegalArgumentException if the blob is not in a supported format
+     */
+    public static int find(byte[] blob, RelativePath dataPath) {
+        checkHeader(blob);
+
+        //the offsets of the values on the path so far, so that we can go up
+        List<Integer> offsets = new ArrayList<>();
+        offsets.add(HEADER_LENGTH);
+
+        for (Path.Segment seg : dataPath.getPath()) {
+            if (RelativePath.Up.class.equals(seg.getElementType())) {
+                offsets.remove(offsets.size() - 1);
+                if (offsets.isEmpty()) {
+                    return -1;
+                }
+                continue;
+            }
+
+            int child = findChild(blob, offsets.get(offsets.size() - 1), seg.getElementId());
+            if (child < 0) {
+                return -1;
+            }
+
+            offsets.add(child);
+        }
+
+        return offsets.get(offsets.size() - 1);
+    }
+
+    private static void checkHeader(byte[] blob) {
+        if (blob.length < HEADER_LENGTH || blob[0] != MAGIC) {
+            throw new IllegalArgumentException("The structured data stored in db are not in the blob format.");
+        }
+
+        if (blob[1] != VERSION) {
+            throw new IllegalArgumentException("Unsupported version " + blob[1] + " of the structured data blob" +
+                    " stored in db. Only version " + VERSION + " is supported.");
+        }
+    }
+
+    private static int findChild(byte[] blob, int offset, String key) {
+        Input in = new Input(blob, offset);
+        byte type = in.readByte();
+
+        if (type == LIST) {
+            int index;
+            try {
+                index = Integer.parseInt(key);
+            } catch (NumberFormatException e) {
+                return -1;
+            }
+
+            int size = in.readInt();
+            if (index < 0 || index >= size) {
+                return -1;
+            }
+
+            for (int i = 0; i < index; ++i) {
+                in.skip(in.readInt());
+            }
+
+            in.readInt();
+            return in.position;
+        } else if (type == MAP) {
+            byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+
+            int size = in.readInt();
+            for (int i = 0; i < size; ++i) {
+                boolean matches = in.matchString(keyBytes);
+                int length = in.readInt();
+                if (matches) {
+                    return in.position;
+                }
+                in.skip(length);
+            }
+
+            return -1;
+        } else {
+            return -1;
+        }
+    }
+
+    private static void decodeList(Input in, StructuredData.AbstractListBuilder<?> bld) {
+        int size = in.readInt();
+        for (int i = 0; i < size; ++i) {
+            in.readInt();
+
+            byte type = in.readByte();
+            switch (type) {
+                case BOOL:
+                    bld.addBool(in.readByte() != 0);
+                    break;
+                case INTEGRAL:
+                    bld.addIntegral(in.readLong());
+                    break;
+                case FLOATING_POINT:
+                    bld.addFloatingPoint(Double.longBitsToDouble(in.readLong()));
+                    break;
+                case STRING:
+                    bld.addString(in.readString());
+                    break;
+                case UNDEFINED:
+                    bld.addUndefined();
+                    break;
+                case LIST:
+                    StructuredData.InnerListBuilder<?> lst = bld.addList();
+                    decodeList(in, lst);
+                    lst.closeList();
+                    break;
+                case MAP:
+                    StructuredData.InnerMapBuilder<?> mp = bld.addMap();
+                    decodeMap(in, mp);
+                    mp.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type stored in db: " + type);
+            }
+        }
+    }
+
+    private static void decodeMap(Input in, StructuredData.AbstractMapBuilder<?> bld) {
+        int size = in.readInt();
+        for (int i = 0; i < size; ++i) {
+            String key = in.readString();
+            in.readInt();
+
+            byte type = in.readByte();
+            switch (type) {
+                case BOOL:
+                    bld.putBool(key, in.readByte() != 0);
+                    break;
+                case INTEGRAL:
+                    bld.putIntegral(key, in.readLong());
+                    break;
+                case FLOATING_POINT:
+                    bld.putFloatingPoint(key, Double.longBitsToDouble(in.readLong()));
+                    break;
+                case STRING:
+                    bld.putString(key, in.readString());
+                    break;
+                case UNDEFINED:
+                    bld.putUndefined(key);
+                    break;
+                case LIST:
+                    StructuredData.InnerListBuilder<?> lst = bld.putList(key);
+                    decodeList(in, lst);
+                    lst.closeList();
+                    break;
+                case MAP:
+                    StructuredData.InnerMapBuilder<?> mp = bld.putMap(key);
+                    decodeMap(in, mp);
+                    mp.closeMap();
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown structured data type stored in db: " + type);
+            }
+        }
+    }
+
+    private static void encode(StructuredData data, Output out) {
+        data.accept(new StructuredData.Visitor.Simple<Void, Void>() {
+            @Override
+            public Void visitBool(boolean value, Void parameter) {
+                out.writeByte(BOOL);
+                out.writeByte(value ? 1 : 0);
+                return null;
+            }
+
+            @Override
+            public Void visitIntegral(long value, Void parameter) {
+                out.writeByte(INTEGRAL);
+                out.writeLong(value);
+                return null;
+            }
+
+            @Override
+            public Void visitFloatingPoint(double value, Void parameter) {
+                out.writeByte(FLOATING_POINT);
+                out.writeLong(Double.doubleToLongBits(value));
+                return null;
+            }
+
+            @Override
+            public Void visitString(String value, Void parameter) {
+                out.writeByte(STRING);
+                out.writeString(value);
+                return null;
+            }
+
+            @Override
+            public Void visitUndefined(Void parameter) {
+                out.writeByte(UNDEFINED);
+                return null;
+            }
+
+            @Override
+            public Void visitList(List<StructuredData> value, Void parameter) {
+                out.writeByte(LIST);
+                out.writeInt(value.size());
+                for (StructuredData c : value) {
+                    int lengthPosition = out.reserveInt();
+                    c.accept(this, null);
+                    out.patchLength(lengthPosition);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitMap(Map<String, StructuredData> value, Void parameter) {
+                out.writeByte(MAP);
+                out.writeInt(value.size());
+                for (Map.Entry<String, StructuredData> e : value.entrySet()) {
+                    out.writeString(e.getKey());
+                    int lengthPosition = out.reserveInt();
+                    e.getValue().accept(this, null);
+                    out.patchLength(lengthPosition);
+                }
+                return null;
+            }
+
+            @Override
+            public Void visitUnknown(Serializable value, Void parameter) {
+                throw new IllegalArgumentException("Unknown structured data value: " + value);
+            }
+        }, null);
+    }
+
+    private static final class Output {
+        private byte[] buffer = new byte[64];
+        private int size;
+
+        void writeByte(int b) {
+            ensureCapacity(1);
+            buffer[size++] = (byte) b;
+        }
+
+        void writeInt(int v) {
+            ensureCapacity(4);
+            putInt(size, v);
+            size += 4;
+        }
+
+        void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeInt(bytes.length);
+            ensureCapacity(bytes.length);
+            System.arraycopy(bytes, 0, buffer, size, bytes.length);
+            size += bytes.length;
+        }
+
+        /**
+         * Reserves room for a length prefix.
+         *
+         * @return the position of the reserved room to be passed to {@link #patchLength(int)}
+         */
+        int reserveInt() {
+            int pos = size;
+            writeInt(0);
+            return pos;
+        }
+
+        /**
+         * Fills in the length of everything written after the reserved position.
+         */
+        void patchLength(int position) {
+            putInt(position, size - position - 4);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buffer, size);
+        }
+
+        private void putInt(int position, int v) {
+            buffer[position] = (byte) (v >>> 24);
+            buffer[position + 1] = (byte) (v >>> 16);
+            buffer[position + 2] = (byte) (v >>> 8);
+            buffer[position + 3] = (byte) v;
+        }
+
+        private void ensureCapacity(int additional) {
+            if (size + additional > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + additional));
+            }
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buffer;
+        private int position;
+
+        Input(byte[] buffer, int position) {
+            this.buffer = buffer;
+            this.position = position;
+        }
+
+        byte readByte() {
+            return buffer[position++];
+        }
+
+        int readInt() {
+            int v = ((buffer[position] & 0xFF) << 24) | ((buffer[position + 1] & 0xFF) << 16)
+                    | ((buffer[position + 2] & 0xFF) << 8) | (buffer[position + 3] & 0xFF);
+            position += 4;
+            return v;
+        }
+
+        long readLong() {
+            long high = readInt() & 0xFFFFFFFFL;
+            long low = readInt() & 0xFFFFFFFFL;
+            return (high << 32) | low;
+        }
+
+        String readString() {
+            int length = readInt();
+            String ret = new String(buffer, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return ret;
+        }
+
+        /**
+         * Reads over a string, comparing it to the provided bytes without decoding it.
+         */
+        boolean matchString(byte[] bytes) {
+            int length = readInt();
+            boolean ret = length == bytes.length;
+            for (int i = 0; ret && i < length; ++i) {
+                ret = buffer[position + i] == bytes[i];
+            }
+            position += length;
+            return ret;
+        }
+
+        void skip(int length) {
+            position += length;
+        }
+    }
+}
@@ -16,19 +16,24 @@
  */
 package org.hawkular.inventory.impl.tinkerpop;
 
+import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
 import static org.hawkular.inventory.api.Relationships.Direction.incoming;
 import static org.hawkular.inventory.api.Relationships.Direction.outgoing;
 import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.defines;
 import static org.hawkular.inventory.api.Relationships.WellKnown.hasData;
 import static org.hawkular.inventory.impl.tinkerpop.Constants.Type.relationship;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.PipedInputStream;
 import java.io.PipedOutputStream;
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -37,16 +42,20 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Function;
+import java.util.function.Supplier;
 import java.util.stream.StreamSupport;
 
 import org.hawkular.inventory.api.EntityNotFoundException;
 import org.hawkular.inventory.api.Relationships;
-import org.hawkular.inventory.api.filters.RelationFilter;
 import org.hawkular.inventory.api.filters.With;
 import org.hawkular.inventory.api.model.AbstractElement;
 import org.hawkular.inventory.api.model.Blueprint;
 import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.ContentHash;
 import org.hawkular.inventory.api.model.DataEntity;
 import org.hawkular.inventory.api.model.ElementBlueprintVisitor;
 import org.hawkular.inventory.api.model.ElementUpdateVisitor;
@@ -65,6 +74,7 @@ import org.hawkular.inventory.api.model.ResourceType;
 import org.hawkular.inventory.api.model.StructuredData;
 import org.hawkular.inventory.api.model.Tenant;
 import org.hawkular.inventory.api.paging.Page;
+import org.hawkular.inventory.api.paging.PageContext;
 import org.hawkular.inventory.api.paging.Pager;
 import org.hawkular.inventory.base.Query;
 import org.hawkular.inventory.base.spi.CommitFailureException;
@@ -72,12 +82,17 @@ import org.hawkular.inventory.base.spi.ElementNotFoundException;
 import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.hawkular.inventory.base.spi.ShallowStructuredData;
 
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.MappingJsonFactory;
 import com.tinkerpop.blueprints.Direction;
 import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.Vertex;
 import com.tinkerpop.blueprints.util.ElementHelper;
 import com.tinkerpop.blueprints.util.io.graphson.GraphSONMode;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONTokens;
+import com.tinkerpop.blueprints.util.io.graphson.GraphSONUtility;
 import com.tinkerpop.blueprints.util.io.graphson.GraphSONWriter;
 import com.tinkerpop.pipes.PipeFunction;
 
@@ -86,34 +101,144 @@ import com.tinkerpop.pipes.PipeFunction;
  * @since 0.1.0
  */
 final class TinkerpopBackend implements InventoryBackend<Element> {
+    private static final int GRAPHSON_PIPE_SIZE = 64 * 1024;
+    private static final int MAX_CONCURRENT_EXPORTS = 2;
+    private static final JsonFactory GRAPHSON_FACTORY = new MappingJsonFactory();
+
     private final InventoryContext<?> context;
+    private final DefiningTypes definingTypes;
+    private ExecutorService exportExecutor;
 
     public TinkerpopBackend(InventoryContext<?> context) {
         this.context = context;
+        this.definingTypes = new DefiningTypes(context.getTypeCacheSize());
     }
 
     @Override
     public Transaction startTransaction(boolean mutating) {
-        return context.startTransaction(mutating);
+        return startTransaction(mutating, null);
+    }
+
+    @Override
+    public Transaction startTransaction(boolean mutating, String tenantId) {
+        Transaction t = context.startTransaction(mutating, tenantId);
+        if (!context.isJoined(t)) {
+            definingTypes.transactionStarted();
+        }
+        return t;
     }
 
     @Override
     public Element find(CanonicalPath element) throws ElementNotFoundException {
-        HawkularPipeline<?, ? extends Element> q = translate(null, Query.to(element));
-        if (!q.hasNext()) {
+        Element ret = reading(() -> {
+            Iterator<? extends Element> it;
+            if (QueryPlanner.isIndexed(element)) {
+                //the canonical path is stored on each entity and relationship and is uniquely indexed, so we can go
+                //directly to the element without traversing the whole path from the tenant down.
+                it = QueryPlanner.lookup(context.getGraph(), element).iterator();
+            } else {
+                it = translate(null, Query.to(element));
+            }
+
+            return it.hasNext() ? it.next() : null;
+        });
+
+        if (ret == null) {
             throw new ElementNotFoundException();
-        } else {
-            return q.next();
+        }
+
+        return ret;
+    }
+
+    /**
+     * Runs the payload in the transaction active in the current thread or, if there is none, in a short read-only
+     * transaction finished as soon as the payload returns. The results of the payload therefore must not read from
+     * the graph lazily.
+     *
+     * @param payload the code reading from the graph
+     * @param <R>     the type of the result
+     * @return the result of the payload
+     */
+    private <R> R reading(Supplier<R> payload) {
+        if (context.isTransactionActive()) {
+            return payload.get();
+        }
+
+        Transaction t = startTransaction(false);
+        boolean done = false;
+        try {
+            R ret = payload.get();
+            done = true;
+            commit(t);
+            return ret;
+        } finally {
+            if (!done) {
+                rollback(t);
+            }
         }
     }
 
     @Override
     public Page<Element> traverse(Element startingPoint, Query query, Pager pager) {
-        HawkularPipeline<?, ? extends Element> q = translate(startingPoint, query);
+        return reading(() -> {
+            HawkularPipeline<?, ? extends Element> q = translate(startingPoint, query);
+
+            if (pager.getTotalSizeMode() == PageContext.TotalSizeMode.EXACT) {
+                q.counter("total");
+            }
+
+            q.page(pager);
+
+            return toPage(q.cast(Element.class), pager);
+        });
+    }
+
+    /**
+     * Creates the page out of the already paged pipeline according to the total size mode of the pager.
+     *
+     * @param q     the pipeline with the results
+     * @param pager the pager used to page the pipeline
+     * @param <T>   the type of the results
+     * @return the page of the results
+     */
+    private static <T> Page<T> toPage(HawkularPipeline<?, T> q, Pager pager) {
+        if (pager.isKeyset()) {
+            //the keyset paging never holds more than a single page of results, so we can just load them. The
+            //continuation is only known after the pipeline has been iterated.
+            List<T> results = q.toList();
+            long total;
+            switch (pager.getTotalSizeMode()) {
+                case EXACT:
+                    total = q.getCount("total");
+                    break;
+                case ESTIMATED:
+                    total = results.size() + (q.getContinuation() == null ? 0 : 1);
+                    break;
+                default:
+                    total = -1;
+            }
 
-        q.counter("total").page(pager);
+            return new Page<>(results, pager, total, q.getContinuation());
+        }
 
-        return new Page<>(q.cast(Element.class).toList(), pager, q.getCount("total"));
+        switch (pager.getTotalSizeMode()) {
+            case NONE:
+                //the pipeline stops at the end of the page, so this only reads the page. The results cannot be pulled
+                //lazily, because the pages are usually consumed after the transaction they were read in has finished.
+                return new Page<>(q.toList(), pager, -1);
+            case ESTIMATED:
+                List<T> results = q.toList();
+                long total = pager.getStart() + results.size();
+                if (pager.isLimited() && results.size() > pager.getPageSize()) {
+                    //the pipeline returned 1 element past the end of the page, so that we know there are more results
+                    results = results.subList(0, pager.getPageSize());
+                }
+                return new Page<>(results, pager, total);
+            default:
+                //toList() runs the pipeline, so the counter is only available afterwards
+                List<T> all = q.toList();
+                return new Page<>(all, pager, q.getCount("total"));
+        }
     }
 
     @Override
@@ -126,34 +251,36 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
         if (startingPoint != null) {
             q = new HawkularPipeline<>(startingPoint);
-        } else if (query.getFragments()[0].getFilter() instanceof RelationFilter) {
-            q = new HawkularPipeline<>(context.getGraph()).E();
+            FilterApplicator.applyAll(query, q);
         } else {
-            q = new HawkularPipeline<>(context.getGraph()).V();
+            q = QueryPlanner.translate(context.getGraph(), query);
         }
 
-        FilterApplicator.applyAll(query, q);
-
         return q;
     }
 
     @Override
     public <T> Page<T> query(Query query, Pager pager,
             Function<Element, T> conversion, Function<T, Boolean> filter) {
+        return reading(() -> doQuery(query, pager, conversion, filter));
+    }
 
-        HawkularPipeline<?, ? extends Element> q;
+    private <T> Page<T> doQuery(Query query, Pager pager, Function<Element, T> conversion,
+            Function<T, Boolean> filter) {
+        //all the results share the conversions of their types
+        Function<Element, T> convert = definingTypes.scoped(conversion);
 
-        if (query.getFragments()[0].getFilter() instanceof RelationFilter) {
-            q = new HawkularPipeline<>(context.getGraph()).E();
-        } else {
-            q = new HawkularPipeline<>(context.getGraph()).V();
-        }
+        HawkularPipeline<?, ? extends Element> q = QueryPlanner.translate(context.getGraph(), query);
 
-        FilterApplicator.applyAll(query, q);
+        boolean countTotal = pager.getTotalSizeMode() == PageContext.TotalSizeMode.EXACT;
 
-        HawkularPipeline<?, T> q2;
         if (filter == null) {
-            q2 = q.counter("total").page(pager).transform(conversion::apply);
+            if (countTotal) {
+                q.counter("total");
+            }
+            HawkularPipeline<?, T> q2 = q.page(pager).transform(convert::apply);
+
+            return toPage(q2, pager);
         } else {
             //the ResultFilter interface requires an entity to check its applicability and can rule out some of the
             //entities from the result set, which affects the total count. We therefore need to convert to entity first
@@ -162,30 +289,58 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             //to have stable ids, it needs to have the "canonical" path to the entity, which the inventory traversal
             //path might not be. The transformation of a non-canonical to canonical path is essentially identical
             //operation to converting the vertex to the entity.
-            q2 = q.transform(conversion::apply).filter(filter::apply).counter("total")
-                    .page(pager, (e, p) -> {
-                        if (!(e instanceof AbstractElement)) {
-                            return null;
-                        }
+            //The paging is done on the backend elements (using the same sort keys as above), the converted value is
+            //just carried along with them.
+            HawkularPipeline<?, Converted<T>> filtered = q.cast(Element.class)
+                    .transform(e -> new Converted<>(e, convert.apply(e))).filter(c -> filter.apply(c.value));
+            if (countTotal) {
+                filtered.counter("total");
+            }
+            filtered.page(pager, (c, p) -> c.element.getProperty(Constants.Property.mapUserDefined(p)),
+                    c -> c.element.getProperty(Constants.Property.__cp.name()));
 
-                        AbstractElement<?, ?> el = (AbstractElement<?, ?>) e;
+            Page<Converted<T>> page = toPage(filtered, pager);
 
-                        if (AbstractElement.ID_PROPERTY.equals(p)) {
-                            return el.getId();
-                        } else {
-                            return (Comparable) el.getProperties().get(p);
-                        }
-                    });
-        }
+            List<T> values = page.stream().map(c -> c.value).collect(toList());
 
-        return new Page<>(q2.toList(), pager, q.getCount("total"));
+            return new Page<>(values, pager, page.getTotalSize(), page.getContinuation());
+        }
     }
 
     @Override
     public Iterator<Element> getTransitiveClosureOver(Element startingPoint, Relationships.Direction direction,
                                                       String... relationshipNames) {
 
-        return getTransitiveClosureOverImpl(startingPoint, direction, relationshipNames).iterator();
+        //the snapshot is important as it ensures eager evaluation of the closure - the callers might modify the
+        //conditions for the evaluation during the iteration which would skew the results.
+        List<Element> ret = new ArrayList<>();
+        getTransitiveClosureOver(startingPoint, direction, -1, -1, relationshipNames).forEachRemaining(ret::add);
+        return ret.iterator();
+    }
+
+    @Override
+    public Iterator<Element> getTransitiveClosureOver(Element startingPoint, Relationships.Direction direction,
+            int maxDepth, int maxBreadth, String... relationshipNames) {
+        if (!(startingPoint instanceof Vertex)) {
+            return Collections.emptyIterator();
+        }
+
+        Direction d;
+        switch (direction) {
+            case incoming:
+                d = Direction.IN;
+                break;
+            case outgoing:
+                d = Direction.OUT;
+                break;
+            case both:
+                d = Direction.BOTH;
+                break;
+            default:
+                throw new AssertionError("Invalid relationship direction specified: " + direction);
+        }
+
+        return new TransitiveClosure((Vertex) startingPoint, d, maxDepth, maxBreadth, relationshipNames);
     }
 
     @Override
@@ -195,40 +350,26 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                                                                          String... relationshipNames) {
         try {
             Element startingElement = find(startingPoint);
-            if (!(startingElement instanceof Vertex)) {
-                return Collections.<T>emptyList().iterator();
-            }
 
-            return getTransitiveClosureOverImpl(startingElement, direction, relationshipNames).stream()
-                    .map(vertex -> convert(vertex, clazz)).iterator();
-
-        } catch (ElementNotFoundException e) {
-            throw new EntityNotFoundException(clazz, null);
-        }
-    }
+            //the results are converted as they are pulled from the closure, so that the whole closure doesn't need to
+            //be held in memory
+            Iterator<Element> closure = getTransitiveClosureOver(startingElement, direction, -1, -1,
+                    relationshipNames);
 
-    private List<Element> getTransitiveClosureOverImpl(Element startingPoint, Relationships.Direction direction,
-                                                       String... relationshipNames) {
-        if (!(startingPoint instanceof Vertex)) {
-            return Collections.<Element>emptyList();
-        } else {
-            HawkularPipeline<?, Element> ret = new HawkularPipeline<Element, Element>(startingPoint).as("start");
+            return new Iterator<T>() {
+                @Override
+                public boolean hasNext() {
+                    return closure.hasNext();
+                }
 
-            switch (direction) {
-                case incoming:
-                    ret.in(relationshipNames);
-                    break;
-                case outgoing:
-                    ret.out(relationshipNames);
-                    break;
-                case both:
-                    ret.both(relationshipNames);
-                    break;
-            }
+                @Override
+                public T next() {
+                    return convert(closure.next(), clazz);
+                }
+            };
 
-            //toList() is important as it ensures eager evaluation of the closure - the callers might modify the
-            //conditions for the evaluation during the iteration which would skew the results.
-            return ret.loop("start", (x) -> true, (x) -> true).toList();
+        } catch (ElementNotFoundException e) {
+            throw new EntityNotFoundException(clazz, null);
         }
     }
 
@@ -247,6 +388,10 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             return false;
         }
 
+        if (isIndexable(target)) {
+            return findIndexedEdge((Vertex) source, (Vertex) target, relationshipName) != null;
+        }
+
         Iterator<Vertex> targets = ((Vertex) source).getVertices(Direction.OUT, relationshipName).iterator();
 
         while (targets.hasNext()) {
@@ -272,6 +417,14 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
         Vertex t = (Vertex) target;
 
+        if (isIndexable(t)) {
+            Edge indexed = findIndexedEdge((Vertex) source, t, relationshipName);
+            if (indexed == null) {
+                throw new ElementNotFoundException();
+            }
+            return indexed;
+        }
+
         Iterator<Edge> it = new HawkularPipeline<>(source).outE(relationshipName).remember().inV().hasType(getType(t))
                 .hasEid(getEid(t)).recall().cast(Edge.class);
 
@@ -282,6 +435,35 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         }
     }
 
+    /**
+     * @return true if the edges leading to the element have the properties of the element denormalized on them, see
+     * {@link #findIndexedEdge(Vertex, Vertex, String)}
+     */
+    private static boolean isIndexable(Element target) {
+        return target.getProperty(Constants.Property.__type.name()) != null && getEid(target) != null;
+    }
+
+    /**
+     * Looks up the edge using the properties of the target vertex denormalized on the edge. This can use the
+     * vertex-centric index if the graph supports it. All the edges leading to an {@link #isIndexable(Element)
+     * indexable} target have these properties, the older edges get them when the graph is loaded (see
+     * {@link TinkerpopInventory}).
+     */
+    private static Edge findIndexedEdge(Vertex source, Vertex target, String relationshipName) {
+        String type = target.getProperty(Constants.Property.__type.name());
+        String eid = getEid(target);
+
+        for (Edge e : source.query().direction(Direction.OUT).labels(relationshipName)
+                .has(Constants.Property.__targetType.name(), type)
+                .has(Constants.Property.__targetEid.name(), eid).edges()) {
+            if (target.equals(e.getVertex(Direction.IN))) {
+                return e;
+            }
+        }
+
+        return null;
+    }
+
     @Override
     public Set<Element> getRelationships(Element entity, Relationships.Direction direction, String... names) {
         if (!(entity instanceof Vertex)) {
@@ -333,6 +515,8 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
     public Class<?> extractType(Element entityRepresentation) {
         if (entityRepresentation instanceof Edge) {
             return Relationship.class;
+        } else if (entityRepresentation instanceof EmbeddedStructuredData) {
+            return StructuredData.class;
         } else {
             return getType((Vertex) entityRepresentation).getEntityType();
         }
@@ -351,6 +535,12 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public <T> T convert(Element entityRepresentation, Class<T> entityType) {
+        if (entityRepresentation instanceof EmbeddedStructuredData) {
+            boolean shallow = ShallowStructuredData.class.equals(entityType);
+            StructuredData data = ((EmbeddedStructuredData) entityRepresentation).decode(!shallow);
+            return entityType.cast(shallow ? new ShallowStructuredData(data) : data);
+        }
+
         Constants.Type type = Constants.Type.of(extractType(entityRepresentation));
 
         Object e;
@@ -374,7 +564,7 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                 case metric:
                     Vertex mdv = v.getVertices(Direction.IN, Relationships.WellKnown.defines.name()).iterator()
                             .next();
-                    MetricType md = convert(mdv, MetricType.class);
+                    MetricType md = definingTypes.resolve(mdv, MetricType.class, this::convert);
                     e = new Metric(extractCanonicalPath(v), md);
                     break;
                 case metricType:
@@ -385,9 +575,8 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                     break;
                 case resource:
                     Vertex rtv = v.getVertices(Direction.IN, Relationships.WellKnown.defines.name()).iterator().next();
-                    ResourceType rt = convert(rtv, ResourceType.class);
-                    e = new Resource(extractCanonicalPath(v), rt
-                    );
+                    ResourceType rt = definingTypes.resolve(rtv, ResourceType.class, this::convert);
+                    e = new Resource(extractCanonicalPath(v), rt);
                     break;
                 case resourceType:
                     e = new ResourceType(extractCanonicalPath(v));
@@ -409,13 +598,7 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             }
         }
 
-        List<String> mappedProps = Arrays.asList(type.getMappedProperties());
-        Map<String, Object> filteredProperties = new HashMap<>();
-        entityRepresentation.getPropertyKeys().forEach(k -> {
-            if (!mappedProps.contains(k)) {
-                filteredProperties.put(k, entityRepresentation.getProperty(k));
-            }
-        });
+        Map<String, Object> filteredProperties = userProperties(entityRepresentation, type);
 
         if (StructuredData.class.equals(entityType)) {
             return entityType.cast(e);
@@ -515,6 +698,25 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         e.setProperty(Constants.Property.__eid.name(), e.getId().toString());
         e.setProperty(Constants.Property.__cp.name(), CanonicalPath.of().relationship(e.getId().toString()).get()
                 .toString());
+
+        //denormalized so that the edge can be found among its siblings using the vertex-centric index
+        String targetType = targetEntity.getProperty(Constants.Property.__type.name());
+        String targetEid = getEid(targetEntity);
+        if (targetType != null && targetEid != null) {
+            e.setProperty(Constants.Property.__targetType.name(), targetType);
+            e.setProperty(Constants.Property.__targetEid.name(), targetEid);
+        }
+
+        Vertex source = (Vertex) sourceEntity;
+        Vertex target = (Vertex) targetEntity;
+        if (contains.name().equals(name)) {
+            childHashChanged(source, 0, hash(target, Constants.Property.__contentHash));
+        } else if (defines.name().equals(name) && isHashed(target)) {
+            updateOwnHash(target);
+        } else if (hasData.name().equals(name) && isHashed(source)) {
+            updateOwnHash(source);
+        }
+
         return e;
     }
 
@@ -583,6 +785,11 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                     ElementHelper.setProperties(v, properties);
                 }
 
+                //the hashes are only maintained in the feeds, so that they can be synchronized with them
+                if (path.ids().getFeedId() != null) {
+                    setContentHash(v, computeOwnHash(v), 0);
+                }
+
                 return v;
             }
         }, null);
@@ -592,6 +799,15 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
     public Vertex persist(StructuredData structuredData) {
         Vertex thisVertex = context.getGraph().addVertex(null);
 
+        if (context.isStructuredDataAsBlobs()) {
+            thisVertex.setProperty(Constants.Property.__type.name(), Constants.Type.structuredData.name());
+            thisVertex.setProperty(Constants.Property.__structuredDataType.name(),
+                    structuredData.getType().name());
+            thisVertex.setProperty(Constants.Property.__structuredDataBlob.name(),
+                    StructuredDataCodec.encode(structuredData));
+            return thisVertex;
+        }
+
         Pair<Vertex, Vertex> parentAndCurrent = new Pair<>(null, thisVertex);
 
         structuredData.accept(new StructuredData.Visitor.Simple<Void, StructuredData>() {
@@ -704,6 +920,7 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             @Override
             public Void visitMetricType(MetricType.Update definition, Void parameter) {
                 common(definition.getProperties(), MetricType.class);
+                definingTypes.typeModified();
                 if (definition.getUnit() != null) {
                     entity.setProperty(Constants.Property.__unit.name(), definition.getUnit().getDisplayName());
                 }
@@ -719,6 +936,7 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             @Override
             public Void visitResourceType(ResourceType.Update type, Void parameter) {
                 common(type.getProperties(), ResourceType.class);
+                definingTypes.typeModified();
                 return null;
             }
 
@@ -762,11 +980,50 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
                 updateProperties(entity, properties, disallowedProperties);
             }
         }, null);
+
+        if (entity instanceof Vertex && isHashed(entity)) {
+            updateOwnHash((Vertex) entity);
+        }
     }
 
     @Override
     public void delete(Element entity) {
-        entity.remove();
+        Class<?> type = extractType(entity);
+        if (ResourceType.class.equals(type) || MetricType.class.equals(type)) {
+            definingTypes.typeModified();
+        }
+
+        if (entity instanceof Vertex) {
+            Vertex parent = getContainingVertex((Vertex) entity);
+            if (parent != null) {
+                childHashChanged(parent, hash(entity, Constants.Property.__contentHash), 0);
+            }
+            entity.remove();
+        } else {
+            Edge edge = (Edge) entity;
+            Vertex target = edge.getVertex(Direction.IN);
+            boolean updateTarget = defines.name().equals(edge.getLabel()) && isHashed(target);
+
+            entity.remove();
+
+            if (updateTarget) {
+                updateOwnHash(target);
+            }
+        }
+    }
+
+    @Override
+    public Long getContentHash(Element entity) {
+        return entity.getProperty(Constants.Property.__contentHash.name());
+    }
+
+    @Override
+    public void rebuildContentHashes(Element feed) {
+        if (!(feed instanceof Vertex) || getType((Vertex) feed) != Constants.Type.feed) {
+            throw new IllegalArgumentException("The supplied element is not a feed.");
+        }
+
+        rebuildHashes((Vertex) feed);
     }
 
     @Override
@@ -785,21 +1042,157 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
 
     @Override
     public void commit(Transaction t) throws CommitFailureException {
+        //only the outermost of the joined transactions actually finishes the transaction
+        boolean finishing = !context.isJoined(t);
         try {
             context.commit(t);
         } catch (Exception e) {
             throw new CommitFailureException(e);
+        } finally {
+            if (finishing) {
+                definingTypes.transactionFinished();
+            }
         }
     }
 
     @Override
     public void rollback(Transaction t) {
-        context.rollback(t);
+        boolean finishing = !context.isJoined(t);
+        try {
+            context.rollback(t);
+        } finally {
+            if (finishing) {
+                definingTypes.transactionFinished();
+            }
+        }
     }
 
     @Override
     public void close() throws Exception {
-        context.getGraph().shutdown();
+        synchronized (this) {
+            if (exportExecutor != null) {
+                exportExecutor.shutdownNow();
+                exportExecutor = null;
+            }
+        }
+
+        context.shutdown();
+    }
+
+    private static boolean isHashed(Element e) {
+        return e.getProperty(Constants.Property.__ownHash.name()) != null;
+    }
+
+    private static long hash(Element e, Constants.Property hashProperty) {
+        Long hash = e.getProperty(hashProperty.name());
+        return hash == null ? 0 : hash;
+    }
+
+    private static Vertex getContainingVertex(Vertex v) {
+        Iterator<Vertex> it = v.getVertices(Direction.IN, contains.name()).iterator();
+        return it.hasNext() ? it.next() : null;
+    }
+
+    /**
+     * Computes the hash of the own content of the entity the same way as {@link ContentHash#of(Entity)} would, but
+     * without the need to convert the vertex to the entity first.
+     */
+    private long computeOwnHash(Vertex v) {
+        Constants.Type type = getType(v);
+
+        ContentHash.Builder bld = ContentHash.of(type.getEntityType(), getEid(v))
+                .withProperties(userProperties(v, type));
+
+        switch (type) {
+            case metric:
+            case resource:
+                Iterator<Vertex> typeVertices = v.getVertices(Direction.IN, defines.name()).iterator();
+                if (typeVertices.hasNext()) {
+                    bld.withDefiningType(extractCanonicalPath(typeVertices.next()));
+                }
+                break;
+            case metricType:
+                String unit = v.getProperty(Constants.Property.__unit.name());
+                String dataType = v.getProperty(Constants.Property.__metric_data_type.name());
+                bld.withUnit(unit == null ? null : MetricUnit.fromDisplayName(unit))
+                        .withDataType(dataType == null ? null : MetricDataType.fromDisplayName(dataType));
+                break;
+            case dataEntity:
+                bld.withValue(loadStructuredData(v, hasData));
+                break;
+            default:
+                //no additional content
+        }
+
+        return bld.build();
+    }
+
+    /**
+     * Recomputes the hashes of the vertex and everything it contains bottom-up, without relying on the stored hashes.
+     *
+     * @return the new content hash of the vertex
+     */
+    private long rebuildHashes(Vertex v) {
+        long children = 0;
+        for (Vertex child : v.getVertices(Direction.OUT, contains.name())) {
+            children += rebuildHashes(child);
+        }
+
+        long ownHash = computeOwnHash(v);
+        long contentHash = ContentHash.combine(ownHash, children);
+
+        //the parent is recomputed from the returned hash, so this doesn't propagate the change up
+        v.setProperty(Constants.Property.__ownHash.name(), ownHash);
+        v.setProperty(Constants.Property.__childrenHash.name(), children);
+        v.setProperty(Constants.Property.__contentHash.name(), contentHash);
+
+        return contentHash;
+    }
+
+    private void updateOwnHash(Vertex v) {
+        setContentHash(v, computeOwnHash(v), hash(v, Constants.Property.__childrenHash));
+    }
+
+    private static void childHashChanged(Vertex parent, long oldChildHash, long newChildHash) {
+        if (!isHashed(parent)) {
+            //the parent is outside of a feed
+            return;
+        }
+
+        long children = hash(parent, Constants.Property.__childrenHash) - oldChildHash + newChildHash;
+        setContentHash(parent, hash(parent, Constants.Property.__ownHash), children);
+    }
+
+    /**
+     * Sets the hashes of the vertex and propagates the change of its content hash up the containment hierarchy.
+     */
+    private static void setContentHash(Vertex v, long ownHash, long childrenHash) {
+        Long oldHash = v.getProperty(Constants.Property.__contentHash.name());
+        long newHash = ContentHash.combine(ownHash, childrenHash);
+
+        v.setProperty(Constants.Property.__ownHash.name(), ownHash);
+        v.setProperty(Constants.Property.__childrenHash.name(), childrenHash);
+        v.setProperty(Constants.Property.__contentHash.name(), newHash);
+
+        if (oldHash == null || oldHash == newHash) {
+            return;
+        }
+
+        Vertex parent = getContainingVertex(v);
+        if (parent != null) {
+            childHashChanged(parent, oldHash, newHash);
+        }
+    }
+
+    private static Map<String, Object> userProperties(Element e, Constants.Type type) {
+        List<String> mappedProps = Arrays.asList(type.getMappedProperties());
+        Map<String, Object> ret = new HashMap<>();
+        e.getPropertyKeys().forEach(k -> {
+            if (!mappedProps.contains(k)) {
+                ret.put(k, e.getProperty(k));
+            }
+        });
+        return ret;
     }
 
     private StructuredData loadStructuredData(Vertex owner, Relationships.WellKnown owningEdge) {
@@ -812,6 +1205,11 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
     }
 
     private StructuredData loadStructuredData(Vertex root, boolean recurse) {
+        byte[] blob = root.getProperty(Constants.Property.__structuredDataBlob.name());
+        if (blob != null) {
+            return StructuredDataCodec.decode(blob, recurse);
+        }
+
         StructuredData.Type type = StructuredData.Type.valueOf(root.getProperty(
                 Constants.Property.__structuredDataType.name()));
 
@@ -1069,19 +1467,104 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
         return direction == incoming ? Direction.IN : (direction == outgoing ? Direction.OUT : Direction.BOTH);
     }
 
+    /**
+     * The export is streamed from a dedicated thread, so it cannot use the transaction of the caller. The existence
+     * of the tenant is checked in a short read transaction of the caller, while the export itself runs in its own read
+     * transaction on the export thread that lasts until the whole dump is written.
+     */
+    @Override
     public InputStream getGraphSON(String tenantId) {
-        PipedInputStream in = new PipedInputStream();
-        //PartitionGraph pGraph = new PartitionGraph(context.getGraph(), Constants.Property.__eid.name(), tenantId);
-        new Thread(() -> {
-            try (PipedOutputStream out = new PipedOutputStream(in);) {
-                GraphSONWriter.outputGraph(/*pGraph*/context.getGraph(), out, GraphSONMode.NORMAL);
-            } catch (IOException e) {
-                throw new IllegalStateException("Unable to create the GraphSON dump.", e);
+        CanonicalPath tenantPath = CanonicalPath.of().tenant(tenantId).get();
+
+        Transaction check = startTransaction(false, tenantId);
+        try {
+            find(tenantPath);
+        } catch (ElementNotFoundException e) {
+            throw new EntityNotFoundException(Tenant.class, null);
+        } finally {
+            rollback(check);
+        }
+
+        PipedInputStream in = new PipedInputStream(GRAPHSON_PIPE_SIZE);
+        PipedOutputStream out;
+        try {
+            out = new PipedOutputStream(in);
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to create the GraphSON dump.", e);
+        }
+
+        getExportExecutor().execute(() -> {
+            Transaction t = startTransaction(false, tenantId);
+            try (PipedOutputStream o = out) {
+                writeGraphSON((Vertex) find(tenantPath), o);
+            } catch (IOException | ElementNotFoundException e) {
+                //most probably the reader went away or the tenant has been deleted in the meantime, there's nothing
+                //we can do about it
+                Log.LOG.dFailedToWriteGraphSON(tenantId, e);
+            } finally {
+                rollback(t);
             }
-        }).start();
+        });
+
         return in;
     }
 
+    private synchronized ExecutorService getExportExecutor() {
+        if (exportExecutor == null) {
+            AtomicInteger threadNumber = new AtomicInteger();
+            exportExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_EXPORTS, (r) -> {
+                Thread t = new Thread(r, "Hawkular Inventory GraphSON Export " + threadNumber.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+
+        return exportExecutor;
+    }
+
+    /**
+     * Writes the subgraph of the tenant in the same format as {@link GraphSONWriter} would. Only the vertices reachable
+     * from the tenant over the {@code contains} and {@code hasData} edges and the edges between them are written.
+     * The elements are written one by one as they are traversed, so only the ids of the visited vertices are kept in
+     * memory.
+     */
+    private void writeGraphSON(Vertex tenant, OutputStream out) throws IOException {
+        JsonGenerator gen = GRAPHSON_FACTORY.createGenerator(out);
+
+        gen.writeStartObject();
+        gen.writeStringField(GraphSONTokens.MODE, GraphSONMode.NORMAL.toString());
+
+        gen.writeArrayFieldStart(GraphSONTokens.VERTICES);
+        Set<Object> visited = new HashSet<>();
+        ArrayDeque<Vertex> toVisit = new ArrayDeque<>();
+        toVisit.add(tenant);
+        visited.add(tenant.getId());
+        while (!toVisit.isEmpty()) {
+            Vertex v = toVisit.poll();
+            gen.writeTree(GraphSONUtility.jsonFromElement(v, null, GraphSONMode.NORMAL));
+
+            for (Vertex c : v.getVertices(Direction.OUT, contains.name(), hasData.name())) {
+                if (visited.add(c.getId())) {
+                    toVisit.add(c);
+                }
+            }
+        }
+        gen.writeEndArray();
+
+        gen.writeArrayFieldStart(GraphSONTokens.EDGES);
+        for (Object id : visited) {
+            for (Edge e : context.getGraph().getVertex(id).getEdges(Direction.OUT)) {
+                if (visited.contains(e.getVertex(Direction.IN).getId())) {
+                    gen.writeTree(GraphSONUtility.jsonFromElement(e, null, GraphSONMode.NORMAL));
+                }
+            }
+        }
+        gen.writeEndArray();
+
+        gen.writeEndObject();
+        gen.flush();
+    }
+
     private static final class Pair<F, S> {
         public F first;
         public S second;
@@ -1091,4 +1574,14 @@ final class TinkerpopBackend implements InventoryBackend<Element> {
             this.second = second;
         }
     }
+
+    private static final class Converted<T> {
+        final Element element;
+        final T value;
+
+        Converted(Element element, T value) {
+            this.element = element;
+            this.value = value;
+        }
+    }
 }
@@ -16,6 +16,12 @@
  */
 package org.hawkular.inventory.impl.tinkerpop;
 
+import static org.hawkular.inventory.api.Relationships.WellKnown.contains;
+import static org.hawkular.inventory.api.Relationships.WellKnown.defines;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.ServiceLoader;
 
 import org.hawkular.inventory.api.Configuration;
@@ -24,6 +30,8 @@ import org.hawkular.inventory.base.spi.InventoryBackend;
 import org.hawkular.inventory.impl.tinkerpop.spi.GraphProvider;
 import org.hawkular.inventory.impl.tinkerpop.spi.IndexSpec;
 
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Edge;
 import com.tinkerpop.blueprints.Element;
 import com.tinkerpop.blueprints.TransactionalGraph;
 import com.tinkerpop.blueprints.Vertex;
@@ -33,10 +41,34 @@ import com.tinkerpop.blueprints.Vertex;
  * @since 0.1.0
  */
 public final class TinkerpopInventory extends BaseInventory<Element> {
+    /**
+     * The version of the layout of the data in the graph. Version 1 has the {@link Constants.Property#__targetType}
+     * and {@link Constants.Property#__targetEid} on all the edges.
+     */
+    private static final int DATA_VERSION = 1;
+
     public static final Configuration.Property GRAPH_PROVIDER_IMPL_CLASS = Configuration.Property.builder()
             .withPropertyNameAndSystemProperty("hawkular.inventory.tinkerpop.graph-provider-impl")
             .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERPOP_GRAPH_PROVIDER_IMPL").build();
 
+    /**
+     * How to store the structured data of the data entities. Either "vertices" (the default) to store each value in
+     * its own vertex or "blob" to store the whole structured data in a single binary property of one vertex. The data
+     * stored in either way can be read regardless of the current value of this property.
+     */
+    public static final Configuration.Property STRUCTURED_DATA_STORAGE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.tinkerpop.structured-data-storage")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERPOP_STRUCTURED_DATA_STORAGE").build();
+
+    /**
+     * The maximum number of resource types and metric types kept converted across the queries, so that the resources
+     * and metrics of the same type don't need to load and convert it again. Defaults to 0, in which case the types
+     * are only shared within a single query.
+     */
+    public static final Configuration.Property TYPE_CACHE_SIZE = Configuration.Property.builder()
+            .withPropertyNameAndSystemProperty("hawkular.inventory.tinkerpop.type-cache.size")
+            .withEnvironmentVariables("HAWKULAR_INVENTORY_TINKERPOP_TYPE_CACHE_SIZE").build();
+
     @Override
     protected InventoryBackend<Element> doInitialize(Configuration configuration) {
         InventoryContext<?> context = loadGraph(configuration);
@@ -51,7 +83,13 @@ public final class TinkerpopInventory extends BaseInventory<Element> {
 
         T g = ensureIndices(gp, configuration);
 
-        return new InventoryContext<>(this, g, gp);
+        migrate(gp, g);
+
+        boolean blobs = "blob".equalsIgnoreCase(configuration.getProperty(STRUCTURED_DATA_STORAGE, "vertices"));
+
+        int typeCacheSize = Integer.parseInt(configuration.getProperty(TYPE_CACHE_SIZE, "0"));
+
+        return new InventoryContext<>(this, g, gp, blobs, typeCacheSize);
     }
 
     private <T extends TransactionalGraph> T ensureIndices(GraphProvider<T> graphProvider, Configuration config) {
@@ -64,15 +102,89 @@ public final class TinkerpopInventory extends BaseInventory<Element> {
                         .withProperty(Constants.Property.__eid.name(), String.class).build(),
                 IndexSpec.builder()
                         .withElementType(Vertex.class)
-                        .withProperty(Constants.Property.__type.name(), String.class).build());
+                        .withProperty(Constants.Property.__type.name(), String.class).build(),
+                IndexSpec.builder()
+                        .withElementType(Vertex.class)
+                        .withProperty(Constants.Property.__cp.name(), String.class)
+                        .withUnique(true).build(),
+                IndexSpec.builder()
+                        .withElementType(Edge.class)
+                        .withProperty(Constants.Property.__cp.name(), String.class)
+                        .withUnique(true).build(),
                 IndexSpec.builder()
                         .withElementType(Vertex.class)
                         .withProperty(Constants.Property.__type.name(), String.class)
-                        .withProperty(Constants.Property.__metric_data_type.name(), String.class).build();
+                        .withProperty(Constants.Property.__metric_data_type.name(), String.class).build(),
+                IndexSpec.builder()
+                        .withElementType(Edge.class)
+                        .withProperty(Constants.Property.__eid.name(), String.class).build(),
+                //the vertex-centric indices to find a single child or a single defined entity among many siblings
+                IndexSpec.builder()
+                        .withEdgeLabel(contains.name(), Direction.OUT)
+                        .withProperty(Constants.Property.__targetType.name(), String.class)
+                        .withProperty(Constants.Property.__targetEid.name(), String.class).build(),
+                IndexSpec.builder()
+                        .withEdgeLabel(defines.name(), Direction.OUT)
+                        .withProperty(Constants.Property.__targetType.name(), String.class)
+                        .withProperty(Constants.Property.__targetEid.name(), String.class).build());
+
+        //the content hashes are updated by adding the change of the hash of a child to the hash of its parent, so
+        //two concurrent updates of the children of the same parent must not overwrite each other
+        Map<String, Class<?>> hashes = new LinkedHashMap<>();
+        hashes.put(Constants.Property.__ownHash.name(), Long.class);
+        hashes.put(Constants.Property.__childrenHash.name(), Long.class);
+        hashes.put(Constants.Property.__contentHash.name(), Long.class);
+        graphProvider.ensureConsistentProperties(graph, hashes);
 
         return graph;
     }
 
+    /**
+     * Brings the data in the graph up to the {@link #DATA_VERSION current version} of the layout. This only runs once
+     * for each graph, the version of its data is stored on its metadata vertex.
+     */
+    private static <T extends TransactionalGraph> void migrate(GraphProvider<T> graphProvider, T graph) {
+        InventoryBackend.Transaction t = graphProvider.startTransaction(graph, true);
+        try {
+            TransactionalGraph g = graphProvider.getTransactionGraph(graph, t);
+
+            Iterator<Vertex> it = g.getVertices(Constants.Property.__type.name(), Constants.METADATA_TYPE).iterator();
+            Vertex metadata = it.hasNext() ? it.next() : null;
+            Integer version = metadata == null ? null : metadata.getProperty(Constants.Property.__dataVersion.name());
+
+            if (version != null && version >= DATA_VERSION) {
+                graphProvider.commit(graph, t);
+                return;
+            }
+
+            //the edges created before the vertex-centric indices were introduced
+            for (Edge e : g.getEdges()) {
+                if (e.getProperty(Constants.Property.__targetType.name()) != null) {
+                    continue;
+                }
+
+                Vertex target = e.getVertex(Direction.IN);
+                String targetType = target.getProperty(Constants.Property.__type.name());
+                String targetEid = target.getProperty(Constants.Property.__eid.name());
+                if (targetType != null && targetEid != null) {
+                    e.setProperty(Constants.Property.__targetType.name(), targetType);
+                    e.setProperty(Constants.Property.__targetEid.name(), targetEid);
+                }
+            }
+
+            if (metadata == null) {
+                metadata = g.addVertex(null);
+                metadata.setProperty(Constants.Property.__type.name(), Constants.METADATA_TYPE);
+            }
+            metadata.setProperty(Constants.Property.__dataVersion.name(), DATA_VERSION);
+
+            graphProvider.commit(graph, t);
+        } catch (RuntimeException e) {
+            graphProvider.rollback(graph, t);
+            throw e;
+        }
+    }
+
     private GraphProvider<?> instantiateGraphProvider(Configuration config) {
         String implClass = config.getProperty(GRAPH_PROVIDER_IMPL_CLASS, null);
         if (implClass != null) {
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.tinkerpop.blueprints.Direction;
+import com.tinkerpop.blueprints.Element;
+import com.tinkerpop.blueprints.Vertex;
+
+/**
+ * Lazily evaluates the transitive closure of a vertex over the edges with given labels.
+ *
+ * <p>The graph is traversed breadth-first and each vertex is only reported once, even if it is reachable by several
+ * paths (or from itself). The starting vertex itself is not part of the closure.
+ *
+ * <p>Only the vertices of the current and the next level of the traversal are held in memory, but the ids of all the
+ * vertices visited so far need to be remembered to report each vertex once, so the memory needed is still
+ * proportional to the size of the closure. The {@code long} ids of Titan are kept unboxed in the {@link VisitedSet},
+ * other ids (e.g. the string ids of TinkerGraph) are kept in an ordinary hash set.
+ *
+ * <p>Note that the closure is evaluated during the iteration, so the callers that modify the graph while iterating
+ * need to copy the results first.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class TransitiveClosure implements Iterator<Element> {
+    private final Direction direction;
+    private final int maxDepth;
+    private final int maxBreadth;
+    private final String[] labels;
+    private final VisitedSet visited = new VisitedSet();
+
+    private ArrayDeque<Vertex> currentLevel = new ArrayDeque<>();
+    private ArrayDeque<Vertex> nextLevel = new ArrayDeque<>();
+    private int depth = 1;
+    private int levelSize;
+    private Iterator<Vertex> neighbors;
+    private Vertex next;
+
+    /**
+     * @param start      the starting vertex
+     * @param direction  the direction of the edges to follow
+     * @param maxDepth   the maximum distance of the reported vertices from the start, -1 for unlimited
+     * @param maxBreadth the maximum number of vertices reported on each level (i.e. at the same distance from the
+     *                   start), -1 for unlimited
+     * @param labels     the labels of the edges to follow
+     */
+    TransitiveClosure(Vertex start, Direction direction, int maxDepth, int maxBreadth, String... labels) {
+        this.direction = direction;
+        this.maxDepth = maxDepth;
+        this.maxBreadth = maxBreadth;
+        this.labels = labels;
+
+        visited.add(start.getId());
+        if (maxDepth != 0) {
+            currentLevel.add(start);
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (next == null) {
+            next = advance();
+        }
+
+        return next != null;
+    }
+
+    @Override
+    public Element next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+
+        Vertex ret = next;
+        next = null;
+        return ret;
+    }
+
+    private Vertex advance() {
+        while (true) {
+            if (neighbors != null) {
+                while (neighbors.hasNext() && (maxBreadth < 0 || levelSize < maxBreadth)) {
+                    Vertex v = neighbors.next();
+                    if (visited.add(v.getId())) {
+                        levelSize++;
+                        if (maxDepth < 0 || depth < maxDepth) {
+                            nextLevel.add(v);
+                        }
+                        return v;
+                    }
+                }
+
+                neighbors = null;
+            }
+
+            Vertex expanded = maxBreadth >= 0 && levelSize >= maxBreadth ? null : currentLevel.poll();
+
+            if (expanded == null) {
+                if (nextLevel.isEmpty()) {
+                    currentLevel.clear();
+                    return null;
+                }
+
+                ArrayDeque<Vertex> tmp = currentLevel;
+                tmp.clear();
+                currentLevel = nextLevel;
+                nextLevel = tmp;
+                depth++;
+                levelSize = 0;
+            } else {
+                neighbors = expanded.getVertices(direction, labels).iterator();
+            }
+        }
+    }
+}
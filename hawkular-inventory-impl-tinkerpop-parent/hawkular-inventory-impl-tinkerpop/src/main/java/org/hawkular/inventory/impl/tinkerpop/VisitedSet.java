@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A set of the ids of the visited elements. The {@code long} ids (as used by Titan) are kept in an open-addressing
+ * hash table of primitives so that large traversals don't need to box and wrap each of them. Other ids are kept in an
+ * ordinary hash set.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+final class VisitedSet {
+    private static final long FREE = 0;
+
+    private long[] table = new long[64];
+    private int size;
+    private boolean containsFree;
+    private Set<Object> others;
+
+    /**
+     * @param id the id to add
+     * @return true if the id was not in the set yet, false otherwise
+     */
+    boolean add(Object id) {
+        if (id instanceof Long) {
+            return add((long) (Long) id);
+        } else {
+            if (others == null) {
+                others = new HashSet<>();
+            }
+            return others.add(id);
+        }
+    }
+
+    private boolean add(long id) {
+        if (id == FREE) {
+            boolean ret = !containsFree;
+            containsFree = true;
+            return ret;
+        }
+
+        int mask = table.length - 1;
+        int idx = mix(id) & mask;
+        while (table[idx] != FREE) {
+            if (table[idx] == id) {
+                return false;
+            }
+            idx = (idx + 1) & mask;
+        }
+
+        table[idx] = id;
+        if (++size * 2 > table.length) {
+            rehash();
+        }
+
+        return true;
+    }
+
+    private void rehash() {
+        long[] old = table;
+        table = new long[old.length * 2];
+        int mask = table.length - 1;
+
+        for (long id : old) {
+            if (id != FREE) {
+                int idx = mix(id) & mask;
+                while (table[idx] != FREE) {
+                    idx = (idx + 1) & mask;
+                }
+                table[idx] = id;
+            }
+        }
+    }
+
+    private static int mix(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Test;
+
+import com.tinkerpop.blueprints.Vertex;
+import com.tinkerpop.blueprints.impls.tg.TinkerGraph;
+
+/**
+ * @author agent
+ * @since 0.2.1
+ */
+public class DefiningTypesTest {
+
+    private final DefiningTypes types = new DefiningTypes(10);
+    private final Vertex type = new TinkerGraph().addVertex(null);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+
+    @After
+    public void shutdown() {
+        writer.shutdownNow();
+    }
+
+    @Test
+    public void testReaderWithOldSnapshotDoesNotCacheStaleType() throws Exception {
+        types.transactionStarted();
+
+        //the type is changed by another thread after the reader's transaction started
+        writer.submit(() -> {
+            types.transactionStarted();
+            types.typeModified();
+            types.transactionFinished();
+        }).get();
+
+        //the reader still sees its old snapshot
+        assertEquals("old", types.resolve(type, String.class, (v, t) -> "old"));
+        types.transactionFinished();
+
+        types.transactionStarted();
+        try {
+            assertEquals("new", types.resolve(type, String.class, (v, t) -> "new"));
+        } finally {
+            types.transactionFinished();
+        }
+    }
+
+    @Test
+    public void testTypeCachedAcrossTransactions() throws Exception {
+        types.transactionStarted();
+        assertEquals("first", types.resolve(type, String.class, (v, t) -> "first"));
+        types.transactionFinished();
+
+        writer.submit(() -> {
+            types.transactionStarted();
+            try {
+                assertEquals("first", types.resolve(type, String.class, (v, t) -> "second"));
+            } finally {
+                types.transactionFinished();
+            }
+        }).get();
+    }
+
+    @Test
+    public void testNestedTransactionDoesNotFinishOuter() throws Exception {
+        types.transactionStarted();
+        types.transactionStarted();
+        types.typeModified();
+        types.transactionFinished();
+
+        //the outer transaction started before the modification, so it must not cache what it reads
+        assertEquals("old", types.resolve(type, String.class, (v, t) -> "old"));
+        types.transactionFinished();
+
+        writer.submit(() -> {
+            types.transactionStarted();
+            try {
+                assertEquals("new", types.resolve(type, String.class, (v, t) -> "new"));
+            } finally {
+                types.transactionFinished();
+            }
+        }).get();
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.impl.tinkerpop.test;
+
+import java.util.Properties;
+
+/**
+ * Runs the persistence checks with the TinkerGraph transactions working on snapshots of the graph instead of locking
+ * it.
+ *
+ * @author agent
+ * @since 0.2.1
+ */
+public class TinkerpopSnapshotTransactionsTest extends TinkerpopTest {
+    @Override
+    protected void configure(Properties configuration) {
+        configuration.setProperty("hawkular.inventory.tinkergraph.transactions", "snapshot");
+    }
+}
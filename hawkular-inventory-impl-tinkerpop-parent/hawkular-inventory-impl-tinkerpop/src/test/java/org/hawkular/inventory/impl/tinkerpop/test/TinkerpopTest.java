@@ -42,8 +42,10 @@ public class TinkerpopTest extends AbstractBaseInventoryPersistenceCheck<Element
 
     @Override
     protected void destroyStorage() throws IOException {
-        Path path = Paths.get("target", "__tinker.graph");
+        deleteRecursively(Paths.get("target", "__tinker.graph"));
+    }
 
+    protected static void deleteRecursively(Path path) throws IOException {
         if (!path.toFile().exists()) {
             return;
         }
@@ -18,15 +18,20 @@ package org.hawkular.inventory.rest;
 
 import java.io.InputStream;
 import java.util.Iterator;
+import java.util.List;
 
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Produces;
 import javax.inject.Inject;
 
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.Change;
 import org.hawkular.inventory.api.Configuration;
+import org.hawkular.inventory.api.DeleteJob;
 import org.hawkular.inventory.api.EmptyInventory;
 import org.hawkular.inventory.api.EntityAlreadyExistsException;
 import org.hawkular.inventory.api.EntityNotFoundException;
+import org.hawkular.inventory.api.FeedSync;
 import org.hawkular.inventory.api.Interest;
 import org.hawkular.inventory.api.Inventory;
 import org.hawkular.inventory.api.Relationships;
@@ -111,6 +116,36 @@ public class AutoTenantInventoryProducer {
                 return inventory.observable(interest);
             }
 
+            @Override
+            public BulkCreate.Result createBulk(BulkCreate bulk) {
+                return inventory.createBulk(bulk);
+            }
+
+            @Override
+            public FeedSync.Result synchronize(CanonicalPath feed, FeedSync sync) {
+                return inventory.synchronize(feed, sync);
+            }
+
+            @Override
+            public void rebuildContentHashes(CanonicalPath feed) {
+                inventory.rebuildContentHashes(feed);
+            }
+
+            @Override
+            public DeleteJob deleteAsync(CanonicalPath path) {
+                return inventory.deleteAsync(path);
+            }
+
+            @Override
+            public DeleteJob getDeleteJob(String id) {
+                return inventory.getDeleteJob(id);
+            }
+
+            @Override
+            public List<Change> getChanges(String tenantId, long since, int limit) {
+                return inventory.getChanges(tenantId, since, limit);
+            }
+
             @Override
             public InputStream getGraphSON(String tenantId) {
                 return inventory.getGraphSON(tenantId);
@@ -42,6 +42,7 @@ public class RequestUtil {
         String perPageS = params.getFirst("per_page");
         List<String> sort = params.get("sort");
         List<String> order = params.get("order");
+        String totalS = params.getFirst("total");
 
         int page = pageS == null ? 0 : Integer.parseInt(pageS);
         int perPage = perPageS == null ? PageContext.UNLIMITED_PAGE_SIZE : Integer.parseInt(perPageS);
@@ -62,6 +63,32 @@ public class RequestUtil {
             }
         }
 
-        return new Pager(page, perPage, ordering);
+        if (params.containsKey("cursor")) {
+            //keyset paging - the page number is ignored, the position is given by the cursor obtained from the
+            //"next" link of the previous page (or empty for the first page)
+            String cursor = params.getFirst("cursor");
+            return new Pager(0, perPage, totalS == null ? PageContext.TotalSizeMode.NONE
+                    : extractTotalSizeMode(totalS), cursor == null ? "" : cursor, ordering);
+        }
+
+        return new Pager(page, perPage, extractTotalSizeMode(totalS), ordering);
+    }
+
+    private static PageContext.TotalSizeMode extractTotalSizeMode(String total) {
+        if (total == null) {
+            return PageContext.TotalSizeMode.EXACT;
+        }
+
+        switch (total) {
+            case "exact":
+                return PageContext.TotalSizeMode.EXACT;
+            case "estimated":
+                return PageContext.TotalSizeMode.ESTIMATED;
+            case "none":
+                return PageContext.TotalSizeMode.NONE;
+            default:
+                throw new IllegalArgumentException("Unknown total size mode: '" + total + "'. Valid values are" +
+                        " 'exact', 'estimated' and 'none'.");
+        }
     }
 }
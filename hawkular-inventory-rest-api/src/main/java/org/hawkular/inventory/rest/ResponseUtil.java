@@ -64,7 +64,11 @@ final class ResponseUtil {
     /**
      * Create the paging headers for collections and attach them to the passed builder. Those are represented as
      * <i>Link:</i> http headers that carry the URL for the pages and the respective relation.
-     * <br/>In addition a <i>X-Total-Count</i> header is created that contains the whole collection size.
+     * <br/>In addition a <i>X-Total-Count</i> header is created that contains the whole collection size, unless the
+     * caller opted out of computing the total size (see {@link PageContext.TotalSizeMode}). If the total size is only
+     * estimated, the header contains the estimate and no link to the last page is provided.
+     * <br/>If the keyset paging was requested (using the <i>cursor</i> query parameter), only the link to the next page
+     * is provided, which carries the cursor to continue from.
      *
      * @param builder    The ResponseBuilder that receives the headers
      * @param uriInfo    The uriInfo of the incoming request to build the urls
@@ -80,7 +84,28 @@ final class ResponseUtil {
 
         List<Link> links = new ArrayList<>();
 
-        if (pc.isLimited() && resultList.getTotalSize() > (pc.getPageNumber() + 1) * pc.getPageSize()) {
+        if (pc.isKeyset()) {
+            //with keyset paging, we can only move forward, using the continuation of the current page
+            if (resultList.getContinuation() != null) {
+                uriBuilder = uriInfo.getRequestUriBuilder(); // adds ?q, ?per_page, ?cursor, etc. if needed
+                uriBuilder.replaceQueryParam("page");
+                uriBuilder.replaceQueryParam("cursor", resultList.getContinuation());
+                links.add(new Link("next", uriBuilder.build().toString()));
+            }
+
+            addLinks(builder, uriInfo, links, pc, resultList);
+            return;
+        }
+
+        boolean hasNext;
+        if (pc.getTotalSizeMode() == PageContext.TotalSizeMode.NONE) {
+            //we don't know the total, so we can only guess that there might be more if this page is full
+            hasNext = pc.isLimited() && resultList.size() == pc.getPageSize();
+        } else {
+            hasNext = pc.isLimited() && resultList.getTotalSize() > (pc.getPageNumber() + 1) * pc.getPageSize();
+        }
+
+        if (hasNext) {
             int nextPage = page + 1;
             uriBuilder = uriInfo.getRequestUriBuilder(); // adds ?q, ?per_page, ?page, etc. if needed
             uriBuilder.replaceQueryParam("page", nextPage);
@@ -96,7 +121,7 @@ final class ResponseUtil {
         }
 
         // A link to the last page
-        if (pc.isLimited()) {
+        if (pc.isLimited() && pc.getTotalSizeMode() == PageContext.TotalSizeMode.EXACT) {
             long lastPage = resultList.getTotalSize() / pc.getPageSize();
             if (resultList.getTotalSize() % pc.getPageSize() == 0) {
                 lastPage -= 1;
@@ -107,8 +132,13 @@ final class ResponseUtil {
             links.add(new Link("last", uriBuilder.build().toString()));
         }
 
+        addLinks(builder, uriInfo, links, pc, resultList);
+    }
+
+    private static void addLinks(Response.ResponseBuilder builder, UriInfo uriInfo, List<Link> links,
+            PageContext pc, Page<?> resultList) {
         // A link to the current page
-        uriBuilder = uriInfo.getRequestUriBuilder(); // adds ?q, ?per_page, ?page, etc. if needed
+        UriBuilder uriBuilder = uriInfo.getRequestUriBuilder(); // adds ?q, ?per_page, ?page, etc. if needed
 
         StringBuilder linkHeader = new StringBuilder(new Link("current", uriBuilder.build().toString())
                 .rfc5988String());
@@ -120,6 +150,8 @@ final class ResponseUtil {
         builder.header("Link", linkHeader.toString());
 
         // Create a total size header
-        builder.header("X-Total-Count", resultList.getTotalSize());
+        if (pc.getTotalSizeMode() != PageContext.TotalSizeMode.NONE) {
+            builder.header("X-Total-Count", resultList.getTotalSize());
+        }
     }
 }
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.rest;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
+import static javax.ws.rs.core.Response.Status.BAD_REQUEST;
+import static javax.ws.rs.core.Response.Status.CONFLICT;
+import static javax.ws.rs.core.Response.Status.CREATED;
+import static javax.ws.rs.core.Response.Status.FORBIDDEN;
+import static javax.ws.rs.core.Response.Status.INTERNAL_SERVER_ERROR;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.POST;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.ext.Providers;
+
+import org.hawkular.inventory.api.BulkCreate;
+import org.hawkular.inventory.api.EntityAlreadyExistsException;
+import org.hawkular.inventory.api.EntityNotFoundException;
+import org.hawkular.inventory.api.model.AbstractElement;
+import org.hawkular.inventory.api.model.Blueprint;
+import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.Entity;
+import org.hawkular.inventory.api.model.Environment;
+import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.Relationship;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
+import org.hawkular.inventory.rest.json.ApiError;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiParam;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+
+/**
+ * @author agent
+ * @since 0.2.1
+ */
+@Path("/bulk")
+@Produces(APPLICATION_JSON)
+@Consumes(APPLICATION_JSON)
+@Api(value = "/bulk", description = "Creation of many entities and relationships at once.")
+public class RestBulk extends RestBase {
+
+    private static final Map<String, Class<? extends AbstractElement<?, ?>>> ELEMENT_TYPES = new HashMap<>();
+    private static final Map<Class<?>, Class<? extends Blueprint>> BLUEPRINT_TYPES = new HashMap<>();
+
+    static {
+        ELEMENT_TYPES.put("environment", Environment.class);
+        ELEMENT_TYPES.put("feed", Feed.class);
+        ELEMENT_TYPES.put("resourceType", ResourceType.class);
+        ELEMENT_TYPES.put("metricType", MetricType.class);
+        ELEMENT_TYPES.put("resource", Resource.class);
+        ELEMENT_TYPES.put("metric", Metric.class);
+        ELEMENT_TYPES.put("relationship", Relationship.class);
+
+        BLUEPRINT_TYPES.put(Environment.class, Environment.Blueprint.class);
+        BLUEPRINT_TYPES.put(Feed.class, Feed.Blueprint.class);
+        BLUEPRINT_TYPES.put(ResourceType.class, ResourceType.Blueprint.class);
+        BLUEPRINT_TYPES.put(MetricType.class, MetricType.Blueprint.class);
+        BLUEPRINT_TYPES.put(Resource.class, Resource.Blueprint.class);
+        BLUEPRINT_TYPES.put(Metric.class, Metric.Blueprint.class);
+        BLUEPRINT_TYPES.put(Relationship.class, Relationship.Blueprint.class);
+    }
+
+    @Context
+    private Providers providers;
+
+    @POST
+    @Path("/")
+    @ApiOperation("Creates many entities and relationships at once. The body is a map keyed by the canonical paths" +
+            " of the parents (relative to the tenant) of the new entities (or the origins of the new relationships)." +
+            " The values are maps keyed by the type of the new element ('environment', 'feed', 'resourceType'," +
+            " 'metricType', 'resource', 'metric' or 'relationship') with the lists of the blueprints as values. The" +
+            " response contains the status of the creation of each of the blueprints.")
+    @ApiResponses({
+            @ApiResponse(code = 201, message = "All the entities and relationships created"),
+            @ApiResponse(code = 207, message = "Some of the entities or relationships could not be created. See the" +
+                    " statuses in the response body."),
+            @ApiResponse(code = 400, message = "Invalid inputs", response = ApiError.class),
+            @ApiResponse(code = 401, message = "Unauthorized access"),
+            @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
+    })
+    public Response create(@ApiParam(required = true) Map<String, Map<String, List<Object>>> entities) {
+        if (entities == null) {
+            throw new IllegalArgumentException("entities to create not specified");
+        }
+
+        String tenantId = getTenantId();
+        CanonicalPath tenant = CanonicalPath.of().tenant(tenantId).get();
+
+        //make sure the tenant exists
+        inventory.tenants().get(tenantId);
+
+        ObjectMapper mapper = providers.getContextResolver(ObjectMapper.class, APPLICATION_JSON_TYPE)
+                .getContext(ObjectMapper.class);
+
+        List<Map<String, Object>> statuses = new ArrayList<>();
+        BulkCreate.Builder bulk = BulkCreate.builder();
+
+        for (Map.Entry<String, Map<String, List<Object>>> e : entities.entrySet()) {
+            CanonicalPath parent = CanonicalPath.fromPartiallyUntypedString(e.getKey(), tenant, Entity.class);
+
+            if (!tenantId.equals(parent.ids().getTenantId())) {
+                throw new IllegalArgumentException("Cannot create entities in a different tenant: " + e.getKey());
+            }
+
+            for (Map.Entry<String, List<Object>> be : e.getValue().entrySet()) {
+                Class<? extends AbstractElement<?, ?>> elementType = ELEMENT_TYPES.get(be.getKey());
+                if (elementType == null) {
+                    throw new IllegalArgumentException("Unsupported element type: '" + be.getKey() + "'. Valid" +
+                            " types are: " + ELEMENT_TYPES.keySet());
+                }
+
+                boolean allowed = Relationship.class.equals(elementType) ? security.canAssociateFrom(parent)
+                        : security.canCreate(elementType).under(parent);
+
+                for (Object json : be.getValue()) {
+                    Blueprint blueprint = mapper.convertValue(json, BLUEPRINT_TYPES.get(elementType));
+
+                    if (allowed) {
+                        bulk.create(parent, blueprint);
+                    } else {
+                        statuses.add(status(parent, be.getKey(), null, FORBIDDEN, null));
+                    }
+                }
+            }
+        }
+
+        BulkCreate.Result result = inventory.createBulk(bulk.build());
+
+        boolean allCreated = statuses.isEmpty();
+
+        for (BulkCreate.Entry e : result.getEntries()) {
+            String type = typeName(e.getBlueprint());
+            if (e.isSuccess()) {
+                statuses.add(status(e.getParent(), type, e.getElement().getPath(), CREATED, null));
+            } else {
+                allCreated = false;
+                statuses.add(status(e.getParent(), type, null, statusOf(e.getError()), e.getError().getMessage()));
+            }
+        }
+
+        return Response.status(allCreated ? CREATED.getStatusCode() : 207).entity(statuses).build();
+    }
+
+    private static Map<String, Object> status(CanonicalPath parent, String type, CanonicalPath path,
+            Response.Status status, String error) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("parent", parent.toString());
+        ret.put("type", type);
+        if (path != null) {
+            ret.put("path", path.toString());
+        }
+        ret.put("status", status.getStatusCode());
+        if (error != null) {
+            ret.put("error", error);
+        }
+        return ret;
+    }
+
+    private static String typeName(Blueprint blueprint) {
+        for (Map.Entry<Class<?>, Class<? extends Blueprint>> e : BLUEPRINT_TYPES.entrySet()) {
+            if (e.getValue().isInstance(blueprint)) {
+                for (Map.Entry<String, Class<? extends AbstractElement<?, ?>>> t : ELEMENT_TYPES.entrySet()) {
+                    if (t.getValue().equals(e.getKey())) {
+                        return t.getKey();
+                    }
+                }
+            }
+        }
+
+        return null;
+    }
+
+    private static Response.Status statusOf(RuntimeException error) {
+        if (error instanceof EntityAlreadyExistsException) {
+            return CONFLICT;
+        } else if (error instanceof EntityNotFoundException) {
+            return NOT_FOUND;
+        } else if (error instanceof IllegalArgumentException) {
+            return BAD_REQUEST;
+        } else {
+            return INTERNAL_SERVER_ERROR;
+        }
+    }
+}
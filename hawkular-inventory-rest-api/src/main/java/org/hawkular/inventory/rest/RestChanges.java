@@ -0,0 +1,91 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.rest;
+
+import static java.util.stream.Collectors.toList;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.DefaultValue;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Response;
+
+import org.hawkular.inventory.api.Change;
+import org.hawkular.inventory.rest.json.ApiError;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiParam;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+
+/**
+ * @author agent
+ * @since 0.2.1
+ */
+@Path("/changes")
+@Produces(APPLICATION_JSON)
+@Consumes(APPLICATION_JSON)
+@Api(value = "/changes", description = "The log of the changes of the tenant.")
+public class RestChanges extends RestBase {
+
+    private static final int MAX_LIMIT = 10000;
+
+    @GET
+    @Path("/")
+    @ApiOperation("Retrieves the changes of the tenant that happened after the change with the provided sequence" +
+            " number. The changes are numbered without gaps, so if the first returned change doesn't immediately" +
+            " follow the requested one, the log no longer contains the changes in between. If the epoch of a change" +
+            " differs from the epoch of the last change seen, some changes might have been lost in between.")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 400, message = "Invalid inputs", response = ApiError.class),
+            @ApiResponse(code = 401, message = "Unauthorized access"),
+            @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
+    })
+    public Response get(@ApiParam("The sequence number of the last change seen, 0 to start from the beginning")
+            @QueryParam("since") @DefaultValue("0") long since,
+            @ApiParam("The maximum number of changes to return (at most " + MAX_LIMIT + ")")
+            @QueryParam("limit") @DefaultValue("1000") int limit) {
+
+        if (limit <= 0 || limit > MAX_LIMIT) {
+            throw new IllegalArgumentException("The limit must be between 1 and " + MAX_LIMIT + ".");
+        }
+
+        List<Change> changes = inventory.getChanges(getTenantId(), since, limit);
+
+        return Response.ok(changes.stream().map(RestChanges::toJson).collect(toList())).build();
+    }
+
+    private static Map<String, Object> toJson(Change change) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("epoch", change.getEpoch());
+        ret.put("seq", change.getSequenceNumber());
+        ret.put("timestamp", change.getTimestamp());
+        ret.put("action", change.getAction().name());
+        ret.put("path", change.getPath().toString());
+        return ret;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 Red Hat, Inc. and/or its affiliates
+ * and other contributors as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.hawkular.inventory.rest;
+
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.Response.Status.ACCEPTED;
+import static javax.ws.rs.core.Response.Status.NOT_FOUND;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.ws.rs.Consumes;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
+
+import org.hawkular.inventory.api.DeleteJob;
+import org.hawkular.inventory.rest.json.ApiError;
+
+import com.wordnik.swagger.annotations.Api;
+import com.wordnik.swagger.annotations.ApiOperation;
+import com.wordnik.swagger.annotations.ApiResponse;
+import com.wordnik.swagger.annotations.ApiResponses;
+
+/**
+ * @author agent
+ * @since 0.2.1
+ */
+@Path("/deleteJobs")
+@Produces(APPLICATION_JSON)
+@Consumes(APPLICATION_JSON)
+@Api(value = "/deleteJobs", description = "Progress of the asynchronous deletes.")
+public class RestDeleteJobs extends RestBase {
+
+    @GET
+    @Path("/{jobId}")
+    @ApiOperation("Retrieves the progress of an asynchronous delete started using the 'async' parameter of one of the" +
+            " delete endpoints.")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "OK"),
+            @ApiResponse(code = 401, message = "Unauthorized access"),
+            @ApiResponse(code = 404, message = "No such delete job", response = ApiError.class),
+            @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
+    })
+    public Response get(@PathParam("jobId") String jobId) {
+        DeleteJob job = inventory.getDeleteJob(jobId);
+        if (job == null || !getTenantId().equals(job.getPath().ids().getTenantId())) {
+            return Response.status(NOT_FOUND).entity(new ApiError("Delete job '" + jobId + "' not found.")).build();
+        }
+
+        return Response.ok(toJson(job)).build();
+    }
+
+    /**
+     * @param job     the started delete job
+     * @param uriInfo the uri info of the delete request
+     * @return the "202 Accepted" response pointing to the progress of the job
+     */
+    static Response accepted(DeleteJob job, UriInfo uriInfo) {
+        return Response.status(ACCEPTED)
+                .location(uriInfo.getBaseUriBuilder().path(RestDeleteJobs.class).path(job.getId()).build())
+                .entity(toJson(job)).build();
+    }
+
+    private static Map<String, Object> toJson(DeleteJob job) {
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("id", job.getId());
+        ret.put("path", job.getPath().toString());
+        ret.put("status", job.getStatus().name());
+        ret.put("total", job.getTotalCount());
+        ret.put("deleted", job.getDeletedCount());
+        if (job.getError() != null) {
+            ret.put("error", job.getError().getMessage());
+        }
+        return ret;
+    }
+}
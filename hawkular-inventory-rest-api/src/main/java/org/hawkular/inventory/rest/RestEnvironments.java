@@ -27,12 +27,14 @@ import java.util.Set;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
@@ -139,6 +141,7 @@ public class RestEnvironments extends RestBase {
     @Path("/environments/{environmentId}")
     @ApiOperation("Deletes the environment from the tenant")
     @ApiResponses({
+        @ApiResponse(code = 202, message = "The delete job started, see the Location header for its progress"),
         @ApiResponse(code = 204, message = "Environment successfully deleted"),
         @ApiResponse(code = 400, message = "Delete failed because it would leave inventory in invalid state",
                 response = ApiError.class),
@@ -146,14 +149,21 @@ public class RestEnvironments extends RestBase {
         @ApiResponse(code = 404, message = "Tenant or environment not found", response = ApiError.class),
         @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
     })
-    public Response delete(@PathParam("environmentId") String environmentId) throws Exception {
+    public Response delete(@PathParam("environmentId") String environmentId,
+            @ApiParam("Delete in the background, returning a handle to the delete job")
+            @QueryParam("async") @DefaultValue("false") boolean async, @Context UriInfo uriInfo) throws Exception {
 
         String tenantId = getTenantId();
+        CanonicalPath environment = CanonicalPath.of().tenant(tenantId).environment(environmentId).get();
 
-        if (!security.canDelete(CanonicalPath.of().tenant(tenantId).environment(environmentId).get())) {
+        if (!security.canDelete(environment)) {
             return Response.status(FORBIDDEN).build();
         }
 
+        if (async) {
+            return RestDeleteJobs.accepted(inventory.deleteAsync(environment), uriInfo);
+        }
+
         inventory.tenants().get(tenantId).environments().delete(environmentId);
         return Response.noContent().build();
     }
@@ -16,32 +16,54 @@
  */
 package org.hawkular.inventory.rest;
 
+import static java.util.stream.Collectors.toList;
+
 import static javax.ws.rs.core.MediaType.APPLICATION_JSON;
+import static javax.ws.rs.core.MediaType.APPLICATION_JSON_TYPE;
 import static javax.ws.rs.core.Response.Status.FORBIDDEN;
 
 import static org.hawkular.inventory.rest.RequestUtil.extractPaging;
 import static org.hawkular.inventory.rest.ResponseUtil.pagedResponse;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.POST;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
 import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
 import javax.ws.rs.core.UriInfo;
+import javax.ws.rs.ext.Providers;
 
+import org.hawkular.inventory.api.BulkCreate;
 import org.hawkular.inventory.api.Environments;
+import org.hawkular.inventory.api.FeedSync;
+import org.hawkular.inventory.api.ResourceTypes;
+import org.hawkular.inventory.api.Resources;
+import org.hawkular.inventory.api.model.Blueprint;
 import org.hawkular.inventory.api.model.CanonicalPath;
+import org.hawkular.inventory.api.model.DataEntity;
 import org.hawkular.inventory.api.model.Feed;
+import org.hawkular.inventory.api.model.Metric;
+import org.hawkular.inventory.api.model.MetricType;
+import org.hawkular.inventory.api.model.Resource;
+import org.hawkular.inventory.api.model.ResourceType;
 import org.hawkular.inventory.api.paging.Page;
 import org.hawkular.inventory.rest.json.ApiError;
 
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.wordnik.swagger.annotations.ApiOperation;
 import com.wordnik.swagger.annotations.ApiParam;
 import com.wordnik.swagger.annotations.ApiResponse;
@@ -56,6 +78,9 @@ import com.wordnik.swagger.annotations.ApiResponses;
 @Consumes(value = APPLICATION_JSON)
 public class RestFeeds extends RestBase {
 
+    @Context
+    private Providers providers;
+
     @POST
     @Path("/{environmentId}/feeds")
     @ApiOperation("Registers a feed with the inventory, giving it a unique ID.")
@@ -147,6 +172,7 @@ public class RestFeeds extends RestBase {
     @Path("/{environmentId}/feeds/{feedId}")
     @ApiOperation("Deletes a feed")
     @ApiResponses({
+            @ApiResponse(code = 202, message = "The delete job started, see the Location header for its progress"),
             @ApiResponse(code = 204, message = "OK"),
             @ApiResponse(code = 401, message = "Unauthorized access"),
             @ApiResponse(code = 404, message = "Environment or the feed doesn't exist",
@@ -154,17 +180,158 @@ public class RestFeeds extends RestBase {
             @ApiResponse(code = 400, message = "The delete failed because it would make inventory invalid"),
             @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
     })
-    public Response delete(@PathParam("environmentId") String environmentId, @PathParam("feedId") String feedId) {
+    public Response delete(@PathParam("environmentId") String environmentId, @PathParam("feedId") String feedId,
+            @ApiParam("Delete in the background, returning a handle to the delete job")
+            @QueryParam("async") @DefaultValue("false") boolean async, @Context UriInfo uriInfo) {
 
         String tenantId = getTenantId();
 
         CanonicalPath env = CanonicalPath.of().tenant(tenantId).environment(environmentId).get();
+        CanonicalPath feed = env.extend(Feed.class, feedId).get();
 
-        if (!security.canDelete(env.extend(Feed.class, feedId).get())) {
+        if (!security.canDelete(feed)) {
             return Response.status(FORBIDDEN).build();
         }
 
+        if (async) {
+            return RestDeleteJobs.accepted(inventory.deleteAsync(feed), uriInfo);
+        }
+
         inventory.inspect(env, Environments.Single.class).feeds().delete(feedId);
         return Response.noContent().build();
     }
+
+    @POST
+    @Path("/{environmentId}/feeds/{feedId}/sync")
+    @ApiOperation("Synchronizes the contents of the feed with the provided tree of entities. The body is a list of" +
+            " the entities directly contained in the feed, each of them described by an object with the 'type'" +
+            " ('resourceType', 'metricType', 'resource', 'metric' or 'data'), the 'blueprint' and the optional" +
+            " list of the 'children'. Only the differences are written to the inventory - the entities not present" +
+            " in the tree are deleted, the missing ones created and the changed ones updated. The unchanged subtrees" +
+            " are detected using the content hashes and skipped. The response lists the changes.")
+    @ApiResponses({
+            @ApiResponse(code = 200, message = "The feed synchronized"),
+            @ApiResponse(code = 207, message = "Some of the entities could not be created. See the statuses in the" +
+                    " response body."),
+            @ApiResponse(code = 400, message = "Invalid inputs", response = ApiError.class),
+            @ApiResponse(code = 401, message = "Unauthorized access"),
+            @ApiResponse(code = 404, message = "Environment or the feed doesn't exist", response = ApiError.class),
+            @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
+    })
+    public Response synchronize(@PathParam("environmentId") String environmentId,
+            @PathParam("feedId") String feedId, @ApiParam(required = true) List<Map<String, Object>> contents) {
+
+        if (contents == null) {
+            throw new IllegalArgumentException("feed contents not specified");
+        }
+
+        String tenantId = getTenantId();
+
+        CanonicalPath feed = CanonicalPath.of().tenant(tenantId).environment(environmentId).feed(feedId).get();
+
+        if (!security.canUpdate(feed)) {
+            return Response.status(FORBIDDEN).build();
+        }
+
+        ObjectMapper mapper = providers.getContextResolver(ObjectMapper.class, APPLICATION_JSON_TYPE)
+                .getContext(ObjectMapper.class);
+
+        FeedSync.Builder sync = FeedSync.builder();
+        contents.forEach((n) -> sync.add(toNode(n, Feed.class, mapper)));
+
+        FeedSync.Result result = inventory.synchronize(feed, sync.build());
+
+        List<Map<String, Object>> created = new ArrayList<>();
+        for (BulkCreate.Entry e : result.getCreated().getEntries()) {
+            Map<String, Object> status = new LinkedHashMap<>();
+            status.put("parent", e.getParent().toString());
+            if (e.isSuccess()) {
+                status.put("path", e.getElement().getPath().toString());
+            } else {
+                status.put("error", e.getError().getMessage());
+            }
+            created.add(status);
+        }
+
+        Map<String, Object> ret = new LinkedHashMap<>();
+        ret.put("unchanged", result.getUnchangedCount());
+        ret.put("compared", result.getComparedCount());
+        ret.put("updated", result.getUpdated().stream().map(Object::toString).collect(toList()));
+        ret.put("deleted", result.getDeleted().stream().map(Object::toString).collect(toList()));
+        ret.put("created", created);
+
+        return Response.status(result.getCreated().isSuccess() ? 200 : 207).entity(ret).build();
+    }
+
+    @POST
+    @Path("/{environmentId}/feeds/{feedId}/sync/hashes")
+    @ApiOperation("Recomputes the content hashes used to skip the unchanged subtrees during the synchronization of" +
+            " the feed. Only needed for the feeds stored before the hashes were maintained or if the stored hashes" +
+            " are suspected to be wrong.")
+    @ApiResponses({
+            @ApiResponse(code = 204, message = "OK"),
+            @ApiResponse(code = 401, message = "Unauthorized access"),
+            @ApiResponse(code = 404, message = "Environment or the feed doesn't exist", response = ApiError.class),
+            @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
+    })
+    public Response rebuildContentHashes(@PathParam("environmentId") String environmentId,
+            @PathParam("feedId") String feedId) {
+
+        String tenantId = getTenantId();
+
+        CanonicalPath feed = CanonicalPath.of().tenant(tenantId).environment(environmentId).feed(feedId).get();
+
+        if (!security.canUpdate(feed)) {
+            return Response.status(FORBIDDEN).build();
+        }
+
+        inventory.rebuildContentHashes(feed);
+        return Response.noContent().build();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static FeedSync.Node toNode(Map<String, Object> json, Class<?> parentType, ObjectMapper mapper) {
+        Object type = json.get("type");
+
+        Class<?> entityType;
+        JavaType blueprintType;
+        if ("resourceType".equals(type)) {
+            entityType = ResourceType.class;
+            blueprintType = mapper.constructType(ResourceType.Blueprint.class);
+        } else if ("metricType".equals(type)) {
+            entityType = MetricType.class;
+            blueprintType = mapper.constructType(MetricType.Blueprint.class);
+        } else if ("resource".equals(type)) {
+            entityType = Resource.class;
+            blueprintType = mapper.constructType(Resource.Blueprint.class);
+        } else if ("metric".equals(type)) {
+            entityType = Metric.class;
+            blueprintType = mapper.constructType(Metric.Blueprint.class);
+        } else if ("data".equals(type)) {
+            entityType = DataEntity.class;
+            blueprintType = mapper.getTypeFactory().constructParametricType(DataEntity.Blueprint.class,
+                    ResourceType.class.equals(parentType) ? ResourceTypes.DataRole.class : Resources.DataRole.class);
+        } else {
+            throw new IllegalArgumentException("Unsupported entity type: '" + type + "'. Valid types are:" +
+                    " resourceType, metricType, resource, metric and data.");
+        }
+
+        Blueprint blueprint = mapper.convertValue(json.get("blueprint"), blueprintType);
+        if (blueprint == null) {
+            throw new IllegalArgumentException("Blueprint not specified for an entity of type '" + type + "'.");
+        }
+
+        List<FeedSync.Node> children = new ArrayList<>();
+        Object childrenJson = json.get("children");
+        if (childrenJson instanceof List) {
+            for (Object c : (List<Object>) childrenJson) {
+                if (!(c instanceof Map)) {
+                    throw new IllegalArgumentException("Invalid child of " + blueprint + ": " + c);
+                }
+                children.add(toNode((Map<String, Object>) c, entityType, mapper));
+            }
+        }
+
+        return new FeedSync.Node(blueprint, children);
+    }
 }
@@ -41,12 +41,12 @@ import com.wordnik.swagger.annotations.ApiResponses;
 @Path("/graph")
 @Produces(APPLICATION_JSON)
 @Consumes(APPLICATION_JSON)
-@Api(value = "/graph", description = "Retrieves whole graph in the JSON representation.")
+@Api(value = "/graph", description = "Retrieves the graph of the tenant in the JSON representation.")
 public class RestGraphSON extends RestBase {
 
     @GET
     @Path("/")
-    @ApiOperation("Gets the graph.")
+    @ApiOperation("Gets the graph of the tenant. The GraphSON is streamed to the client as it is being read.")
     @ApiResponses({
             @ApiResponse(code = 200, message = "OK"),
             @ApiResponse(code = 401, message = "Unauthorized access"),
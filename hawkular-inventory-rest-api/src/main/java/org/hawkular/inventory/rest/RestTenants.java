@@ -22,11 +22,15 @@ import static javax.ws.rs.core.Response.Status.FORBIDDEN;
 
 import javax.ws.rs.Consumes;
 import javax.ws.rs.DELETE;
+import javax.ws.rs.DefaultValue;
 import javax.ws.rs.GET;
 import javax.ws.rs.PUT;
 import javax.ws.rs.Path;
 import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.Response;
+import javax.ws.rs.core.UriInfo;
 
 import org.hawkular.inventory.api.model.CanonicalPath;
 import org.hawkular.inventory.api.model.Tenant;
@@ -86,17 +90,24 @@ public class RestTenants extends RestBase {
     @Path("/")
     @ApiOperation("Deletes the tenant and all its data. Be careful!")
     @ApiResponses({
+            @ApiResponse(code = 202, message = "The delete job started, see the Location header for its progress"),
             @ApiResponse(code = 204, message = "OK"),
             @ApiResponse(code = 401, message = "Unauthorized access"),
             @ApiResponse(code = 404, message = "Tenant doesn't exist", response = ApiError.class),
             @ApiResponse(code = 500, message = "Server error", response = ApiError.class)
     })
-    public Response deleteTenant() {
+    public Response deleteTenant(@ApiParam("Delete in the background, returning a handle to the delete job")
+            @QueryParam("async") @DefaultValue("false") boolean async, @Context UriInfo uriInfo) {
         String tenantId = getTenantId();
-        if (!security.canDelete(CanonicalPath.of().tenant(tenantId).get())) {
+        CanonicalPath tenant = CanonicalPath.of().tenant(tenantId).get();
+        if (!security.canDelete(tenant)) {
             return Response.status(FORBIDDEN).build();
         }
 
+        if (async) {
+            return RestDeleteJobs.accepted(inventory.deleteAsync(tenant), uriInfo);
+        }
+
         inventory.tenants().delete(tenantId);
         return Response.noContent().build();
     }
@@ -16,8 +16,10 @@
  */
 package org.hawkular.inventory.rest;
 
+import java.util.ArrayList;
 import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.UUID;
 
@@ -82,7 +84,7 @@ public class Security {
         if (restPath == null || restPath.trim().isEmpty()) {
             return false;
         }
-        String[] chunks = restPath.split("(?<=[^\\\\])/");
+        String[] chunks = splitRestPath(restPath);
         if (chunks == null || chunks.length < 2) {
             return false;
         }
@@ -104,8 +106,36 @@ public class Security {
         return false;
     }
 
+    /**
+     * Splits the rest path on slashes that are not escaped by a backslash. This is equivalent to
+     * {@code restPath.split("(?<=[^\\\\])/")} but avoids compiling and running the regex on each check.
+     */
+    private static String[] splitRestPath(String restPath) {
+        List<String> chunks = new ArrayList<>(6);
+        int start = 0;
+        for (int i = 1; i < restPath.length(); ++i) {
+            if (restPath.charAt(i) == '/' && restPath.charAt(i - 1) != '\\') {
+                chunks.add(restPath.substring(start, i));
+                start = i + 1;
+            }
+        }
+        if (start == 0) {
+            return new String[]{restPath};
+        }
+
+        chunks.add(restPath.substring(start));
+
+        //String.split() removes the trailing empty strings
+        int size = chunks.size();
+        while (size > 0 && chunks.get(size - 1).isEmpty()) {
+            --size;
+        }
+
+        return chunks.subList(0, size).toArray(new String[size]);
+    }
+
     public static CanonicalPath toCanonicalPath(String restPath) {
-        String[] chunks = restPath.split("(?<=[^\\\\])/");
+        String[] chunks = splitRestPath(restPath);
         CanonicalPath.Extender path = CanonicalPath.empty();
         if (chunks.length == 2) {
             if ("tenants".equals(chunks[0])) {